@@ -0,0 +1,83 @@
+package org.matsim.mosaik2.analysis;
+
+import it.unimi.dsi.fastutil.objects.Object2DoubleMap;
+import it.unimi.dsi.fastutil.objects.Object2DoubleOpenHashMap;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.core.utils.geometry.CoordUtils;
+import org.matsim.mosaik2.benchmarks.SyntheticData;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Estimation of smoothing radii for receiver points. Each receiver point sees the emissions of all links within a
+ * radius, as it does in the smoothing analyses.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SmoothingBenchmark {
+
+    private static final double EXTENT = 2000;
+    private static final int NUMBER_OF_RECEIVER_POINTS = 100;
+
+    @Param({"Grid", "Random"})
+    public SyntheticData.NetworkType networkType;
+
+    @Param({"10"})
+    public double cellSize;
+
+    @Param({"300"})
+    public double radius;
+
+    private Coord[] receiverPoints;
+    private Object2DoubleMap<Link>[] emissionsByReceiverPoint;
+    private double[] concentrations;
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setup() {
+
+        var network = SyntheticData.createNetwork(networkType, EXTENT);
+        var emissions = SyntheticData.createLinkEmissions(network);
+        var random = new Random(SyntheticData.SEED);
+
+        receiverPoints = new Coord[NUMBER_OF_RECEIVER_POINTS];
+        emissionsByReceiverPoint = new Object2DoubleMap[NUMBER_OF_RECEIVER_POINTS];
+        concentrations = new double[NUMBER_OF_RECEIVER_POINTS];
+
+        for (var i = 0; i < NUMBER_OF_RECEIVER_POINTS; i++) {
+            var receiverPoint = new Coord(random.nextDouble() * EXTENT, random.nextDouble() * EXTENT);
+            Object2DoubleMap<Link> linkEmissions = new Object2DoubleOpenHashMap<>();
+            for (var link : network.getLinks().values()) {
+                if (CoordUtils.calcEuclideanDistance(link.getCoord(), receiverPoint) < radius) {
+                    linkEmissions.put(link, emissions.get(link.getId()));
+                }
+            }
+            receiverPoints[i] = receiverPoint;
+            emissionsByReceiverPoint[i] = linkEmissions;
+            // use the concentration which would result from a radius of 30m, so that the bisection has a solution
+            concentrations[i] = NumericSmoothingRadiusEstimate.sumf(linkEmissions, receiverPoint, 30, cellSize);
+        }
+    }
+
+    @Benchmark
+    public void sumf(Blackhole blackhole) {
+        for (var i = 0; i < NUMBER_OF_RECEIVER_POINTS; i++) {
+            blackhole.consume(NumericSmoothingRadiusEstimate.sumf(emissionsByReceiverPoint[i], receiverPoints[i], 30, cellSize));
+        }
+    }
+
+    @Benchmark
+    public void estimateRWithBisect(Blackhole blackhole) {
+        for (var i = 0; i < NUMBER_OF_RECEIVER_POINTS; i++) {
+            blackhole.consume(NumericSmoothingRadiusEstimate.estimateRWithBisect(emissionsByReceiverPoint[i], receiverPoints[i], concentrations[i], cellSize));
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package org.matsim.mosaik2.benchmarks;
+
+import org.matsim.mosaik2.raster.DoubleRaster;
+import org.matsim.mosaik2.raster.SparseDoubleRaster;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Raw access patterns of the raster classes. The raster covers 2km x 2km, which is the size of the PALM domains we use.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DoubleRasterBenchmark {
+
+    private static final double EXTENT = 2000;
+    private static final int NUMBER_OF_ADJUSTMENTS = 100000;
+
+    @Param({"2", "10"})
+    public double cellSize;
+
+    private DoubleRaster raster;
+    private double[] randomX;
+    private double[] randomY;
+
+    @Setup
+    public void setup() {
+        raster = new DoubleRaster(SyntheticData.createBounds(EXTENT), cellSize);
+        raster.setValueForEachIndex((xi, yi) -> xi + yi);
+
+        var random = new Random(SyntheticData.SEED);
+        randomX = new double[NUMBER_OF_ADJUSTMENTS];
+        randomY = new double[NUMBER_OF_ADJUSTMENTS];
+        for (var i = 0; i < NUMBER_OF_ADJUSTMENTS; i++) {
+            randomX[i] = random.nextDouble() * EXTENT;
+            randomY[i] = random.nextDouble() * EXTENT;
+        }
+    }
+
+    @Benchmark
+    public DoubleRaster setValueForEachIndex() {
+        raster.setValueForEachIndex((xi, yi) -> xi * yi);
+        return raster;
+    }
+
+    @Benchmark
+    public void forEachIndex(Blackhole blackhole) {
+        raster.forEachIndex((xi, yi, value) -> blackhole.consume(value));
+    }
+
+    @Benchmark
+    public void forEachCoordinate(Blackhole blackhole) {
+        raster.forEachCoordinate((x, y, value) -> blackhole.consume(value));
+    }
+
+    @Benchmark
+    public DoubleRaster adjustRandomCoordinates() {
+        for (var i = 0; i < NUMBER_OF_ADJUSTMENTS; i++) {
+            raster.adjustValueForCoord(randomX[i], randomY[i], 1.0);
+        }
+        return raster;
+    }
+
+    @Benchmark
+    public SparseDoubleRaster adjustRandomCoordinatesSparse() {
+        var sparse = new SparseDoubleRaster(raster.getBounds(), cellSize);
+        for (var i = 0; i < NUMBER_OF_ADJUSTMENTS; i++) {
+            sparse.adjustValueForCoord(randomX[i], randomY[i], 1.0);
+        }
+        // force the sparse raster to merge its unsorted tail
+        sparse.size();
+        return sparse;
+    }
+}
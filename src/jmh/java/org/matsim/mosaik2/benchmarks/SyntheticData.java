@@ -0,0 +1,112 @@
+package org.matsim.mosaik2.benchmarks;
+
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.core.network.NetworkUtils;
+import org.matsim.mosaik2.raster.AbstractRaster;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Creates networks and emission values in code, so that the benchmarks don't depend on input files. All random data is
+ * created from a fixed seed, so that results of different commits are comparable.
+ */
+public class SyntheticData {
+
+    public static final long SEED = 4711;
+
+    public enum NetworkType {Grid, Random}
+
+    public static Network createNetwork(NetworkType type, double extent) {
+        return switch (type) {
+            case Grid -> createGridNetwork(extent, 100);
+            case Random -> createRandomNetwork(extent, 10000, 300);
+        };
+    }
+
+    /**
+     * Creates a grid with nodes every 'spacing' meters and links in both directions between neighbouring nodes.
+     */
+    public static Network createGridNetwork(double extent, double spacing) {
+
+        var network = NetworkUtils.createNetwork();
+        var size = (int) (extent / spacing);
+
+        for (var xi = 0; xi <= size; xi++) {
+            for (var yi = 0; yi <= size; yi++) {
+                NetworkUtils.createAndAddNode(network, Id.createNodeId(xi + "_" + yi), new Coord(xi * spacing, yi * spacing));
+            }
+        }
+
+        for (var xi = 0; xi <= size; xi++) {
+            for (var yi = 0; yi <= size; yi++) {
+                if (xi < size) addLinks(network, xi + "_" + yi, (xi + 1) + "_" + yi);
+                if (yi < size) addLinks(network, xi + "_" + yi, xi + "_" + (yi + 1));
+            }
+        }
+        return network;
+    }
+
+    /**
+     * Creates links with random position, direction and a length of up to maxLinkLength. All links lie within
+     * [0, extent] in both directions.
+     */
+    public static Network createRandomNetwork(double extent, int numberOfLinks, double maxLinkLength) {
+
+        var network = NetworkUtils.createNetwork();
+        var random = new Random(SEED);
+
+        for (var i = 0; i < numberOfLinks; i++) {
+            var fromX = random.nextDouble() * extent;
+            var fromY = random.nextDouble() * extent;
+            var angle = random.nextDouble() * 2 * Math.PI;
+            var length = random.nextDouble() * maxLinkLength;
+            var toX = clamp(fromX + Math.cos(angle) * length, extent);
+            var toY = clamp(fromY + Math.sin(angle) * length, extent);
+
+            var from = NetworkUtils.createAndAddNode(network, Id.createNodeId("from_" + i), new Coord(fromX, fromY));
+            var to = NetworkUtils.createAndAddNode(network, Id.createNodeId("to_" + i), new Coord(toX, toY));
+            var link = network.getFactory().createLink(Id.createLinkId(i), from, to);
+            link.setNumberOfLanes(1 + random.nextInt(3));
+            network.addLink(link);
+        }
+        return network;
+    }
+
+    /**
+     * @return a random emission value between 0 and 100 for each link of the network.
+     */
+    public static Map<Id<Link>, Double> createLinkEmissions(Network network) {
+
+        var random = new Random(SEED);
+        Map<Id<Link>, Double> result = new HashMap<>();
+        for (var link : network.getLinks().values()) {
+            result.put(link.getId(), random.nextDouble() * 100);
+        }
+        return result;
+    }
+
+    public static AbstractRaster.Bounds createBounds(double extent) {
+        return new AbstractRaster.Bounds(0, 0, extent, extent);
+    }
+
+    private static void addLinks(Network network, String fromId, String toId) {
+
+        var from = network.getNodes().get(Id.createNodeId(fromId));
+        var to = network.getNodes().get(Id.createNodeId(toId));
+        var forward = network.getFactory().createLink(Id.createLinkId(fromId + "-" + toId), from, to);
+        var backward = network.getFactory().createLink(Id.createLinkId(toId + "-" + fromId), to, from);
+        forward.setNumberOfLanes(2);
+        backward.setNumberOfLanes(2);
+        network.addLink(forward);
+        network.addLink(backward);
+    }
+
+    private static double clamp(double value, double extent) {
+        return Math.max(0, Math.min(extent, value));
+    }
+}
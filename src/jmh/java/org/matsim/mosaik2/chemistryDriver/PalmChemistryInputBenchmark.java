@@ -0,0 +1,68 @@
+package org.matsim.mosaik2.chemistryDriver;
+
+import org.matsim.contrib.analysis.time.TimeBinMap;
+import org.matsim.mosaik2.benchmarks.SyntheticData;
+import org.matsim.mosaik2.raster.DoubleRaster;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writing a day of hourly emission rasters for a few species into a PALM chemistry driver.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PalmChemistryInputBenchmark {
+
+    private static final double EXTENT = 2000;
+    private static final List<String> SPECIES = List.of("NO2", "NO", "PM10");
+
+    @Param({"Grid", "Random"})
+    public SyntheticData.NetworkType networkType;
+
+    @Param({"10"})
+    public double cellSize;
+
+    private TimeBinMap<Map<String, DoubleRaster>> data;
+    private Path outputFile;
+
+    @Setup
+    public void setup() throws IOException {
+
+        var network = SyntheticData.createNetwork(networkType, EXTENT);
+        var emissions = SyntheticData.createLinkEmissions(network);
+        var bounds = SyntheticData.createBounds(EXTENT);
+        var raster = Bresenham.rasterizeNetwork(network, bounds, emissions, cellSize);
+
+        data = new TimeBinMap<>(3600);
+        for (var hour = 0; hour < 24; hour++) {
+            Map<String, DoubleRaster> rasterBySpecies = new HashMap<>();
+            for (var species : SPECIES) {
+                rasterBySpecies.put(species, raster);
+            }
+            data.getTimeBin(hour * 3600).setValue(rasterBySpecies);
+        }
+        outputFile = Files.createTempFile("palm-chemistry-benchmark", ".nc");
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(outputFile);
+    }
+
+    @Benchmark
+    public Path writeNetCdfFile() {
+        PalmChemistryInput2.writeNetCdfFile(outputFile.toString(), data);
+        return outputFile;
+    }
+}
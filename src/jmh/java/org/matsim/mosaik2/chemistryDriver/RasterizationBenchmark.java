@@ -0,0 +1,74 @@
+package org.matsim.mosaik2.chemistryDriver;
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.mosaik2.benchmarks.SyntheticData;
+import org.matsim.mosaik2.raster.AbstractRaster;
+import org.matsim.mosaik2.raster.BuildingMask;
+import org.matsim.mosaik2.raster.DoubleRaster;
+import org.matsim.mosaik2.raster.SparseDoubleRaster;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rasterization of emissions of a whole network onto a raster. This is located in the chemistryDriver package, because
+ * the rasterizers are package private.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RasterizationBenchmark {
+
+    private static final double EXTENT = 2000;
+
+    @Param({"Grid", "Random"})
+    public SyntheticData.NetworkType networkType;
+
+    @Param({"2", "10"})
+    public double cellSize;
+
+    private Network network;
+    private Map<Id<Link>, Double> emissions;
+    private AbstractRaster.Bounds bounds;
+    private BuildingMask buildings;
+    private SwingRasterizer swingRasterizer;
+
+    @Setup
+    public void setup() {
+        network = SyntheticData.createNetwork(networkType, EXTENT);
+        emissions = SyntheticData.createLinkEmissions(network);
+        bounds = SyntheticData.createBounds(EXTENT);
+        buildings = new BuildingMask(bounds, cellSize);
+        swingRasterizer = new SwingRasterizer(bounds, cellSize, EmissionRasterer.LANE_WIDTH);
+    }
+
+    @Benchmark
+    public DoubleRaster bresenham() {
+        return Bresenham.rasterizeNetwork(network, bounds, emissions, cellSize);
+    }
+
+    @Benchmark
+    public SparseDoubleRaster bresenhamSparse() {
+        return Bresenham.rasterizeNetworkSparse(network, bounds, emissions, cellSize);
+    }
+
+    @Benchmark
+    public DoubleRaster swing() {
+        var raster = new DoubleRaster(bounds, cellSize);
+        for (var entry : emissions.entrySet()) {
+            swingRasterizer.rasterLink(network.getLinks().get(entry.getKey()), entry.getValue(), raster, buildings);
+        }
+        return raster;
+    }
+
+    @Benchmark
+    public DoubleRaster thickBresenham() {
+        return ThickBresenham.rasterizeNetwork(network, buildings, emissions, EmissionRasterer.LANE_WIDTH);
+    }
+}
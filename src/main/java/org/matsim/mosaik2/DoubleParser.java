@@ -0,0 +1,209 @@
+package org.matsim.mosaik2;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Parses decimal numbers from ascii bytes into doubles, without creating strings. The result is the same as
+ * {@link Double#parseDouble(String)}.
+ * <p>
+ * Numbers with up to 15 significant digits and small exponents are parsed with a single exact multiplication or division
+ * (Clinger's fast path). Numbers with up to 19 significant digits are parsed with the Eisel-Lemire algorithm
+ * (Lemire, 2021, https://doi.org/10.1002/spe.2984), which needs one or two 64-bit multiplications with a truncated power
+ * of five. All other input, including subnormal results, 'NaN' and 'Infinity', is handed to Double.parseDouble.
+ */
+final class DoubleParser {
+
+    private static final int MIN_POWER_OF_TEN = -342;
+    private static final int MAX_POWER_OF_TEN = 308;
+    private static final int MANTISSA_BITS = 52;
+
+    private static final double[] EXACT_POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    // 5^q normalized to 128 bits, truncated, stored as high and low 64 bits for q in [-342, 308]
+    private static final long[] POWERS_OF_FIVE = new long[2 * (MAX_POWER_OF_TEN - MIN_POWER_OF_TEN + 1)];
+
+    static {
+        var mask = BigInteger.ONE.shiftLeft(64).subtract(BigInteger.ONE);
+        var twoPow128 = BigInteger.ONE.shiftLeft(128);
+        for (var q = MIN_POWER_OF_TEN; q <= MAX_POWER_OF_TEN; q++) {
+            BigInteger value;
+            if (q < 0) {
+                // reciprocal of 5^-q, rounded up, with 128 significant bits
+                var pow = BigInteger.valueOf(5).pow(-q);
+                var z = pow.subtract(BigInteger.ONE).bitLength();
+                var b = q >= -27 ? z + 127 : 2 * z + 128;
+                value = BigInteger.ONE.shiftLeft(b).divide(pow).add(BigInteger.ONE);
+                while (value.compareTo(twoPow128) >= 0) {
+                    value = value.shiftRight(1);
+                }
+            } else {
+                var pow = BigInteger.valueOf(5).pow(q);
+                var bits = pow.bitLength();
+                value = bits < 128 ? pow.shiftLeft(128 - bits) : pow.shiftRight(bits - 128);
+            }
+            var index = 2 * (q - MIN_POWER_OF_TEN);
+            POWERS_OF_FIVE[index] = value.shiftRight(64).longValue();
+            POWERS_OF_FIVE[index + 1] = value.and(mask).longValue();
+        }
+    }
+
+    private DoubleParser() {
+    }
+
+    /**
+     * Parses the bytes from start (inclusive) to end (exclusive). Empty input yields NaN.
+     *
+     * @throws NumberFormatException if the bytes are not a number
+     */
+    static double parse(byte[] bytes, int start, int end) {
+
+        if (start >= end) return Double.NaN;
+
+        var i = start;
+        var negative = false;
+        if (bytes[i] == '-' || bytes[i] == '+') {
+            negative = bytes[i] == '-';
+            i++;
+        }
+
+        // collect up to 19 significant digits. More digits don't fit into a long
+        var significand = 0L;
+        var digits = 0;
+        var exponent = 0;
+        var hasDigits = false;
+        for (; i < end && isDigit(bytes[i]); i++) {
+            hasDigits = true;
+            if (digits == 0 && bytes[i] == '0') continue;
+            if (digits == 19) return parseSlow(bytes, start, end);
+            significand = significand * 10 + (bytes[i] - '0');
+            digits++;
+        }
+        if (i < end && bytes[i] == '.') {
+            i++;
+            for (; i < end && isDigit(bytes[i]); i++) {
+                hasDigits = true;
+                exponent--;
+                if (digits == 0 && bytes[i] == '0') continue;
+                if (digits == 19) return parseSlow(bytes, start, end);
+                significand = significand * 10 + (bytes[i] - '0');
+                digits++;
+            }
+        }
+        if (!hasDigits) return parseSlow(bytes, start, end);
+
+        if (i < end && (bytes[i] == 'e' || bytes[i] == 'E')) {
+            i++;
+            var negativeExponent = false;
+            if (i < end && (bytes[i] == '-' || bytes[i] == '+')) {
+                negativeExponent = bytes[i] == '-';
+                i++;
+            }
+            if (i == end) return parseSlow(bytes, start, end);
+            var explicitExponent = 0;
+            for (; i < end && isDigit(bytes[i]); i++) {
+                if (explicitExponent < 10000) explicitExponent = explicitExponent * 10 + (bytes[i] - '0');
+            }
+            exponent += negativeExponent ? -explicitExponent : explicitExponent;
+        }
+        // e.g. a 'd' or 'f' suffix, which Double.parseDouble accepts
+        if (i != end) return parseSlow(bytes, start, end);
+
+        if (significand == 0) return negative ? -0.0 : 0.0;
+
+        double result;
+        if (Long.compareUnsigned(significand, 1L << 53) <= 0 && exponent >= -22 && exponent <= 22) {
+            // both operands are exact, so the result is correctly rounded
+            var value = (double) significand;
+            result = exponent < 0 ? value / EXACT_POWERS_OF_TEN[-exponent] : value * EXACT_POWERS_OF_TEN[exponent];
+        } else {
+            result = eiselLemire(significand, exponent);
+            if (Double.isNaN(result)) return parseSlow(bytes, start, end);
+        }
+        return negative ? -result : result;
+    }
+
+    /**
+     * Same as {@link #parse(byte[], int, int)}, but rounds to the nearest float like {@link Float#parseFloat(String)}.
+     */
+    static float parseFloat(byte[] bytes, int start, int end) {
+
+        var value = parse(bytes, start, end);
+        // midpoints between floats are doubles, so rounding to the nearest double never crosses one. If it ends up on a
+        // midpoint, the cast to float could round in the wrong direction.
+        if (isFloatMidpoint(value)) return Float.parseFloat(new String(bytes, start, end - start, StandardCharsets.US_ASCII));
+        return (float) value;
+    }
+
+    private static boolean isFloatMidpoint(double value) {
+
+        var nearest = (float) value;
+        if (nearest == value || Float.isInfinite(nearest) || Double.isNaN(value)) return false;
+        var other = value > nearest ? Math.nextUp(nearest) : Math.nextDown(nearest);
+        return ((double) nearest + other) / 2 == value;
+    }
+
+    /**
+     * Computes significand * 10^exponent for a non-zero, unsigned significand. Returns NaN if the result can't be
+     * determined this way.
+     */
+    private static double eiselLemire(long significand, int exponent) {
+
+        if (exponent < MIN_POWER_OF_TEN) return 0.0;
+        if (exponent > MAX_POWER_OF_TEN) return Double.POSITIVE_INFINITY;
+
+        var leadingZeros = Long.numberOfLeadingZeros(significand);
+        var w = significand << leadingZeros;
+
+        var index = 2 * (exponent - MIN_POWER_OF_TEN);
+        var high = unsignedMultiplyHigh(w, POWERS_OF_FIVE[index]);
+        var low = w * POWERS_OF_FIVE[index];
+
+        // the lower bits of the product are all ones. Multiply with the lower half of the power as well
+        if ((high & 0x1FF) == 0x1FF) {
+            var secondHigh = unsignedMultiplyHigh(w, POWERS_OF_FIVE[index + 1]);
+            low += secondHigh;
+            if (Long.compareUnsigned(secondHigh, low) > 0) high++;
+        }
+        if (low == -1L && (exponent < -27 || exponent > 55)) return Double.NaN;
+
+        var upperBit = (int) (high >>> 63);
+        var shift = upperBit + 64 - MANTISSA_BITS - 3;
+        var mantissa = high >>> shift;
+        var power2 = (((152170 + 65536) * exponent) >> 16) + 63 + upperBit - leadingZeros + 1023;
+
+        // subnormal numbers
+        if (power2 <= 0) return Double.NaN;
+
+        // exactly between two doubles: round to even
+        if (Long.compareUnsigned(low, 1) <= 0 && exponent >= -4 && exponent <= 23 && (mantissa & 3) == 1
+                && (mantissa << shift) == high) {
+            mantissa &= ~1L;
+        }
+        mantissa += mantissa & 1;
+        mantissa >>>= 1;
+        if (mantissa >= (2L << MANTISSA_BITS)) {
+            mantissa = 1L << MANTISSA_BITS;
+            power2++;
+        }
+        mantissa &= ~(1L << MANTISSA_BITS);
+        if (power2 >= 0x7FF) return Double.POSITIVE_INFINITY;
+
+        return Double.longBitsToDouble(((long) power2 << MANTISSA_BITS) | mantissa);
+    }
+
+    private static double parseSlow(byte[] bytes, int start, int end) {
+        return Double.parseDouble(new String(bytes, start, end - start, StandardCharsets.US_ASCII));
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    private static long unsignedMultiplyHigh(long a, long b) {
+        return Math.multiplyHigh(a, b) + ((a >> 63) & b) + ((b >> 63) & a);
+    }
+}
@@ -0,0 +1,470 @@
+package org.matsim.mosaik2;
+
+import lombok.Builder;
+import lombok.extern.log4j.Log4j2;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reads numeric columns of a csv file with a header row, e.g. time,x,y,value, into primitive arrays. Only the requested
+ * columns are parsed. Other columns are skipped without looking at their content.
+ * <p>
+ * The file is split into blocks of lines which are parsed concurrently and handed to the consumer in file order.
+ * Uncompressed files are split by byte offsets and each block is read by the thread which parses it. Files ending with
+ * '.gz' are decompressed by a background thread, which hands blocks of complete lines to the parsing threads. Numbers
+ * are parsed from the raw bytes with {@link DoubleParser}.
+ * <p>
+ * The reader supports the files written by this project: comma separated, one record per line with '\n' or '\r\n' line
+ * endings, no line breaks within fields. Quotes around fields are removed. Empty fields are read as NaN.
+ */
+@Log4j2
+@Builder
+public class NumericCsvReader {
+
+    private static final int MIN_OVERLAP = 1 << 12;
+
+    private final Path file;
+    private final List<String> columns;
+
+    /**
+     * Columns whose values are rounded to the nearest float like {@link Float#parseFloat(String)}. Casting a parsed
+     * double to float may round twice. Values are still returned as doubles.
+     */
+    @Builder.Default
+    private final Set<String> floatColumns = Set.of();
+
+    @Builder.Default
+    private final int parallelism = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Approximate number of bytes per block
+     */
+    @Builder.Default
+    private final int blockSize = 1 << 23;
+
+    /**
+     * Reads all rows into a single block
+     */
+    public static Block readAll(Path file, String... columns) {
+        return NumericCsvReader.builder().file(file).columns(List.of(columns)).build().readAll();
+    }
+
+    /**
+     * Reads all rows into a single block
+     */
+    public Block readAll() {
+        var blocks = new ArrayList<Block>();
+        read(blocks::add);
+        return Block.concat(columns.size(), blocks);
+    }
+
+    /**
+     * Parses the file and hands the parsed blocks to the consumer. The consumer is called from the calling thread in the
+     * order in which the rows appear in the file.
+     */
+    public void read(Consumer<Block> consumer) {
+
+        log.info("Reading columns " + columns + " from: " + file);
+        var pool = new ForkJoinPool(Math.max(1, parallelism));
+        try {
+            if (file.getFileName().toString().endsWith(".gz")) {
+                readCompressed(pool, consumer);
+            } else {
+                readUncompressed(pool, consumer);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            pool.shutdown();
+        }
+        log.info("Finished reading: " + file);
+    }
+
+    private void readUncompressed(ForkJoinPool pool, Consumer<Block> consumer) throws IOException {
+
+        try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+
+            var size = channel.size();
+            var headerEnd = readHeaderEnd(channel);
+            var fieldToColumn = parseHeader(readRange(channel, 0, headerEnd), (int) headerEnd);
+
+            // FileChannel supports concurrent reads at absolute positions, so that each task reads its own range
+            var pending = new ArrayDeque<ForkJoinTask<Block>>();
+            for (var start = headerEnd; start < size; start += blockSize) {
+                var rangeStart = start;
+                var rangeEnd = Math.min(size, start + blockSize);
+                pending.add(pool.submit(() -> parseRange(channel, rangeStart, rangeEnd, headerEnd, size, fieldToColumn)));
+
+                if (pending.size() >= maxPendingBlocks()) {
+                    consumer.accept(pending.poll().join());
+                }
+            }
+            while (!pending.isEmpty()) {
+                consumer.accept(pending.poll().join());
+            }
+        }
+    }
+
+    /**
+     * Parses all lines which start within [start, end). The line which starts before 'start' belongs to the previous
+     * range. The last line may end after 'end'.
+     */
+    private Block parseRange(FileChannel channel, long start, long end, long headerEnd, long size, int[] fieldToColumn) {
+
+        // read one byte before the range to know whether a line starts at 'start'
+        var from = start == headerEnd ? start : start - 1;
+        var overlap = MIN_OVERLAP;
+        while (true) {
+            var to = Math.min(size, end + overlap);
+            var bytes = readRange(channel, from, to);
+            var length = (int) (to - from);
+
+            var firstLine = 0;
+            if (start != headerEnd) {
+                firstLine = indexOf(bytes, (byte) '\n', 0, length) + 1;
+                // no line starts in this range
+                if (firstLine == 0) return new Block(columns.size(), 0);
+            }
+            var lastLineStart = (int) (end - from);
+            if (firstLine >= lastLineStart) return new Block(columns.size(), 0);
+
+            // make sure that the line which starts last within the range is complete
+            var lastLineEnd = findEndOfLineStartingBefore(bytes, lastLineStart, length);
+            if (lastLineEnd < 0 && to < size) {
+                overlap *= 2;
+                continue;
+            }
+            return parseLines(bytes, firstLine, lastLineEnd < 0 ? length : lastLineEnd, fieldToColumn);
+        }
+    }
+
+    private void readCompressed(ForkJoinPool pool, Consumer<Block> consumer) throws IOException {
+
+        // blocks of complete lines, an empty array signals the end of the file
+        BlockingQueue<byte[]> chunks = new ArrayBlockingQueue<>(maxPendingBlocks());
+        var error = new AtomicReference<Throwable>();
+
+        try (var in = new GZIPInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16), 1 << 16)) {
+
+            var header = readHeaderLine(in);
+            var fieldToColumn = parseHeader(header, header.length);
+
+            var inflater = new Thread(() -> {
+                try {
+                    inflate(in, chunks);
+                } catch (Throwable e) {
+                    error.set(e);
+                    chunks.clear();
+                    chunks.offer(new byte[0]);
+                }
+            }, "csv-inflater");
+            inflater.setDaemon(true);
+            inflater.start();
+
+            try {
+                var pending = new ArrayDeque<ForkJoinTask<Block>>();
+                while (true) {
+                    var chunk = take(chunks);
+                    if (chunk.length == 0) break;
+                    pending.add(pool.submit(() -> parseLines(chunk, 0, chunk.length, fieldToColumn)));
+                    if (pending.size() >= maxPendingBlocks()) {
+                        consumer.accept(pending.poll().join());
+                    }
+                }
+                while (!pending.isEmpty()) {
+                    consumer.accept(pending.poll().join());
+                }
+            } finally {
+                // stops the inflater if parsing failed
+                inflater.interrupt();
+            }
+            if (error.get() != null) throw new RuntimeException(error.get());
+        }
+    }
+
+    /**
+     * Decompresses the stream into blocks which end with a complete line. The remainder of the last line is carried over
+     * into the next block.
+     */
+    private void inflate(InputStream in, BlockingQueue<byte[]> chunks) throws IOException, InterruptedException {
+
+        var buffer = new byte[blockSize];
+        var filled = 0;
+        while (true) {
+            var read = in.readNBytes(buffer, filled, buffer.length - filled);
+            filled += read;
+            if (filled == 0) break;
+
+            if (filled < buffer.length) {
+                // end of stream
+                chunks.put(Arrays.copyOf(buffer, filled));
+                break;
+            }
+
+            var lastLineEnd = lastIndexOf(buffer, (byte) '\n', filled) + 1;
+            if (lastLineEnd == 0) {
+                // a single line is longer than the buffer
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                continue;
+            }
+            chunks.put(Arrays.copyOf(buffer, lastLineEnd));
+            System.arraycopy(buffer, lastLineEnd, buffer, 0, filled - lastLineEnd);
+            filled -= lastLineEnd;
+        }
+        chunks.put(new byte[0]);
+    }
+
+    private int maxPendingBlocks() {
+        return 2 * Math.max(1, parallelism);
+    }
+
+    /**
+     * Reads the column names from the first line of a csv file
+     */
+    public static List<String> readHeader(Path file) {
+
+        try (var in = file.getFileName().toString().endsWith(".gz")
+                ? new GZIPInputStream(new BufferedInputStream(Files.newInputStream(file)))
+                : new BufferedInputStream(Files.newInputStream(file))) {
+            var header = readHeaderLine(in);
+            return splitHeader(header, header.length);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static List<String> splitHeader(byte[] bytes, int length) {
+
+        // strip line ending
+        while (length > 0 && (bytes[length - 1] == '\n' || bytes[length - 1] == '\r')) length--;
+        var names = new ArrayList<String>();
+        for (var name : new String(bytes, 0, length, StandardCharsets.UTF_8).split(",", -1)) {
+            names.add(unquote(name.trim()));
+        }
+        return names;
+    }
+
+    private int[] parseHeader(byte[] bytes, int length) {
+
+        var names = splitHeader(bytes, length);
+        var fieldToColumn = new int[names.size()];
+        Arrays.fill(fieldToColumn, -1);
+
+        for (var c = 0; c < columns.size(); c++) {
+            var found = false;
+            for (var f = 0; f < names.size(); f++) {
+                if (columns.get(c).equals(names.get(f))) {
+                    fieldToColumn[f] = c;
+                    found = true;
+                    break;
+                }
+            }
+            if (!found) throw new RuntimeException("'" + columns.get(c) + "' was not present as header in: " + file);
+        }
+        return fieldToColumn;
+    }
+
+    private Block parseLines(byte[] bytes, int from, int to, int[] fieldToColumn) {
+
+        var block = new Block(columns.size(), Math.max(16, (to - from) / 32));
+        var row = new double[columns.size()];
+        var isFloat = new boolean[columns.size()];
+        for (var c = 0; c < columns.size(); c++) {
+            isFloat[c] = floatColumns.contains(columns.get(c));
+        }
+        var i = from;
+        while (i < to) {
+            var lineEnd = indexOf(bytes, (byte) '\n', i, to);
+            if (lineEnd < 0) lineEnd = to;
+            var contentEnd = lineEnd > i && bytes[lineEnd - 1] == '\r' ? lineEnd - 1 : lineEnd;
+
+            // skip empty lines
+            if (contentEnd > i) {
+                Arrays.fill(row, Double.NaN);
+                var field = 0;
+                var fieldStart = i;
+                for (var j = i; j <= contentEnd; j++) {
+                    if (j == contentEnd || bytes[j] == ',') {
+                        if (field < fieldToColumn.length && fieldToColumn[field] >= 0) {
+                            var start = fieldStart;
+                            var end = j;
+                            if (end - start >= 2 && bytes[start] == '"' && bytes[end - 1] == '"') {
+                                start++;
+                                end--;
+                            }
+                            var column = fieldToColumn[field];
+                            row[column] = isFloat[column] ? DoubleParser.parseFloat(bytes, start, end) : DoubleParser.parse(bytes, start, end);
+                        }
+                        field++;
+                        fieldStart = j + 1;
+                    }
+                }
+                block.add(row);
+            }
+            i = lineEnd + 1;
+        }
+        return block;
+    }
+
+    private static long readHeaderEnd(FileChannel channel) throws IOException {
+
+        var buffer = ByteBuffer.allocate(MIN_OVERLAP);
+        var position = 0L;
+        while (true) {
+            buffer.clear();
+            var read = channel.read(buffer, position);
+            if (read <= 0) return position;
+            var index = indexOf(buffer.array(), (byte) '\n', 0, read);
+            if (index >= 0) return position + index + 1;
+            position += read;
+        }
+    }
+
+    private static byte[] readHeaderLine(InputStream in) throws IOException {
+        var header = new ByteArrayBuilder();
+        int b;
+        while ((b = in.read()) >= 0) {
+            header.add((byte) b);
+            if (b == '\n') break;
+        }
+        return header.toArray();
+    }
+
+    private static byte[] readRange(FileChannel channel, long from, long to) {
+
+        var buffer = ByteBuffer.allocate((int) (to - from));
+        try {
+            while (buffer.hasRemaining()) {
+                var read = channel.read(buffer, from + buffer.position());
+                if (read < 0) break;
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return buffer.array();
+    }
+
+    /**
+     * Returns the index after the line which contains the byte at position - 1, or -1 if that line is not terminated
+     * within the bytes.
+     */
+    private static int findEndOfLineStartingBefore(byte[] bytes, int position, int length) {
+        var index = indexOf(bytes, (byte) '\n', Math.max(0, position - 1), length);
+        return index < 0 ? -1 : index + 1;
+    }
+
+    private static int indexOf(byte[] bytes, byte b, int from, int to) {
+        for (var i = from; i < to; i++) {
+            if (bytes[i] == b) return i;
+        }
+        return -1;
+    }
+
+    private static int lastIndexOf(byte[] bytes, byte b, int to) {
+        for (var i = to - 1; i >= 0; i--) {
+            if (bytes[i] == b) return i;
+        }
+        return -1;
+    }
+
+    private static byte[] take(BlockingQueue<byte[]> queue) {
+        try {
+            return queue.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static String unquote(String value) {
+        return value.length() >= 2 && value.startsWith("\"") && value.endsWith("\"") ? value.substring(1, value.length() - 1) : value;
+    }
+
+    /**
+     * Rows of parsed values. Columns are stored in separate arrays and are addressed by their index in the list of
+     * requested columns.
+     */
+    public static class Block {
+
+        private final double[][] values;
+        private int size;
+
+        private Block(int numberOfColumns, int capacity) {
+            this.values = new double[numberOfColumns][capacity];
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public double get(int row, int column) {
+            return values[column][row];
+        }
+
+        /**
+         * The values of a column. The array may be longer than {@link #size()}
+         */
+        public double[] getColumn(int column) {
+            return values[column];
+        }
+
+        private void add(double[] row) {
+            if (size == values[0].length) {
+                for (var c = 0; c < values.length; c++) {
+                    values[c] = Arrays.copyOf(values[c], Math.max(16, size * 2));
+                }
+            }
+            for (var c = 0; c < values.length; c++) {
+                values[c][size] = row[c];
+            }
+            size++;
+        }
+
+        private static Block concat(int numberOfColumns, List<Block> blocks) {
+            var size = blocks.stream().mapToInt(Block::size).sum();
+            var result = new Block(numberOfColumns, size);
+            for (var block : blocks) {
+                for (var c = 0; c < numberOfColumns; c++) {
+                    System.arraycopy(block.values[c], 0, result.values[c], result.size, block.size);
+                }
+                result.size += block.size;
+            }
+            return result;
+        }
+    }
+
+    private static class ByteArrayBuilder {
+
+        private byte[] bytes = new byte[256];
+        private int size;
+
+        void add(byte b) {
+            if (size == bytes.length) bytes = Arrays.copyOf(bytes, size * 2);
+            bytes[size++] = b;
+        }
+
+        byte[] toArray() {
+            return Arrays.copyOf(bytes, size);
+        }
+    }
+}
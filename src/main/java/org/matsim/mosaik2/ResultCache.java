@@ -0,0 +1,254 @@
+package org.matsim.mosaik2;
+
+import lombok.extern.log4j.Log4j2;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Stores results of expensive stages in a cache directory, so that re-runs with the same inputs can skip them. Results are
+ * keyed by the content hash of the input files of a stage, its parameters and the version of its algorithm. Parameters
+ * which only influence later stages, e.g. output paths, should not be part of a key. The cache is opt-in. Without a
+ * directory all stages are computed.
+ * <p>
+ * Results are written as binary artifacts with a {@link Codec}. Stages which produce files can be cached with
+ * {@link #getOrCreateFile(Key, Path, Runnable)}.
+ * <p>
+ * The cache can't detect changes of the code of a stage. Therefore, each key carries a version, usually a CACHE_VERSION
+ * constant of the class which runs the stages. Increase it whenever a stage computes different results for the same
+ * inputs, e.g. after fixing a bug. Keys with the new version miss all results of previous versions, which are then
+ * computed again. Changes which only speed up a stage must keep the version, so that cached results remain usable.
+ */
+@Log4j2
+public class ResultCache {
+
+    private static final int MAGIC_NUMBER = 0x2e5c4c7e;
+    private static final int VERSION = 1;
+
+    // hashing large input files like event files is expensive. Remember the hashes of files which were not modified since
+    private static final Map<FileState, String> fileHashes = new ConcurrentHashMap<>();
+
+    private final Path directory;
+
+    /**
+     * @param directory the directory to read and write cache files from. If null, no cache is used and all stages are computed.
+     */
+    public ResultCache(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * @param directory the cache directory as passed on the command line. If null, the cache is disabled.
+     */
+    public static ResultCache create(String directory) {
+        return directory == null ? disabled() : new ResultCache(Paths.get(directory));
+    }
+
+    public static ResultCache disabled() {
+        return new ResultCache(null);
+    }
+
+    /**
+     * @return the cache directory, or null if the cache is disabled
+     */
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * @param version version of the algorithm of the stage. See the class documentation on when to increase it.
+     */
+    public static Key key(String stage, int version) {
+        return new Key(stage, version);
+    }
+
+    /**
+     * Reads the result of a stage from the cache. If there is no result for the key, the result is computed by the factory
+     * and written into the cache.
+     */
+    public <T> T getOrCompute(Key key, Codec<T> codec, Supplier<T> factory) {
+
+        if (directory == null) return factory.get();
+
+        var cacheFile = directory.resolve(key.getFileName() + ".bin");
+        if (Files.exists(cacheFile)) {
+            log.info("Reading " + key.getStage() + " from cache file: " + cacheFile);
+            try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(cacheFile)))) {
+                if (in.readInt() != MAGIC_NUMBER || in.readInt() != VERSION)
+                    throw new IOException("File " + cacheFile + " is not a result cache file of version " + VERSION);
+                return codec.read(in);
+            } catch (IOException e) {
+                log.warn("Could not read cache file " + cacheFile + ". Computing " + key.getStage() + " instead.", e);
+            }
+        }
+
+        var result = factory.get();
+        log.info("Writing " + key.getStage() + " to cache file: " + cacheFile);
+        writeAtomically(cacheFile, tmpFile -> {
+            try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmpFile)))) {
+                out.writeInt(MAGIC_NUMBER);
+                out.writeInt(VERSION);
+                codec.write(result, out);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Copies the cached output file of a stage to the output path. If there is no output for the key, the stage is run,
+     * which must write the output path, and the output is copied into the cache.
+     */
+    public void getOrCreateFile(Key key, Path output, Runnable stage) {
+
+        if (directory == null) {
+            stage.run();
+            return;
+        }
+
+        var cacheFile = directory.resolve(key.getFileName() + "-" + output.getFileName());
+        try {
+            if (Files.exists(cacheFile)) {
+                log.info("Copying " + key.getStage() + " from cache file: " + cacheFile + " to " + output);
+                Files.copy(cacheFile, output, StandardCopyOption.REPLACE_EXISTING);
+                return;
+            }
+        } catch (IOException e) {
+            log.warn("Could not copy cache file " + cacheFile + ". Running " + key.getStage() + " instead.", e);
+        }
+
+        stage.run();
+        log.info("Copying " + output + " to cache file: " + cacheFile);
+        writeAtomically(cacheFile, tmpFile -> Files.copy(output, tmpFile, StandardCopyOption.REPLACE_EXISTING));
+    }
+
+    private void writeAtomically(Path file, ArtifactWriter writer) {
+
+        try {
+            Files.createDirectories(directory);
+            // move a completely written temporary file into place, so that an interrupted run leaves no partial artifacts
+            var tmpFile = Files.createTempFile(directory, "result", ".tmp");
+            try {
+                writer.write(tmpFile);
+                Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(tmpFile);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static String hash(Path file) {
+
+        try {
+            var absolutePath = file.toAbsolutePath().normalize();
+            var state = new FileState(absolutePath, Files.size(absolutePath), Files.getLastModifiedTime(absolutePath));
+            return fileHashes.computeIfAbsent(state, s -> {
+                log.info("Hashing content of " + s.path());
+                return Utils.hash(s.path());
+            });
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Identifies the result of a stage. Two keys are equal if they have the same stage name and version, the same input
+     * file contents and the same parameters, added in the same order.
+     */
+    public static class Key {
+
+        private final String stage;
+        private final int version;
+        private final List<String> parts = new ArrayList<>();
+
+        private Key(String stage, int version) {
+            this.stage = stage;
+            this.version = version;
+        }
+
+        public String getStage() {
+            return stage;
+        }
+
+        /**
+         * Adds the content hash of the file. The file name is not part of the key.
+         */
+        public Key file(Path file) {
+            parts.add("file:" + hash(file));
+            return this;
+        }
+
+        public Key file(String file) {
+            return file(Paths.get(file));
+        }
+
+        public Key param(String name, Object value) {
+            parts.add(name + "=" + value);
+            return this;
+        }
+
+        /**
+         * Adds another key, e.g. of a previous stage whose output is the input of this stage. This avoids hashing
+         * intermediate files.
+         */
+        public Key key(Key other) {
+            parts.add("key:" + other.getFileName());
+            return this;
+        }
+
+        public String getHash() {
+
+            try {
+                var digest = MessageDigest.getInstance("SHA-256");
+                digest.update(stage.getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+                digest.update(Integer.toString(version).getBytes(StandardCharsets.UTF_8));
+                for (var part : parts) {
+                    digest.update((byte) 0);
+                    digest.update(part.getBytes(StandardCharsets.UTF_8));
+                }
+                return HexFormat.of().formatHex(digest.digest());
+            } catch (NoSuchAlgorithmException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        private String getFileName() {
+            return stage + "-v" + version + "-" + getHash();
+        }
+
+        @Override
+        public String toString() {
+            return getFileName();
+        }
+    }
+
+    public interface Codec<T> {
+
+        void write(T value, DataOutputStream out) throws IOException;
+
+        T read(DataInputStream in) throws IOException;
+    }
+
+    @FunctionalInterface
+    private interface ArtifactWriter {
+        void write(Path tmpFile) throws IOException;
+    }
+
+    private record FileState(Path path, long size, FileTime lastModified) {
+    }
+}
@@ -0,0 +1,312 @@
+package org.matsim.mosaik2;
+
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.contrib.analysis.time.TimeBinMap;
+import org.matsim.contrib.emissions.Pollutant;
+import org.matsim.mosaik2.raster.AbstractRaster;
+import org.matsim.mosaik2.raster.DoubleRaster;
+import org.matsim.mosaik2.raster.ObjectRaster;
+import org.matsim.mosaik2.raster.SparseDoubleRaster;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.*;
+import java.util.function.Supplier;
+
+/**
+ * {@link ResultCache.Codec}s for the artifacts of the pipeline stages.
+ */
+public class ResultCodecs {
+
+    public static ResultCache.Codec<DoubleRaster> doubleRaster() {
+        return new ResultCache.Codec<>() {
+            @Override
+            public void write(DoubleRaster raster, DataOutputStream out) throws IOException {
+                writeBounds(raster, out);
+                for (var xi = 0; xi < raster.getXLength(); xi++) {
+                    for (var yi = 0; yi < raster.getYLength(); yi++) {
+                        out.writeDouble(raster.getValueByIndex(xi, yi));
+                    }
+                }
+            }
+
+            @Override
+            public DoubleRaster read(DataInputStream in) throws IOException {
+                var raster = new DoubleRaster(readBounds(in), in.readDouble());
+                for (var xi = 0; xi < raster.getXLength(); xi++) {
+                    for (var yi = 0; yi < raster.getYLength(); yi++) {
+                        raster.setValueForIndex(xi, yi, in.readDouble());
+                    }
+                }
+                return raster;
+            }
+        };
+    }
+
+    public static ResultCache.Codec<SparseDoubleRaster> sparseDoubleRaster() {
+        return new ResultCache.Codec<>() {
+            @Override
+            public void write(SparseDoubleRaster raster, DataOutputStream out) throws IOException {
+                writeBounds(raster, out);
+                var count = new int[1];
+                raster.forEachNonZeroIndex((xi, yi, value) -> count[0]++);
+                out.writeInt(count[0]);
+                try {
+                    raster.forEachNonZeroIndex((xi, yi, value) -> {
+                        try {
+                            out.writeInt(xi);
+                            out.writeInt(yi);
+                            out.writeDouble(value);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    });
+                } catch (UncheckedIOException e) {
+                    throw e.getCause();
+                }
+            }
+
+            @Override
+            public SparseDoubleRaster read(DataInputStream in) throws IOException {
+                var raster = new SparseDoubleRaster(readBounds(in), in.readDouble());
+                var count = in.readInt();
+                for (var i = 0; i < count; i++) {
+                    raster.adjustValueForIndex(in.readInt(), in.readInt(), in.readDouble());
+                }
+                return raster;
+            }
+        };
+    }
+
+    /**
+     * Time series of values, e.g. R-value fields or concentrations.
+     */
+    public static <T> ResultCache.Codec<TimeBinMap<T>> timeSeries(ResultCache.Codec<T> valueCodec) {
+        return new ResultCache.Codec<>() {
+            @Override
+            public void write(TimeBinMap<T> timeBinMap, DataOutputStream out) throws IOException {
+                writeTimeSeries(timeBinMap, out, valueCodec::write);
+            }
+
+            @Override
+            public TimeBinMap<T> read(DataInputStream in) throws IOException {
+                return readTimeSeries(in, valueCodec::read);
+            }
+        };
+    }
+
+    /**
+     * Rasters by species, as written into the chemistry driver.
+     */
+    public static ResultCache.Codec<TimeBinMap<Map<String, SparseDoubleRaster>>> sparseRastersBySpecies() {
+        var rasterCodec = sparseDoubleRaster();
+        return timeSeries(new ResultCache.Codec<>() {
+            @Override
+            public void write(Map<String, SparseDoubleRaster> rasters, DataOutputStream out) throws IOException {
+                out.writeInt(rasters.size());
+                for (var entry : rasters.entrySet()) {
+                    out.writeUTF(entry.getKey());
+                    rasterCodec.write(entry.getValue(), out);
+                }
+            }
+
+            @Override
+            public Map<String, SparseDoubleRaster> read(DataInputStream in) throws IOException {
+                var count = in.readInt();
+                Map<String, SparseDoubleRaster> rasters = new HashMap<>();
+                for (var i = 0; i < count; i++) {
+                    rasters.put(in.readUTF(), rasterCodec.read(in));
+                }
+                return rasters;
+            }
+        });
+    }
+
+    /**
+     * Emissions aggregated by time bin, pollutant and link. Link ids are stored once in a table and referenced by their
+     * position in the table.
+     *
+     * @param mapFactory creates the map of emissions by link for a pollutant when reading
+     */
+    public static <M extends Map<Id<Link>, Double>> ResultCache.Codec<TimeBinMap<Map<Pollutant, M>>> linkEmissions(Supplier<M> mapFactory) {
+        return new ResultCache.Codec<>() {
+            @Override
+            public void write(TimeBinMap<Map<Pollutant, M>> emissions, DataOutputStream out) throws IOException {
+
+                Object2IntMap<Id<Link>> linkIndex = new Object2IntOpenHashMap<>();
+                List<Id<Link>> linkIds = new ArrayList<>();
+                for (var bin : emissions.getTimeBins()) {
+                    if (!bin.hasValue()) continue;
+                    for (var emissionByLink : bin.getValue().values()) {
+                        for (var id : emissionByLink.keySet()) {
+                            if (!linkIndex.containsKey(id)) {
+                                linkIndex.put(id, linkIds.size());
+                                linkIds.add(id);
+                            }
+                        }
+                    }
+                }
+                writeIds(linkIds, out);
+
+                writeTimeSeries(emissions, out, (emissionByPollutant, o) -> {
+                    o.writeInt(emissionByPollutant.size());
+                    for (var pollutantEntry : emissionByPollutant.entrySet()) {
+                        o.writeUTF(pollutantEntry.getKey().name());
+                        o.writeInt(pollutantEntry.getValue().size());
+                        for (var linkEntry : pollutantEntry.getValue().entrySet()) {
+                            o.writeInt(linkIndex.getInt(linkEntry.getKey()));
+                            o.writeDouble(linkEntry.getValue());
+                        }
+                    }
+                });
+            }
+
+            @Override
+            public TimeBinMap<Map<Pollutant, M>> read(DataInputStream in) throws IOException {
+
+                var linkIds = readIds(in);
+                return readTimeSeries(in, i -> {
+                    var pollutantCount = i.readInt();
+                    Map<Pollutant, M> emissionByPollutant = new HashMap<>();
+                    for (var p = 0; p < pollutantCount; p++) {
+                        var pollutant = Pollutant.valueOf(i.readUTF());
+                        var emissionByLink = mapFactory.get();
+                        var linkCount = i.readInt();
+                        for (var l = 0; l < linkCount; l++) {
+                            emissionByLink.put(linkIds.get(i.readInt()), i.readDouble());
+                        }
+                        emissionByPollutant.put(pollutant, emissionByLink);
+                    }
+                    return emissionByPollutant;
+                });
+            }
+        };
+    }
+
+    /**
+     * Raster which stores the ids of the links within the vicinity of each cell. Link ids are stored once in a table
+     * and referenced by their position in the table.
+     */
+    public static ResultCache.Codec<ObjectRaster<Set<Id<Link>>>> linkFootprints() {
+        return new ResultCache.Codec<>() {
+            @Override
+            public void write(ObjectRaster<Set<Id<Link>>> raster, DataOutputStream out) throws IOException {
+
+                writeBounds(raster, out);
+                Object2IntMap<Id<Link>> linkIndex = new Object2IntOpenHashMap<>();
+                List<Id<Link>> linkIds = new ArrayList<>();
+                for (var xi = 0; xi < raster.getXLength(); xi++) {
+                    for (var yi = 0; yi < raster.getYLength(); yi++) {
+                        for (var id : getIds(raster, xi, yi)) {
+                            if (!linkIndex.containsKey(id)) {
+                                linkIndex.put(id, linkIds.size());
+                                linkIds.add(id);
+                            }
+                        }
+                    }
+                }
+                writeIds(linkIds, out);
+
+                for (var xi = 0; xi < raster.getXLength(); xi++) {
+                    for (var yi = 0; yi < raster.getYLength(); yi++) {
+                        var ids = getIds(raster, xi, yi);
+                        out.writeInt(ids.size());
+                        for (var id : ids) {
+                            out.writeInt(linkIndex.getInt(id));
+                        }
+                    }
+                }
+            }
+
+            @Override
+            public ObjectRaster<Set<Id<Link>>> read(DataInputStream in) throws IOException {
+
+                var raster = new ObjectRaster<Set<Id<Link>>>(readBounds(in), in.readDouble());
+                var linkIds = readIds(in);
+                for (var xi = 0; xi < raster.getXLength(); xi++) {
+                    for (var yi = 0; yi < raster.getYLength(); yi++) {
+                        var count = in.readInt();
+                        Set<Id<Link>> ids = new HashSet<>(count);
+                        for (var i = 0; i < count; i++) {
+                            ids.add(linkIds.get(in.readInt()));
+                        }
+                        raster.setValueForIndex(xi, yi, ids);
+                    }
+                }
+                return raster;
+            }
+        };
+    }
+
+    private static <T> void writeTimeSeries(TimeBinMap<T> timeBinMap, DataOutputStream out, ValueWriter<T> valueWriter) throws IOException {
+        out.writeDouble(timeBinMap.getBinSize());
+        out.writeDouble(timeBinMap.getStartTime());
+        var bins = timeBinMap.getTimeBins().stream()
+                .filter(TimeBinMap.TimeBin::hasValue)
+                .toList();
+        out.writeInt(bins.size());
+        for (var bin : bins) {
+            out.writeDouble(bin.getStartTime());
+            valueWriter.write(bin.getValue(), out);
+        }
+    }
+
+    private static <T> TimeBinMap<T> readTimeSeries(DataInputStream in, ValueReader<T> valueReader) throws IOException {
+        var timeBinMap = new TimeBinMap<T>(in.readDouble(), in.readDouble());
+        var count = in.readInt();
+        for (var i = 0; i < count; i++) {
+            var bin = timeBinMap.getTimeBin(in.readDouble());
+            bin.setValue(valueReader.read(in));
+        }
+        return timeBinMap;
+    }
+
+    private static Set<Id<Link>> getIds(ObjectRaster<Set<Id<Link>>> raster, int xi, int yi) {
+        var ids = raster.getValueByIndex(xi, yi);
+        return ids == null ? Set.of() : ids;
+    }
+
+    private static void writeBounds(AbstractRaster raster, DataOutputStream out) throws IOException {
+        var bounds = raster.getBounds();
+        out.writeDouble(bounds.getMinX());
+        out.writeDouble(bounds.getMinY());
+        out.writeDouble(bounds.getMaxX());
+        out.writeDouble(bounds.getMaxY());
+        out.writeDouble(raster.getCellSize());
+    }
+
+    private static AbstractRaster.Bounds readBounds(DataInputStream in) throws IOException {
+        return new AbstractRaster.Bounds(in.readDouble(), in.readDouble(), in.readDouble(), in.readDouble());
+    }
+
+    private static void writeIds(List<Id<Link>> ids, DataOutputStream out) throws IOException {
+        out.writeInt(ids.size());
+        for (var id : ids) {
+            out.writeUTF(id.toString());
+        }
+    }
+
+    private static List<Id<Link>> readIds(DataInputStream in) throws IOException {
+        var count = in.readInt();
+        List<Id<Link>> ids = new ArrayList<>(count);
+        for (var i = 0; i < count; i++) {
+            ids.add(Id.createLinkId(in.readUTF()));
+        }
+        return ids;
+    }
+
+    @FunctionalInterface
+    private interface ValueWriter<T> {
+        void write(T value, DataOutputStream out) throws IOException;
+    }
+
+    @FunctionalInterface
+    private interface ValueReader<T> {
+        T read(DataInputStream in) throws IOException;
+    }
+}
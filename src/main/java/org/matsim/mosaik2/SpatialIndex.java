@@ -1,11 +1,12 @@
 package org.matsim.mosaik2;
 
 import lombok.extern.log4j.Log4j2;
-import org.locationtech.jts.geom.Coordinate;
-import org.locationtech.jts.geom.Geometry;
-import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.algorithm.locate.IndexedPointInAreaLocator;
+import org.locationtech.jts.algorithm.locate.PointOnGeometryLocator;
+import org.locationtech.jts.geom.*;
 import org.locationtech.jts.geom.prep.PreparedGeometry;
 import org.locationtech.jts.geom.prep.PreparedGeometryFactory;
+import org.locationtech.jts.index.ItemVisitor;
 import org.locationtech.jts.index.hprtree.HPRtree;
 import org.locationtech.jts.operation.buffer.BufferParameters;
 import org.matsim.api.core.v01.Id;
@@ -14,8 +15,10 @@ import org.matsim.api.core.v01.network.Network;
 import org.matsim.core.utils.geometry.geotools.MGC;
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 @Log4j2
@@ -26,46 +29,178 @@ public class SpatialIndex<T> {
 
 	private final HPRtree index = new HPRtree();
 
+	// state for point queries is re-used for all queries of a thread, to avoid creating garbage for each query
+	private final ThreadLocal<PointQuery<T>> pointQuery = ThreadLocal.withInitial(PointQuery::new);
+
 	public SpatialIndex(Collection<GeometryItem<T>> geometries) {
 
 		log.info("Create Spatial index for " + geometries.size() + " geometries.");
 		geometries.stream()
-				.map(geomItem -> new Entry<>(geomItem.item, preparedFact.create(geomItem.geom)))
+				.map(SpatialIndex::createEntry)
 				.forEach(entry -> index.insert(entry.prepGeom.getGeometry().getEnvelopeInternal(), entry));
 
 		index.build();
 		log.info("Finished creating spatial index.");
 	}
 
+	/**
+	 * @return an unmodifiable set of all items which intersect (x,y). If no item intersects, the shared empty set is
+	 * returned, so that queries without a result don't allocate anything.
+	 */
 	public Set<T> intersects(double x, double y) {
-		var point = geometryFact.createPoint(new Coordinate(x, y));
-		return intersects(point);
+
+		var query = pointQuery.get();
+		query.prepare(x, y, null);
+		index.query(query.envelope, query);
+		return query.takeResult();
+	}
+
+	/**
+	 * Passes all items which intersect (x,y) into the consumer. In contrast to {@link #intersects(double, double)}
+	 * this does not allocate a point geometry or a result collection for each query. Candidates are looked up by
+	 * their envelope first. Polygons are then tested with a point locator directly on the coordinate. Other
+	 * geometries fall back to a prepared geometry test with a re-used point.
+	 * <p>
+	 * This method may be called from multiple threads concurrently. The consumer must not query this index itself.
+	 */
+	public void forEachIntersecting(double x, double y, Consumer<T> consumer) {
+
+		var query = pointQuery.get();
+		query.prepare(x, y, consumer);
+		index.query(query.envelope, query);
+		query.consumer = null;
+	}
+
+	private static <T> Entry<T> createEntry(GeometryItem<T> geomItem) {
+
+		var prepGeom = preparedFact.create(geomItem.geom);
+		PointOnGeometryLocator locator = null;
+		if (geomItem.geom instanceof Polygonal) {
+			locator = new IndexedPointInAreaLocator(geomItem.geom);
+			// the locator builds its index lazily. Do this now, so that it is not built by concurrent queries
+			locator.locate(geomItem.geom.getEnvelopeInternal().centre());
+		}
+		return new Entry<>(geomItem.item, prepGeom, locator);
 	}
 
+	/**
+	 * @return an unmodifiable set of all items which intersect the geometry. If no item intersects, the shared empty set
+	 * is returned.
+	 */
 	public Set<T> intersects(Geometry geom) {
 
-		Set<T> result = new HashSet<>();
-		index.query(geom.getEnvelopeInternal(), rawEntry -> {
+		var query = new GeometryQuery<T>(preparedFact.create(geom), null);
+		index.query(geom.getEnvelopeInternal(), query);
+		return query.result == null ? Collections.emptySet() : Collections.unmodifiableSet(query.result);
+	}
+
+	/**
+	 * Passes all items which intersect the geometry into the consumer. The geometry is prepared once, so that testing the
+	 * candidates of the index is cheap, even if the geometry is complex.
+	 */
+	public void forEachIntersecting(Geometry geom, Consumer<T> consumer) {
+
+		var query = new GeometryQuery<>(preparedFact.create(geom), consumer);
+		index.query(geom.getEnvelopeInternal(), query);
+	}
+
+	record Entry<T>(T item, PreparedGeometry prepGeom, PointOnGeometryLocator pointLocator) {
+
+		boolean intersects(Coordinate coordinate, Point point) {
+			if (pointLocator != null) {
+				return pointLocator.locate(coordinate) != Location.EXTERIOR;
+			}
+			return prepGeom.intersects(point);
+		}
+	}
+
+	private static class PointQuery<T> implements ItemVisitor {
+
+		private final Envelope envelope = new Envelope();
+		private final Coordinate coordinate = new Coordinate();
+		private final Point point = geometryFact.createPoint(new Coordinate());
+		private Consumer<T> consumer;
+		// collects the items if there is no consumer. Only created once an item intersects
+		private Set<T> result;
+
+		/**
+		 * @param consumer receives the intersecting items. If null, they are collected for {@link #takeResult()}
+		 */
+		private void prepare(double x, double y, Consumer<T> consumer) {
+			envelope.init(x, x, y, y);
+			coordinate.setX(x);
+			coordinate.setY(y);
+			var sequence = point.getCoordinateSequence();
+			sequence.setOrdinate(0, CoordinateSequence.X, x);
+			sequence.setOrdinate(0, CoordinateSequence.Y, y);
+			point.geometryChanged();
+			this.consumer = consumer;
+		}
+
+		@Override
+		public void visitItem(Object rawEntry) {
 			@SuppressWarnings("unchecked") // we are confident that the entry is what we have put inside.
 			var entry = (Entry<T>) rawEntry;
-			if (entry.prepGeom.intersects(geom)) {
-				result.add(entry.item());
+			if (entry.intersects(coordinate, point)) {
+				if (consumer != null) {
+					consumer.accept(entry.item());
+				} else {
+					if (result == null) result = new HashSet<>();
+					result.add(entry.item());
+				}
 			}
-		});
-		return result;
+		}
+
+		private Set<T> takeResult() {
+			var collected = result;
+			result = null;
+			return collected == null ? Collections.emptySet() : Collections.unmodifiableSet(collected);
+		}
 	}
 
-	record Entry<T>(T item, PreparedGeometry prepGeom) {
+	private static class GeometryQuery<T> implements ItemVisitor {
+
+		private final PreparedGeometry geom;
+		private final Consumer<T> consumer;
+		// collects the items if there is no consumer. Only created once an item intersects
+		private Set<T> result;
+
+		private GeometryQuery(PreparedGeometry geom, Consumer<T> consumer) {
+			this.geom = geom;
+			this.consumer = consumer;
+		}
+
+		@Override
+		public void visitItem(Object rawEntry) {
+			@SuppressWarnings("unchecked") // we are confident that the entry is what we have put inside.
+			var entry = (Entry<T>) rawEntry;
+			if (geom.intersects(entry.prepGeom.getGeometry())) {
+				if (consumer != null) {
+					consumer.accept(entry.item());
+				} else {
+					if (result == null) result = new HashSet<>();
+					result.add(entry.item());
+				}
+			}
+		}
 	}
 
 	public record GeometryItem<T>(T item, Geometry geom) {
 	}
 
 	public static SpatialIndex<Id<Link>> create(Network net, double bufferDist, Geometry bounds) {
+		return create(net.getLinks().values(), bufferDist, bounds);
+	}
+
+	/**
+	 * Creates an index of the links buffered by bufferDist. Only links whose buffered geometry is covered by bounds are
+	 * added to the index.
+	 */
+	public static SpatialIndex<Id<Link>> create(Collection<? extends Link> links, double bufferDist, Geometry bounds) {
 
 		log.info("Creating spatial index from Network.");
 		var preparedBounds = preparedFact.create(bounds);
-		var itemCollection = net.getLinks().values().stream()
+		var itemCollection = links.stream()
 				.map(link -> {
 					var line = geometryFact.createLineString(new Coordinate[]{
 							MGC.coord2Coordinate(link.getFromNode().getCoord()), MGC.coord2Coordinate(link.getToNode().getCoord())
@@ -14,7 +14,16 @@ import org.matsim.core.config.groups.PlanCalcScoreConfigGroup;
 import org.matsim.core.network.NetworkUtils;
 import org.matsim.core.utils.geometry.geotools.MGC;
 
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.HexFormat;
 import java.util.List;
 
 @Log4j2
@@ -67,6 +76,35 @@ public class Utils {
 		return geometry.covers(MGC.coord2Point(coord));
 	}
 
+	/**
+	 * @return SHA-256 hash of the content of the file as hex string. Useful as key for cache files.
+	 */
+	public static String hash(Path file) {
+
+		try (var in = new DigestInputStream(new BufferedInputStream(Files.newInputStream(file)), MessageDigest.getInstance("SHA-256"))) {
+			var buffer = new byte[8192];
+			//noinspection StatementWithEmptyBody
+			while (in.read(buffer) != -1) {
+				// only read to update the digest
+			}
+			return HexFormat.of().formatHex(in.getMessageDigest().digest());
+		} catch (IOException | NoSuchAlgorithmException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * SHA-256 of the UTF-8 bytes of the value as hex string
+	 */
+	public static String hash(String value) {
+
+		try {
+			var digest = MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+			return HexFormat.of().formatHex(digest);
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException(e);
+		}
+	}
 
 	public static class SharedSvnARg {
 
@@ -0,0 +1,164 @@
+package org.matsim.mosaik2.analysis;
+
+import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
+import lombok.Getter;
+import org.matsim.api.core.v01.population.Activity;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Time spent performing activities at a number of locations, e.g. links or raster tiles, within consecutive time steps.
+ * <p>
+ * Activities are collected as start and end times per location. On the first query, the start and end times of each
+ * location are sorted once and swept in a single pass, which integrates the number of activities performed at the same
+ * time into the time steps. This takes O(n log n + timeSteps) per location with n activities, instead of looking at all
+ * activities of a location for each time step. Locations are swept in parallel.
+ * <p>
+ * Activities with an undefined start or end time are clipped to the first or last time step. See
+ * {@link CalculateExposure#getStartTime(Activity)} and {@link CalculateExposure#getEndTime(Activity)}.
+ */
+public class ActivityTimeIndex {
+
+    @Getter
+    private final double startTime;
+    @Getter
+    private final double timeStepSize;
+    @Getter
+    private final int numberOfTimeSteps;
+
+    private final List<DoubleArrayList> startTimes = new ArrayList<>();
+    private final List<DoubleArrayList> endTimes = new ArrayList<>();
+
+    // indexed by location * numberOfTimeSteps + timeStep
+    private double[] spentTimes;
+    private int numberOfLocations;
+
+    public ActivityTimeIndex(double startTime, double timeStepSize, int numberOfTimeSteps) {
+        this.startTime = startTime;
+        this.timeStepSize = timeStepSize;
+        this.numberOfTimeSteps = numberOfTimeSteps;
+    }
+
+    /**
+     * Computes the time spent at a single location for one period.
+     */
+    public static double calculateSpentTime(Collection<Activity> activities, double fromTime, double toTime) {
+        var index = new ActivityTimeIndex(fromTime, toTime - fromTime, 1);
+        for (var activity : activities) {
+            index.add(0, activity);
+        }
+        return index.getSpentTime(0, 0);
+    }
+
+    public void add(int location, Activity activity) {
+        add(location, CalculateExposure.getStartTime(activity), CalculateExposure.getEndTime(activity));
+    }
+
+    public synchronized void add(int location, double activityStartTime, double activityEndTime) {
+
+        if (spentTimes != null) throw new IllegalStateException("Activities can't be added after spent times were computed.");
+
+        while (startTimes.size() <= location) {
+            startTimes.add(new DoubleArrayList());
+            endTimes.add(new DoubleArrayList());
+        }
+        numberOfLocations = startTimes.size();
+        startTimes.get(location).add(activityStartTime);
+        endTimes.get(location).add(activityEndTime);
+    }
+
+    /**
+     * @return number of locations, which is the highest location an activity was added for + 1
+     */
+    public int getNumberOfLocations() {
+        return numberOfLocations;
+    }
+
+    public double getSpentTime(int location, int timeStep) {
+        if (location >= getNumberOfLocations()) return 0;
+        return getSpentTimes()[location * numberOfTimeSteps + timeStep];
+    }
+
+    /**
+     * Passes all entries with a spent time other than 0 to the consumer, ordered by time step and location.
+     */
+    public void forEachNonZero(SpentTimeConsumer consumer) {
+
+        var values = getSpentTimes();
+        for (var timeStep = 0; timeStep < numberOfTimeSteps; timeStep++) {
+            for (var location = 0; location < getNumberOfLocations(); location++) {
+                var value = values[location * numberOfTimeSteps + timeStep];
+                if (value != 0) consumer.accept(location, timeStep, value);
+            }
+        }
+    }
+
+    private synchronized double[] getSpentTimes() {
+
+        if (spentTimes == null) {
+            var result = new double[Math.multiplyExact(getNumberOfLocations(), numberOfTimeSteps)];
+            IntStream.range(0, getNumberOfLocations()).parallel().forEach(location -> sweep(location, result));
+            spentTimes = result;
+            startTimes.clear();
+            endTimes.clear();
+        }
+        return spentTimes;
+    }
+
+    private void sweep(int location, double[] result) {
+
+        var starts = startTimes.get(location).toDoubleArray();
+        var ends = endTimes.get(location).toDoubleArray();
+        Arrays.sort(starts);
+        Arrays.sort(ends);
+
+        // merge both sorted arrays. Between two consecutive events the number of activities performed is constant
+        var offset = location * numberOfTimeSteps;
+        var performing = 0;
+        var time = Double.NEGATIVE_INFINITY;
+        var si = 0;
+        var ei = 0;
+        while (ei < ends.length) {
+            var isStart = si < starts.length && starts[si] <= ends[ei];
+            var next = isStart ? starts[si] : ends[ei];
+            integrate(performing, time, next, result, offset);
+            time = next;
+            if (isStart) {
+                performing++;
+                si++;
+            } else {
+                performing--;
+                ei++;
+            }
+        }
+    }
+
+    /**
+     * Adds the time spent by the performing activities between fromTime and toTime to the time steps it overlaps with.
+     */
+    private void integrate(int performing, double fromTime, double toTime, double[] result, int offset) {
+
+        if (performing == 0) return;
+
+        var from = Math.max(fromTime, startTime);
+        var to = Math.min(toTime, startTime + numberOfTimeSteps * timeStepSize);
+        if (to <= from) return;
+
+        var timeStep = Math.min(numberOfTimeSteps - 1, (int) ((from - startTime) / timeStepSize));
+        while (from < to) {
+            var stepEnd = Math.min(to, startTime + (timeStep + 1) * timeStepSize);
+            result[offset + timeStep] += performing * (stepEnd - from);
+            from = stepEnd;
+            timeStep++;
+        }
+    }
+
+    @FunctionalInterface
+    public interface SpentTimeConsumer {
+        void accept(int location, int timeStep, double spentTime);
+    }
+}
@@ -11,8 +11,11 @@ import org.matsim.api.core.v01.network.Link;
 import org.matsim.api.core.v01.population.Activity;
 import org.matsim.core.events.EventsUtils;
 import org.matsim.core.scoring.EventsToActivities;
+import org.matsim.mosaik2.Utils;
 import org.matsim.mosaik2.analysis.run.CSVUtils;
 
+import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.*;
 
@@ -41,34 +44,23 @@ public class ActivityTimePerLink {
         EventsUtils.readEvents(eventsManager, input.eventsFile);
         events2Activities.finish();
 
-        List<LinkActivityTime> result = new ArrayList<>();
-        for (var t = timeHandler.firstEventTime; t < timeHandler.lastEventTime; t += input.timeStepSize) {
-
-            var toTime = t + input.timeStepSize;
-
-            for (var entry : link2Activity.entrySet()) {
-
-                var timeSpent = calculateSpentTime(entry.getValue(), t, toTime);
-                result.add(new LinkActivityTime(t, entry.getKey(), timeSpent));
+        var numberOfTimeSteps = (int) Math.ceil((timeHandler.lastEventTime - timeHandler.firstEventTime) / input.timeStepSize);
+        var timeIndex = new ActivityTimeIndex(timeHandler.firstEventTime, input.timeStepSize, Math.max(0, numberOfTimeSteps));
+        List<Id<Link>> locations = new ArrayList<>();
+        for (var entry : link2Activity.entrySet()) {
+            for (var activity : entry.getValue()) {
+                timeIndex.add(locations.size(), activity);
             }
+            locations.add(entry.getKey());
         }
 
-        CSVUtils.writeTable(result, Paths.get(input.outputFile), List.of("id", "time", "value"), (p, record) -> {
-            CSVUtils.printRecord(p, record.id, record.time, record.value);
-        });
-    }
-
-    private static double calculateSpentTime(Collection<Activity> activities, double fromTime, double toTime) {
-
-        return activities.stream()
-                .filter(act -> CalculateExposure.getStartTime(act) < toTime)
-                .filter(act -> CalculateExposure.getEndTime(act) > fromTime)
-                .mapToDouble(act -> {
-                    var start = Math.max(fromTime, CalculateExposure.getStartTime(act));
-                    var end = Math.min(toTime, CalculateExposure.getEndTime(act));
-                    return end - start;
-                })
-                .sum();
+        // only write links and time steps where activities were performed
+        try (var writer = Files.newBufferedWriter(Paths.get(input.outputFile)); var printer = Utils.createWriteFormat("id", "time", "value").print(writer)) {
+            timeIndex.forEachNonZero((location, timeStep, spentTime) ->
+                    CSVUtils.printRecord(printer, locations.get(location), timeHandler.firstEventTime + timeStep * input.timeStepSize, spentTime));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
     }
 
     private static class InputArgs {
@@ -99,7 +91,4 @@ public class ActivityTimePerLink {
                 firstEventTime = event.getTime();
         }
     }
-
-    private record LinkActivityTime(double time, Id<Link> id, double value) {
-    }
 }
\ No newline at end of file
@@ -33,6 +33,7 @@ import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Log4j2
 @AllArgsConstructor
@@ -102,6 +103,10 @@ public class CalculateExposure {
 		tile.add(act);
 	}
 
+	private static int getTimeStep(double time, double startTime, double timeStepSize) {
+		return (int) ((time - startTime) / timeStepSize);
+	}
+
 	private static Path getMovementDataPath(Path exposureOutput) {
 
 		var name = exposureOutput.getFileName().toString();
@@ -160,6 +165,21 @@ public class CalculateExposure {
 		// write the feature list after all activities are parsed
 		ShapeFileWriter.writeGeometries(lines, getMovementDataPath(outputPath).toString());
 
+		log.info("Index time spent in raster tiles");
+		var numberOfTimeSteps = palmData.getTimeBins().stream()
+				.mapToInt(bin -> getTimeStep(bin.getStartTime(), palmData.getStartTime(), palmData.getBinSize()) + 1)
+				.max()
+				.orElse(0);
+		var timeIndex = new ActivityTimeIndex(palmData.getStartTime(), palmData.getBinSize(), numberOfTimeSteps);
+		var numberOfTiles = new AtomicInteger();
+		activityRaster.forEachIndex((xi, yi, tile) -> {
+			if (tile == null) return;
+			tile.location = numberOfTiles.getAndIncrement();
+			for (var activity : tile.getActivities()) {
+				timeIndex.add(tile.location, activity);
+			}
+		});
+
 		log.info("Start exposure calculation");
 		var resultMap = new TimeBinMap<DoubleRaster>(palmData.getBinSize(), palmData.getStartTime());
 		for (var bin : palmData.getTimeBins()) {
@@ -168,13 +188,14 @@ public class CalculateExposure {
 			var emissions = bin.getValue();
 			var startTime = bin.getStartTime();
 			var endTime = startTime + palmData.getBinSize();
+			var timeStep = getTimeStep(startTime, palmData.getStartTime(), palmData.getBinSize());
 
 			log.info("Calculating Exposure for time slice: [" + startTime + ", " + endTime + "]");
 			exposureRaster.setValueForEachIndex((xi, yi) -> {
 				var tile = activityRaster.getValueByIndex(xi, yi);
 				if (tile == null) return -1;
 
-				var spentTime = tile.calculateSpentTime(startTime, endTime);
+				var spentTime = timeIndex.getSpentTime(tile.location, timeStep);
 				var concentration = emissions.getValueByIndex(xi, yi);
 				return spentTime * concentration; // this is the exposure value
 			});
@@ -218,21 +239,15 @@ public class CalculateExposure {
 
 		private final Collection<Activity> activities = new ArrayList<>();
 
+		// location of this tile in the activity time index
+		private int location = -1;
+
 		void add(Activity activity) {
 			activities.add(activity);
 		}
 
 		double calculateSpentTime(double fromTime, double toTime) {
-
-			return activities.stream()
-					.filter(act -> getStartTime(act) < toTime)
-					.filter(act -> getEndTime(act) > fromTime)
-					.mapToDouble(act -> {
-						var start = Math.max(fromTime, getStartTime(act));
-						var end = Math.min(toTime, getEndTime(act));
-						return end - start;
-					})
-					.sum();
+			return ActivityTimeIndex.calculateSpentTime(activities, fromTime, toTime);
 		}
 	}
 }
\ No newline at end of file
@@ -6,52 +6,53 @@ import it.unimi.dsi.fastutil.objects.Object2DoubleMap;
 import it.unimi.dsi.fastutil.objects.Object2DoubleOpenHashMap;
 import lombok.extern.log4j.Log4j2;
 import org.apache.commons.csv.CSVPrinter;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
 import org.matsim.api.core.v01.Coord;
 import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.network.Link;
 import org.matsim.api.core.v01.network.Network;
 import org.matsim.contrib.analysis.time.TimeBinMap;
+import org.matsim.core.utils.geometry.geotools.MGC;
 import org.matsim.mosaik2.Utils;
 import org.matsim.mosaik2.palm.XYTValueCsvData;
 import org.matsim.mosaik2.raster.ObjectRaster;
+import org.matsim.mosaik2.raster.RasterTiling;
 
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.Set;
+import java.util.ArrayList;
+import java.util.List;
 
 @Log4j2
 public class CalculateLinkExposure {
 
 	private final Path exposureFile;
+	private final XYTValueCsvData.DataInfo dataInfo;
 	private final Path outputFile;
 
 	private final Network network;
 
 	private final Method method;
-	private final ObjectRaster<Set<Id<Link>>> linkCache;
 
 	private final double r;
+	private final int maxCellsPerTile;
 
 	public CalculateLinkExposure(InputArgs args) {
-		this(Paths.get(args.exposureFile), Paths.get(args.networkFile), Paths.get(args.outputFile), args.r, args.method);
+		this(Paths.get(args.exposureFile), Paths.get(args.networkFile), Paths.get(args.outputFile), args.r, args.method, args.maxCellsPerTile);
 	}
 
-	public CalculateLinkExposure(Path exposureFile, Path networkFile, Path outputFile, double r, Method method) {
+	public CalculateLinkExposure(Path exposureFile, Path networkFile, Path outputFile, double r, Method method, int maxCellsPerTile) {
 
-		var info = XYTValueCsvData.readDataInfo(exposureFile);
-		network = Utils.loadFilteredNetwork(networkFile.toString(), info.getRasterInfo().getBounds().toGeometry());
-		//linkCache = CalculateRValues.createCache(network, info.getRasterInfo().getBounds(), info.getRasterInfo().getCellSize());\
-		log.info("Create spatial index");
-		var linkIndex = org.matsim.mosaik2.SpatialIndex.create(network, r * 5, info.getRasterInfo().getBounds().toGeometry());
-		linkCache = new ObjectRaster<>(info.getRasterInfo().getBounds(), info.getRasterInfo().getCellSize());
-		log.info("Creating raster cache with link ids");
-		linkCache.setValueForEachCoordinate(linkIndex::intersects);
+		dataInfo = XYTValueCsvData.readDataInfo(exposureFile);
+		network = Utils.loadFilteredNetwork(networkFile.toString(), dataInfo.getRasterInfo().getBounds().toGeometry());
 		this.exposureFile = exposureFile;
 		this.r = r;
 		this.outputFile = outputFile;
 		this.method = method;
+		this.maxCellsPerTile = maxCellsPerTile;
 	}
 
 	public static void main(String[] args) {
@@ -63,47 +64,24 @@ public class CalculateLinkExposure {
 
 	void run() {
 
-		var dataInfo = XYTValueCsvData.readDataInfo(exposureFile);
-		var exposureData = XYTValueCsvData.read(exposureFile, dataInfo);
-		var result = new TimeBinMap<Object2DoubleMap<Id<Link>>>(exposureData.getBinSize());
+		var result = new TimeBinMap<Object2DoubleMap<Id<Link>>>(dataInfo.getTimeInterval());
 
 		log.info("Starting to calculate exposure values for links");
 
-		// populate result map, so that we can work on the bins in parallel
-		for (var bin : exposureData.getTimeBins()) {
-			result.getTimeBin(bin.getStartTime()).computeIfAbsent(Object2DoubleOpenHashMap::new);
-		}
-
-		var cellSize = dataInfo.getRasterInfo().getCellSize();
-		var cellVolume = cellSize * cellSize * cellSize;
-
-		exposureData.getTimeBins().parallelStream().forEach(bin -> {
-			log.info("Calculating impact values for Time Slice: [" + bin.getStartTime() + ", " + (bin.getStartTime() + exposureData.getBinSize()) + "]");
-			var exposurePerLink = result
-					.getTimeBin(bin.getStartTime())
-					.getValue();
-			var exposureSlice = bin.getValue();
-			exposureSlice.forEachCoordinate((x, y, value) -> {
-
-				if (value <= 0.0) return; // no need to do anything here.
+		// the link cache and the exposure values are only loaded for one tile at a time. Exposure values are only needed
+		// for the cells of a tile. The buffer around links has square caps. Its corners are sqrt(2) * bufferDist away from
+		// the link. Use this as halo, so that each tile sees all relevant links.
+		var bufferDist = r * 5;
+		var rasterInfo = dataInfo.getRasterInfo();
+		var tiling = new RasterTiling(rasterInfo.getBounds(), rasterInfo.getCellSize(), maxCellsPerTile, bufferDist * Math.sqrt(2));
 
-				var linkIds = linkCache.getValueByCoord(x, y);
-				linkIds.stream()
-						.map(id -> network.getLinks().get(id))
-						.forEach(link -> {
-							var weight = NumericSmoothingRadiusEstimate.calculateWeight(
-									link.getFromNode().getCoord(),
-									link.getToNode().getCoord(),
-									new Coord(x, y),
-									link.getLength(),
-									r
-							);
-							if (weight > 0.0) {
-								var impactValue = value * weight;
-								exposurePerLink.mergeDouble(link.getId(), impactValue, Double::sum);
-							}
-						});
-			});
+		tiling.process(1, tile -> calculateTile(tiling, tile, rasterInfo.getBounds().toGeometry(), bufferDist), (tile, tileResult) -> {
+			for (var bin : tileResult.getTimeBins()) {
+				var exposurePerLink = result.getTimeBin(bin.getStartTime()).computeIfAbsent(Object2DoubleOpenHashMap::new);
+				for (var entry : bin.getValue().object2DoubleEntrySet()) {
+					exposurePerLink.mergeDouble(entry.getKey(), entry.getDoubleValue(), Double::sum);
+				}
+			}
 		});
 
 		log.info("Finished Calculation");
@@ -127,6 +105,61 @@ public class CalculateLinkExposure {
 		}
 	}
 
+	private TimeBinMap<Object2DoubleMap<Id<Link>>> calculateTile(RasterTiling tiling, RasterTiling.Tile tile, Geometry bounds, double bufferDist) {
+
+		var exposureData = XYTValueCsvData.read(exposureFile, dataInfo, tile.getBounds());
+
+		var halo = tile.getBoundsWithHalo();
+		var haloEnvelope = new Envelope(halo.getMinX(), halo.getMaxX(), halo.getMinY(), halo.getMaxY());
+		var tileLinks = network.getLinks().values().stream()
+				.filter(link -> haloEnvelope.intersects(MGC.coord2Coordinate(link.getFromNode().getCoord()), MGC.coord2Coordinate(link.getToNode().getCoord())))
+				.toList();
+		var linkIndex = org.matsim.mosaik2.SpatialIndex.create(tileLinks, bufferDist, bounds);
+		var linkCache = new ObjectRaster<List<Link>>(tile.getBounds(), tiling.getCellSize());
+		linkCache.setValueForEachIndex((xi, yi) -> {
+			List<Link> links = new ArrayList<>();
+			linkIndex.forEachIntersecting(tile.getCentroidX(xi), tile.getCentroidY(yi), id -> links.add(network.getLinks().get(id)));
+			return links.isEmpty() ? List.of() : links;
+		});
+
+		var result = new TimeBinMap<Object2DoubleMap<Id<Link>>>(exposureData.getBinSize());
+		// populate result map, so that we can work on the bins in parallel
+		for (var bin : exposureData.getTimeBins()) {
+			result.getTimeBin(bin.getStartTime()).computeIfAbsent(Object2DoubleOpenHashMap::new);
+		}
+
+		exposureData.getTimeBins().parallelStream().forEach(bin -> {
+			var exposurePerLink = result
+					.getTimeBin(bin.getStartTime())
+					.getValue();
+			var exposureSlice = bin.getValue();
+			linkCache.forEachIndex((xi, yi, links) -> {
+
+				if (links.isEmpty()) return;
+				var x = tile.getCentroidX(xi);
+				var y = tile.getCentroidY(yi);
+				var value = exposureSlice.getValueByCoord(x, y);
+				if (value <= 0.0) return; // no need to do anything here.
+
+				var cellCoord = new Coord(x, y);
+				for (var link : links) {
+					var weight = NumericSmoothingRadiusEstimate.calculateWeight(
+							link.getFromNode().getCoord(),
+							link.getToNode().getCoord(),
+							cellCoord,
+							link.getLength(),
+							r
+					);
+					if (weight > 0.0) {
+						var impactValue = value * weight;
+						exposurePerLink.mergeDouble(link.getId(), impactValue, Double::sum);
+					}
+				}
+			});
+		});
+		return result;
+	}
+
 	private static class InputArgs {
 
 		@Parameter(names = "-e", required = true)
@@ -139,6 +172,8 @@ public class CalculateLinkExposure {
 		public double r;
 		@Parameter(names = "-m")
 		public Method method = Method.Concentrations;
+		@Parameter(names = "-tileCells", description = "Maximum number of cells per tile for which links are cached at once.")
+		public int maxCellsPerTile = 4_000_000;
 	}
 
 	static enum Method {
@@ -19,6 +19,8 @@ import org.matsim.contrib.emissions.events.EmissionEventsReader;
 import org.matsim.core.events.EventsUtils;
 import org.matsim.core.utils.collections.Tuple;
 import org.matsim.core.utils.geometry.geotools.MGC;
+import org.matsim.mosaik2.ResultCache;
+import org.matsim.mosaik2.ResultCodecs;
 import org.matsim.mosaik2.Utils;
 import org.matsim.mosaik2.chemistryDriver.AggregateEmissionsByTimeHandler;
 import org.matsim.mosaik2.chemistryDriver.PollutantToPalmNameConverter;
@@ -35,16 +37,22 @@ import java.util.stream.Collectors;
 @Log4j2
 public class CalculateRValues {
 
+	private static final int CACHE_VERSION = 1;
+
 	private final InputArgs input;
-	private final ObjectRaster<Set<Id<Link>>> linkCache;
-	private final TimeBinMap<Object2DoubleMap<Link>> emissions;
+	private final ResultCache cache;
 
 	CalculateRValues(InputArgs inputArgs) {
-		var info = XYTValueCsvData.readDataInfo(Paths.get(inputArgs.palmFile));
-		Network network = Utils.loadFilteredNetwork(inputArgs.networkFile, info.getRasterInfo().getBounds().toGeometry());
+		this(inputArgs, ResultCache.create(inputArgs.cacheDirectory));
+	}
+
+	/**
+	 * The link footprints and the R-values are cached by the content of the input files and the parameters of the
+	 * calculation, so that re-runs with the same inputs only re-write the output file.
+	 */
+	CalculateRValues(InputArgs inputArgs, ResultCache cache) {
 		this.input = inputArgs;
-		this.linkCache = createCache(network, info.getRasterInfo().getBounds(), info.getRasterInfo().getCellSize());
-		this.emissions = parseEmissions(network, inputArgs, info);
+		this.cache = cache;
 	}
 
 	public static void main(String[] args) {
@@ -130,6 +138,33 @@ public class CalculateRValues {
 
 	void run() {
 
+		var info = XYTValueCsvData.readDataInfo(Paths.get(input.palmFile));
+		var bounds = info.getRasterInfo().getBounds();
+		var cellSize = info.getRasterInfo().getCellSize();
+
+		var footprintKey = ResultCache.key("link-footprints", CACHE_VERSION)
+				.file(input.networkFile)
+				.param("bounds", bounds)
+				.param("cellSize", cellSize);
+		var rValueKey = ResultCache.key("r-values", CACHE_VERSION)
+				.key(footprintKey)
+				.file(input.palmFile)
+				.file(input.emissionEventsFile)
+				.param("species", input.species)
+				.param("scaleFactor", input.scaleFactor);
+
+		var result = cache.getOrCompute(rValueKey, ResultCodecs.timeSeries(ResultCodecs.doubleRaster()), () -> {
+			Network network = Utils.loadFilteredNetwork(input.networkFile, bounds.toGeometry());
+			var linkCache = cache.getOrCompute(footprintKey, ResultCodecs.linkFootprints(), () -> createCache(network, bounds, cellSize));
+			var emissions = parseEmissions(network, input, info);
+			return calculate(linkCache, emissions);
+		});
+
+		XYTValueCsvData.write(Paths.get(input.outputFile), result, -1);
+	}
+
+	private TimeBinMap<DoubleRaster> calculate(ObjectRaster<Set<Id<Link>>> linkCache, TimeBinMap<Object2DoubleMap<Link>> emissions) {
+
 		var palmData = XYTValueCsvData.read(Paths.get(input.palmFile));
 		var result = new TimeBinMap<DoubleRaster>(palmData.getBinSize(), palmData.getStartTime());
 
@@ -166,7 +201,7 @@ public class CalculateRValues {
 			});
 		}
 
-		XYTValueCsvData.write(Paths.get(input.outputFile), result, -1);
+		return result;
 	}
 
 
@@ -192,5 +227,8 @@ public class CalculateRValues {
 
 		@Parameter(names = "-s")
 		private int scaleFactor = 10;
+
+		@Parameter(names = "-cache", description = "Directory to cache link footprints and r-values in. Without it, nothing is cached.")
+		private String cacheDirectory;
 	}
 }
\ No newline at end of file
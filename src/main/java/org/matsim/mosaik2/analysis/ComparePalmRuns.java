@@ -2,16 +2,18 @@ package org.matsim.mosaik2.analysis;
 
 import com.beust.jcommander.JCommander;
 import com.beust.jcommander.Parameter;
-import lombok.EqualsAndHashCode;
-import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import org.matsim.mosaik2.Utils;
 import org.matsim.mosaik2.analysis.run.CSVUtils;
+import org.matsim.mosaik2.palm.XYTValueCsvData;
+import org.matsim.mosaik2.raster.RasterComparison;
 
-import java.nio.file.Path;
+import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Paths;
-import java.util.Collection;
 import java.util.List;
-import java.util.stream.Collectors;
 
+@Log4j2
 public class ComparePalmRuns {
 
     public static void main(String[] args) {
@@ -19,65 +21,26 @@ public class ComparePalmRuns {
         var input = new InputArgs();
         JCommander.newBuilder().addObject(input).build().parse(args);
 
-        var baseTable = readTable(Paths.get(input.base));
-        var compareTable = readTable(Paths.get(input.compare));
+        try (var writer = Files.newBufferedWriter(Paths.get(input.outputFile)); var printer = Utils.createWriteFormat("time", "x", "y", "value").print(writer)) {
 
-        var diffMap = compareTable.stream()
-                .collect(Collectors.toMap(RasterTileRecord::key, RasterTileRecord::values));
-        for (RasterTileRecord record : baseTable) {
-            // substract base from compare, so that we get positive values if more emissions in a raster tile
-            // and negative values if less emissions.
-            diffMap.merge(record.key(), record.values(), Values::substract);
-        }
-
-        /*CSVUtils.writeTable(diffMap.entrySet(), Paths.get(input.outputFile), List.of("time", "x", "y", "PM10", "NOx"), (p, r) -> {
-            var nox = r.getValue().no2 + r.getValue().no;
-            CSVUtils.printRecord(p, r.getKey().time, r.getKey().x, r.getKey().y, r.getValue().pm, nox);
-        });
-
-         */
-        CSVUtils.writeTable(diffMap.entrySet(), Paths.get(input.outputFile), List.of("time", "x", "y", "value"), (p, r) -> {
-            var nox = r.getValue().no2 + r.getValue().no;
-            CSVUtils.printRecord(p, r.getKey().time, r.getKey().x, r.getKey().y, nox);
-        });
-    }
+            var comparison = new RasterComparison[1];
+            // NOx is the sum of NO and NO2
+            XYTValueCsvData.readPairedTimeSlices(Paths.get(input.base), Paths.get(input.compare), List.of("NO", "NO2"), (time, base, compare) -> {
 
-    private static Collection<RasterTileRecord> readTable(Path file) {
-        return CSVUtils.readTable(file, r -> new RasterTileRecord(
-                new Key(Double.parseDouble(r.get("time")),
-                        Double.parseDouble(r.get("x")),
-                        Double.parseDouble(r.get("y"))),
-                new Values(Double.parseDouble(r.get("PM10")),
-                        Double.parseDouble(r.get("NO")),
-                        Double.parseDouble(r.get("NO2")),
-                        Double.parseDouble(r.get("O3")))
-        ));
-    }
+                if (comparison[0] == null) comparison[0] = new RasterComparison(base, compare);
 
-    record RasterTileRecord(Key key, Values values) {
-    }
-
-    @EqualsAndHashCode(callSuper = false)
-    @RequiredArgsConstructor
-    private static class Key {
-        final double time;
-        final double x;
-        final double y;
-    }
-
-    record Values(double pm, double no, double no2, double o3) {
-
-        double nox() {
-            return no2 + no;
-        }
+                // substract base from compare, so that we get positive values if more emissions in a raster tile
+                // and negative values if less emissions. Tiles without a value in one of the runs are -1 and count as 0.
+                comparison[0].forEachPair(base, compare, (x, y, baseValue, compareValue) -> {
+                    if (baseValue < 0 && compareValue < 0) return;
+                    CSVUtils.printRecord(printer, time, x, y, Math.max(0, compareValue) - Math.max(0, baseValue));
+                });
 
-        static Values substract(Values base, Values compare) {
-            return new Values(
-                    base.pm - compare.pm,
-                    base.no - compare.no,
-                    base.no2 - compare.no2,
-                    base.o3 - compare.o3
-            );
+                var statistics = comparison[0].statistics(base, compare, (baseValue, compareValue) -> baseValue >= 0 && compareValue >= 0);
+                log.info("time " + time + ": mean difference of NOx is " + statistics.getMeanDifference() + ", correlation is " + statistics.getCorrelation());
+            });
+        } catch (IOException e) {
+            throw new RuntimeException(e);
         }
     }
 
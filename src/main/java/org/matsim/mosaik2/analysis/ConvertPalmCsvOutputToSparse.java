@@ -4,9 +4,10 @@ import com.beust.jcommander.JCommander;
 import com.beust.jcommander.Parameter;
 import lombok.AllArgsConstructor;
 import lombok.extern.log4j.Log4j2;
-import org.apache.commons.csv.CSVParser;
 import org.matsim.mosaik2.DoubleToDoubleFunction;
+import org.matsim.mosaik2.NumericCsvReader;
 import org.matsim.mosaik2.Utils;
+import org.matsim.mosaik2.analysis.run.CSVUtils;
 
 import java.io.IOException;
 import java.nio.file.Files;
@@ -62,46 +63,47 @@ public class ConvertPalmCsvOutputToSparse {
 		headers.stream().filter(columnName::equals).findAny().orElseThrow(() -> new RuntimeException("'" + columnName + "' was not present as header in the source csv."));
 	}
 
+	/**
+	 * All columns of the input must be numeric. They are parsed and written as doubles.
+	 */
 	void run() {
 
-		var lastTime = -1.;
+		var lastTime = new double[]{-1.};
+		var headers = NumericCsvReader.readHeader(inputFile);
 
-		try (var reader = Files.newBufferedReader(inputFile); var parser = CSVParser.parse(reader, Utils.createReadFormat())) {
+		checkForHeaders(headers, xColumnName);
+		checkForHeaders(headers, yColumnName);
+		checkForHeaders(headers, valueColumnName);
+		checkForHeaders(headers, timeColumnName);
+		var timeIndex = headers.indexOf(timeColumnName);
+		var valueIndex = headers.indexOf(valueColumnName);
 
-			checkForHeaders(parser.getHeaderNames(), xColumnName);
-			checkForHeaders(parser.getHeaderNames(), yColumnName);
-			checkForHeaders(parser.getHeaderNames(), valueColumnName);
-			var headers = parser.getHeaderNames().toArray(new String[0]);
+		try (var writer = Files.newBufferedWriter(outputFile); var printer = Utils.createWriteFormat(headers.toArray(new String[0])).print(writer)) {
 
-			try (var writer = Files.newBufferedWriter(outputFile); var printer = Utils.createWriteFormat(headers).print(writer)) {
-				for (var record : parser) {
+			NumericCsvReader.builder().file(inputFile).columns(headers).build().read(block -> {
+				for (var row = 0; row < block.size(); row++) {
 
-					var values = record.toMap();
+					var time = block.get(row, timeIndex);
+					var convertedValue = this.converter.applyAsDouble(block.get(row, valueIndex));
 
-					// adjust time according to offset
-					var time = Double.parseDouble(values.get(timeColumnName));
-					values.put(timeColumnName, Double.toString(time - startTime));
-
-					// parse value
-					var parsedValue = Double.parseDouble(values.get(valueColumnName));
-					var convertedValues = this.converter.applyAsDouble(parsedValue);
-					values.put(valueColumnName, Double.toString(convertedValues));
-
-					if (convertedValues >= minValue && time >= startTime && time <= endTime) {
-						for (var column : headers) {
-							printer.print(values.get(column));
+					if (convertedValue >= minValue && time >= startTime && time <= endTime) {
+						for (var column = 0; column < headers.size(); column++) {
+							// adjust time according to offset
+							if (column == timeIndex) CSVUtils.print(printer, time - startTime);
+							else if (column == valueIndex) CSVUtils.print(printer, convertedValue);
+							else CSVUtils.print(printer, block.get(row, column));
 						}
-						printer.println();
-						if (lastTime != time) {
-							lastTime = time;
+						CSVUtils.println(printer);
+						if (lastTime[0] != time) {
+							lastTime[0] = time;
 							log.info("Parsed and printed time: " + time);
 						}
-					} else if (lastTime != time) {
-						lastTime = time;
+					} else if (lastTime[0] != time) {
+						lastTime[0] = time;
 						log.info("Parsed time: " + time);
 					}
 				}
-			}
+			});
 		} catch (IOException e) {
 			throw new RuntimeException(e);
 		}
@@ -0,0 +1,314 @@
+package org.matsim.mosaik2.analysis;
+
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import lombok.extern.log4j.Log4j2;
+import org.locationtech.jts.geom.prep.PreparedGeometry;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.events.Event;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.contrib.emissions.Pollutant;
+import org.matsim.contrib.emissions.events.ColdEmissionEvent;
+import org.matsim.contrib.emissions.events.WarmEmissionEvent;
+import org.matsim.core.events.handler.BasicEventHandler;
+import org.matsim.core.utils.geometry.geotools.MGC;
+import org.matsim.mosaik2.chemistryDriver.PollutantToPalmNameConverter;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.stream.IntStream;
+
+/**
+ * Collects emissions of emission events by time bin, species and link into primitive arrays. All statistics are derived
+ * from these arrays afterwards, so that several reports cost a single pass over the events file.
+ * <p>
+ * Pollutants are mapped onto species with a {@link PollutantToPalmNameConverter}. Pollutants which map onto the same
+ * species, e.g. PM and PM_non_exhaust, are summed up. Whether a link lies within the filter geometry is computed once per
+ * link, when the handler is created. Events on links which are not part of the network are ignored. Events may be passed
+ * to this handler from multiple threads. Each thread sums into its own accumulator and the accumulators are merged in
+ * {@link #getResult()}.
+ */
+@Log4j2
+public class EmissionStatistics implements BasicEventHandler {
+
+    private final Id<Link>[] linkIds;
+    private final double[] linkLengths;
+    private final boolean[] isInFilter;
+    // maps Id.index() of a link onto the index of the link within this handler
+    private final int[] idIndexToLinkIndex;
+
+    private final List<String> species;
+    // maps the ordinal of a pollutant onto the index of its species. -1 for pollutants which are not of interest
+    private final int[] pollutantToSpecies = new int[Pollutant.values().length];
+
+    private final double timeBinSize;
+    private final double scaleFactor;
+
+    private final Collection<Accumulator> accumulators = new ConcurrentLinkedQueue<>();
+    private final ThreadLocal<Accumulator> threadAccumulator = ThreadLocal.withInitial(this::createAccumulator);
+
+    public EmissionStatistics(Network network, PollutantToPalmNameConverter converter, double timeBinSize, double scaleFactor) {
+        this(network, converter, null, timeBinSize, scaleFactor);
+    }
+
+    /**
+     * @param filter links whose coordinate lies within the filter are summed up separately. May be null.
+     */
+    @SuppressWarnings("unchecked")
+    public EmissionStatistics(Network network, PollutantToPalmNameConverter converter, PreparedGeometry filter, double timeBinSize, double scaleFactor) {
+        this.timeBinSize = timeBinSize;
+        this.scaleFactor = scaleFactor;
+
+        this.species = converter.getPollutants().stream()
+                .map(converter::getPalmName)
+                .distinct()
+                .sorted()
+                .toList();
+        Arrays.fill(pollutantToSpecies, -1);
+        for (var pollutant : converter.getPollutants()) {
+            pollutantToSpecies[pollutant.ordinal()] = species.indexOf(converter.getPalmName(pollutant));
+        }
+
+        var links = new ArrayList<>(network.getLinks().values());
+        var maxIdIndex = links.stream().mapToInt(link -> link.getId().index()).max().orElse(-1);
+        this.linkIds = new Id[links.size()];
+        this.linkLengths = new double[links.size()];
+        this.idIndexToLinkIndex = new int[maxIdIndex + 1];
+        Arrays.fill(idIndexToLinkIndex, -1);
+        for (var linkIndex = 0; linkIndex < links.size(); linkIndex++) {
+            var link = links.get(linkIndex);
+            linkIds[linkIndex] = link.getId();
+            linkLengths[linkIndex] = link.getLength();
+            idIndexToLinkIndex[link.getId().index()] = linkIndex;
+        }
+
+        this.isInFilter = new boolean[links.size()];
+        if (filter != null) {
+            log.info("Testing " + links.size() + " links against filter geometry");
+            // prepared geometries are safe to use from multiple threads
+            IntStream.range(0, links.size()).parallel()
+                    .forEach(i -> isInFilter[i] = filter.contains(MGC.coord2Point(links.get(i).getCoord())));
+        }
+    }
+
+    @Override
+    public void handleEvent(Event event) {
+
+        if (WarmEmissionEvent.EVENT_TYPE.equals(event.getEventType())) {
+            var warmEmissionEvent = (WarmEmissionEvent) event;
+            handleEmissions(event.getTime(), warmEmissionEvent.getLinkId(), warmEmissionEvent.getWarmEmissions());
+        } else if (ColdEmissionEvent.EVENT_TYPE.equals(event.getEventType())) {
+            var coldEmissionEvent = (ColdEmissionEvent) event;
+            handleEmissions(event.getTime(), coldEmissionEvent.getLinkId(), coldEmissionEvent.getColdEmissions());
+        }
+    }
+
+    private void handleEmissions(double time, Id<Link> linkId, Map<Pollutant, Double> emissions) {
+
+        var idIndex = linkId.index();
+        var linkIndex = idIndex < idIndexToLinkIndex.length ? idIndexToLinkIndex[idIndex] : -1;
+        if (linkIndex < 0) return;
+
+        var bin = threadAccumulator.get().getBin((int) (time / timeBinSize));
+
+        for (var entry : emissions.entrySet()) {
+            var speciesIndex = pollutantToSpecies[entry.getKey().ordinal()];
+            if (speciesIndex < 0) continue;
+
+            var index = speciesIndex * linkIds.length + linkIndex;
+            bin.emissions[index] += entry.getValue();
+            bin.events[index]++;
+        }
+    }
+
+    /**
+     * Merges the emissions of all threads. Call this after all events have been handled.
+     */
+    public Result getResult() {
+
+        Int2ObjectMap<Bin> merged = new Int2ObjectOpenHashMap<>();
+        for (var accumulator : accumulators) {
+            for (var entry : accumulator.bins.int2ObjectEntrySet()) {
+                var bin = merged.get(entry.getIntKey());
+                if (bin == null) {
+                    merged.put(entry.getIntKey(), entry.getValue().copy());
+                } else {
+                    bin.add(entry.getValue());
+                }
+            }
+        }
+
+        var binIndices = merged.keySet().toIntArray();
+        Arrays.sort(binIndices);
+        var bins = new Bin[binIndices.length];
+        for (var i = 0; i < binIndices.length; i++) {
+            bins[i] = merged.get(binIndices[i]);
+        }
+        return new Result(binIndices, bins);
+    }
+
+    private Accumulator createAccumulator() {
+        var accumulator = new Accumulator();
+        accumulators.add(accumulator);
+        return accumulator;
+    }
+
+    /**
+     * Emissions and number of events of one time bin. Indexed by speciesIndex * numberOfLinks + linkIndex.
+     */
+    private static class Bin {
+
+        private final double[] emissions;
+        private final int[] events;
+
+        private Bin(int size) {
+            this(new double[size], new int[size]);
+        }
+
+        private Bin(double[] emissions, int[] events) {
+            this.emissions = emissions;
+            this.events = events;
+        }
+
+        private Bin copy() {
+            return new Bin(emissions.clone(), events.clone());
+        }
+
+        private void add(Bin other) {
+            for (var i = 0; i < emissions.length; i++) {
+                emissions[i] += other.emissions[i];
+                events[i] += other.events[i];
+            }
+        }
+    }
+
+    private class Accumulator {
+
+        private final Int2ObjectMap<Bin> bins = new Int2ObjectOpenHashMap<>();
+
+        private Bin getBin(int binIndex) {
+            var bin = bins.get(binIndex);
+            if (bin == null) {
+                bin = new Bin(species.size() * linkIds.length);
+                bins.put(binIndex, bin);
+            }
+            return bin;
+        }
+    }
+
+    /**
+     * Statistics derived from the collected emissions. Emission values are multiplied with the scale factor.
+     */
+    public class Result {
+
+        private final int[] binIndices;
+        private final Bin[] bins;
+
+        private Result(int[] binIndices, Bin[] bins) {
+            this.binIndices = binIndices;
+            this.bins = bins;
+        }
+
+        public List<String> getSpecies() {
+            return species;
+        }
+
+        /**
+         * @return start times of all time bins which have received emissions in ascending order
+         */
+        public double[] getTimeBins() {
+            return Arrays.stream(binIndices).mapToDouble(binIndex -> binIndex * timeBinSize).toArray();
+        }
+
+        /**
+         * @return whether any link has received emissions of the species within the time bin
+         */
+        public boolean hasEmissions(double time, String speciesName) {
+            var bin = getBin(time);
+            if (bin == null) return false;
+            var offset = getOffset(speciesName);
+            for (var linkIndex = 0; linkIndex < linkIds.length; linkIndex++) {
+                if (bin.events[offset + linkIndex] > 0) return true;
+            }
+            return false;
+        }
+
+        /**
+         * @return sum of emissions of all links within the time bin
+         */
+        public double getSum(double time, String speciesName) {
+            return sum(time, speciesName, false);
+        }
+
+        /**
+         * @return sum of emissions of all links within the filter geometry within the time bin
+         */
+        public double getSumInFilter(double time, String speciesName) {
+            return sum(time, speciesName, true);
+        }
+
+        /**
+         * Emissions per meter averaged over all links which have received emissions within the time bin. NaN if no link
+         * has received emissions.
+         */
+        public double getAveragePerMeter(double time, String speciesName) {
+            var bin = getBin(time);
+            if (bin == null) return Double.NaN;
+
+            var offset = getOffset(speciesName);
+            var sum = 0.;
+            var count = 0;
+            for (var linkIndex = 0; linkIndex < linkIds.length; linkIndex++) {
+                if (bin.events[offset + linkIndex] == 0) continue;
+                sum += bin.emissions[offset + linkIndex] * scaleFactor / linkLengths[linkIndex];
+                count++;
+            }
+            return count == 0 ? Double.NaN : sum / count;
+        }
+
+        /**
+         * Passes each link which has received emissions within the time bin into the consumer.
+         */
+        public void forEachLink(double time, String speciesName, LinkEmissionConsumer consumer) {
+            var bin = getBin(time);
+            if (bin == null) return;
+
+            var offset = getOffset(speciesName);
+            for (var linkIndex = 0; linkIndex < linkIds.length; linkIndex++) {
+                var events = bin.events[offset + linkIndex];
+                if (events == 0) continue;
+                consumer.accept(linkIds[linkIndex], linkLengths[linkIndex], bin.emissions[offset + linkIndex] * scaleFactor, events);
+            }
+        }
+
+        private double sum(double time, String speciesName, boolean onlyInFilter) {
+            var bin = getBin(time);
+            if (bin == null) return 0;
+
+            var offset = getOffset(speciesName);
+            var sum = 0.;
+            for (var linkIndex = 0; linkIndex < linkIds.length; linkIndex++) {
+                if (onlyInFilter && !isInFilter[linkIndex]) continue;
+                sum += bin.emissions[offset + linkIndex];
+            }
+            return sum * scaleFactor;
+        }
+
+        private Bin getBin(double time) {
+            var i = Arrays.binarySearch(binIndices, (int) (time / timeBinSize));
+            return i < 0 ? null : bins[i];
+        }
+
+        private int getOffset(String speciesName) {
+            var speciesIndex = species.indexOf(speciesName);
+            if (speciesIndex < 0) throw new IllegalArgumentException("No emissions were collected for species: " + speciesName);
+            return speciesIndex * linkIds.length;
+        }
+    }
+
+    @FunctionalInterface
+    public interface LinkEmissionConsumer {
+        void accept(Id<Link> linkId, double length, double emissions, int numberOfEvents);
+    }
+}
@@ -5,15 +5,19 @@ import com.beust.jcommander.Parameter;
 import org.apache.commons.lang3.StringUtils;
 import org.matsim.contrib.analysis.time.TimeBinMap;
 import org.matsim.mosaik2.DoubleToDoubleFunction;
+import org.matsim.mosaik2.ResultCache;
 import org.matsim.mosaik2.palm.XYTValueCsvData;
 import org.matsim.mosaik2.raster.DoubleRaster;
 
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.List;
 
 public class ExposurePipeline {
 
+    private static final int CACHE_VERSION = 1;
+
     private static final String AV_MASKED_PALM_TEMPLATE = "%s_av_masked_M01.%s.nc";
     private static final String AV_MASKED_CSV_TEMPLATE = "%s_av_masked_M01.%s-%s.xyt.csv";
     private static final String AV_MASKED_MERGED_CSV_TEMPLATE = "%s_av_masked_M01.all-%s.xyt.csv";
@@ -26,45 +30,64 @@ public class ExposurePipeline {
         var input = new InputArgs();
         JCommander.newBuilder().addObject(input).build().parse(args);
 
+        // each stage is keyed by the key of the stage before, so that a stage is only run again if any of its inputs changed
+        var cache = ResultCache.create(input.cacheDirectory);
+
         for (var species : input.species) {
 
             // convert netcdf to csv
+            var partKeys = new ArrayList<ResultCache.Key>();
             for (var i = 0; i < input.numFileParts; i++) {
 
                 var palmFile = getPalmMaskedFilePath(input.root, input.palmRunId, i);
                 var outputFile = getCSVMaskedFilePath(input.root, input.palmRunId, i, species);
-                new ConvertPalmTimeSeriesToCSV(palmFile, outputFile, species).run();
+                var partKey = ResultCache.key("palm-csv", CACHE_VERSION)
+                        .file(palmFile)
+                        .param("species", species);
+                cache.getOrCreateFile(partKey, outputFile, () -> new ConvertPalmTimeSeriesToCSV(palmFile, outputFile, species).run());
+                partKeys.add(partKey);
             }
 
             //merge file parts to single file
-            var merged = new TimeBinMap<DoubleRaster>(3600);
-            for (var i = 0; i < input.numFileParts; i++) {
-
-                var csvFile = getCSVMaskedFilePath(input.root, input.palmRunId, i, species);
-                var palmData = XYTValueCsvData.read(csvFile);
-                for (var bin : palmData.getTimeBins()) {
-                    var mergedBin = merged.getTimeBin(getStartTime(bin.getStartTime(), input.utcOffset));
-                    mergedBin.setValue(bin.getValue());
-                }
-            }
             var mergedFile = getMergedCSVPath(input.root, input.palmRunId, species);
-            XYTValueCsvData.write(mergedFile, merged);
+            var mergedKey = ResultCache.key("merged-csv", CACHE_VERSION);
+            partKeys.forEach(mergedKey::key);
+            mergedKey.param("utcOffset", input.utcOffset);
+            cache.getOrCreateFile(mergedKey, mergedFile, () -> {
+                var merged = new TimeBinMap<DoubleRaster>(3600);
+                for (var i = 0; i < input.numFileParts; i++) {
+
+                    var csvFile = getCSVMaskedFilePath(input.root, input.palmRunId, i, species);
+                    var palmData = XYTValueCsvData.read(csvFile);
+                    for (var bin : palmData.getTimeBins()) {
+                        var mergedBin = merged.getTimeBin(getStartTime(bin.getStartTime(), input.utcOffset));
+                        mergedBin.setValue(bin.getValue());
+                    }
+                }
+                XYTValueCsvData.write(mergedFile, merged);
+            });
 
             // cut out second day
             var day2File = getDay2CSVPath(input.root, input.palmRunId, species);
-            var conversion = getConverterFunction(species);
-            new ConvertPalmCsvOutputToSparse(mergedFile, day2File, conversion).run();
+            var day2Key = ResultCache.key("day2-csv", CACHE_VERSION)
+                    .key(mergedKey)
+                    .param("species", species);
+            cache.getOrCreateFile(day2Key, day2File, () -> new ConvertPalmCsvOutputToSparse(mergedFile, day2File, getConverterFunction(species)).run());
 
             // calculate exposure
-            new CalculateExposure(day2File, Paths.get(input.eventsFile), getExposureCSVPath(input.root, input.palmRunId, species)).run();
+            var exposureFile = getExposureCSVPath(input.root, input.palmRunId, species);
+            var exposureKey = ResultCache.key("exposure", CACHE_VERSION)
+                    .key(day2Key)
+                    .file(input.eventsFile);
+            cache.getOrCreateFile(exposureKey, exposureFile, () -> new CalculateExposure(day2File, Paths.get(input.eventsFile), exposureFile).run());
 
             // calculate r-values
             var rValueFile = getRValuesCSVPath(input.root, input.palmRunId, species);
             var rValueInput = new CalculateRValues.InputArgs(
                     input.emissionEvents, input.networkFile, day2File.toString(),
-                    rValueFile.toString(), species, input.scaleFactor
+                    rValueFile.toString(), species, input.scaleFactor, input.cacheDirectory
             );
-            new CalculateRValues(rValueInput).run();
+            new CalculateRValues(rValueInput, cache).run();
         }
     }
 
@@ -161,5 +184,8 @@ public class ExposurePipeline {
 
         @Parameter(names = "-species")
         private List<String> species = List.of("NO2", "PM10");
+
+        @Parameter(names = "-cache", description = "Directory to cache the results of each stage in. Without it, nothing is cached.")
+        private String cacheDirectory;
     }
 }
\ No newline at end of file
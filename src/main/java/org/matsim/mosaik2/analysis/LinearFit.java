@@ -3,16 +3,20 @@ package org.matsim.mosaik2.analysis;
 import com.beust.jcommander.JCommander;
 import com.beust.jcommander.Parameter;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
 import org.apache.commons.csv.CSVPrinter;
 import org.matsim.mosaik2.Utils;
 import org.matsim.mosaik2.palm.XYTValueCsvData;
+import org.matsim.mosaik2.raster.RasterComparison;
 
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
 
+@Log4j2
 @RequiredArgsConstructor
 public class LinearFit {
 
@@ -40,31 +44,28 @@ public class LinearFit {
 
     private void run() throws IOException {
 
-        var xValues = XYTValueCsvData.read(this.matsimPath);
-        var yValues = XYTValueCsvData.read(this.palmPath);
-
         try (var writer = Files.newBufferedWriter(this.output); var printer = Utils.createWriteFormat("id", "x", "y", "time", "matsim", "palm").print(writer)) {
 
             var counter = new AtomicInteger();
-            for (var bin : yValues.getTimeBins()) {
-
-                var yRaster = bin.getValue();
-                var xBin = xValues.getTimeBin(bin.getStartTime());
-                var xRaster = xBin.getValue();
-                var time = bin.getStartTime();
+            var comparison = new RasterComparison[1];
+            var total = new RasterComparison.Statistics();
+            XYTValueCsvData.readPairedTimeSlices(this.matsimPath, this.palmPath, List.of("value"), (time, xRaster, yRaster) -> {
 
-                yRaster.forEachCoordinate((x, y, yValue) -> {
+                if (comparison[0] == null) comparison[0] = new RasterComparison(xRaster, yRaster);
 
-                    if (!xRaster.getBounds().covers(x, y)) return;
-
-                    var xValue = xRaster.getValueByCoord(x, y);
+                comparison[0].forEachPair(xRaster, yRaster, (x, y, xValue, yValue) -> {
 
                     if (xValue < 0 || yValue < 0) return;
 
                     var id = counter.incrementAndGet();
                     print(id, time, x, y, xValue, yValue, printer);
                 });
-            }
+
+                var statistics = comparison[0].statistics(xRaster, yRaster, (xValue, yValue) -> xValue >= 0 && yValue >= 0);
+                log.info("time " + time + ": palm = " + statistics.getIntercept() + " + " + statistics.getSlope() + " * matsim, r = " + statistics.getCorrelation());
+                total.merge(statistics);
+            });
+            log.info("All time slices: palm = " + total.getIntercept() + " + " + total.getSlope() + " * matsim, r = " + total.getCorrelation());
         }
     }
 
@@ -6,30 +6,40 @@ import it.unimi.dsi.fastutil.doubles.AbstractDoubleList;
 import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
 import it.unimi.dsi.fastutil.objects.Object2DoubleArrayMap;
 import it.unimi.dsi.fastutil.objects.Object2DoubleMap;
+import it.unimi.dsi.fastutil.objects.Object2DoubleOpenHashMap;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.log4j.Log4j2;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+import org.locationtech.jts.geom.Envelope;
 import org.locationtech.jts.geom.Geometry;
 import org.matsim.api.core.v01.Coord;
 import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.network.Link;
-import org.matsim.application.options.ShpOptions;
+import org.matsim.api.core.v01.network.Network;
 import org.matsim.contrib.analysis.time.TimeBinMap;
 import org.matsim.contrib.emissions.Pollutant;
 import org.matsim.contrib.emissions.events.EmissionEventsReader;
 import org.matsim.core.events.EventsUtils;
+import org.matsim.core.utils.geometry.geotools.MGC;
 import org.matsim.core.utils.gis.ShapeFileReader;
 import org.matsim.mosaik2.DoubleToDoubleFunction;
+import org.matsim.mosaik2.ResultCache;
+import org.matsim.mosaik2.ResultCodecs;
 import org.matsim.mosaik2.Utils;
 import org.matsim.mosaik2.analysis.run.CSVUtils;
 import org.matsim.mosaik2.chemistryDriver.AggregateEmissionsByTimeHandler;
 import org.matsim.mosaik2.chemistryDriver.PollutantToPalmNameConverter;
 import org.matsim.mosaik2.palm.XYTValueCsvData;
+import org.matsim.mosaik2.raster.BuildingMask;
 import org.matsim.mosaik2.raster.DoubleRaster;
 import org.matsim.mosaik2.raster.ObjectRaster;
+import org.matsim.mosaik2.raster.RasterTiling;
 import org.opengis.referencing.FactoryException;
 import org.opengis.referencing.operation.TransformException;
 
-import java.nio.charset.Charset;
+import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
 
@@ -37,6 +47,8 @@ import java.util.*;
 @RequiredArgsConstructor
 public class SpatialSmoothing {
 
+	private static final int CACHE_VERSION = 1;
+
 	private final List<String> species;
 	private final Path emissionEvents;
 	private final Path networkPath;
@@ -48,6 +60,9 @@ public class SpatialSmoothing {
 	private final int cellSize;
 	private final int timeBinSize;
 	private final double scaleFactor;
+	private final int maxCellsPerTile;
+	private final int concurrentTiles;
+	private final ResultCache resultCache;
 
 	//private final DoubleToDoubleFunction fittingFunction;
 
@@ -60,7 +75,8 @@ public class SpatialSmoothing {
 
 		new SpatialSmoothing(
 				inputArgs.species, inputArgs.emissionEvents, inputArgs.networkPath, inputArgs.boundsFile, inputArgs.buildingsFile,
-				inputArgs.palmFile, inputArgs.outputFile, inputArgs.r, inputArgs.cellSize, inputArgs.timeBinSize, inputArgs.scaleFactor
+				inputArgs.palmFile, inputArgs.outputFile, inputArgs.r, inputArgs.cellSize, inputArgs.timeBinSize, inputArgs.scaleFactor,
+				inputArgs.maxCellsPerTile, inputArgs.concurrentTiles, ResultCache.create(inputArgs.cacheDirectory)
 		).run();
 	}
 
@@ -125,26 +141,30 @@ public class SpatialSmoothing {
 
 		var network = Utils.loadFilteredNetwork(networkPath.toString(), berlinGeometry);
 
-		log.info("Creating spatial link index");
-		// with a distance of 3*r, 99% of emissions of a link get distributet into the raster.
-		var linkIndex = org.matsim.mosaik2.SpatialIndex.create(network, r * 3, berlinGeometry);
-		var linkIndexRaster = new ObjectRaster<Set<Id<Link>>>(bounds, cellSize);
-
-		log.info("Creating raster cache with link ids.");
-		linkIndexRaster.setValueForEachCoordinate(linkIndex::intersects);
-
-		var rasteredBuildings = createRasteredBuildings(bounds);
-		var manager = EventsUtils.createEventsManager();
+		var buildingMask = createBuildingMask(bounds);
 		var converter = PollutantToPalmNameConverter.createForSpecies(species);
-		var handler = new AggregateEmissionsByTimeHandler(network, converter.getPollutants(), timeBinSize, scaleFactor);
-		manager.addHandler(handler);
 
-		log.info("Start parsing emission events.");
-		new EmissionEventsReader(manager).readFile(emissionEvents.toString());
+		// the network is filtered by the bounds file, so the aggregated emissions depend on the content of all three files
+		var emissionsKey = ResultCache.key("link-emissions", CACHE_VERSION)
+				.file(networkPath)
+				.file(boundsFile)
+				.file(emissionEvents)
+				.param("pollutants", new TreeSet<>(converter.getPollutants()))
+				.param("timeBinSize", timeBinSize)
+				.param("scaleFactor", scaleFactor);
+		var aggregatedEmissions = resultCache.getOrCompute(emissionsKey, ResultCodecs.<Object2DoubleMap<Id<Link>>>linkEmissions(Object2DoubleOpenHashMap::new), () -> {
+			var manager = EventsUtils.createEventsManager();
+			var handler = new AggregateEmissionsByTimeHandler(network, converter.getPollutants(), timeBinSize, scaleFactor);
+			manager.addHandler(handler);
+
+			log.info("Start parsing emission events.");
+			new EmissionEventsReader(manager).readFile(emissionEvents.toString());
+			return handler.getTimeBinMap();
+		});
 
 		log.info("Sort collected emissions by link");
 		TimeBinMap<Map<Id<Link>, LinkEmission>> emissionByLink = new TimeBinMap<>(timeBinSize);
-		handler.getTimeBinMap().getTimeBins().forEach(bin -> {
+		aggregatedEmissions.getTimeBins().forEach(bin -> {
 
 			var resultBin = emissionByLink.getTimeBin(bin.getStartTime());
 			var emissionResultMap = resultBin.computeIfAbsent(HashMap::new);
@@ -162,7 +182,52 @@ public class SpatialSmoothing {
 			}
 		});
 
-		log.info("Start calculating concentrations.");
+		// with a distance of 3*r, 99% of emissions of a link get distributet into the raster.
+		// The buffer around links has square caps. Its corners are sqrt(2) * bufferDist away from the link. Use this as
+		// halo, so that each tile sees all links which influence its cells.
+		var bufferDist = r * 3;
+		var tiling = new RasterTiling(bounds, cellSize, maxCellsPerTile, bufferDist * Math.sqrt(2));
+
+		var headers = new ArrayList<>(List.of("time", "x", "y"));
+		headers.addAll(species);
+
+		log.info("Start calculating concentrations. Writing to: " + outputFile);
+		try (var timeBinWriter = new TimeBinWriter(outputFile, timeBinSize)) {
+			tiling.process(
+					concurrentTiles,
+					tile -> smoothTile(tile, network, berlinGeometry, bufferDist, buildingMask, emissionByLink, converter),
+					(tile, rasterTimeSeries) -> printTile(timeBinWriter, tile, rasterTimeSeries)
+			);
+			timeBinWriter.write(outputFile, headers);
+		}
+	}
+
+	/**
+	 * Calculates the concentrations for all cells of a tile. Only the links within the halo of the tile are considered.
+	 * Since a cell only receives emissions from links whose buffer covers the cell, the result is the same as if the
+	 * whole bounds were computed at once.
+	 */
+	private TimeBinMap<ObjectRaster<SmoothedTile>> smoothTile(RasterTiling.Tile tile, Network network, Geometry berlinGeometry, double bufferDist, BuildingMask buildingMask,
+															  TimeBinMap<Map<Id<Link>, LinkEmission>> emissionByLink, PollutantToPalmNameConverter converter) {
+
+		var halo = tile.getBoundsWithHalo();
+		var haloEnvelope = new Envelope(halo.getMinX(), halo.getMaxX(), halo.getMinY(), halo.getMaxY());
+		var tileLinks = network.getLinks().values().stream()
+				.filter(link -> haloEnvelope.intersects(MGC.coord2Coordinate(link.getFromNode().getCoord()), MGC.coord2Coordinate(link.getToNode().getCoord())))
+				.toList();
+		var linkIndex = org.matsim.mosaik2.SpatialIndex.create(tileLinks, bufferDist, berlinGeometry);
+
+		// cache the link ids for each cell of the tile. Sort the ids, so that emissions are summed up in the same order,
+		// regardless of the order in which the spatial index finds the links.
+		var linkIndexRaster = new ObjectRaster<List<Id<Link>>>(tile.getBounds(), cellSize);
+		linkIndexRaster.setValueForEachIndex((xi, yi) -> {
+			List<Id<Link>> ids = new ArrayList<>();
+			linkIndex.forEachIntersecting(tile.getCentroidX(xi), tile.getCentroidY(yi), ids::add);
+			if (ids.isEmpty()) return List.of();
+			ids.sort(Comparator.comparingInt(Id::index));
+			return ids;
+		});
+
 		TimeBinMap<ObjectRaster<SmoothedTile>> rasterTimeSeries = new TimeBinMap<>(timeBinSize);
 
 		// the normalization factor gives the ratio between cell area and area under the gauss function
@@ -171,9 +236,7 @@ public class SpatialSmoothing {
 
 		for (var bin : emissionByLink.getTimeBins()) {
 
-			var startTime = bin.getStartTime();
-			log.info("Calculating concentrations for: [" + startTime + ", " + (bin.getStartTime() + timeBinSize) + "]");
-			ObjectRaster<SmoothedTile> raster = new ObjectRaster<>(bounds, cellSize);
+			ObjectRaster<SmoothedTile> raster = new ObjectRaster<>(tile.getBounds(), cellSize);
 			var linkEmissions = bin.getValue();
 
 			// f(x) = -4.82253e-7*(x-43200)^2+1000 use curve which starts at 100m and has its peak at 1000m at noon and then
@@ -183,14 +246,17 @@ public class SpatialSmoothing {
 			var heightBoundaryLayer = cellSize;
 			var cellVolume = cellSize * cellSize * heightBoundaryLayer;
 
-			raster.setValueForEachCoordinate((x, y) -> {
+			raster.setValueForEachIndex((xi, yi) -> {
+
+				var x = tile.getCentroidX(xi);
+				var y = tile.getCentroidY(yi);
 
 				// this means this point is covered by a building
-				if (rasteredBuildings != null && rasteredBuildings.getValueByCoord(x, y) < 0) return null;
+				if (buildingMask != null && buildingMask.isBuildingByCoord(x, y)) return null;
 
 				// instead of calling sumf in the NumericSmoothing class we re-implement the logic here.
 				// this saves us one stream/collect in the inner loop here.
-				var linkIds = linkIndexRaster.getValueByCoord(x, y);
+				var linkIds = linkIndexRaster.getValueByIndex(xi, yi);
 				var filteredLinkEmissions = linkIds.stream()
 						.map(linkEmissions::get)
 						.filter(Objects::nonNull)
@@ -223,43 +289,37 @@ public class SpatialSmoothing {
 			});
 			rasterTimeSeries.getTimeBin(bin.getStartTime()).setValue(raster);
 		}
+		return rasterTimeSeries;
+	}
 
-		//var linkEmissionSum = sumUpLinkEmissions(emissionByLink);
-		// var rasterEmissionSum = sumUpRasterEmissions(rasterTimeSeries);
-
-//.info("link emissions: " + linkEmissionSum + ", raster emissions: " + rasterEmissionSum);
-
-		var headers = new ArrayList<>(List.of("time", "x", "y"));
-		headers.addAll(species);
+	/**
+	 * Writes the concentrations of a tile into the temporary file of each time bin.
+	 */
+	private void printTile(TimeBinWriter timeBinWriter, RasterTiling.Tile tile, TimeBinMap<ObjectRaster<SmoothedTile>> rasterTimeSeries) {
 
-		CSVUtils.writeTable(rasterTimeSeries.getTimeBins(), outputFile, headers, (p, bin) -> {
+		for (var bin : rasterTimeSeries.getTimeBins()) {
 			var time = bin.getStartTime();
+			var printer = timeBinWriter.getPrinter(time);
 
-			bin.getValue().forEachCoordinate((x, y, tile) -> {
-				CSVUtils.print(p, time);
-				CSVUtils.print(p, x);
-				CSVUtils.print(p, y);
+			bin.getValue().forEachIndex((xi, yi, tileValue) -> {
+				CSVUtils.print(printer, time);
+				CSVUtils.print(printer, tile.getCentroidX(xi));
+				CSVUtils.print(printer, tile.getCentroidY(yi));
 
 				for (var s : species) {
-					var concentration = tile.concentrations.getDouble(s);
-					CSVUtils.print(p, concentration);
+					var concentration = tileValue.concentrations.getDouble(s);
+					CSVUtils.print(printer, concentration);
 				}
-				CSVUtils.println(p);
+				CSVUtils.println(printer);
 			});
-		});
+		}
 	}
 
-	private DoubleRaster createRasteredBuildings(DoubleRaster.Bounds bounds) {
+	private BuildingMask createBuildingMask(DoubleRaster.Bounds bounds) {
 		if (buildingsFile == null) return null;
 
-		log.info("Creating spatial building index");
-		var options = new ShpOptions(buildingsFile, "EPSG:4326", Charset.defaultCharset());
-		var buildingIndex = options.createIndex("EPSG:25833", "");
-
-		log.info("Creating raster with building data.");
-		var rasteredBuildings = new DoubleRaster(bounds, cellSize);
-		rasteredBuildings.setValueForEachCoordinate((x, y) -> buildingIndex.contains(new Coord(x, y)) ? -1 : 0);
-		return rasteredBuildings;
+		log.info("Creating building mask");
+		return BuildingMask.fromShapeFile(buildingsFile, "EPSG:4326", "EPSG:25833", bounds, cellSize, resultCache.getDirectory());
 	}
 
     /*private static double sumUpLinkEmissions(TimeBinMap<Map<Id<Link>, LinkEmission>> emissionByLink) {
@@ -309,6 +369,12 @@ public class SpatialSmoothing {
 		private double scaleFactor = 10;
 		@Parameter(names = "-fitting")
 		private String fitting = "none";
+		@Parameter(names = "-tileCells", description = "Maximum number of cells per tile. Together with -tiles this determines the peak memory.")
+		private int maxCellsPerTile = 1_000_000;
+		@Parameter(names = "-tiles", description = "Number of tiles which are computed concurrently.")
+		private int concurrentTiles = 1;
+		@Parameter(names = "-cache", description = "Directory to cache the aggregated emissions and the building mask in. Without it, nothing is cached.")
+		private String cacheDirectory;
 
 		private InputArgs() {
 		}
@@ -325,6 +391,71 @@ public class SpatialSmoothing {
 		}
 	}
 
+	/**
+	 * Tiles are computed one after another, but readers like {@link XYTValueCsvData#readTimeSlices} expect the output
+	 * to be sorted by time. This collects the rows of each time bin in a temporary file next to the output file and
+	 * concatenates them in time order, once all tiles are written.
+	 */
+	private static class TimeBinWriter implements AutoCloseable {
+
+		private final Path tempDirectory;
+		private final TimeBinMap<CSVPrinter> printers;
+
+		private TimeBinWriter(Path outputFile, double timeBinSize) {
+			try {
+				this.tempDirectory = Files.createTempDirectory(outputFile.toAbsolutePath().getParent(), "time-bins");
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+			this.printers = new TimeBinMap<>(timeBinSize);
+		}
+
+		private CSVPrinter getPrinter(double time) {
+			var bin = printers.getTimeBin(time);
+			return bin.computeIfAbsent(() -> {
+				try {
+					return new CSVPrinter(Files.newBufferedWriter(getFile(bin.getStartTime())), CSVFormat.DEFAULT);
+				} catch (IOException e) {
+					throw new RuntimeException(e);
+				}
+			});
+		}
+
+		private void write(Path outputFile, List<String> headers) {
+
+			log.info("Concatenating " + printers.getTimeBins().size() + " time bins into: " + outputFile);
+			try (var writer = Files.newBufferedWriter(outputFile)) {
+				// creating the printer writes the header
+				new CSVPrinter(writer, Utils.createWriteFormat(headers.toArray(new String[0]))).flush();
+				for (var bin : printers.getTimeBins()) {
+					bin.getValue().close();
+					try (var reader = Files.newBufferedReader(getFile(bin.getStartTime()))) {
+						reader.transferTo(writer);
+					}
+				}
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		}
+
+		private Path getFile(double startTime) {
+			return tempDirectory.resolve("time-bin-" + (long) startTime + ".csv");
+		}
+
+		@Override
+		public void close() {
+			try {
+				for (var bin : printers.getTimeBins()) {
+					bin.getValue().close();
+					Files.deleteIfExists(getFile(bin.getStartTime()));
+				}
+				Files.deleteIfExists(tempDirectory);
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		}
+	}
+
 	@RequiredArgsConstructor
 	private static class SmoothedTile {
 		private final Object2DoubleMap<String> concentrations = new Object2DoubleArrayMap<>();
@@ -5,6 +5,7 @@ import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVParser;
 import org.apache.commons.csv.CSVPrinter;
 import org.apache.commons.csv.CSVRecord;
+import org.matsim.mosaik2.NumericCsvReader;
 
 import java.io.*;
 import java.nio.file.Files;
@@ -61,6 +62,28 @@ public class CSVUtils {
         return result;
     }
 
+    /**
+     * Reads tables which only have numeric columns considerably faster than {@link #readTable(Path, Function)}. Only the
+     * given columns are parsed. The row2Item function receives the parsed block and the row index within it. The column
+     * index is the position in the columns list. Files ending with '.gz' are decompressed.
+     */
+    public static <T> Collection<T> readNumericTable(Path path, List<String> columns, NumericRowFunction<T> row2Item) {
+
+        List<T> result = new ArrayList<>();
+        NumericCsvReader.builder()
+                .file(path)
+                .columns(columns)
+                .build()
+                .read(block -> {
+                    for (var row = 0; row < block.size(); row++) {
+                        result.add(row2Item.apply(block, row));
+                    }
+                });
+
+        log.info("Finsihed reading csv from: " + path + " parsed " + result.size() + " records");
+        return result;
+    }
+
     public static Reader createReader(Path path) throws IOException {
 
         if (path.getFileName().toString().endsWith(".gz")) {
@@ -93,6 +116,11 @@ public class CSVUtils {
             throw new RuntimeException(e);
         }
     }
+
+    @FunctionalInterface
+    public interface NumericRowFunction<T> {
+        T apply(NumericCsvReader.Block block, int row);
+    }
 }
 
 
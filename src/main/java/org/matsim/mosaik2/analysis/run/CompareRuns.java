@@ -2,33 +2,23 @@ package org.matsim.mosaik2.analysis.run;
 
 import com.beust.jcommander.JCommander;
 import com.beust.jcommander.Parameter;
-import it.unimi.dsi.fastutil.objects.Object2DoubleArrayMap;
-import it.unimi.dsi.fastutil.objects.Object2DoubleMap;
-import lombok.RequiredArgsConstructor;
 import lombok.extern.log4j.Log4j2;
-import org.apache.commons.csv.CSVRecord;
-import org.locationtech.jts.geom.Coordinate;
 import org.locationtech.jts.geom.Geometry;
-import org.locationtech.jts.geom.GeometryFactory;
-import org.locationtech.jts.geom.LineString;
 import org.locationtech.jts.geom.prep.PreparedGeometry;
 import org.locationtech.jts.geom.prep.PreparedGeometryFactory;
-import org.matsim.contrib.analysis.time.TimeBinMap;
 import org.matsim.core.utils.collections.Tuple;
 import org.matsim.core.utils.gis.ShapeFileReader;
-import org.matsim.core.utils.misc.Time;
-import org.matsim.mosaik2.QuadTree;
 import org.matsim.mosaik2.palm.PalmStaticDriverReader;
 import org.opengis.referencing.FactoryException;
 import ucar.nc2.NetcdfFiles;
 
 import java.io.IOException;
-import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -47,35 +37,18 @@ public class CompareRuns {
         var tables = Stream.iterate(0, i -> i + 1).parallel()
                 .limit(input.files.size())
                 .map(i -> Tuple.of(input.names.get(i), Paths.get(input.files.get(i))))
-                .map(entry -> Tuple.of(entry.getFirst(), readTable(entry.getSecond())))
+                .map(entry -> Tuple.of(entry.getFirst(), TripTable.read(entry.getSecond())))
                 .collect(Collectors.toMap(Tuple::getFirst, Tuple::getSecond, (a, b) -> b, ConcurrentHashMap::new));
 
         log.info("Computing modal splits");
-        var modalSplits = tables.entrySet().parallelStream()
-                .map(entry -> Tuple.of(entry.getKey(), entry.getValue().modalSplit(shapeFilter)))
-                .collect(Collectors.toMap(Tuple::getFirst, Tuple::getSecond, (a, b) -> b, ConcurrentHashMap::new));
-
-        var modalSplitsInside = tables.entrySet().parallelStream()
-                .map(entry -> Tuple.of(entry.getKey(), entry.getValue().modalSplitStartEnd(shapeFilter)))
-                .collect(Collectors.toMap(Tuple::getFirst, Tuple::getSecond, (a, b) -> b, ConcurrentHashMap::new));
-
-        var sums = modalSplits.entrySet().parallelStream()
-                .map(entry -> {
-                    var sum = entry.getValue().values().stream()
-                            .mapToDouble(v -> v)
-                            .sum();
-                    return Tuple.of(entry.getKey(), sum);
-                })
+        // all splits of a table are computed in one pass. Each pass is parallel already, so tables are processed one after another
+        var splits = tables.entrySet().stream()
+                .map(entry -> Tuple.of(entry.getKey(), entry.getValue().modalSplits(shapeFilter)))
                 .collect(Collectors.toMap(Tuple::getFirst, Tuple::getSecond));
 
-        var modalShares = modalSplits.entrySet().parallelStream()
-                .map(entry -> {
-                    var shares = entry.getValue().object2DoubleEntrySet().stream()
-                            .map(de -> Tuple.of(de.getKey(), de.getDoubleValue() / sums.get(entry.getKey()).doubleValue()))
-                            .collect(Collectors.toMap(Tuple::getFirst, Tuple::getSecond));
-                    return Tuple.of(entry.getKey(), shares);
-                })
-                .collect(Collectors.toMap(Tuple::getFirst, Tuple::getSecond));
+        var modalSplits = mapValues(splits, TripTable.ModalSplits::split);
+        var modalShares = mapValues(splits, TripTable.ModalSplits::share);
+        var modalSplitsInside = mapValues(splits, TripTable.ModalSplits::splitStartEnd);
 
         var modes = new ArrayList<>(modalSplits.values().iterator().next().keySet().stream().sorted().toList());
 
@@ -99,7 +72,7 @@ public class CompareRuns {
             print(p, name);
 
             for (var mode : modes) {
-                Double value = e.getValue().get(mode);
+                var value = e.getValue().getDouble(mode);
                 print(p, value);
             }
             println(p);
@@ -116,17 +89,9 @@ public class CompareRuns {
             println(printer);
         });
 
-        var splitByHour = tables.entrySet().parallelStream()
-                .map(entry -> Tuple.of(entry.getKey(), entry.getValue().modalSplitByHour(shapeFilter)))
-                .collect(Collectors.toMap(Tuple::getFirst, Tuple::getSecond));
-
-        var splitByHourInside = tables.entrySet().parallelStream()
-                .map(entry -> Tuple.of(entry.getKey(), entry.getValue().modalSplitByHourStartEnd(shapeFilter)))
-                .collect(Collectors.toMap(Tuple::getFirst, Tuple::getSecond));
-
-        var shareByHour = tables.entrySet().parallelStream()
-                .map(entry -> Tuple.of(entry.getKey(), entry.getValue().modalShareByHour(shapeFilter)))
-                .collect(Collectors.toMap(Tuple::getFirst, Tuple::getSecond));
+        var splitByHour = mapValues(splits, TripTable.ModalSplits::splitByHour);
+        var splitByHourInside = mapValues(splits, TripTable.ModalSplits::splitByHourStartEnd);
+        var shareByHour = mapValues(splits, TripTable.ModalSplits::shareByHour);
 
         var tidyHeaders = List.of("name", "time", "mode", "value");
         writeTable(splitByHour.entrySet(), Paths.get(input.outputFolder).resolve("modal-split-hour.csv"), tidyHeaders, (p, e) -> {
@@ -169,10 +134,9 @@ public class CompareRuns {
         });
     }
 
-    private static TripsTable readTable(Path path) {
-
-        var parsedRecords = CSVUtils.readTable(path, TripRecord::fromCsvRecord);
-        return new TripsTable(parsedRecords);
+    private static <T> Map<String, T> mapValues(Map<String, TripTable.ModalSplits> splits, Function<TripTable.ModalSplits, T> getter) {
+        return splits.entrySet().stream()
+                .collect(Collectors.toMap(Map.Entry::getKey, entry -> getter.apply(entry.getValue())));
     }
 
     private static PreparedGeometry createSpatialFilter(InputArgs inputArgs) {
@@ -214,114 +178,4 @@ public class CompareRuns {
         @Parameter(names = "--of")
         private String outputFolder;
     }
-
-    @RequiredArgsConstructor
-    private static class TripRecord {
-
-        private final String mainMode;
-        private final double travelledDistance;
-        private final double euclideanDistance;
-        private final double depTime;
-        private final LineString line;
-
-        public static TripRecord fromCsvRecord(CSVRecord csvRecord) {
-            var mainMode = csvRecord.get("main_mode");
-            var travelledDistance = Double.parseDouble(csvRecord.get("traveled_distance"));
-            var euclideanDistance = Double.parseDouble(csvRecord.get("euclidean_distance"));
-            var startX = Double.parseDouble(csvRecord.get("start_x"));
-            var startY = Double.parseDouble(csvRecord.get("start_y"));
-            var endX = Double.parseDouble(csvRecord.get("end_x"));
-            var endY = Double.parseDouble(csvRecord.get("end_x"));
-            var line = new GeometryFactory().createLineString(new Coordinate[]{
-                    new Coordinate(startX, startY), new Coordinate(endX, endY)
-            });
-            var depTime = Time.parseTime(csvRecord.get("dep_time"));
-
-            return new TripRecord(mainMode, travelledDistance, euclideanDistance, depTime, line);
-        }
-    }
-
-    private static class TripsTable {
-
-        private final Collection<TripRecord> records;
-        private final QuadTree<TripRecord> spatialIndex;
-
-        TripsTable(Collection<TripRecord> records) {
-            this.records = records;
-            spatialIndex = new QuadTree<>();
-            for (var record : records) {
-                spatialIndex.insert(record.line, record);
-            }
-        }
-
-        public Object2DoubleMap<String> modalSplit(PreparedGeometry filter) {
-            if (filter == null) {
-                return records.stream()
-                        .collect(Collectors.toMap(r -> r.mainMode, r -> 10.0, Double::sum, Object2DoubleArrayMap::new));
-            }
-
-            return spatialIndex.intersects(filter).stream()
-                    .collect(Collectors.toMap(r -> r.mainMode, r -> 10., Double::sum, Object2DoubleArrayMap::new));
-        }
-
-        public Object2DoubleMap<String> modalSplitStartEnd(PreparedGeometry filter) {
-            var r = filter == null ? records : spatialIndex.intersects(filter);
-
-            return r.stream()
-                    .filter(record -> (filter.covers(record.line.getStartPoint()) || filter.covers(record.line.getEndPoint())))
-                    .collect(Collectors.toMap(record -> record.mainMode, record -> 10., Double::sum, Object2DoubleArrayMap::new));
-        }
-
-        public TimeBinMap<Object2DoubleMap<String>> modalSplitByHour(PreparedGeometry filter) {
-
-            var r = filter == null ? records : spatialIndex.intersects(filter);
-
-            TimeBinMap<Object2DoubleMap<String>> result = new TimeBinMap<>(3600);
-
-            for (var record : r) {
-                var bin = result.getTimeBin(record.depTime);
-                var map = bin.computeIfAbsent(Object2DoubleArrayMap::new);
-                map.mergeDouble(record.mainMode, 10, Double::sum);
-            }
-
-            return result;
-        }
-
-        public TimeBinMap<Object2DoubleMap<String>> modalSplitByHourStartEnd(PreparedGeometry filter) {
-
-            var r = filter == null ? records : spatialIndex.intersects(filter);
-
-            TimeBinMap<Object2DoubleMap<String>> result = new TimeBinMap<>(3600);
-
-            for (var record : r) {
-                if (filter.covers(record.line.getStartPoint()) || filter.covers(record.line.getEndPoint())) {
-                    var bin = result.getTimeBin(record.depTime);
-                    var map = bin.computeIfAbsent(Object2DoubleArrayMap::new);
-                    map.mergeDouble(record.mainMode, 10, Double::sum);
-                }
-            }
-
-            return result;
-        }
-
-        public TimeBinMap<Object2DoubleMap<String>> modalShareByHour(PreparedGeometry filter) {
-
-            var split = modalSplitByHour(filter);
-
-            TimeBinMap<Object2DoubleMap<String>> result = new TimeBinMap<>(3600);
-
-            for (var splitBin : split.getTimeBins()) {
-
-                var sum = splitBin.getValue().values().stream().mapToDouble(v -> v).sum();
-                var bin = result.getTimeBin(splitBin.getStartTime());
-                var map = bin.computeIfAbsent(Object2DoubleArrayMap::new);
-                for (var entry : splitBin.getValue().object2DoubleEntrySet()) {
-                    map.put(entry.getKey(), entry.getDoubleValue() / sum);
-                }
-            }
-
-            return result;
-        }
-    }
-
-}
\ No newline at end of file
+}
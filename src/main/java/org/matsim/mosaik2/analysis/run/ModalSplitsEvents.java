@@ -42,9 +42,11 @@ public class ModalSplitsEvents {
 		var filter = createSpatialFilter(input);
 
 		log.info("Filter network.");
+		// evaluate the filter once per link. Trips are then tested with a lookup of the link's index
 		var filteredIds = network.getLinks().values().parallelStream()
 				.filter(l -> filter.covers(MGC.coord2Point(l.getCoord())))
-				.collect(Collectors.toSet());
+				.mapToInt(l -> l.getId().index())
+				.collect(BitSet::new, BitSet::set, BitSet::or);
 
 		log.info("Start reading events");
 		var trips = input.runIds.parallelStream()
@@ -54,7 +56,7 @@ public class ModalSplitsEvents {
 
 		log.info("Start creating intersecting trips.");
 		var intersecting = trips.parallelStream()
-				.filter(trip -> trip.getRoute().stream().anyMatch(filteredIds::contains))
+				.filter(trip -> trip.getRoute().stream().anyMatch(id -> filteredIds.get(id.index())))
 				.collect(Collectors.toMap(TripEventHandler.Trip::identifier, trip -> trip));
 
 		//log.info("Start creating non intersecting trips.");
@@ -0,0 +1,245 @@
+package org.matsim.mosaik2.analysis.run;
+
+import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.objects.Object2DoubleArrayMap;
+import it.unimi.dsi.fastutil.objects.Object2DoubleMap;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import lombok.extern.log4j.Log4j2;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.prep.PreparedGeometry;
+import org.matsim.contrib.analysis.time.TimeBinMap;
+import org.matsim.core.utils.misc.Time;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.function.IntPredicate;
+import java.util.stream.IntStream;
+
+/**
+ * Trips of a trips csv file, stored in columns of primitive arrays. Main modes are stored as index into a table of mode
+ * names. {@link #modalSplits(PreparedGeometry)} evaluates the spatial filter once per trip and computes all modal splits
+ * and shares in one parallel pass over the trips.
+ */
+@Log4j2
+class TripTable {
+
+    // runs are 10% samples. Each trip in the table stands for 10 trips
+    private static final double SCALE_FACTOR = 10;
+    private static final double BIN_SIZE = 3600;
+
+    private static final GeometryFactory geometryFactory = new GeometryFactory();
+
+    private final List<String> modes;
+    private final int[] mainModes;
+    private final double[] depTimes;
+    private final double[] startX;
+    private final double[] startY;
+    private final double[] endX;
+    private final double[] endY;
+
+    private TripTable(List<String> modes, int[] mainModes, double[] depTimes, double[] startX, double[] startY, double[] endX, double[] endY) {
+        this.modes = modes;
+        this.mainModes = mainModes;
+        this.depTimes = depTimes;
+        this.startX = startX;
+        this.startY = startY;
+        this.endX = endX;
+        this.endY = endY;
+    }
+
+    static TripTable read(Path path) {
+
+        log.info("read csv from: " + path);
+
+        List<String> modes = new ArrayList<>();
+        Object2IntMap<String> modeIndex = new Object2IntOpenHashMap<>();
+        var mainModes = new IntArrayList();
+        var depTimes = new DoubleArrayList();
+        var startX = new DoubleArrayList();
+        var startY = new DoubleArrayList();
+        var endX = new DoubleArrayList();
+        var endY = new DoubleArrayList();
+
+        var csvFormat = CSVFormat.DEFAULT.builder()
+                .setSkipHeaderRecord(true)
+                .setDelimiter(',')
+                .setHeader()
+                .build();
+        try (var reader = CSVUtils.createReader(path); var parser = CSVParser.parse(reader, csvFormat)) {
+
+            for (var record : parser) {
+                var mode = record.get("main_mode");
+                if (!modeIndex.containsKey(mode)) {
+                    modeIndex.put(mode, modes.size());
+                    modes.add(mode);
+                }
+                mainModes.add(modeIndex.getInt(mode));
+                depTimes.add(Time.parseTime(record.get("dep_time")));
+                startX.add(Double.parseDouble(record.get("start_x")));
+                startY.add(Double.parseDouble(record.get("start_y")));
+                endX.add(Double.parseDouble(record.get("end_x")));
+                endY.add(Double.parseDouble(record.get("end_y")));
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+
+        log.info("Finished reading csv from: " + path + " parsed " + mainModes.size() + " trips");
+        return new TripTable(modes, mainModes.toIntArray(), depTimes.toDoubleArray(), startX.toDoubleArray(), startY.toDoubleArray(), endX.toDoubleArray(), endY.toDoubleArray());
+    }
+
+    int size() {
+        return mainModes.length;
+    }
+
+    /**
+     * Computes the modal splits of all trips intersecting the filter, and of all trips which start or end within the
+     * filter. Splits are computed for the whole day and by hour of the departure time.
+     *
+     * @param filter if null, all trips are counted
+     */
+    ModalSplits modalSplits(PreparedGeometry filter) {
+
+        var intersecting = filter == null ? all() : evaluate(i -> intersects(filter, i));
+        var startOrEnd = filter == null ? all() : evaluate(i -> intersecting.get(i) && startsOrEndsIn(filter, i));
+
+        var numberOfBins = (int) (IntStream.range(0, size()).mapToDouble(i -> depTimes[i]).max().orElse(0) / BIN_SIZE) + 1;
+
+        // each thread counts into its own counters, which are summed up afterwards
+        var counters = IntStream.range(0, size()).parallel()
+                .collect(() -> new Counters(modes.size(), numberOfBins), (c, i) -> {
+                    if (!intersecting.get(i)) return;
+
+                    var mode = mainModes[i];
+                    var bin = (int) (depTimes[i] / BIN_SIZE);
+                    c.split[mode] += SCALE_FACTOR;
+                    c.splitByHour[bin * modes.size() + mode] += SCALE_FACTOR;
+                    if (startOrEnd.get(i)) {
+                        c.splitStartEnd[mode] += SCALE_FACTOR;
+                        c.splitByHourStartEnd[bin * modes.size() + mode] += SCALE_FACTOR;
+                    }
+                }, Counters::add);
+
+        return new ModalSplits(
+                toMap(counters.split, 0, false),
+                toMap(counters.split, 0, true),
+                toMap(counters.splitStartEnd, 0, false),
+                toTimeBinMap(counters.splitByHour, numberOfBins, false),
+                toTimeBinMap(counters.splitByHourStartEnd, numberOfBins, false),
+                toTimeBinMap(counters.splitByHour, numberOfBins, true)
+        );
+    }
+
+    private boolean intersects(PreparedGeometry filter, int i) {
+
+        // check the bounding boxes first, since intersects on the geometry is expensive
+        var envelope = filter.getGeometry().getEnvelopeInternal();
+        if (Math.max(startX[i], endX[i]) < envelope.getMinX() || Math.min(startX[i], endX[i]) > envelope.getMaxX()
+                || Math.max(startY[i], endY[i]) < envelope.getMinY() || Math.min(startY[i], endY[i]) > envelope.getMaxY())
+            return false;
+
+        var line = geometryFactory.createLineString(new Coordinate[]{
+                new Coordinate(startX[i], startY[i]), new Coordinate(endX[i], endY[i])
+        });
+        return filter.intersects(line);
+    }
+
+    private boolean startsOrEndsIn(PreparedGeometry filter, int i) {
+        return filter.covers(geometryFactory.createPoint(new Coordinate(startX[i], startY[i])))
+                || filter.covers(geometryFactory.createPoint(new Coordinate(endX[i], endY[i])));
+    }
+
+    private BitSet all() {
+        var result = new BitSet(size());
+        result.set(0, size());
+        return result;
+    }
+
+    private BitSet evaluate(IntPredicate predicate) {
+        return IntStream.range(0, size()).parallel()
+                .filter(predicate)
+                .collect(BitSet::new, BitSet::set, BitSet::or);
+    }
+
+    /**
+     * Converts counters of one bin into a map which only contains modes with trips.
+     *
+     * @param asShares if true, values are divided by the sum of all values
+     */
+    private Object2DoubleMap<String> toMap(double[] values, int offset, boolean asShares) {
+
+        var sum = 0.;
+        for (var mode = 0; mode < modes.size(); mode++) {
+            sum += values[offset + mode];
+        }
+
+        Object2DoubleMap<String> result = new Object2DoubleArrayMap<>();
+        for (var mode = 0; mode < modes.size(); mode++) {
+            var value = values[offset + mode];
+            if (value > 0) result.put(modes.get(mode), asShares ? value / sum : value);
+        }
+        return result;
+    }
+
+    private TimeBinMap<Object2DoubleMap<String>> toTimeBinMap(double[] values, int numberOfBins, boolean asShares) {
+
+        TimeBinMap<Object2DoubleMap<String>> result = new TimeBinMap<>(BIN_SIZE);
+        for (var bin = 0; bin < numberOfBins; bin++) {
+            var map = toMap(values, bin * modes.size(), asShares);
+            if (!map.isEmpty()) result.getTimeBin(bin * BIN_SIZE).setValue(map);
+        }
+        return result;
+    }
+
+    /**
+     * Modal splits and shares of a trip table. Splits are scaled to the full population.
+     *
+     * @param split               trips intersecting the filter by mode
+     * @param share               share of each mode among the trips intersecting the filter
+     * @param splitStartEnd       trips starting or ending within the filter by mode
+     * @param splitByHour         trips intersecting the filter by departure hour and mode
+     * @param splitByHourStartEnd trips starting or ending within the filter by departure hour and mode
+     * @param shareByHour         share of each mode among the trips intersecting the filter by departure hour
+     */
+    record ModalSplits(Object2DoubleMap<String> split, Object2DoubleMap<String> share, Object2DoubleMap<String> splitStartEnd,
+                       TimeBinMap<Object2DoubleMap<String>> splitByHour, TimeBinMap<Object2DoubleMap<String>> splitByHourStartEnd,
+                       TimeBinMap<Object2DoubleMap<String>> shareByHour) {
+    }
+
+    private static class Counters {
+
+        private final double[] split;
+        private final double[] splitStartEnd;
+        // counters of bin b and mode m are at b * number of modes + m
+        private final double[] splitByHour;
+        private final double[] splitByHourStartEnd;
+
+        Counters(int numberOfModes, int numberOfBins) {
+            split = new double[numberOfModes];
+            splitStartEnd = new double[numberOfModes];
+            splitByHour = new double[numberOfModes * numberOfBins];
+            splitByHourStartEnd = new double[numberOfModes * numberOfBins];
+        }
+
+        void add(Counters other) {
+            addTo(split, other.split);
+            addTo(splitStartEnd, other.splitStartEnd);
+            addTo(splitByHour, other.splitByHour);
+            addTo(splitByHourStartEnd, other.splitByHourStartEnd);
+        }
+
+        private static void addTo(double[] values, double[] otherValues) {
+            for (var i = 0; i < values.length; i++) {
+                values[i] += otherValues[i];
+            }
+        }
+    }
+}
@@ -1,7 +1,9 @@
 package org.matsim.mosaik2.chemistryDriver;
 
+import it.unimi.dsi.fastutil.ints.Int2DoubleOpenHashMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
 import it.unimi.dsi.fastutil.objects.Object2DoubleOpenHashMap;
-import lombok.Getter;
 import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.events.Event;
 import org.matsim.api.core.v01.network.Link;
@@ -10,31 +12,44 @@ import org.matsim.contrib.emissions.Pollutant;
 import org.matsim.contrib.emissions.events.ColdEmissionEvent;
 import org.matsim.contrib.emissions.events.WarmEmissionEvent;
 import org.matsim.core.events.handler.BasicEventHandler;
-import org.matsim.core.utils.collections.Tuple;
 
-import java.util.HashSet;
-import java.util.List;
-import java.util.Map;
-import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 import static org.matsim.mosaik2.chemistryDriver.NetworkUnsimplifier.LENGTH_FRACTION_KEY;
 
+/**
+ * Aggregates emissions of simplified links onto the segments of their original geometry. The emissions of an event are
+ * distributed onto the segments of a link according to the {@link NetworkUnsimplifier#LENGTH_FRACTION_KEY} of each segment.
+ * <p>
+ * The segment map is flattened into primitive arrays once, when the handler is created. Since the segment values are
+ * simply the link value times the length fraction, events are summed up per link and the values are distributed onto
+ * the segments only once, when the result is requested. Events may be passed to this handler from multiple threads.
+ * Each thread sums into its own sparse accumulator. When a result is requested, the accumulators are drained into one
+ * merged map, so that events are merged only once, even if results are requested several times.
+ */
 public class AggregateEmissionsByTimeAndOrigGeometryHandler implements BasicEventHandler {
 
-    @Getter
-    private final TimeBinMap<Map<Pollutant, Map<Id<Link>, Double>>> timeBinMap;
-    @Getter
-    private final Set<Id<Link>> linksWithEmissions = new HashSet<>();
-    private final Map<Id<Link>, List<Link>> links;
+    private final LinkSegments segments;
     private final Set<Pollutant> pollutantsOfInterest;
+    private final boolean[] isPollutantOfInterest = new boolean[Pollutant.values().length];
+    private final double timeBinSize;
     private final double scaleFactor;
 
+    private final Collection<Accumulator> accumulators = new ConcurrentLinkedQueue<>();
+    private final ThreadLocal<Accumulator> threadAccumulator = ThreadLocal.withInitial(this::createAccumulator);
+    // emissions of all accumulators which were drained so far
+    private final Int2ObjectMap<Int2DoubleOpenHashMap[]> mergedEmissions = new Int2ObjectOpenHashMap<>();
+
     public AggregateEmissionsByTimeAndOrigGeometryHandler(Map<Id<Link>, List<Link>> links, Set<Pollutant> pollutantsOfInterest, double timeBinSize, double scaleFactor) {
-        this.timeBinMap = new TimeBinMap<>(timeBinSize);
-        this.links = links;
+        this.segments = new LinkSegments(links);
         this.pollutantsOfInterest = pollutantsOfInterest;
+        this.timeBinSize = timeBinSize;
         this.scaleFactor = scaleFactor;
+
+        for (var pollutant : pollutantsOfInterest) {
+            isPollutantOfInterest[pollutant.ordinal()] = true;
+        }
     }
 
     @Override
@@ -51,32 +66,186 @@ public class AggregateEmissionsByTimeAndOrigGeometryHandler implements BasicEven
 
     private void handleEmissions(double time, Id<Link> linkId, Map<Pollutant, Double> emissions) {
 
-        if (!links.containsKey(linkId)) return;
+        var linkIndex = segments.getLinkIndex(linkId);
+        if (linkIndex < 0) return;
+
+        var emissionsByPollutant = threadAccumulator.get().getEmissions((int) (time / timeBinSize));
+
+        for (var entry : emissions.entrySet()) {
+            var ordinal = entry.getKey().ordinal();
+            double value = entry.getValue();
+            if (isPollutantOfInterest[ordinal] && value > 0.0) {
+                emissionsByPollutant[ordinal].addTo(linkIndex, value);
+            }
+        }
+    }
+
+    /**
+     * Merges the emissions of all threads and distributes them onto the segments of each link. Each time bin which has
+     * received emissions contains a map for each pollutant of interest.
+     *
+     * @return emissions by time bin, pollutant and segment id
+     */
+    public TimeBinMap<Map<Pollutant, Map<Id<Link>, Double>>> getTimeBinMap() {
+
+        mergeAccumulators();
+        TimeBinMap<Map<Pollutant, Map<Id<Link>, Double>>> result = new TimeBinMap<>(timeBinSize);
+
+        var binIndices = mergedEmissions.keySet().toIntArray();
+        Arrays.sort(binIndices);
+
+        for (var binIndex : binIndices) {
+
+            var emissionsByPollutant = mergedEmissions.get(binIndex);
+            Map<Pollutant, Map<Id<Link>, Double>> segmentEmissionsByPollutant = new HashMap<>();
+
+            for (var pollutant : pollutantsOfInterest) {
+                var linkEmissions = emissionsByPollutant[pollutant.ordinal()];
+                var segmentEmissions = new Object2DoubleOpenHashMap<Id<Link>>();
+
+                for (var entry : linkEmissions.int2DoubleEntrySet()) {
+                    var linkIndex = entry.getIntKey();
+                    var scaledValue = entry.getDoubleValue() * scaleFactor;
+                    for (var s = segments.segmentStart[linkIndex]; s < segments.segmentStart[linkIndex + 1]; s++) {
+                        segmentEmissions.addTo(segments.segmentIds[s], scaledValue * segments.lengthFractions[s]);
+                    }
+                }
+                segmentEmissionsByPollutant.put(pollutant, segmentEmissions);
+            }
+            result.getTimeBin(binIndex * timeBinSize).setValue(segmentEmissionsByPollutant);
+        }
+        return result;
+    }
+
+    /**
+     * @return ids of all segments which have received emissions
+     */
+    public Set<Id<Link>> getLinksWithEmissions() {
+
+        mergeAccumulators();
+        var linksWithEmissions = new boolean[segments.linkIds.length];
+        for (var emissionsByPollutant : mergedEmissions.values()) {
+            for (var pollutant : pollutantsOfInterest) {
+                for (var linkIndex : emissionsByPollutant[pollutant.ordinal()].keySet()) {
+                    linksWithEmissions[linkIndex] = true;
+                }
+            }
+        }
+
+        Set<Id<Link>> result = new HashSet<>();
+        for (var linkIndex = 0; linkIndex < linksWithEmissions.length; linkIndex++) {
+            if (!linksWithEmissions[linkIndex]) continue;
+            for (var s = segments.segmentStart[linkIndex]; s < segments.segmentStart[linkIndex + 1]; s++) {
+                result.add(segments.segmentIds[s]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Moves the emissions of all accumulators into the merged emissions. Must not be called while events are handled.
+     */
+    private void mergeAccumulators() {
 
-        var timeBin = timeBinMap.getTimeBin(time);
-        if (!timeBin.hasValue()) {
-            // pre-populate map with keys, so that we have values for each time bin. Otherwise, we've had errors
-            Map<Pollutant, Map<Id<Link>, Double>> emptyEmissionByPollutant = this.pollutantsOfInterest.stream()
-                    .collect(Collectors.toMap(p -> p, p -> new Object2DoubleOpenHashMap<>()));
-            timeBin.setValue(emptyEmissionByPollutant);
+        for (var accumulator : accumulators) {
+            for (var entry : accumulator.emissionsByBin.int2ObjectEntrySet()) {
+                var merged = mergedEmissions.get(entry.getIntKey());
+                if (merged == null) {
+                    mergedEmissions.put(entry.getIntKey(), entry.getValue());
+                } else {
+                    add(merged, entry.getValue());
+                }
+            }
+            accumulator.emissionsByBin.clear();
         }
+    }
+
+    private Accumulator createAccumulator() {
+        var accumulator = new Accumulator();
+        accumulators.add(accumulator);
+        return accumulator;
+    }
+
+    private static void add(Int2DoubleOpenHashMap[] target, Int2DoubleOpenHashMap[] source) {
+        for (var i = 0; i < source.length; i++) {
+            if (source[i] == null) continue;
+            for (var entry : source[i].int2DoubleEntrySet()) {
+                target[i].addTo(entry.getIntKey(), entry.getDoubleValue());
+            }
+        }
+    }
+
+    /**
+     * Emissions summed up by a single thread. Keyed by time bin index, then indexed by pollutant ordinal and keyed by
+     * link index. Maps only hold links with emissions and are only allocated for pollutants of interest, so that memory
+     * doesn't grow with the size of the network times the number of time bins and threads.
+     */
+    private class Accumulator {
+
+        private final Int2ObjectMap<Int2DoubleOpenHashMap[]> emissionsByBin = new Int2ObjectOpenHashMap<>();
+
+        private Int2DoubleOpenHashMap[] getEmissions(int binIndex) {
+
+            var emissions = emissionsByBin.get(binIndex);
+            if (emissions == null) {
+                emissions = new Int2DoubleOpenHashMap[isPollutantOfInterest.length];
+                for (var ordinal = 0; ordinal < isPollutantOfInterest.length; ordinal++) {
+                    if (isPollutantOfInterest[ordinal]) emissions[ordinal] = new Int2DoubleOpenHashMap();
+                }
+                emissionsByBin.put(binIndex, emissions);
+            }
+            return emissions;
+        }
+    }
 
-        var emissionByPollutant = timeBin.getValue();
-        var segments = links.get(linkId);
-
-        emissions.entrySet().stream()
-                .filter(entry -> pollutantsOfInterest.contains(entry.getKey()))
-                .filter(entry -> entry.getValue() > 0.0)
-                .flatMap(entry -> segments.stream().map(segment -> Tuple.of(segment, entry)))
-                .forEach(tuple -> {
-                    var key = tuple.getSecond().getKey();
-                    var emissionFromEvent = tuple.getSecond().getValue();
-                    var segment = tuple.getFirst();
-                    var lengthFraction = (double) tuple.getFirst().getAttributes().getAttribute(LENGTH_FRACTION_KEY);
-                    var value = emissionFromEvent * scaleFactor * lengthFraction;
-                    var linkEmissions = emissionByPollutant.computeIfAbsent(key, p -> new Object2DoubleOpenHashMap<>());
-                    linkEmissions.merge(segment.getId(), value, Double::sum);
-                    linksWithEmissions.add(segment.getId());
-                });
+    /**
+     * Flat representation of a link to segments map. The segments of the link with index i are stored from
+     * segmentStart[i] (inclusive) to segmentStart[i + 1] (exclusive) in segmentIds and lengthFractions.
+     */
+    private static class LinkSegments {
+
+        private final Id<Link>[] linkIds;
+        private final int[] segmentStart;
+        private final Id<Link>[] segmentIds;
+        private final double[] lengthFractions;
+
+        // maps Id.index() of a link onto the index of the link within this data structure
+        private final int[] idIndexToLinkIndex;
+
+        @SuppressWarnings("unchecked")
+        private LinkSegments(Map<Id<Link>, List<Link>> links) {
+
+            var numberOfSegments = links.values().stream().mapToInt(List::size).sum();
+            var maxIdIndex = links.keySet().stream().mapToInt(Id::index).max().orElse(-1);
+
+            this.linkIds = new Id[links.size()];
+            this.segmentStart = new int[links.size() + 1];
+            this.segmentIds = new Id[numberOfSegments];
+            this.lengthFractions = new double[numberOfSegments];
+            this.idIndexToLinkIndex = new int[maxIdIndex + 1];
+            Arrays.fill(idIndexToLinkIndex, -1);
+
+            var linkIndex = 0;
+            var segmentIndex = 0;
+            for (var entry : links.entrySet()) {
+
+                linkIds[linkIndex] = entry.getKey();
+                idIndexToLinkIndex[entry.getKey().index()] = linkIndex;
+                segmentStart[linkIndex] = segmentIndex;
+
+                for (var segment : entry.getValue()) {
+                    segmentIds[segmentIndex] = segment.getId();
+                    lengthFractions[segmentIndex] = (double) segment.getAttributes().getAttribute(LENGTH_FRACTION_KEY);
+                    segmentIndex++;
+                }
+                linkIndex++;
+            }
+            segmentStart[linkIndex] = segmentIndex;
+        }
+
+        private int getLinkIndex(Id<Link> linkId) {
+            var idIndex = linkId.index();
+            return idIndex < idIndexToLinkIndex.length ? idIndexToLinkIndex[idIndex] : -1;
+        }
     }
 }
@@ -2,7 +2,6 @@ package org.matsim.mosaik2.chemistryDriver;
 
 import com.beust.jcommander.JCommander;
 import com.beust.jcommander.Parameter;
-import com.google.common.util.concurrent.AtomicDouble;
 import lombok.extern.log4j.Log4j2;
 import org.matsim.contrib.analysis.time.TimeBinMap;
 import org.matsim.core.utils.collections.Tuple;
@@ -73,11 +72,13 @@ public class AverageBackgroundEmissions {
 
     DoubleRaster average(DoubleRaster raster) {
 
-        // sum up all values
-        AtomicDouble sum = new AtomicDouble();
-        raster.forEachIndex((xi, yi, value) -> sum.getAndAdd(value));
-        int numberOfEntries = raster.getXLength() * raster.getYLength();
-        double average = sum.doubleValue() / numberOfEntries;
+        var sum = 0.;
+        for (var xi = 0; xi < raster.getXLength(); xi++) {
+            for (var yi = 0; yi < raster.getYLength(); yi++) {
+                sum += raster.getValueByIndex(xi, yi);
+            }
+        }
+        var average = sum / (raster.getXLength() * raster.getYLength());
 
         var result = new DoubleRaster(raster.getBounds(), raster.getCellSize());
         result.setValueForEachIndex((xi, yi) -> average);
@@ -8,16 +8,20 @@ import org.matsim.api.core.v01.network.Link;
 import org.matsim.api.core.v01.network.Network;
 import org.matsim.core.utils.collections.Tuple;
 import org.matsim.core.utils.geometry.geotools.MGC;
+import org.matsim.mosaik2.raster.AbstractRaster;
 import org.matsim.mosaik2.raster.DoubleRaster;
+import org.matsim.mosaik2.raster.SparseDoubleRaster;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 public abstract class Bresenham {
 
+    static final ThreadLocal<CellBuffer> BUFFER = ThreadLocal.withInitial(CellBuffer::new);
+
     /**
      * rasterizes link onto cells it crosses. The 'line' which is drawn is 1 cell wide. The emissions of the link are
      * equally distributed into the cells. Additionally the emissions per link are divided by cell area. If a link has
@@ -27,21 +31,13 @@ public abstract class Bresenham {
     static DoubleRaster rasterizeNetwork(final Network network, final DoubleRaster.Bounds bounds, final TObjectDoubleMap<Id<Link>> emissions, final double cellSize) {
 
         var raster = new DoubleRaster(bounds, cellSize);
-        final var area = cellSize * cellSize;
+        var xOffset = getXOffset(raster);
+        var yOffset = getYOffset(raster);
+        var buffer = BUFFER.get();
 
         emissions.forEachEntry((linkId, value) -> {
-
             var link = network.getLinks().get(linkId);
-            // first count number of cells
-            var counter = new AtomicInteger();
-            rasterizeLink(link, cellSize, (x, y) -> counter.incrementAndGet());
-            // second pass for actually writing the emission values
-            rasterizeLink(link, cellSize, (x, y) -> {
-
-                if (bounds.covers(x, y))
-                    raster.adjustValueForCoord(x, y, value / counter.get() / area);
-            });
-
+            rasterizeLink(link, value, raster, xOffset, yOffset, buffer, raster::adjustValueForIndex);
             return true;
         });
 
@@ -59,26 +55,50 @@ public abstract class Bresenham {
     static DoubleRaster rasterizeNetwork(final Network network, final DoubleRaster.Bounds bounds, final Map<Id<Link>, Double> emissions, final double cellSize) {
 
         var raster = new DoubleRaster(bounds, cellSize);
-        final var area = cellSize * cellSize;
+        rasterizeNetwork(network, raster, emissions, raster::adjustValueForIndex);
+        return raster;
+    }
 
+    /**
+     * Same as {@link #rasterizeNetwork(Network, DoubleRaster.Bounds, Map, double)} but writes the emissions into a
+     * {@link SparseDoubleRaster}, which only stores the cells touched by links.
+     */
+    static SparseDoubleRaster rasterizeNetworkSparse(final Network network, final DoubleRaster.Bounds bounds, final Map<Id<Link>, Double> emissions, final double cellSize) {
 
-        for (var entry : emissions.entrySet()) {
+        var raster = new SparseDoubleRaster(bounds, cellSize);
+        rasterizeNetwork(network, raster, emissions, raster::adjustValueForIndex);
+        return raster;
+    }
 
-            var link = network.getLinks().get(entry.getKey());
-            final double value = entry.getValue();
+    private static void rasterizeNetwork(final Network network, final AbstractRaster raster, final Map<Id<Link>, Double> emissions, final DoubleRaster.IndexDoubleConsumer valueConsumer) {
 
-            // first count number of cells
-            var counter = new AtomicInteger();
-            rasterizeLink(link, cellSize, (x, y) -> counter.incrementAndGet());
-            // second pass for actually writing the emission values
-            rasterizeLink(link, cellSize, (x, y) -> {
+        var xOffset = getXOffset(raster);
+        var yOffset = getYOffset(raster);
+        var buffer = BUFFER.get();
 
-                if (bounds.covers(x, y))
-                    raster.adjustValueForCoord(x, y, value / counter.get() / area);
-            });
+        for (var entry : emissions.entrySet()) {
+            var link = network.getLinks().get(entry.getKey());
+            rasterizeLink(link, entry.getValue(), raster, xOffset, yOffset, buffer, valueConsumer);
         }
+    }
 
-        return raster;
+    /**
+     * Walks the link once, collecting all cells into the buffer. The value is then divided by the number of cells, also
+     * counting those outside the raster, so that the emissions of links which leave the raster are cut off.
+     */
+    private static void rasterizeLink(Link link, double value, AbstractRaster raster, int xOffset, int yOffset, CellBuffer buffer, DoubleRaster.IndexDoubleConsumer valueConsumer) {
+
+        rasterizeLink(link, raster.getCellSize(), xOffset, yOffset, true, buffer);
+
+        var area = raster.getCellSize() * raster.getCellSize();
+        var valuePerCell = value / buffer.size() / area;
+        for (var i = 0; i < buffer.size(); i++) {
+            var xi = buffer.getXIndex(i);
+            var yi = buffer.getYIndex(i);
+            if (0 <= xi && xi < raster.getXLength() && 0 <= yi && yi < raster.getYLength()) {
+                valueConsumer.consume(xi, yi, valuePerCell);
+            }
+        }
     }
 
     static Map<Id<Link>, List<Coord>> rasterizeNetwork(final Network network, final Geometry bounds, final double cellSize) {
@@ -86,24 +106,52 @@ public abstract class Bresenham {
         return network.getLinks().values().parallelStream()
                 // wrap this in a stream to achieve cheap parallelism
                 .map(link -> {
-                    List<Coord> cells = new ArrayList<>();
-                    rasterizeLink(link, cellSize, (x, y) -> {
-                        var coord = new Coord(x, y);
+                    var buffer = BUFFER.get();
+                    rasterizeLink(link, cellSize, 0, 0, true, buffer);
+                    List<Coord> cells = new ArrayList<>(buffer.size());
+                    for (var i = 0; i < buffer.size(); i++) {
+                        var coord = new Coord(buffer.getXIndex(i) * cellSize, buffer.getYIndex(i) * cellSize);
                         if (bounds.covers(MGC.coord2Point(coord))) {
                             cells.add(coord);
                         }
-                    });
+                    }
                     return Tuple.of(link.getId(), cells);
                 })
                 .collect(Collectors.toMap(Tuple::getFirst, Tuple::getSecond));
     }
 
-    private static void rasterizeLink(Link link, double cellSize, DoubleBinaryConsumer coordConsumer) {
+    /**
+     * Cells of the rasterization are aligned with multiples of the cell size. This computes the offset between those
+     * cells and the x-indices of the raster, so that endpoints of links are converted into raster indices only once.
+     */
+    static int getXOffset(AbstractRaster raster) {
+        // use a cell inside the raster, because AbstractRaster::getXIndex truncates towards zero.
+        var reference = (int) Math.ceil(raster.getBounds().getMinX() / raster.getCellSize());
+        return raster.getXIndex(reference * raster.getCellSize()) - reference;
+    }
+
+    /**
+     * @see #getXOffset(AbstractRaster)
+     */
+    static int getYOffset(AbstractRaster raster) {
+        var reference = (int) Math.ceil(raster.getBounds().getMinY() / raster.getCellSize());
+        return raster.getYIndex(reference * raster.getCellSize()) - reference;
+    }
+
+    /**
+     * Writes the cells crossed by a link into the buffer. The buffer is cleared beforehand.
+     *
+     * @param xOffset        offset added to the x-index of each cell. 0 yields cells as multiples of the cell size.
+     * @param yOffset        offset added to the y-index of each cell.
+     * @param includeEndCell whether the cell after the end of the original algorithm is included. The emission
+     *                       rasterization uses this, to make sure the cell of the to-node is covered.
+     */
+    static void rasterizeLink(Link link, double cellSize, int xOffset, int yOffset, boolean includeEndCell, CellBuffer buffer) {
 
-        int x0 = (int) (link.getFromNode().getCoord().getX() / cellSize);
-        int x1 = (int) (link.getToNode().getCoord().getX() / cellSize);
-        int y0 = (int) (link.getFromNode().getCoord().getY() / cellSize);
-        int y1 = (int) (link.getToNode().getCoord().getY() / cellSize);
+        int x0 = (int) (link.getFromNode().getCoord().getX() / cellSize) + xOffset;
+        int x1 = (int) (link.getToNode().getCoord().getX() / cellSize) + xOffset;
+        int y0 = (int) (link.getFromNode().getCoord().getY() / cellSize) + yOffset;
+        int y1 = (int) (link.getToNode().getCoord().getY() / cellSize) + yOffset;
         int dx = Math.abs(x1 - x0);
         int dy = -Math.abs(y1 - y0);
         int err = dx + dy, e2;
@@ -111,14 +159,17 @@ public abstract class Bresenham {
         int sx = x0 < x1 ? 1 : -1;
         int sy = y0 < y1 ? 1 : -1;
 
+        buffer.clear();
+
         if (dx == 0 && dy == 0) {
             // the algorithm doesn't really support lines shorter than the cell size.
             // do avoid complicated computation within the loop, catch this case here
-            coordConsumer.accept(x0 * cellSize, y0 * cellSize);
+            buffer.add(x0, y0);
+            return;
         }
 
         do {
-            coordConsumer.accept(x0 * cellSize, y0 * cellSize);
+            buffer.add(x0, y0);
 
             e2 = err + err;
             if (e2 >= dy) {
@@ -131,7 +182,7 @@ public abstract class Bresenham {
             }
             // have this condition in separate method because we want to get one more cell than the original algorithm
             // but then the direction of the line requires different conditions
-        } while (keepRasterizing(x0, x1, sx) && keepRasterizing(y0, y1, sy));
+        } while (includeEndCell ? keepRasterizing(x0, x1, sx) && keepRasterizing(y0, y1, sy) : x0 != x1 || y0 != y1);
     }
 
     private static boolean keepRasterizing(int value, int endCondition, int direction) {
@@ -140,8 +191,38 @@ public abstract class Bresenham {
         else return value >= endCondition;
     }
 
-    @FunctionalInterface
-    interface DoubleBinaryConsumer {
-        void accept(double x, double y);
+    /**
+     * Reusable buffer for the cells of a link. Cells are stored as consecutive pairs of x- and y-index. Instances are
+     * not thread safe. Use {@link #BUFFER} to obtain one per thread.
+     */
+    static class CellBuffer {
+
+        private int[] cells = new int[128];
+        private int size;
+
+        void clear() {
+            size = 0;
+        }
+
+        void add(int xi, int yi) {
+            if (2 * size + 1 >= cells.length) {
+                cells = Arrays.copyOf(cells, cells.length * 2);
+            }
+            cells[2 * size] = xi;
+            cells[2 * size + 1] = yi;
+            size++;
+        }
+
+        int size() {
+            return size;
+        }
+
+        int getXIndex(int i) {
+            return cells[2 * i];
+        }
+
+        int getYIndex(int i) {
+            return cells[2 * i + 1];
+        }
     }
 }
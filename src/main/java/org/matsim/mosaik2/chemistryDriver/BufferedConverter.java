@@ -14,8 +14,10 @@ import org.matsim.core.events.EventsUtils;
 import org.matsim.core.network.NetworkUtils;
 import org.matsim.core.utils.geometry.CoordinateTransformation;
 import org.matsim.core.utils.geometry.transformations.IdentityTransformation;
+import org.matsim.mosaik2.raster.BuildingMask;
 import org.matsim.mosaik2.raster.DoubleRaster;
 
+import java.nio.file.Path;
 import java.time.LocalDateTime;
 import java.util.Map;
 
@@ -30,7 +32,7 @@ public class BufferedConverter {
 
     private final String outputFile;
 
-    private final DoubleRaster buildings;
+    private final BuildingMask buildings;
 
     @Builder.Default
     private final double timeBinSize = 3600;
@@ -50,15 +52,19 @@ public class BufferedConverter {
     private final double laneWidth = 5;
     @Builder.Default
     private final EmissionRasterer.RasterMethod rasterMethod = EmissionRasterer.RasterMethod.WithLaneWidth;
+    // original link geometries are only cached if a directory is set
+    private final Path segmentCacheDirectory;
 
     public void write() {
 
-        var network = NetworkUtils.readNetwork(networkFile, ConfigUtils.createConfig().network(), transformation).getLinks().values().stream()
+        var fullNetwork = NetworkUtils.readNetwork(networkFile, ConfigUtils.createConfig().network(), transformation);
+        var network = fullNetwork.getLinks().values().stream()
                 .filter(link -> FullFeaturedConverter.isCoveredBy(link, buildings.getBounds()))
                 .collect(NetworkUtils.getCollector());
 
         log.info("Unsimplifying network");
-        var link2Segments = NetworkUnsimplifier.unsimplifyNetwork(network, transformation);
+        var link2Segments = SegmentGeometryStore.loadOrCreate(networkFile, fullNetwork, segmentCacheDirectory)
+                .createSegments(network, transformation);
 
         // read the emission events
         var manager = EventsUtils.createEventsManager();
@@ -111,7 +117,7 @@ public class BufferedConverter {
     private TimeBinMap<Map<String, DoubleRaster>> raster(TimeBinMap<Map<String, Map<Id<Link>, Double>>> palmEmissions, Network segmentNetwork) {
 
         if (rasterMethod.equals(EmissionRasterer.RasterMethod.WithLaneWidth)) {
-            return EmissionRasterer.rasterWithSwing(palmEmissions, segmentNetwork, buildings, laneWidth);
+            return EmissionRasterer.rasterWithLaneWidth(palmEmissions, segmentNetwork, buildings, laneWidth);
         } else {
             return EmissionRasterer.raster(palmEmissions, segmentNetwork, buildings.getBounds(), buildings.getCellSize());
         }
@@ -13,12 +13,18 @@ import org.matsim.api.core.v01.network.Network;
 import org.matsim.contrib.analysis.time.TimeBinMap;
 import org.matsim.core.utils.collections.Tuple;
 import org.matsim.mosaik2.SpatialIndex;
+import org.matsim.mosaik2.raster.BuildingMask;
 import org.matsim.mosaik2.raster.DoubleRaster;
+import org.matsim.mosaik2.raster.SparseDoubleRaster;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @RequiredArgsConstructor
@@ -28,25 +34,112 @@ public class EmissionRasterer {
 	public static final double LANE_WIDTH = 3.5;
 
 	static <T> TimeBinMap<Map<T, DoubleRaster>> raster(TimeBinMap<Map<T, Map<Id<Link>, Double>>> timeBinMap, Network network, DoubleRaster.Bounds bounds, double cellSize) {
+		return raster(timeBinMap, network, bounds, cellSize, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Rasters emissions with {@link Bresenham}. The cells of each link are computed once. Then each combination of time bin
+	 * and species is rastered into its own {@link DoubleRaster} on a thread pool with the given parallelism.
+	 */
+	static <T> TimeBinMap<Map<T, DoubleRaster>> raster(TimeBinMap<Map<T, Map<Id<Link>, Double>>> timeBinMap, Network network, DoubleRaster.Bounds bounds, double cellSize, int parallelism) {
+
+		var linkCells = LinkCellMap.create(network, bounds, cellSize);
+		return rasterParallel(timeBinMap, parallelism, emissions -> {
+			var raster = new DoubleRaster(bounds, cellSize);
+			linkCells.rasterize(emissions, raster::adjustValueForIndex);
+			return raster;
+		});
+	}
+
+	static <T> TimeBinMap<Map<T, SparseDoubleRaster>> rasterSparse(TimeBinMap<Map<T, Map<Id<Link>, Double>>> timeBinMap, Network network, DoubleRaster.Bounds bounds, double cellSize) {
+		return rasterSparse(timeBinMap, network, bounds, cellSize, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Same as {@link #raster(TimeBinMap, Network, DoubleRaster.Bounds, double, int)} but stores the emissions in
+	 * {@link SparseDoubleRaster}s. Only the cells touched by links are kept in memory, which is a small fraction of all
+	 * cells for large rasters.
+	 */
+	static <T> TimeBinMap<Map<T, SparseDoubleRaster>> rasterSparse(TimeBinMap<Map<T, Map<Id<Link>, Double>>> timeBinMap, Network network, DoubleRaster.Bounds bounds, double cellSize, int parallelism) {
+
+		var linkCells = LinkCellMap.create(network, bounds, cellSize);
+		return rasterParallel(timeBinMap, parallelism, emissions -> {
+			var raster = new SparseDoubleRaster(bounds, cellSize);
+			linkCells.rasterize(emissions, raster::adjustValueForIndex);
+			return raster;
+		});
+	}
+
+	/**
+	 * Applies the rasterizer to each (time bin, species) combination. The combinations are processed concurrently on a
+	 * pool with the given parallelism. The rasterizer must create a new raster for each call.
+	 */
+	private static <T, R> TimeBinMap<Map<T, R>> rasterParallel(TimeBinMap<Map<T, Map<Id<Link>, Double>>> timeBinMap, int parallelism, Function<Map<Id<Link>, Double>, R> rasterizer) {
 
-		TimeBinMap<Map<T, DoubleRaster>> rasterTimeBinMap = new TimeBinMap<>(timeBinMap.getBinSize());
+		record WorkItem<T>(double startTime, T species, Map<Id<Link>, Double> emissions) {}
 
+		// init result map here, so that bins without emissions are kept as well
+		TimeBinMap<Map<T, R>> result = new TimeBinMap<>(timeBinMap.getBinSize());
+		List<WorkItem<T>> workItems = new ArrayList<>();
 		for (var bin : timeBinMap.getTimeBins()) {
+			result.getTimeBin(bin.getStartTime()).setValue(new HashMap<>());
+			for (var entry : bin.getValue().entrySet()) {
+				workItems.add(new WorkItem<>(bin.getStartTime(), entry.getKey(), entry.getValue()));
+			}
+		}
 
-			var rasterByPollutant = bin.getValue().entrySet().stream()
-					.map(entry -> {
-						var emissionsByLink = entry.getValue();
-						var raster = Bresenham.rasterizeNetwork(network, bounds, emissionsByLink, cellSize);
-						return Tuple.of(entry.getKey(), raster);
-					})
-					.collect(Collectors.toMap(Tuple::getFirst, Tuple::getSecond));
+		log.info("Rastering " + workItems.size() + " combinations of time bins and species with a parallelism of " + parallelism);
+		var pool = new ForkJoinPool(Math.max(1, parallelism));
+		try {
+			var rasters = pool.submit(() -> workItems.parallelStream()
+					.map(item -> rasterizer.apply(item.emissions()))
+					.collect(Collectors.toList())
+			).join();
+
+			for (var i = 0; i < workItems.size(); i++) {
+				var item = workItems.get(i);
+				result.getTimeBin(item.startTime()).getValue().put(item.species(), rasters.get(i));
+			}
+		} finally {
+			pool.shutdown();
+		}
+		return result;
+	}
+
+	/**
+	 * Rasters emissions onto the lanes of links with {@link ThickBresenham}, using the default {@link #LANE_WIDTH}.
+	 */
+	static <T> TimeBinMap<Map<T, DoubleRaster>> rasterWithLaneWidth(TimeBinMap<Map<T, Map<Id<Link>, Double>>> timeBinMap, Network network, BuildingMask buildings) {
+		return rasterWithLaneWidth(timeBinMap, network, buildings, LANE_WIDTH);
+	}
+
+	/**
+	 * Rasters emissions onto the lanes of links. Each cell receives emissions according to the share of the lanes it
+	 * covers. Cells with buildings don't receive emissions. This yields the same result as
+	 * {@link #rasterWithSwing(TimeBinMap, Network, BuildingMask, double)} with anti-aliasing but is much faster and time
+	 * bins are rastered concurrently.
+	 */
+	static <T> TimeBinMap<Map<T, DoubleRaster>> rasterWithLaneWidth(TimeBinMap<Map<T, Map<Id<Link>, Double>>> timeBinMap, Network network, BuildingMask buildings, double laneWidth) {
 
-			rasterTimeBinMap.getTimeBin(bin.getStartTime()).setValue(rasterByPollutant);
+		// init result map here, so we can rasterize concurrently
+		TimeBinMap<Map<T, DoubleRaster>> result = new TimeBinMap<>(timeBinMap.getBinSize());
+		for (var bin : timeBinMap.getTimeBins()) {
+			result.getTimeBin(bin.getStartTime());
 		}
-		return rasterTimeBinMap;
+
+		result.getTimeBins().parallelStream().forEach(resultBin -> {
+
+			log.info("Processing time slice: " + resultBin.getStartTime());
+			var bin = timeBinMap.getTimeBin(resultBin.getStartTime());
+			var rasterByPollutant = bin.getValue().entrySet().stream()
+					.map(entry -> Tuple.of(entry.getKey(), ThickBresenham.rasterizeNetwork(network, buildings, entry.getValue(), laneWidth)))
+					.collect(Collectors.toMap(Tuple::getFirst, Tuple::getSecond));
+			resultBin.setValue(rasterByPollutant);
+		});
+		return result;
 	}
 
-	static <T> TimeBinMap<Map<T, DoubleRaster>> rasterWithSwing(TimeBinMap<Map<T, Map<Id<Link>, Double>>> timeBinMap, Network network, DoubleRaster buildings, double laneWidth) {
+	static <T> TimeBinMap<Map<T, DoubleRaster>> rasterWithSwing(TimeBinMap<Map<T, Map<Id<Link>, Double>>> timeBinMap, Network network, BuildingMask buildings, double laneWidth) {
 
 		var rasterizer = new SwingRasterizer(buildings.getBounds(), buildings.getCellSize(), laneWidth);
 		// init result map here, so we can rasterize concurrently
@@ -78,7 +171,7 @@ public class EmissionRasterer {
 		return result;
 	}
 
-	static <T> TimeBinMap<Map<T, DoubleRaster>> rasterWithBuffer(TimeBinMap<Map<T, Map<Id<Link>, Double>>> timeBinMap, Network network, DoubleRaster buildings) {
+	static <T> TimeBinMap<Map<T, DoubleRaster>> rasterWithBuffer(TimeBinMap<Map<T, Map<Id<Link>, Double>>> timeBinMap, Network network, BuildingMask buildings) {
 
 		log.info("Starting raster process of buffered link geometries.");
 		Set<Geometry> geometries = new HashSet<>();
@@ -86,10 +179,10 @@ public class EmissionRasterer {
 		var halfCellSize = buildings.getCellSize() / 2;
 
 		log.info("Create geometries for raster cells.");
-		buildings.forEachCoordinate((x, y, value) -> {
+		buildings.forEachCoordinate((x, y, isBuilding) -> {
 
 			// don't create cells for buildings.
-			if (value > 0) return;
+			if (isBuilding) return;
 
 			var cell = factory.createPolygon(new Coordinate[]{
 					new Coordinate(x - halfCellSize, y - halfCellSize), new Coordinate(x + halfCellSize, y - halfCellSize),
@@ -117,6 +210,16 @@ public class EmissionRasterer {
 				.collect(Collectors.toMap(Tuple::getFirst, Tuple::getSecond));
 		log.info("Finished creating link geometries");
 
+		// the cells covered by a link are the same for all time bins and pollutants. Find them once.
+		log.info("Find cells covered by link geometries.");
+		var linkCells = bufferdLinks.entrySet().parallelStream()
+				.map(entry -> {
+					List<Coordinate> cells = new ArrayList<>();
+					index.forEachIntersecting(entry.getValue(), cells::add);
+					return Tuple.of(entry.getKey(), cells);
+				})
+				.collect(Collectors.toMap(Tuple::getFirst, Tuple::getSecond));
+
 		// init result map here, so we can rasterize concurrently
 		TimeBinMap<Map<T, DoubleRaster>> result = new TimeBinMap<>(timeBinMap.getBinSize());
 		for (var bin : timeBinMap.getTimeBins()) {
@@ -139,11 +242,10 @@ public class EmissionRasterer {
 						var raster = new DoubleRaster(buildings.getBounds(), buildings.getCellSize());
 
 						for (var linkEmission : emissionsByLink.entrySet()) {
-							var bufferedLinkGeometry = bufferdLinks.get(linkEmission.getKey());
-							var cells = index.intersects(bufferedLinkGeometry);
+							var cells = linkCells.get(linkEmission.getKey());
+							var value = linkEmission.getValue() / cells.size();
 							for (var cell : cells) {
-								var value = linkEmission.getValue();
-								raster.adjustValueForCoord(cell.getX(), cell.getY(), value / cells.size());
+								raster.adjustValueForCoord(cell.getX(), cell.getY(), value);
 							}
 						}
 						return Tuple.of(entry.getKey(), raster);
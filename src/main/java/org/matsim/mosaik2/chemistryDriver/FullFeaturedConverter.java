@@ -2,7 +2,10 @@ package org.matsim.mosaik2.chemistryDriver;
 
 import lombok.Builder;
 import lombok.extern.log4j.Log4j2;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
 import org.matsim.api.core.v01.network.NetworkWriter;
 import org.matsim.contrib.analysis.time.TimeBinMap;
 import org.matsim.contrib.emissions.Pollutant;
@@ -12,14 +15,23 @@ import org.matsim.core.events.EventsUtils;
 import org.matsim.core.network.NetworkUtils;
 import org.matsim.core.utils.geometry.CoordinateTransformation;
 import org.matsim.core.utils.geometry.transformations.IdentityTransformation;
+import org.matsim.mosaik2.ResultCache;
+import org.matsim.mosaik2.ResultCodecs;
 import org.matsim.mosaik2.raster.DoubleRaster;
+import org.matsim.mosaik2.raster.SparseDoubleRaster;
 
+import java.nio.file.Path;
 import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.stream.Collectors;
 
 @Log4j2
 public class FullFeaturedConverter {
 
+    private static final int CACHE_VERSION = 1;
+
     private final String networkFile;
 
     private final String emissionEventsFile;
@@ -44,8 +56,14 @@ public class FullFeaturedConverter {
 
     private final int offset;
 
+    private final Path segmentCacheDirectory;
+
+    private final ResultCache resultCache;
+
+    private final int parallelism;
+
     @Builder
-    public FullFeaturedConverter(String networkFile, String emissionEventsFile, String outputFile, double cellSize, double timeBinSize, double scaleFactor, DoubleRaster.Bounds bounds, CoordinateTransformation transformation, PollutantToPalmNameConverter pollutantConverter, LocalDateTime date, int numberOfDays, int offset) {
+    public FullFeaturedConverter(String networkFile, String emissionEventsFile, String outputFile, double cellSize, double timeBinSize, double scaleFactor, DoubleRaster.Bounds bounds, CoordinateTransformation transformation, PollutantToPalmNameConverter pollutantConverter, LocalDateTime date, int numberOfDays, int offset, Path segmentCacheDirectory, Path resultCacheDirectory, int parallelism) {
         this.networkFile = networkFile;
         this.emissionEventsFile = emissionEventsFile;
         this.outputFile = outputFile;
@@ -58,49 +76,100 @@ public class FullFeaturedConverter {
         this.date = date == null ? LocalDateTime.of(2017, 7, 31, 0, 0) : date;
         this.numberOfDays = numberOfDays == 0 ? 1 : numberOfDays;
         this.offset = offset;
+        this.segmentCacheDirectory = segmentCacheDirectory;
+        this.resultCache = resultCacheDirectory == null ? ResultCache.disabled() : new ResultCache(resultCacheDirectory);
+        this.parallelism = parallelism == 0 ? Runtime.getRuntime().availableProcessors() : parallelism;
     }
 
+    /**
+     * Writes the chemistry driver. The aggregated emissions and the rasters are cached by the content of the network and
+     * emission events file and the parameters they depend on. Re-runs which only change the date, number of days, offset
+     * or output file skip reading events and rastering.
+     */
     public void write() {
 
-        // read network, transform to destination crs and filter only links that are within bounds
-        var network = NetworkUtils.readNetwork(networkFile, ConfigUtils.createConfig().network(), transformation).getLinks().values().stream()
-                .filter(link -> isCoveredBy(link, bounds))
-                .collect(NetworkUtils.getCollector(ConfigUtils.createConfig()));
-
-        log.info("Unsimplifying network");
-        var link2Segments = NetworkUnsimplifier.unsimplifyNetwork(network, transformation);
-
-        log.info("Converting segment map to network");
-        var segmentNetwork = NetworkUnsimplifier.segmentsToNetwork(link2Segments);
+        var emissionsKey = ResultCache.key("segment-emissions", CACHE_VERSION)
+                .file(networkFile)
+                .file(emissionEventsFile)
+                .param("transformation", fingerprint(transformation, bounds))
+                .param("bounds", bounds)
+                .param("pollutants", pollutantConverter.getPollutants().stream().sorted().map(Enum::name).collect(Collectors.joining(",")))
+                .param("timeBinSize", timeBinSize)
+                .param("scaleFactor", scaleFactor);
+        var rasterKey = ResultCache.key("emission-rasters", CACHE_VERSION)
+                .key(emissionsKey)
+                .param("palmNames", pollutantConverter.getPollutants().stream().sorted().map(pollutantConverter::getPalmName).collect(Collectors.joining(",")))
+                .param("cellSize", cellSize);
+
+        var rasteredEmissions = resultCache.getOrCompute(rasterKey, ResultCodecs.sparseRastersBySpecies(), () -> {
+
+            // read network, transform to destination crs and filter only links that are within bounds
+            var fullNetwork = NetworkUtils.readNetwork(networkFile, ConfigUtils.createConfig().network(), transformation);
+            var network = fullNetwork.getLinks().values().stream()
+                    .filter(link -> isCoveredBy(link, bounds))
+                    .collect(NetworkUtils.getCollector(ConfigUtils.createConfig()));
+
+            log.info("Unsimplifying network");
+            var link2Segments = SegmentGeometryStore.loadOrCreate(networkFile, fullNetwork, segmentCacheDirectory)
+                    .createSegments(network, transformation);
+
+            log.info("Converting segment map to network");
+            var segmentNetwork = NetworkUnsimplifier.segmentsToNetwork(link2Segments);
+
+            log.info("writing network!");
+            new NetworkWriter(segmentNetwork).write("C:\\Users\\Janekdererste\\Desktop\\segment-network.xml.gz");
+
+            var emissions = resultCache.getOrCompute(emissionsKey, ResultCodecs.<Map<Id<Link>, Double>>linkEmissions(HashMap::new), () -> {
+                // read the emission events
+                var manager = EventsUtils.createEventsManager();
+                var handler = createHandler(link2Segments);
+                manager.addHandler(handler);
+                new EmissionEventsReader(manager).readFile(emissionEventsFile);
+                return handler.getTimeBinMap();
+            });
+
+            return raster(emissions, segmentNetwork);
+        });
+
+        writeRasters(rasteredEmissions);
+    }
 
-        log.info("writing network!");
-        new NetworkWriter(segmentNetwork).write("C:\\Users\\Janekdererste\\Desktop\\segment-network.xml.gz");
+    /**
+     * Creates a handler which aggregates emission events onto the segments of links, using the pollutants, time bin size
+     * and scale factor of this converter.
+     */
+    AggregateEmissionsByTimeAndOrigGeometryHandler createHandler(Map<Id<Link>, List<Link>> link2Segments) {
+        return new AggregateEmissionsByTimeAndOrigGeometryHandler(link2Segments, pollutantConverter.getPollutants(), timeBinSize, scaleFactor);
+    }
 
-        // read the emission events
-        var manager = EventsUtils.createEventsManager();
-        var handler = new AggregateEmissionsByTimeAndOrigGeometryHandler(link2Segments, pollutantConverter.getPollutants(), timeBinSize, scaleFactor);
-        manager.addHandler(handler);
-        new EmissionEventsReader(manager).readFile(emissionEventsFile);
+    /**
+     * Rasters the emissions per segment and writes them into the chemistry driver file.
+     */
+    void write(TimeBinMap<Map<Pollutant, Map<Id<Link>, Double>>> emissions, Network segmentNetwork) {
+        writeRasters(raster(emissions, segmentNetwork));
+    }
 
-        var emissions = handler.getTimeBinMap();
+    private TimeBinMap<Map<String, SparseDoubleRaster>> raster(TimeBinMap<Map<Pollutant, Map<Id<Link>, Double>>> emissions, Network segmentNetwork) {
 
         // convert pollutants to palm names
         var palmEmissions = pollutantConverter.convert(emissions);
 
-        // put emissions onto a raster
-        var rasteredEmissions = EmissionRasterer.raster(palmEmissions, segmentNetwork, bounds, cellSize);
+        // put emissions onto a raster. Only cells touched by links carry emissions, so keep the rasters sparse
+        var rasteredEmissions = EmissionRasterer.rasterSparse(palmEmissions, segmentNetwork, bounds, cellSize, parallelism);
 
         //var rasteredEmissions = EmissionRasterer.raster(palmEmissions, network, bounds, cellSize);
         addNoIfPossible(rasteredEmissions);
+        return rasteredEmissions;
+    }
 
-        rasteredEmissions = cutToFullDays(rasteredEmissions, numberOfDays, offset);
-
-        PalmChemistryInput2.writeNetCdfFile(outputFile, rasteredEmissions, date);
+    private void writeRasters(TimeBinMap<Map<String, SparseDoubleRaster>> rasteredEmissions) {
+        var days = cutToFullDays(rasteredEmissions, numberOfDays, offset);
+        PalmChemistryInput2.writeSparseNetCdfFile(outputFile, days, date);
     }
 
-    static TimeBinMap<Map<String, DoubleRaster>> cutToFullDays(TimeBinMap<Map<String, DoubleRaster>> rasteredEmissions, int numberOfDays, int offset) {
+    static <R> TimeBinMap<Map<String, R>> cutToFullDays(TimeBinMap<Map<String, R>> rasteredEmissions, int numberOfDays, int offset) {
 
-        TimeBinMap<Map<String, DoubleRaster>> result = new TimeBinMap<>(3600);
+        TimeBinMap<Map<String, R>> result = new TimeBinMap<>(3600);
         for (int day = 0; day < numberOfDays; day++) {
             for (int hour = 0; hour < 24; hour++) {
 
@@ -113,7 +182,7 @@ public class FullFeaturedConverter {
                 // necessary because this became apparent only in the last minute when the evaluation run had to be started.
                 var inputSeconds = getInputSeconds(hour, offset);
                 var bin = rasteredEmissions.getTimeBin(inputSeconds);
-                Map<String, DoubleRaster> value = bin.hasValue() ? bin.getValue() : Map.of();
+                Map<String, R> value = bin.hasValue() ? bin.getValue() : Map.of();
                 result.getTimeBin(resultSeconds).setValue(value);
             }
         }
@@ -132,11 +201,20 @@ public class FullFeaturedConverter {
         }
     }
 
+    /**
+     * Coordinate transformations can't be compared. Use the class and the transformed corners of the bounds instead.
+     */
+    private static String fingerprint(CoordinateTransformation transformation, DoubleRaster.Bounds bounds) {
+        var lowerLeft = transformation.transform(new Coord(bounds.getMinX(), bounds.getMinY()));
+        var upperRight = transformation.transform(new Coord(bounds.getMaxX(), bounds.getMaxY()));
+        return transformation.getClass().getName() + lowerLeft + upperRight;
+    }
+
     static boolean isCoveredBy(Link link, DoubleRaster.Bounds bounds) {
         return bounds.covers(link.getFromNode().getCoord()) && bounds.covers(link.getToNode().getCoord());
     }
 
-    private void addNoIfPossible(TimeBinMap<Map<String, DoubleRaster>> timeBinMap) {
+    private void addNoIfPossible(TimeBinMap<Map<String, SparseDoubleRaster>> timeBinMap) {
 
         if (pollutantConverter.getPollutants().contains(Pollutant.NO2) && pollutantConverter.getPollutants().contains(Pollutant.NOx)) {
 
@@ -144,13 +222,11 @@ public class FullFeaturedConverter {
 
                 var no2 = timeBin.getValue().get(pollutantConverter.getPalmName(Pollutant.NO2));
                 var nox = timeBin.getValue().get(pollutantConverter.getPalmName(Pollutant.NOx));
-                var no = new DoubleRaster(no2.getBounds(), no2.getCellSize());
+                var no = new SparseDoubleRaster(no2.getBounds(), no2.getCellSize());
 
-                nox.forEachCoordinate((x, y, noxValue) -> {
-                    var no2Value = no2.getValueByCoord(x, y);
-                    var noValue = noxValue - no2Value;
-                    no.adjustValueForCoord(x, y, noValue);
-                });
+                // no = nox - no2. Cells which are not stored in either of the rasters are 0 and can be skipped
+                nox.forEachNonZeroIndex(no::adjustValueForIndex);
+                no2.forEachNonZeroIndex((xi, yi, no2Value) -> no.adjustValueForIndex(xi, yi, -no2Value));
 
                 timeBin.getValue().put("NO", no);
                 timeBin.getValue().remove("NOx");
@@ -0,0 +1,83 @@
+package org.matsim.mosaik2.chemistryDriver;
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.core.utils.collections.Tuple;
+import org.matsim.mosaik2.raster.AbstractRaster;
+import org.matsim.mosaik2.raster.DoubleRaster;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Cells of a raster crossed by each link of a network as computed by {@link Bresenham}. Rasterizing emissions for many
+ * time bins and species walks the same links over and over again. This map is computed once and is read only
+ * afterwards, so that it can be shared by concurrent rasterization tasks.
+ */
+class LinkCellMap {
+
+    private final AbstractRaster raster;
+    private final Map<Id<Link>, Cells> cellsByLink;
+
+    private LinkCellMap(AbstractRaster raster, Map<Id<Link>, Cells> cellsByLink) {
+        this.raster = raster;
+        this.cellsByLink = cellsByLink;
+    }
+
+    static LinkCellMap create(Network network, AbstractRaster.Bounds bounds, double cellSize) {
+
+        // only use the raster for index calculations.
+        var raster = new AbstractRaster(bounds, cellSize) {};
+        var xOffset = Bresenham.getXOffset(raster);
+        var yOffset = Bresenham.getYOffset(raster);
+
+        var cellsByLink = network.getLinks().values().parallelStream()
+                .map(link -> {
+                    var buffer = Bresenham.BUFFER.get();
+                    Bresenham.rasterizeLink(link, cellSize, xOffset, yOffset, true, buffer);
+                    var cells = new int[buffer.size() * 2];
+                    var size = 0;
+                    for (var i = 0; i < buffer.size(); i++) {
+                        var xi = buffer.getXIndex(i);
+                        var yi = buffer.getYIndex(i);
+                        if (0 <= xi && xi < raster.getXLength() && 0 <= yi && yi < raster.getYLength()) {
+                            cells[2 * size] = xi;
+                            cells[2 * size + 1] = yi;
+                            size++;
+                        }
+                    }
+                    return Tuple.of(link.getId(), new Cells(Arrays.copyOf(cells, size * 2), buffer.size()));
+                })
+                .collect(Collectors.toMap(Tuple::getFirst, Tuple::getSecond));
+
+        return new LinkCellMap(raster, cellsByLink);
+    }
+
+    /**
+     * Same as {@link Bresenham#rasterizeNetwork(Network, DoubleRaster.Bounds, Map, double)} but with the precomputed cells.
+     * Emissions of links which are not part of this map are ignored.
+     */
+    void rasterize(Map<Id<Link>, Double> emissions, DoubleRaster.IndexDoubleConsumer valueConsumer) {
+
+        var area = raster.getCellSize() * raster.getCellSize();
+
+        for (var entry : emissions.entrySet()) {
+            var cells = cellsByLink.get(entry.getKey());
+            if (cells == null) continue;
+
+            var valuePerCell = entry.getValue() / cells.numberOfCells / area;
+            for (var i = 0; i < cells.indices.length; i += 2) {
+                valueConsumer.consume(cells.indices[i], cells.indices[i + 1], valuePerCell);
+            }
+        }
+    }
+
+    /**
+     * @param indices       pairs of x- and y-index of the cells inside the raster
+     * @param numberOfCells number of all cells crossed by the link including the cells outside the raster
+     */
+    private record Cells(int[] indices, int numberOfCells) {
+    }
+}
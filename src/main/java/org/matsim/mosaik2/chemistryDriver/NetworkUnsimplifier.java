@@ -1,16 +1,11 @@
 package org.matsim.mosaik2.chemistryDriver;
 
-import de.topobyte.osm4j.core.access.OsmHandler;
-import de.topobyte.osm4j.core.access.OsmInputException;
-import de.topobyte.osm4j.core.model.iface.OsmBounds;
-import de.topobyte.osm4j.core.model.iface.OsmNode;
-import de.topobyte.osm4j.core.model.iface.OsmRelation;
-import de.topobyte.osm4j.core.model.iface.OsmWay;
-import de.topobyte.osm4j.pbf.seq.PbfReader;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.log4j.Log4j2;
-import org.matsim.api.core.v01.Coord;
 import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.TransportMode;
 import org.matsim.api.core.v01.network.Link;
@@ -24,9 +19,10 @@ import org.matsim.core.utils.geometry.CoordinateTransformation;
 import org.matsim.core.utils.geometry.transformations.IdentityTransformation;
 import org.matsim.core.utils.geometry.transformations.TransformationFactory;
 
-import java.io.File;
-import java.io.FileNotFoundException;
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongFunction;
 import java.util.stream.Collectors;
 
 import static java.util.stream.Collectors.groupingBy;
@@ -98,10 +94,11 @@ public class NetworkUnsimplifier {
 				.collect(NetworkUtils.getCollector(ConfigUtils.createConfig()));
 	}
 
-	static Map<Id<Link>, List<Link>> unsimplifyNetwork(final Network network, final String osmFile, final String destinationCrs) throws FileNotFoundException, OsmInputException {
+	static Map<Id<Link>, List<Link>> unsimplifyNetwork(final Network network, final String osmFile, final String destinationCrs) {
 
-		var file = new File(osmFile);
+		var file = Paths.get(osmFile);
 		var transformation = TransformationFactory.getCoordinateTransformation("EPSG:4326", destinationCrs);
+		var reader = ParallelPbfReader.builder().build();
 
 		log.info("Collecting original ids from network");
 		// collect the original ids from the network
@@ -115,37 +112,35 @@ public class NetworkUnsimplifier {
 
 		log.info("Start parsing ways from osm file");
 		// read in the ways from the supplied osm file
-		var reader = new PbfReader(file, false);
 		var nodeReferencesCollector = new CollectNodeReferences(originalIds);
-		reader.setHandler(nodeReferencesCollector);
-		reader.read();
+		reader.read(file, nodeReferencesCollector);
 
 		log.info("Start parsing nodes from osm file");
-		// read in the nodes from the supplied osm file
-		reader = new PbfReader(file, false);
-		var nodesCollector = new CollectNodes(nodeReferencesCollector.getNodesReferencingWays(), transformation);
-		reader.setHandler(nodesCollector);
-		reader.read();
-
-		final var nodes = nodesCollector.getNodes();
+		// read in the coordinates of all nodes referenced by the ways
+		var nodesCollector = new CollectNodes(nodeReferencesCollector.getNodeIds());
+		reader.read(file, nodesCollector);
+		var coordinates = nodesCollector.getCoordinates();
+
+		// matsim nodes are created when they are first needed, so that links which share a node also share the node object
+		Map<Long, Node> nodes = new ConcurrentHashMap<>();
+		LongFunction<Node> getNode = nodeId -> nodes.computeIfAbsent(nodeId, id -> {
+			var coord = coordinates.get(id);
+			return coord == null ? null : NetworkUtils.createNode(Id.createNodeId(id), transformation.transform(coord));
+		});
 
 		log.info("Start matching matsim links to osm ways");
-		var result = nodeReferencesCollector.getLinkIdToWayReference().entrySet().stream()
+		var result = nodeReferencesCollector.getLinkIdToWayReference().entrySet().parallelStream()
 				.map(linkId2OsmWay -> {
 					var link = network.getLinks().get(linkId2OsmWay.getKey());
 					var way = linkId2OsmWay.getValue();
 
-					if (link.getId().equals(Id.createLinkId("14923"))) {
-						log.info("stop it");
-					}
-
 					var indices = getIndices(link.getFromNode().getId(), link.getToNode().getId(), way);
 
 					// determine the direction we have to iterate. The matsim network contains forward and backwards links for
 					// the same way
 					var direction = getDirection(indices);
 
-					return Tuple.of(linkId2OsmWay.getKey(), createLinks(link, way, indices, direction, nodes, network.getFactory()));
+					return Tuple.of(linkId2OsmWay.getKey(), createLinks(link, way, indices, direction, getNode, network.getFactory()));
 				})
 				.collect(Collectors.toMap(Tuple::getFirst, Tuple::getSecond));
 
@@ -188,7 +183,7 @@ public class NetworkUnsimplifier {
 		return indices.getEndIndex() - indices.getStartIndex() > 0 ? 1 : -1;
 	}
 
-	private static List<Link> createLinks(Link simpleLink, OsmWay osmWay, IndexContainer indices, int direction, Map<Id<Node>, Node> nodes, NetworkFactory factory) {
+	private static List<Link> createLinks(Link simpleLink, long[] wayNodeIds, IndexContainer indices, int direction, LongFunction<Node> getNode, NetworkFactory factory) {
 
 		try {
 			List<Link> result = new ArrayList<>();
@@ -198,7 +193,7 @@ public class NetworkUnsimplifier {
 			// the terminal condition will stop one iteration before i is equal to end index
 			for (var i = indices.getStartIndex(); i != indices.getEndIndex(); i += direction) {
 
-				var newLink = createLinkFromWay(osmWay, simpleLink, i, direction, nodes, factory);
+				var newLink = createLinkFromWay(wayNodeIds, simpleLink, i, direction, getNode, factory);
 				result.add(newLink);
 			}
 			return result;
@@ -211,11 +206,11 @@ public class NetworkUnsimplifier {
 		}
 	}
 
-	private static Link createLinkFromWay(OsmWay osmWay, Link simpleLink, int fromIndex, int direction, Map<Id<Node>, Node> nodes, NetworkFactory factory) {
+	private static Link createLinkFromWay(long[] wayNodeIds, Link simpleLink, int fromIndex, int direction, LongFunction<Node> getNode, NetworkFactory factory) {
 
 
-		var fromNode = nodes.get(Id.createNodeId(osmWay.getNodeId(fromIndex)));
-		var toNode = nodes.get(Id.createNodeId(osmWay.getNodeId(fromIndex + direction)));
+		var fromNode = getNode.apply(wayNodeIds[fromIndex]);
+		var toNode = getNode.apply(wayNodeIds[fromIndex + direction]);
 		var link = factory.createLink(Id.createLinkId(simpleLink.getId().toString() + "_" + fromIndex), fromNode, toNode);
 
 		link.getAttributes().putAttribute("origid", simpleLink.getAttributes().getAttribute("origid"));
@@ -226,7 +221,7 @@ public class NetworkUnsimplifier {
 
 	}
 
-	private static IndexContainer getIndices(Id<Node> fromNode, Id<Node> toNode, OsmWay way) {
+	private static IndexContainer getIndices(Id<Node> fromNode, Id<Node> toNode, long[] way) {
 
 		// figure out whether there are multiple candidates for the start end end node in the nodes collection of the osm-way
 		var firstFromNodeIndex = getNodeIndex(fromNode, way, 0);
@@ -252,11 +247,11 @@ public class NetworkUnsimplifier {
 		return indexList.get(0);
 	}
 
-	private static int getNodeIndex(Id<Node> fromNode, OsmWay way, int startIndex) {
+	private static int getNodeIndex(Id<Node> fromNode, long[] way, int startIndex) {
 
-		for (var i = startIndex; i < way.getNumberOfNodes(); i++) {
+		for (var i = startIndex; i < way.length; i++) {
 
-			if (fromNode.equals(Id.createNodeId(way.getNodeId(i))))
+			if (fromNode.toString().equals(Long.toString(way[i])))
 				return i;
 		}
 
@@ -275,97 +270,62 @@ public class NetworkUnsimplifier {
 	}
 
 	@RequiredArgsConstructor
-	private static class CollectNodeReferences implements OsmHandler {
+	private static class CollectNodeReferences implements ParallelPbfReader.BlockHandler {
 
 		@Getter
-		private final Map<Long, Set<OsmWay>> nodesReferencingWays = new HashMap<>();
+		private final LongSet nodeIds = new LongOpenHashSet();
 		@Getter
-		private final Map<Id<Link>, OsmWay> linkIdToWayReference = new HashMap<>();
+		private final Map<Id<Link>, long[]> linkIdToWayReference = new HashMap<>();
 
 		private final Map<Long, Set<Id<Link>>> originalIds;
 
-
-		@Override
-		public void handle(OsmBounds bounds) {
-
-		}
-
-		@Override
-		public void handle(OsmNode node) {
-
-		}
-
 		@Override
-		public void handle(OsmWay way) {
-
-			if (originalIds.containsKey(way.getId())) {
-
-				var wayReferences = originalIds.get(way.getId()).stream()
-						.map(id -> Tuple.of(id, way))
-						.collect(Collectors.toMap(Tuple::getFirst, Tuple::getSecond));
-
-				// keep a reference of a matsim link to the original osm link
-				linkIdToWayReference.putAll(wayReferences);
-
-				for (int i = 0; i < way.getNumberOfNodes(); i++) {
-
-					var nodeId = way.getNodeId(i);
-
-					nodesReferencingWays.computeIfAbsent(nodeId, id -> new HashSet<>()).addAll(wayReferences.values());
+		public void handle(ParallelPbfReader.Block block) {
+
+			for (var way : block.ways()) {
+				if (originalIds.containsKey(way.id())) {
+					synchronized (this) {
+						// keep a reference of a matsim link to the node ids of the original osm way
+						for (var linkId : originalIds.get(way.id())) {
+							linkIdToWayReference.put(linkId, way.nodeIds());
+						}
+						nodeIds.addAll(LongArrayList.wrap(way.nodeIds()));
+					}
 				}
 			}
 		}
-
-		@Override
-		public void handle(OsmRelation relation) {
-
-		}
-
-		@Override
-		public void complete() {
-
-		}
 	}
 
+	private static class CollectNodes implements ParallelPbfReader.BlockHandler {
 
-	@RequiredArgsConstructor
-	private static class CollectNodes implements OsmHandler {
-
-		private final Map<Long, Set<OsmWay>> nodesReferencingWays;
-		private final CoordinateTransformation transformation;
+		private final LongSet nodeIds;
 
 		@Getter
-		private final Map<Id<Node>, Node> nodes = new HashMap<>();
-
-		@Override
-		public void handle(OsmBounds bounds) {
+		private final NodeCoordinates coordinates;
 
+		CollectNodes(LongSet nodeIds) {
+			this.nodeIds = nodeIds;
+			this.coordinates = new NodeCoordinates(nodeIds.size());
 		}
 
 		@Override
-		public void handle(OsmNode node) {
-
-			if (nodesReferencingWays.containsKey(node.getId())) {
-
-				var coord = transformation.transform(new Coord(node.getLongitude(), node.getLatitude()));
-				var matsimNode = NetworkUtils.createNode(Id.createNodeId(node.getId()), coord);
-				this.nodes.put(matsimNode.getId(), matsimNode);
+		public void handle(ParallelPbfReader.Block block) {
+
+			// filter the nodes of the block first, so that the coordinates are only locked once per block
+			var ids = block.nodeIds();
+			var longitudes = new double[ids.length];
+			var latitudes = new double[ids.length];
+			var filteredIds = new long[ids.length];
+			var n = 0;
+			for (var i = 0; i < ids.length; i++) {
+				if (nodeIds.contains(ids[i])) {
+					filteredIds[n] = ids[i];
+					longitudes[n] = block.longitudes()[i];
+					latitudes[n] = block.latitudes()[i];
+					n++;
+				}
 			}
-		}
-
-		@Override
-		public void handle(OsmWay way) {
-
-		}
-
-		@Override
-		public void handle(OsmRelation relation) {
-
-		}
-
-		@Override
-		public void complete() {
-
+			coordinates.putAll(filteredIds, longitudes, latitudes, n);
 		}
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,107 @@
+package org.matsim.mosaik2.chemistryDriver;
+
+import it.unimi.dsi.fastutil.HashCommon;
+import org.matsim.api.core.v01.Coord;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Hash map from osm node ids to coordinates, which is stored off heap in a direct buffer. Every entry takes 16 bytes:
+ * the node id and the coordinate packed into a long, with latitude and longitude as ints of 1e-7 degrees, which is the
+ * precision of osm coordinates. Collisions are resolved with linear probing.
+ * <p>
+ * The capacity is fixed when the map is created. Puts are synchronized, so that the map can be filled from several
+ * threads. Gets are not synchronized and may be called in parallel once all puts are done.
+ */
+class NodeCoordinates {
+
+    private static final int ENTRY_BYTES = 16;
+    // node ids are never negative. Use a negative value to mark free slots
+    private static final long FREE = -1;
+
+    private final ByteBuffer buffer;
+    private final int mask;
+    private final int maxSize;
+    private int size = 0;
+
+    NodeCoordinates(int expectedSize) {
+
+        var capacity = HashCommon.arraySize(Math.max(expectedSize, 1), 0.5f);
+        if ((long) capacity * ENTRY_BYTES > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Can't store " + expectedSize + " coordinates in a single buffer.");
+
+        this.buffer = ByteBuffer.allocateDirect(capacity * ENTRY_BYTES);
+        this.mask = capacity - 1;
+        this.maxSize = HashCommon.maxFill(capacity, 0.75f);
+        for (var slot = 0; slot < capacity; slot++) {
+            buffer.putLong(slot * ENTRY_BYTES, FREE);
+        }
+    }
+
+    synchronized void put(long nodeId, double longitude, double latitude) {
+
+        var slot = findSlot(nodeId);
+        if (buffer.getLong(slot * ENTRY_BYTES) == FREE) {
+            if (size == maxSize) throw new IllegalStateException("Node coordinates are full. The capacity is fixed to " + maxSize + " nodes.");
+            buffer.putLong(slot * ENTRY_BYTES, nodeId);
+            size++;
+        }
+        buffer.putLong(slot * ENTRY_BYTES + 8, pack(longitude, latitude));
+    }
+
+    /**
+     * Puts the first n entries of the supplied arrays
+     */
+    synchronized void putAll(long[] nodeIds, double[] longitudes, double[] latitudes, int n) {
+        for (var i = 0; i < n; i++) {
+            put(nodeIds[i], longitudes[i], latitudes[i]);
+        }
+    }
+
+    /**
+     * @return coordinate with x as longitude and y as latitude or null if the node id is not in the map
+     */
+    Coord get(long nodeId) {
+
+        var slot = findSlot(nodeId);
+        if (buffer.getLong(slot * ENTRY_BYTES) == FREE) return null;
+
+        var packed = buffer.getLong(slot * ENTRY_BYTES + 8);
+        return new Coord(unpackLongitude(packed), unpackLatitude(packed));
+    }
+
+    boolean containsKey(long nodeId) {
+        return buffer.getLong(findSlot(nodeId) * ENTRY_BYTES) != FREE;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return the slot of the node id or the free slot where it would be inserted
+     */
+    private int findSlot(long nodeId) {
+
+        var slot = (int) HashCommon.mix(nodeId) & mask;
+        while (true) {
+            var key = buffer.getLong(slot * ENTRY_BYTES);
+            if (key == FREE || key == nodeId) return slot;
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    static long pack(double longitude, double latitude) {
+        var lon = (int) Math.round(longitude * 1e7);
+        var lat = (int) Math.round(latitude * 1e7);
+        return (long) lat << 32 | (lon & 0xffffffffL);
+    }
+
+    static double unpackLongitude(long packed) {
+        return (int) packed * 1e-7;
+    }
+
+    static double unpackLatitude(long packed) {
+        return (int) (packed >> 32) * 1e-7;
+    }
+}
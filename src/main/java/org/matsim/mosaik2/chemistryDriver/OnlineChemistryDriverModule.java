@@ -0,0 +1,294 @@
+package org.matsim.mosaik2.chemistryDriver;
+
+import lombok.extern.log4j.Log4j2;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.contrib.analysis.time.TimeBinMap;
+import org.matsim.contrib.emissions.Pollutant;
+import org.matsim.core.api.experimental.events.EventsManager;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.config.ReflectiveConfigGroup;
+import org.matsim.core.controler.AbstractModule;
+import org.matsim.core.controler.OutputDirectoryHierarchy;
+import org.matsim.core.controler.events.AfterMobsimEvent;
+import org.matsim.core.controler.events.BeforeMobsimEvent;
+import org.matsim.core.controler.events.ShutdownEvent;
+import org.matsim.core.controler.listener.AfterMobsimListener;
+import org.matsim.core.controler.listener.BeforeMobsimListener;
+import org.matsim.core.controler.listener.ShutdownListener;
+import org.matsim.core.network.NetworkUtils;
+import org.matsim.core.utils.geometry.transformations.IdentityTransformation;
+import org.matsim.mosaik2.raster.DoubleRaster;
+
+import javax.inject.Inject;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Aggregates warm and cold emission events of the last iteration onto the original geometry of links while the mobsim
+ * is running. At shutdown the emissions are rastered and written as PALM chemistry driver, as
+ * {@link FullFeaturedConverter} would do it with the emission events file of the last iteration. Writing emission events
+ * to the events file is not necessary for this.
+ * <p>
+ * The bounds of the raster are expected in the coordinate system of the network. Add a
+ * {@link OnlineChemistryDriverConfigGroup} to the config to use this module.
+ */
+@Log4j2
+public class OnlineChemistryDriverModule extends AbstractModule {
+
+    @Override
+    public void install() {
+        addControlerListenerBinding().to(MobsimHandler.class);
+    }
+
+    public static class OnlineChemistryDriverConfigGroup extends ReflectiveConfigGroup {
+
+        public static final String GROUP_NAME = "onlineChemistryDriver";
+
+        private double minX;
+        private double minY;
+        private double maxX;
+        private double maxY;
+        private double cellSize = 10;
+        private double timeBinSize = 3600;
+        private double scaleFactor = 1;
+        private List<String> species = List.of();
+        private LocalDateTime date = LocalDateTime.of(2017, 7, 31, 0, 0);
+        private int numberOfDays = 1;
+        private int utcOffset = 0;
+        private String outputFile = "chemistry-driver.nc";
+
+        public OnlineChemistryDriverConfigGroup() {
+            super(GROUP_NAME);
+        }
+
+        public DoubleRaster.Bounds getBounds() {
+            return new DoubleRaster.Bounds(minX, minY, maxX, maxY);
+        }
+
+        public void setBounds(DoubleRaster.Bounds bounds) {
+            this.minX = bounds.getMinX();
+            this.minY = bounds.getMinY();
+            this.maxX = bounds.getMaxX();
+            this.maxY = bounds.getMaxY();
+        }
+
+        @StringGetter("minX")
+        public double getMinX() {
+            return minX;
+        }
+
+        @StringSetter("minX")
+        public void setMinX(double minX) {
+            this.minX = minX;
+        }
+
+        @StringGetter("minY")
+        public double getMinY() {
+            return minY;
+        }
+
+        @StringSetter("minY")
+        public void setMinY(double minY) {
+            this.minY = minY;
+        }
+
+        @StringGetter("maxX")
+        public double getMaxX() {
+            return maxX;
+        }
+
+        @StringSetter("maxX")
+        public void setMaxX(double maxX) {
+            this.maxX = maxX;
+        }
+
+        @StringGetter("maxY")
+        public double getMaxY() {
+            return maxY;
+        }
+
+        @StringSetter("maxY")
+        public void setMaxY(double maxY) {
+            this.maxY = maxY;
+        }
+
+        @StringGetter("cellSize")
+        public double getCellSize() {
+            return cellSize;
+        }
+
+        @StringSetter("cellSize")
+        public void setCellSize(double cellSize) {
+            this.cellSize = cellSize;
+        }
+
+        @StringGetter("timeBinSize")
+        public double getTimeBinSize() {
+            return timeBinSize;
+        }
+
+        @StringSetter("timeBinSize")
+        public void setTimeBinSize(double timeBinSize) {
+            this.timeBinSize = timeBinSize;
+        }
+
+        @StringGetter("scaleFactor")
+        public double getScaleFactor() {
+            return scaleFactor;
+        }
+
+        @StringSetter("scaleFactor")
+        public void setScaleFactor(double scaleFactor) {
+            this.scaleFactor = scaleFactor;
+        }
+
+        public List<String> getSpecies() {
+            return species;
+        }
+
+        public void setSpecies(List<String> species) {
+            this.species = List.copyOf(species);
+        }
+
+        @StringGetter("species")
+        public String getSpeciesAsString() {
+            return String.join(",", species);
+        }
+
+        /**
+         * Comma separated list of palm species, e.g. 'NOx,PM10'. All species known by {@link PollutantToPalmNameConverter}
+         * are written if empty.
+         */
+        @StringSetter("species")
+        public void setSpeciesAsString(String species) {
+            this.species = Arrays.stream(species.split(","))
+                    .map(String::trim)
+                    .filter(s -> !s.isEmpty())
+                    .toList();
+        }
+
+        public LocalDateTime getDate() {
+            return date;
+        }
+
+        public void setDate(LocalDateTime date) {
+            this.date = date;
+        }
+
+        @StringGetter("date")
+        public String getDateAsString() {
+            return date.toString();
+        }
+
+        @StringSetter("date")
+        public void setDateAsString(String date) {
+            this.date = LocalDateTime.parse(date);
+        }
+
+        @StringGetter("numberOfDays")
+        public int getNumberOfDays() {
+            return numberOfDays;
+        }
+
+        @StringSetter("numberOfDays")
+        public void setNumberOfDays(int numberOfDays) {
+            this.numberOfDays = numberOfDays;
+        }
+
+        @StringGetter("utcOffset")
+        public int getUtcOffset() {
+            return utcOffset;
+        }
+
+        @StringSetter("utcOffset")
+        public void setUtcOffset(int utcOffset) {
+            this.utcOffset = utcOffset;
+        }
+
+        @StringGetter("outputFile")
+        public String getOutputFile() {
+            return outputFile;
+        }
+
+        /**
+         * File name of the chemistry driver within the output directory
+         */
+        @StringSetter("outputFile")
+        public void setOutputFile(String outputFile) {
+            this.outputFile = outputFile;
+        }
+    }
+
+    private static class MobsimHandler implements BeforeMobsimListener, AfterMobsimListener, ShutdownListener {
+
+        @Inject
+        private EventsManager eventsManager;
+
+        @Inject
+        private OutputDirectoryHierarchy outputDirectoryHierarchy;
+
+        @Inject
+        private Scenario scenario;
+
+        @Inject
+        private OnlineChemistryDriverConfigGroup config;
+
+        private FullFeaturedConverter converter;
+        private Map<Id<Link>, List<Link>> link2Segments;
+        private AggregateEmissionsByTimeAndOrigGeometryHandler handler;
+        private TimeBinMap<Map<Pollutant, Map<Id<Link>, Double>>> emissions;
+
+        @Override
+        public void notifyBeforeMobsim(BeforeMobsimEvent event) {
+
+            if (!event.isLastIteration()) return;
+
+            var bounds = config.getBounds();
+            converter = FullFeaturedConverter.builder()
+                    .outputFile(outputDirectoryHierarchy.getOutputFilename(config.getOutputFile()))
+                    .cellSize(config.getCellSize())
+                    .timeBinSize(config.getTimeBinSize())
+                    .scaleFactor(config.getScaleFactor())
+                    .bounds(bounds)
+                    .transformation(new IdentityTransformation())
+                    .pollutantConverter(config.getSpecies().isEmpty() ? new PollutantToPalmNameConverter() : PollutantToPalmNameConverter.createForSpecies(config.getSpecies()))
+                    .date(config.getDate())
+                    .numberOfDays(config.getNumberOfDays())
+                    .offset(config.getUtcOffset())
+                    .build();
+
+            var network = scenario.getNetwork().getLinks().values().stream()
+                    .filter(link -> FullFeaturedConverter.isCoveredBy(link, bounds))
+                    .collect(NetworkUtils.getCollector(ConfigUtils.createConfig()));
+
+            log.info("Unsimplifying " + network.getLinks().size() + " links within " + bounds);
+            link2Segments = SegmentGeometryStore.create(network).createSegments(network, new IdentityTransformation());
+
+            handler = converter.createHandler(link2Segments);
+            eventsManager.addHandler(handler);
+        }
+
+        @Override
+        public void notifyAfterMobsim(AfterMobsimEvent event) {
+
+            if (handler != null) {
+                eventsManager.removeHandler(handler);
+                emissions = handler.getTimeBinMap();
+                handler = null;
+            }
+        }
+
+        @Override
+        public void notifyShutdown(ShutdownEvent event) {
+
+            if (event.isUnexpected() || emissions == null) return;
+
+            log.info("Writing chemistry driver from emissions of the last iteration.");
+            converter.write(emissions, NetworkUnsimplifier.segmentsToNetwork(link2Segments));
+        }
+    }
+}
@@ -2,7 +2,10 @@ package org.matsim.mosaik2.chemistryDriver;
 
 import lombok.extern.log4j.Log4j2;
 import org.matsim.contrib.analysis.time.TimeBinMap;
+import org.matsim.mosaik2.raster.AbstractRaster;
 import org.matsim.mosaik2.raster.DoubleRaster;
+import org.matsim.mosaik2.raster.FloatRaster;
+import org.matsim.mosaik2.raster.SparseDoubleRaster;
 import ucar.ma2.*;
 import ucar.nc2.Attribute;
 import ucar.nc2.NetcdfFileWriter;
@@ -34,6 +37,25 @@ public class PalmChemistryInput2 {
 	}
 
 	public static void writeNetCdfFile(String outputFile, TimeBinMap<Map<String, DoubleRaster>> data, LocalDateTime date) {
+		writeNetCdfFile(outputFile, data, date, (raster, consumer) -> raster.forEachIndex((xi, yi, value) -> consumer.consume(xi, yi, (float) value)));
+	}
+
+	/**
+	 * Writes float rasters into a chemistry input file. The file stores floats as well, so values are copied as they are.
+	 */
+	public static void writeFloatNetCdfFile(String outputFile, TimeBinMap<Map<String, FloatRaster>> data, LocalDateTime date) {
+		writeNetCdfFile(outputFile, data, date, FloatRaster::forEachIndex);
+	}
+
+	/**
+	 * Writes sparse rasters into a chemistry input file. Only the stored cells of each raster are visited. All other
+	 * cells are written as 0.0
+	 */
+	public static void writeSparseNetCdfFile(String outputFile, TimeBinMap<Map<String, SparseDoubleRaster>> data, LocalDateTime date) {
+		writeNetCdfFile(outputFile, data, date, (raster, consumer) -> raster.forEachNonZeroIndex((xi, yi, value) -> consumer.consume(xi, yi, (float) value)));
+	}
+
+	private static <R extends AbstractRaster> void writeNetCdfFile(String outputFile, TimeBinMap<Map<String, R>> data, LocalDateTime date, RasterIteration<R> iteration) {
 
 		// get the observed pollutants from first valid time bin
 		var observedPollutants = data.getTimeBins().iterator().next().getValue().keySet();
@@ -49,14 +71,14 @@ public class PalmChemistryInput2 {
 			writeGlobalAttributes(writer);
 			writer.create();
 
-			writeData(writer, data, observedPollutants, raster, date);
+			writeData(writer, data, observedPollutants, raster, date, iteration);
 
 		} catch (IOException | InvalidRangeException e) {
 			throw new RuntimeException(e);
 		}
 	}
 
-	private static void writeData(NetcdfFileWriter writer, TimeBinMap<Map<String, DoubleRaster>> data, Set<String> observedPollutants, DoubleRaster raster, LocalDateTime date) throws IOException, InvalidRangeException {
+	private static <R extends AbstractRaster> void writeData(NetcdfFileWriter writer, TimeBinMap<Map<String, R>> data, Set<String> observedPollutants, AbstractRaster raster, LocalDateTime date, RasterIteration<R> iteration) throws IOException, InvalidRangeException {
 
 		var pollutantToIndex = new ArrayList<>(observedPollutants);
 		var emissionIndex = new ArrayInt.D1(pollutantToIndex.size(), false);
@@ -92,10 +114,8 @@ public class PalmChemistryInput2 {
 			for (var pollutantEntry : bin.getValue().entrySet()) {
 
 				var pollutantRaster = pollutantEntry.getValue();
-				pollutantRaster.forEachIndex(((xi, yi, value) -> {
-					var p = pollutantToIndex.indexOf(pollutantEntry.getKey());
-					emissionValues.set(timeIndex, 0, yi, xi, p, (float) value);
-				}));
+				var p = pollutantToIndex.indexOf(pollutantEntry.getKey());
+				iteration.forEachValue(pollutantRaster, (xi, yi, value) -> emissionValues.set(timeIndex, 0, yi, xi, p, value));
 			}
 		}
 
@@ -112,7 +132,7 @@ public class PalmChemistryInput2 {
 		writer.write(writer.findVariable(EMISSION_VALUES), emissionValues);
 	}
 
-	private static void writeDimensions(NetcdfFileWriter writer, Set<String> observedPollutants, DoubleRaster raster) {
+	private static void writeDimensions(NetcdfFileWriter writer, Set<String> observedPollutants, AbstractRaster raster) {
 
 		writer.addUnlimitedDimension(TIME);
 		writer.addDimension(X, raster.getXLength());
@@ -187,6 +207,11 @@ public class PalmChemistryInput2 {
 		return bin;
 	}
 
+	@FunctionalInterface
+	private interface RasterIteration<R> {
+		void forEachValue(R raster, FloatRaster.IndexFloatConsumer consumer);
+	}
+
 	public static String getTimestamp(LocalDateTime date, double time) {
 		var duration = Duration.ofSeconds((long) time);
 		var dateTime = date.plus(duration);
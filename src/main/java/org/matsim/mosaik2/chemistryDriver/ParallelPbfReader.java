@@ -0,0 +1,189 @@
+package org.matsim.mosaik2.chemistryDriver;
+
+import de.topobyte.osm4j.pbf.protobuf.Fileformat;
+import de.topobyte.osm4j.pbf.protobuf.Osmformat;
+import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import lombok.Builder;
+import lombok.extern.log4j.Log4j2;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads the nodes and ways of an OSM PBF file. The blobs of the file are read sequentially, but decompressed and
+ * decoded in parallel on a pool of worker threads. Each decoded block is passed to a {@link BlockHandler} on the worker
+ * thread which decoded it. Thus, the handler must be thread safe and blocks arrive in no particular order.
+ * <p>
+ * Only node ids and coordinates and way ids and node references are decoded. Tags, relations and metadata are skipped.
+ */
+@Log4j2
+class ParallelPbfReader {
+
+    private final int numberOfThreads;
+
+    /**
+     * @param numberOfThreads number of threads to decode blocks. Defaults to the number of available processors
+     */
+    @Builder
+    ParallelPbfReader(int numberOfThreads) {
+        this.numberOfThreads = numberOfThreads == 0 ? Runtime.getRuntime().availableProcessors() : numberOfThreads;
+    }
+
+    void read(Path file, BlockHandler handler) {
+
+        var executor = Executors.newFixedThreadPool(numberOfThreads);
+        // limit the number of blobs in memory, in case decoding is slower than reading
+        var inFlight = new Semaphore(numberOfThreads * 2);
+        var error = new AtomicReference<Throwable>();
+        var blocks = 0;
+
+        try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            while (error.get() == null) {
+
+                int headerSize;
+                try {
+                    headerSize = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                var header = Fileformat.BlobHeader.parseFrom(readBytes(in, headerSize));
+                var blob = readBytes(in, header.getDatasize());
+
+                // the OSMHeader blob contains no entities
+                if (!"OSMData".equals(header.getType())) continue;
+
+                inFlight.acquire();
+                executor.execute(() -> {
+                    try {
+                        handler.handle(decode(blob));
+                    } catch (Throwable e) {
+                        error.compareAndSet(null, e);
+                    } finally {
+                        inFlight.release();
+                    }
+                });
+                blocks++;
+            }
+            executor.shutdown();
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        if (error.get() != null) throw new RuntimeException("Could not decode blocks of " + file, error.get());
+        log.info("Decoded " + blocks + " blocks of " + file);
+    }
+
+    private static byte[] readBytes(DataInputStream in, int size) throws IOException {
+        var bytes = new byte[size];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    static Block decode(byte[] blobBytes) throws IOException {
+
+        var block = Osmformat.PrimitiveBlock.parseFrom(decompress(Fileformat.Blob.parseFrom(blobBytes)));
+        var granularity = block.getGranularity();
+        var latOffset = block.getLatOffset();
+        var lonOffset = block.getLonOffset();
+
+        var nodeIds = new LongArrayList();
+        var longitudes = new DoubleArrayList();
+        var latitudes = new DoubleArrayList();
+        List<Way> ways = new ArrayList<>();
+
+        for (var group : block.getPrimitivegroupList()) {
+
+            for (var node : group.getNodesList()) {
+                nodeIds.add(node.getId());
+                longitudes.add(toDegrees(lonOffset, granularity, node.getLon()));
+                latitudes.add(toDegrees(latOffset, granularity, node.getLat()));
+            }
+
+            if (group.hasDense()) {
+                // ids and coordinates of dense nodes are delta encoded
+                var dense = group.getDense();
+                long id = 0;
+                long lon = 0;
+                long lat = 0;
+                for (var i = 0; i < dense.getIdCount(); i++) {
+                    id += dense.getId(i);
+                    lon += dense.getLon(i);
+                    lat += dense.getLat(i);
+                    nodeIds.add(id);
+                    longitudes.add(toDegrees(lonOffset, granularity, lon));
+                    latitudes.add(toDegrees(latOffset, granularity, lat));
+                }
+            }
+
+            for (var way : group.getWaysList()) {
+                // node references are delta encoded as well
+                var refs = new long[way.getRefsCount()];
+                long ref = 0;
+                for (var i = 0; i < refs.length; i++) {
+                    ref += way.getRefs(i);
+                    refs[i] = ref;
+                }
+                ways.add(new Way(way.getId(), refs));
+            }
+        }
+
+        return new Block(nodeIds.toLongArray(), longitudes.toDoubleArray(), latitudes.toDoubleArray(), ways);
+    }
+
+    private static byte[] decompress(Fileformat.Blob blob) throws IOException {
+
+        if (blob.hasRaw()) return blob.getRaw().toByteArray();
+        if (!blob.hasZlibData()) throw new IOException("Only raw and zlib compressed blobs are supported.");
+
+        var inflater = new Inflater();
+        try {
+            inflater.setInput(blob.getZlibData().toByteArray());
+            var data = new byte[blob.getRawSize()];
+            inflater.inflate(data);
+            if (!inflater.finished()) throw new IOException("Blob is larger than its raw size of " + blob.getRawSize() + " bytes.");
+            return data;
+        } catch (DataFormatException e) {
+            throw new IOException(e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static double toDegrees(long offset, int granularity, long value) {
+        return 1e-9 * (offset + (long) granularity * value);
+    }
+
+    @FunctionalInterface
+    interface BlockHandler {
+
+        /**
+         * Called concurrently from the worker threads.
+         */
+        void handle(Block block);
+    }
+
+    /**
+     * Nodes and ways of a block. Coordinates of node i are at index i of longitudes and latitudes.
+     */
+    record Block(long[] nodeIds, double[] longitudes, double[] latitudes, List<Way> ways) {
+    }
+
+    record Way(long id, long[] nodeIds) {
+    }
+}
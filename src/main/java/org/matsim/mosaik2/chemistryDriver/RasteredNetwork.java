@@ -70,39 +70,13 @@ public class RasteredNetwork {
      */
     private List<Coord> rasterizeLink(Link link, double cellSize) {
 
-        int x0 = (int) (link.getFromNode().getCoord().getX() / cellSize);
-        int x1 = (int) (link.getToNode().getCoord().getX() / cellSize);
-        int y0 = (int) (link.getFromNode().getCoord().getY() / cellSize);
-        int y1 = (int) (link.getToNode().getCoord().getY() / cellSize);
-        int dx = Math.abs(x1 - x0);
-        int dy = -Math.abs(y1 - y0);
-        int err = dx + dy, e2;
-
-        int sx = x0 < x1 ? 1 : -1;
-        int sy = y0 < y1 ? 1 : -1;
-
-        List<Coord> result = new ArrayList<>();
-
-        if (dx == 0 && dy == 0) {
-            // the algorithm doesn't really support lines shorter than the cell size.
-            // do avoid complicated computation within the loop, catch this case here
-            result.add(createCoord(x0, y0, cellSize));
-            return result;
-        }
-
-        do {
-            result.add(createCoord(x0, y0, cellSize));
-            e2 = err + err;
-            if (e2 >= dy) {
-                err += dy;
-                x0 += sx;
-            }
-            if (e2 <= dx) {
-                err += dx;
-                y0 += sy;
-            }
-        } while (x0 != x1 || y0 != y1);
+        var buffer = Bresenham.BUFFER.get();
+        Bresenham.rasterizeLink(link, cellSize, 0, 0, false, buffer);
 
+        List<Coord> result = new ArrayList<>(buffer.size());
+        for (var i = 0; i < buffer.size(); i++) {
+            result.add(createCoord(buffer.getXIndex(i), buffer.getYIndex(i), cellSize));
+        }
         return result;
     }
 }
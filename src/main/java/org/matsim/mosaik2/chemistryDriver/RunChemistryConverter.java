@@ -7,6 +7,7 @@ import org.matsim.core.utils.geometry.CoordinateTransformation;
 import org.matsim.core.utils.geometry.transformations.IdentityTransformation;
 import org.matsim.core.utils.geometry.transformations.TransformationFactory;
 import org.matsim.mosaik2.palm.PalmStaticDriverReader;
+import org.matsim.mosaik2.raster.BuildingMask;
 
 import java.nio.file.Paths;
 import java.time.LocalDateTime;
@@ -53,6 +54,9 @@ public class RunChemistryConverter {
     @Parameter(names = {"--ib", "--ignore-buildings"})
     private boolean ignoreBuildings = false;
 
+    @Parameter(names = {"--cd", "--cache-directory"}, description = "Directory to cache original link geometries and the building mask in. Without it, nothing is cached.")
+    private String cacheDirectory;
+
     public static void main(String[] args) {
 
         var converter = new RunChemistryConverter();
@@ -62,12 +66,12 @@ public class RunChemistryConverter {
 
     private void convert() {
 
-        var buildings = PalmStaticDriverReader.read(Paths.get(staticDriver), "buildings_2d");
+        var cache = cacheDirectory == null ? null : Paths.get(cacheDirectory);
 
-        // set a negative height for all raster tiles. This is the same as no buildings
-        if (ignoreBuildings) {
-            buildings.setValueForEachIndex((xi, yi) -> -9999);
-        }
+        // an empty mask with the bounds of the static driver is the same as no buildings
+        var buildings = ignoreBuildings
+                ? PalmStaticDriverReader.createTarget(Paths.get(staticDriver), BuildingMask::new)
+                : BuildingMask.fromStaticDriver(Paths.get(staticDriver), cache);
 
         var names = PollutantToPalmNameConverter.createForSpecies(species);
         var dateTime = LocalDateTime.parse(date);
@@ -88,6 +92,7 @@ public class RunChemistryConverter {
                 .numberOfDays(numberOfDays)
                 .laneWidth(laneWidth)
                 .rasterMethod(rasterMethod)
+                .segmentCacheDirectory(cache)
                 .build()
                 .write();
     }
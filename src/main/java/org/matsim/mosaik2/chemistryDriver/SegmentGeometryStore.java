@@ -0,0 +1,236 @@
+package org.matsim.mosaik2.chemistryDriver;
+
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import lombok.extern.log4j.Log4j2;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.core.network.NetworkUtils;
+import org.matsim.core.utils.collections.Tuple;
+import org.matsim.core.utils.geometry.CoordinateTransformation;
+import org.matsim.mosaik2.Utils;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Stores the intermediate nodes of the original geometries of all links of a network in flat arrays. Parsing the
+ * {@link NetworkUtils#ORIG_GEOM} attribute of every link is expensive for large networks. This class does it once per
+ * network file and keeps the result in a compact binary cache file, which is keyed by a content hash of the network file.
+ * <p>
+ * The coordinates are stored as they are found in the network file. The coordinate transformation is applied when the
+ * segments are created in {@link #createSegments(Network, CoordinateTransformation)}, so that the same cache can be used
+ * for different transformations and different bounds.
+ */
+@Log4j2
+class SegmentGeometryStore {
+
+    private static final int MAGIC_NUMBER = 0x5e65e047;
+    private static final int VERSION = 1;
+
+    private final Object2IntMap<Id<Link>> linkIndex;
+    // intermediate nodes of link i are stored from nodeStart[i] (inclusive) to nodeStart[i + 1] (exclusive)
+    private final int[] nodeStart;
+    private final String[] nodeIds;
+    // x and y values of intermediate nodes. x of node n is at 2n, y at 2n + 1
+    private final double[] coords;
+
+    private SegmentGeometryStore(Object2IntMap<Id<Link>> linkIndex, int[] nodeStart, String[] nodeIds, double[] coords) {
+        this.linkIndex = linkIndex;
+        this.nodeStart = nodeStart;
+        this.nodeIds = nodeIds;
+        this.coords = coords;
+    }
+
+    /**
+     * Loads the geometries from the cache directory if the network file was processed before. Otherwise, the original
+     * geometries are parsed from the network and written into the cache directory.
+     *
+     * @param networkFile    the file the network was read from. Its content is hashed to find the cache file
+     * @param network        all links of the network file, with their original geometry attributes untouched.
+     * @param cacheDirectory the directory to read and write cache files from. If null, no cache is used.
+     */
+    static SegmentGeometryStore loadOrCreate(String networkFile, Network network, Path cacheDirectory) {
+
+        // networks may also be read from urls. Those are not cached.
+        if (cacheDirectory == null || !isRegularFile(networkFile)) {
+            return create(network);
+        }
+
+        var cacheFile = cacheDirectory.resolve(Utils.hash(Paths.get(networkFile)) + ".segments");
+        if (Files.exists(cacheFile)) {
+            log.info("Reading original geometries from cache file: " + cacheFile);
+            try {
+                return read(cacheFile);
+            } catch (IOException e) {
+                log.warn("Could not read cache file " + cacheFile + ". Parsing original geometries from network instead.", e);
+            }
+        }
+
+        var store = create(network);
+        log.info("Writing original geometries to cache file: " + cacheFile);
+        store.write(cacheFile);
+        return store;
+    }
+
+    /**
+     * Parses the original geometries of all links in parallel.
+     */
+    static SegmentGeometryStore create(Network network) {
+
+        var geometries = network.getLinks().values().parallelStream()
+                .map(link -> Tuple.of(link.getId(), parseIntermediateNodes(link)))
+                .collect(Collectors.toList());
+
+        var numberOfNodes = geometries.stream().mapToInt(tuple -> tuple.getSecond().size()).sum();
+        Object2IntMap<Id<Link>> linkIndex = new Object2IntOpenHashMap<>(geometries.size());
+        var nodeStart = new int[geometries.size() + 1];
+        var nodeIds = new String[numberOfNodes];
+        var coords = new double[numberOfNodes * 2];
+
+        var nodeIndex = 0;
+        for (var i = 0; i < geometries.size(); i++) {
+            linkIndex.put(geometries.get(i).getFirst(), i);
+            nodeStart[i] = nodeIndex;
+            for (var node : geometries.get(i).getSecond()) {
+                nodeIds[nodeIndex] = node.getId().toString();
+                coords[2 * nodeIndex] = node.getCoord().getX();
+                coords[2 * nodeIndex + 1] = node.getCoord().getY();
+                nodeIndex++;
+            }
+        }
+        nodeStart[geometries.size()] = nodeIndex;
+
+        return new SegmentGeometryStore(linkIndex, nodeStart, nodeIds, coords);
+    }
+
+    /**
+     * Creates the segments of all links of the supplied network in parallel. The network may be a filtered and
+     * transformed version of the network the store was created from. The intermediate nodes are transformed with the
+     * supplied transformation. The result is the same as {@link NetworkUnsimplifier#unsimplifyNetwork(Network, CoordinateTransformation)}
+     *
+     * @return segments by the id of the link they were created from.
+     */
+    Map<Id<Link>, List<Link>> createSegments(Network network, CoordinateTransformation transformation) {
+
+        return network.getLinks().values().parallelStream()
+                .map(link -> Tuple.of(link.getId(), createSegments(link, transformation, network)))
+                .collect(Collectors.toMap(Tuple::getFirst, Tuple::getSecond));
+    }
+
+    private List<Link> createSegments(Link link, CoordinateTransformation transformation, Network network) {
+
+        if (!linkIndex.containsKey(link.getId()))
+            throw new IllegalArgumentException("Link " + link.getId() + " is not contained in this store. Was the store created from a different network?");
+
+        var index = linkIndex.getInt(link.getId());
+        var from = nodeStart[index];
+        var to = nodeStart[index + 1];
+
+        List<Link> segments = new ArrayList<>(to - from + 1);
+        var fromNode = link.getFromNode();
+
+        for (var n = from; n < to; n++) {
+            var coord = transformation.transform(new Coord(coords[2 * n], coords[2 * n + 1]));
+            var toNode = NetworkUtils.createNode(Id.createNodeId(nodeIds[n]), coord);
+            segments.add(NetworkUnsimplifier.createSegment(link, fromNode, toNode, n - from, network.getFactory()));
+            fromNode = toNode;
+        }
+
+        // we need to add one more segment from last intermediate to to-Node
+        segments.add(NetworkUnsimplifier.createSegment(link, fromNode, link.getToNode(), to - from, network.getFactory()));
+        return segments;
+    }
+
+    private static List<Node> parseIntermediateNodes(Link link) {
+        var nodes = NetworkUtils.getOriginalGeometry(link);
+        // the first and the last node are the from- and to-node of the link.
+        return nodes.subList(1, nodes.size() - 1);
+    }
+
+    static SegmentGeometryStore read(Path file) throws IOException {
+
+        try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+
+            if (in.readInt() != MAGIC_NUMBER || in.readInt() != VERSION)
+                throw new IOException("File " + file + " is not a segment geometry file of version " + VERSION);
+
+            var numberOfLinks = in.readInt();
+            var numberOfNodes = in.readInt();
+            Object2IntMap<Id<Link>> linkIndex = new Object2IntOpenHashMap<>(numberOfLinks);
+            var nodeStart = new int[numberOfLinks + 1];
+            var nodeIds = new String[numberOfNodes];
+            var coords = new double[numberOfNodes * 2];
+
+            var nodeIndex = 0;
+            for (var i = 0; i < numberOfLinks; i++) {
+                linkIndex.put(Id.createLinkId(in.readUTF()), i);
+                nodeStart[i] = nodeIndex;
+                var nodesOfLink = in.readInt();
+                for (var n = 0; n < nodesOfLink; n++) {
+                    nodeIds[nodeIndex] = in.readUTF();
+                    coords[2 * nodeIndex] = in.readDouble();
+                    coords[2 * nodeIndex + 1] = in.readDouble();
+                    nodeIndex++;
+                }
+            }
+            nodeStart[numberOfLinks] = nodeIndex;
+
+            return new SegmentGeometryStore(linkIndex, nodeStart, nodeIds, coords);
+        }
+    }
+
+    void write(Path file) {
+
+        try {
+            Files.createDirectories(file.toAbsolutePath().getParent());
+            // write into a temporary file first, so that no broken cache files are left if the process is stopped
+            var tmpFile = Files.createTempFile(file.toAbsolutePath().getParent(), "segments", ".tmp");
+
+            try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmpFile)))) {
+
+                out.writeInt(MAGIC_NUMBER);
+                out.writeInt(VERSION);
+                out.writeInt(linkIndex.size());
+                out.writeInt(nodeIds.length);
+
+                var linkIds = new String[linkIndex.size()];
+                for (var entry : linkIndex.object2IntEntrySet()) {
+                    linkIds[entry.getIntValue()] = entry.getKey().toString();
+                }
+
+                for (var i = 0; i < linkIds.length; i++) {
+                    out.writeUTF(linkIds[i]);
+                    out.writeInt(nodeStart[i + 1] - nodeStart[i]);
+                    for (var n = nodeStart[i]; n < nodeStart[i + 1]; n++) {
+                        out.writeUTF(nodeIds[n]);
+                        out.writeDouble(coords[2 * n]);
+                        out.writeDouble(coords[2 * n + 1]);
+                    }
+                }
+            }
+            Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static boolean isRegularFile(String file) {
+        try {
+            return Files.isRegularFile(Paths.get(file));
+        } catch (InvalidPathException e) {
+            return false;
+        }
+    }
+}
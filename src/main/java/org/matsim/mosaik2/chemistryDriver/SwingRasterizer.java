@@ -3,6 +3,7 @@ package org.matsim.mosaik2.chemistryDriver;
 import lombok.extern.log4j.Log4j2;
 import org.matsim.api.core.v01.network.Link;
 import org.matsim.mosaik2.raster.AbstractRaster;
+import org.matsim.mosaik2.raster.BuildingMask;
 import org.matsim.mosaik2.raster.DoubleRaster;
 
 import java.awt.*;
@@ -27,7 +28,7 @@ public class SwingRasterizer {
 		this.laneWidth = laneWidth;
 	}
 
-	void rasterLink(Link link, double emissionValue, DoubleRaster target, DoubleRaster buildings) {
+	void rasterLink(Link link, double emissionValue, DoubleRaster target, BuildingMask buildings) {
 
 		var pixelLine = PixelLine.fromLinkWithOffset(link, this.laneWidth / 2, target);
 		var strokeWidth = (int) Math.max(1, (link.getNumberOfLanes() * laneWidth) / target.getCellSize());
@@ -47,7 +48,7 @@ public class SwingRasterizer {
 		});
 	}
 
-	void rasterPixelLine(PixelLine line, int strokeWidth, ThickBresenham.IntBinaryConsumer setPixel) {
+	void rasterPixelLine(PixelLine line, int strokeWidth, PixelConsumer setPixel) {
 
 		// draw the line onto the image
 		this.graphics.setStroke(new BasicStroke(strokeWidth));
@@ -92,9 +93,13 @@ public class SwingRasterizer {
 		return Math.min(maxLimit, max);
 	}
 
-	static boolean isNotBuilding(int xi, int yi, DoubleRaster buildings) {
-		var value = buildings.getValueByIndex(xi, yi);
-		return !(value > 0);
+	static boolean isNotBuilding(int xi, int yi, BuildingMask buildings) {
+		return !buildings.isBuildingByIndex(xi, yi);
+	}
+
+	@FunctionalInterface
+	interface PixelConsumer {
+		void accept(int xi, int yi);
 	}
 
 	record PixelLine(int x0, int y0, int x1, int y1) {
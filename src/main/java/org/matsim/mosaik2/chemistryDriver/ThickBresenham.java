@@ -4,164 +4,277 @@ import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.network.Link;
 import org.matsim.api.core.v01.network.Network;
 import org.matsim.mosaik2.raster.AbstractRaster;
+import org.matsim.mosaik2.raster.BuildingMask;
 import org.matsim.mosaik2.raster.DoubleRaster;
 
+import java.util.Arrays;
 import java.util.Map;
-import java.util.concurrent.atomic.AtomicInteger;
-
-import static com.jogamp.opengl.math.FloatUtil.sqrt;
-import static java.lang.Math.abs;
 
+/**
+ * Rasterizes links as bands with the width of their lanes. In contrast to {@link Bresenham} each cell receives emissions
+ * according to the fraction of the band which covers the cell. The coverage is computed exactly by clipping the band
+ * against the rows and cells of the raster. This yields the same cells and shares as buffering link geometries and
+ * intersecting them with cell geometries, but without creating any geometries.
+ * <p>
+ * All methods are thread safe. Scratch memory is kept per thread. Links can be rasterized concurrently as long as each
+ * thread writes into its own target raster.
+ */
 public class ThickBresenham {
 
-    static DoubleRaster rasterizeNetwork(final Network network, final AbstractRaster.Bounds bounds, final Map<Id<Link>, Double> emissions, final double cellSize) {
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
 
-        var raster = new DoubleRaster(bounds, cellSize);
-        final var area = cellSize * cellSize;
+    static DoubleRaster rasterizeNetwork(final Network network, final BuildingMask buildings, final Map<Id<Link>, Double> emissions, final double laneWidth) {
 
+        var raster = new DoubleRaster(buildings.getBounds(), buildings.getCellSize());
         for (var entry : emissions.entrySet()) {
-
             var link = network.getLinks().get(entry.getKey());
-            var line = Line.fromLink(link, raster);
-            final double value = entry.getValue();
-
-            var counter = new AtomicInteger();
-            plotLineWidth(
-                    line.x0, line.x1, line.y0, line.y1, 5, ((xi, yi) -> counter.incrementAndGet())
-            );
-            plotLineWidth(
-                    line.x0, line.x1, line.y0, line.y1, 5, (xi, yi) -> {
-                        raster.adjustValueForIndex(xi, yi, value / counter.get() / area);
-                    }
-            );
+            rasterLink(link, entry.getValue(), laneWidth, raster, buildings);
         }
-
         return raster;
     }
 
-    static void rasterizeLink(Line line, double cellSize, double width, IntBinaryConsumer pixelConsumer) {
-
-        int x0 = line.x0;
-        int x1 = line.x1;
-        int y0 = line.y0;
-        int y1 = line.y1;
-        int dx = abs(line.x1 - line.x0);
-        int dy = -abs(line.y1 - line.y0);
-        int err = dx + dy, e2;
-        double ed = dx + dy == 0 ? 1 : Math.sqrt((float) dx * dx + (float) dy * dy);
-        int x2, y2;
-
-        int sx = line.x0 < line.x1 ? 1 : -1;
-        int sy = line.y0 < line.y1 ? 1 : -1;
-
-        //TODO think about whether this is still necessary
-       /* if (dx == 0 && dy == 0) {
-            // the algorithm doesn't really support lines shorter than the cell size.
-            // do avoid complicated computation within the loop, catch this case here
-            coordConsumer.accept(line.x0 * cellSize, line.y0 * cellSize);
-        }
-
-        */
-
-        do {
-            pixelConsumer.accept(x0, y0);
-            e2 = err + err;
-            x2 = x0;
-            if (e2 >= dx) {
-                for (e2 += dy, y2 = y0; e2 < ed * width && (y1 != y2 || dx > dy); e2 += dx) {
-                    pixelConsumer.accept(x0, y2);
-                }
-            }
-        } while (true);
+    /**
+     * Distributes the emissions of a link onto the cells covered by its lanes. The lanes form a band with a width of
+     * numberOfLanes * laneWidth, which lies on the right hand side of the link. Each cell receives emissions
+     * proportional to the area of the band it covers. Cells with buildings don't receive emissions. Their share is
+     * distributed onto the other cells. The share of cells outside the raster is cut off. The resulting values are
+     * divided by the cell area.
+     */
+    static void rasterLink(Link link, double emissionValue, double laneWidth, DoubleRaster target, BuildingMask buildings) {
+
+        var x0 = link.getFromNode().getCoord().getX();
+        var y0 = link.getFromNode().getCoord().getY();
+        var x1 = link.getToNode().getCoord().getX();
+        var y1 = link.getToNode().getCoord().getY();
+        var width = Math.max(1, link.getNumberOfLanes()) * laneWidth;
+        var length = Math.sqrt((x1 - x0) * (x1 - x0) + (y1 - y0) * (y1 - y0));
+        var cellArea = target.getCellSize() * target.getCellSize();
+
+        if (length == 0) {
+            // the band has no area. Put everything into the cell of the node as the single pixel method does.
+            var xi = getIndex(x0, target.getBounds().getMinX(), target.getCellSize());
+            var yi = getIndex(y0, target.getBounds().getMinY(), target.getCellSize());
+            if (isInside(xi, yi, target) && !buildings.isBuildingByIndex(xi, yi))
+                target.adjustValueForIndex(xi, yi, emissionValue / cellArea);
+            return;
+        }
+
+        var cells = SCRATCH.get().cells;
+        cells.clear();
+        plotLineWidth(x0, y0, x1, y1, width, target, cells::add);
+
+        // the share of cells outside the raster is part of the band area but is not written.
+        var coveredArea = length * width;
+        for (var i = 0; i < cells.size(); i++) {
+            if (buildings.isBuildingByIndex(cells.getXIndex(i), cells.getYIndex(i)))
+                coveredArea -= cells.getArea(i);
+        }
 
+        // the link runs through buildings only
+        if (coveredArea <= 0) return;
+
+        for (var i = 0; i < cells.size(); i++) {
+            var xi = cells.getXIndex(i);
+            var yi = cells.getYIndex(i);
+            if (!buildings.isBuildingByIndex(xi, yi))
+                target.adjustValueForIndex(xi, yi, emissionValue * cells.getArea(i) / coveredArea / cellArea);
+        }
     }
 
-    public static void plotLine(int x0, int y0, int x1, int y1) {
-        int dx = abs(x1 - x0);
-        int sx = x0 < x1 ? 1 : -1;
-        int dy = -abs(y1 - y0);
-        int sy = y0 < y1 ? 1 : -1;
-        int err = dx + dy, e2; /* error value e_xy */
-
-        for (; ; ) { /* loop */
-            setPixel(x0, y0);
-            e2 = 2 * err;
-            if (e2 >= dy) { /* e_xy+e_x > 0 */
-                if (x0 == x1) break;
-                err += dy;
-                x0 += sx;
-            }
-            if (e2 <= dx) { /* e_xy+e_y < 0 */
-                if (y0 == y1) break;
-                err += dx;
-                y0 += sy;
+    /**
+     * Computes the cells of a raster covered by a band of the given width, which lies on the right hand side of the line
+     * from (x0, y0) to (x1, y1). The band has flat ends. For each covered cell inside the raster, the consumer receives
+     * the area of the cell covered by the band. Cells are passed row by row.
+     */
+    static void plotLineWidth(double x0, double y0, double x1, double y1, double width, AbstractRaster raster, CoverageConsumer consumer) {
+
+        var length = Math.sqrt((x1 - x0) * (x1 - x0) + (y1 - y0) * (y1 - y0));
+        if (length == 0 || width <= 0) return;
+
+        // do all calculations relative to the raster origin to keep precision with large coordinates
+        var minX = raster.getBounds().getMinX();
+        var minY = raster.getBounds().getMinY();
+        var cellSize = raster.getCellSize();
+        var halfCellSize = cellSize / 2;
+
+        // normal vector pointing to the right of the line
+        var nx = (y1 - y0) / length * width;
+        var ny = -(x1 - x0) / length * width;
+
+        var scratch = SCRATCH.get();
+        var band = scratch.band;
+        band.set(0, x0 - minX, y0 - minY);
+        band.set(1, x1 - minX, y1 - minY);
+        band.set(2, x1 - minX + nx, y1 - minY + ny);
+        band.set(3, x0 - minX + nx, y0 - minY + ny);
+        band.size = 4;
+
+        var yiStart = Math.max(0, getIndex(band.minY(), 0, cellSize));
+        var yiEnd = Math.min(raster.getYLength() - 1, getIndex(band.maxY(), 0, cellSize));
+
+        for (var yi = yiStart; yi <= yiEnd; yi++) {
+
+            var rowBottom = yi * cellSize - halfCellSize;
+            var rowTop = yi * cellSize + halfCellSize;
+            clip(band, scratch.tmp, false, rowBottom, true);
+            clip(scratch.tmp, scratch.row, false, rowTop, false);
+            if (scratch.row.size < 3) continue;
+
+            var xiStart = Math.max(0, getIndex(scratch.row.minX(), 0, cellSize));
+            var xiEnd = Math.min(raster.getXLength() - 1, getIndex(scratch.row.maxX(), 0, cellSize));
+
+            for (var xi = xiStart; xi <= xiEnd; xi++) {
+
+                clip(scratch.row, scratch.tmp, true, xi * cellSize - halfCellSize, true);
+                clip(scratch.tmp, scratch.cell, true, xi * cellSize + halfCellSize, false);
+                var area = scratch.cell.area();
+                if (area > 0) consumer.accept(xi, yi, area);
             }
         }
     }
 
-    public static void setPixel(int xi, int yi) {
-        System.out.println("Setting pixel: " + xi + "," + yi);
+    /**
+     * Index of the cell containing the value. In contrast to {@link AbstractRaster#getXIndex(double)} this rounds
+     * towards negative infinity, so that values left of the raster yield negative indices.
+     */
+    private static int getIndex(double value, double min, double cellSize) {
+        return (int) Math.floor((value - min) / cellSize + 0.5);
     }
 
-    static void plotLineWithOffset(int x0, int y0, int x1, int y1, float th, IntBinaryConsumer setPixel) {
-        // move line to the right
-        var offset = th / 2;
-        var u1 = x1 - x0;
-        var u2 = y1 - y0;
+    private static boolean isInside(int xi, int yi, AbstractRaster raster) {
+        return 0 <= xi && xi < raster.getXLength() && 0 <= yi && yi < raster.getYLength();
+    }
 
-        var v1 = offset * u2 / (Math.sqrt(u1 * u1 + u2 * u2));
-        var v2 = v1 == 0 ? 1 : -u1 * v1 / u2;
+    /**
+     * Sutherland-Hodgman clipping of a convex polygon against an axis parallel line.
+     *
+     * @param isX       whether the line is vertical (x = value) or horizontal (y = value)
+     * @param keepAbove whether the part of the polygon with greater coordinates is kept
+     */
+    private static void clip(Polygon in, Polygon out, boolean isX, double value, boolean keepAbove) {
 
-        x0 += v1;
-        x1 += v1;
-        y0 += v2;
-        y1 += v2;
+        out.size = 0;
+        for (var i = 0; i < in.size; i++) {
 
-        plotLineWidth(x0, y0, x1, y1, th, setPixel);
-    }
+            var j = (i + 1) % in.size;
+            var ci = isX ? in.xs[i] : in.ys[i];
+            var cj = isX ? in.xs[j] : in.ys[j];
+            var insideI = keepAbove ? ci >= value : ci <= value;
+            var insideJ = keepAbove ? cj >= value : cj <= value;
 
-    static void plotLineWidth(int x0, int y0, int x1, int y1, float th, IntBinaryConsumer setPixel) { /* plot an anti-aliased line of thickness th */
-        int dx = abs(x1 - x0), sx = x0 < x1 ? 1 : -1;
-        int dy = abs(y1 - y0), sy = y0 < y1 ? 1 : -1;
-        int err = dx - dy, e2, x2, y2; /* error value e_xy */
-        float ed = dx + dy == 0 ? 1 : sqrt((float) dx * dx + (float) dy * dy);
-        for (th = (th + 1) / 2; ; ) { /* pixel loop */
-            setPixel.accept(x0, y0);
-            e2 = err;
-            x2 = x0;
-            if (2 * e2 >= -dx) { /* x step */
-                for (e2 += dy, y2 = y0; e2 < ed * th && (y1 != y2 || dx > dy); e2 += dx)
-                    setPixel.accept(x0, y2 += sy);
-                if (x0 == x1) break;
-                e2 = err;
-                err -= dy;
-                x0 += sx;
+            if (insideI) out.add(in.xs[i], in.ys[i]);
+            if (insideI != insideJ) {
+                var t = (value - ci) / (cj - ci);
+                var x = isX ? value : in.xs[i] + t * (in.xs[j] - in.xs[i]);
+                var y = isX ? in.ys[i] + t * (in.ys[j] - in.ys[i]) : value;
+                out.add(x, y);
             }
-            if (2 * e2 <= dy) { /* y step */
-                for (e2 = dx - e2; e2 < ed * th && (x1 != x2 || dx < dy); e2 += dy)
-                    setPixel.accept(x2 += sx, y0);
-                if (y0 == y1) break;
-                err += dx;
-                y0 += sy;
+        }
+    }
+
+    private static class Polygon {
+
+        // a rectangle clipped by four axis parallel lines has at most eight vertices
+        private final double[] xs = new double[8];
+        private final double[] ys = new double[8];
+        private int size;
+
+        void set(int i, double x, double y) {
+            xs[i] = x;
+            ys[i] = y;
+        }
+
+        void add(double x, double y) {
+            set(size, x, y);
+            size++;
+        }
+
+        double minX() {
+            var result = Double.POSITIVE_INFINITY;
+            for (var i = 0; i < size; i++) result = Math.min(result, xs[i]);
+            return result;
+        }
+
+        double maxX() {
+            var result = Double.NEGATIVE_INFINITY;
+            for (var i = 0; i < size; i++) result = Math.max(result, xs[i]);
+            return result;
+        }
+
+        double minY() {
+            var result = Double.POSITIVE_INFINITY;
+            for (var i = 0; i < size; i++) result = Math.min(result, ys[i]);
+            return result;
+        }
+
+        double maxY() {
+            var result = Double.NEGATIVE_INFINITY;
+            for (var i = 0; i < size; i++) result = Math.max(result, ys[i]);
+            return result;
+        }
+
+        double area() {
+            if (size < 3) return 0;
+            var sum = 0.;
+            for (var i = 0; i < size; i++) {
+                var j = (i + 1) % size;
+                sum += xs[i] * ys[j] - xs[j] * ys[i];
             }
+            return Math.abs(sum) / 2;
         }
     }
 
-    record Line(int x0, int x1, int y0, int y1) {
+    /**
+     * Growable buffer of covered cells and the covered area of each cell.
+     */
+    private static class CoverageBuffer {
+
+        private int[] cells = new int[256];
+        private double[] areas = new double[128];
+        private int size;
+
+        void clear() {
+            size = 0;
+        }
+
+        void add(int xi, int yi, double area) {
+            if (size == areas.length) {
+                cells = Arrays.copyOf(cells, cells.length * 2);
+                areas = Arrays.copyOf(areas, areas.length * 2);
+            }
+            cells[2 * size] = xi;
+            cells[2 * size + 1] = yi;
+            areas[size] = area;
+            size++;
+        }
+
+        int size() {
+            return size;
+        }
 
-        static Line fromLink(Link link, AbstractRaster targetRaster) {
+        int getXIndex(int i) {
+            return cells[2 * i];
+        }
 
-            return new Line(
-                    targetRaster.getXIndex(link.getFromNode().getCoord().getX()),
-                    targetRaster.getXIndex(link.getToNode().getCoord().getX()),
-                    targetRaster.getYIndex(link.getFromNode().getCoord().getY()),
-                    targetRaster.getYIndex(link.getToNode().getCoord().getY())
-            );
+        int getYIndex(int i) {
+            return cells[2 * i + 1];
         }
+
+        double getArea(int i) {
+            return areas[i];
+        }
+    }
+
+    private static class Scratch {
+        private final Polygon band = new Polygon();
+        private final Polygon row = new Polygon();
+        private final Polygon cell = new Polygon();
+        private final Polygon tmp = new Polygon();
+        private final CoverageBuffer cells = new CoverageBuffer();
     }
 
     @FunctionalInterface
-    interface IntBinaryConsumer {
-        void accept(int xi, int yi);
+    interface CoverageConsumer {
+        void accept(int xi, int yi, double coveredArea);
     }
 }
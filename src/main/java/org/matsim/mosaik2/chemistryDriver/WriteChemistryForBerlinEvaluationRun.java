@@ -5,6 +5,7 @@ import com.beust.jcommander.Parameter;
 import org.matsim.contrib.emissions.Pollutant;
 import org.matsim.mosaik2.raster.DoubleRaster;
 
+import java.nio.file.Path;
 import java.time.LocalDateTime;
 import java.util.Map;
 
@@ -37,6 +38,9 @@ public class WriteChemistryForBerlinEvaluationRun {
     @Parameter(names = "-s")
     private double scaleFactor = 10;
 
+    @Parameter(names = "-cache", description = "Directory to cache original link geometries, aggregated emissions and rasters in. Without it, nothing is cached.")
+    private Path cacheDirectory;
+
     public static void main(String[] args) {
         var writer = new WriteChemistryForBerlinEvaluationRun();
         JCommander.newBuilder().addObject(writer).build().parse(args);
@@ -100,6 +104,8 @@ public class WriteChemistryForBerlinEvaluationRun {
                 .date(LocalDateTime.of(2018, 7, 16, 0, 0, 0))
                 .numberOfDays(3)
                 .offset(2)
+                .segmentCacheDirectory(cacheDirectory)
+                .resultCacheDirectory(cacheDirectory)
                 .build();
 
         converter.write();
@@ -6,6 +6,7 @@ import org.matsim.contrib.emissions.Pollutant;
 import org.matsim.core.utils.geometry.transformations.TransformationFactory;
 import org.matsim.mosaik2.raster.DoubleRaster;
 
+import java.nio.file.Path;
 import java.time.LocalDateTime;
 import java.util.Map;
 
@@ -32,6 +33,9 @@ public class WriteChemistryForErnstReuterScenario {
     @Parameter(names = "-s")
     private double scaleFactor = 10;
 
+    @Parameter(names = "-cache", description = "Directory to cache original link geometries, aggregated emissions and rasters in. Without it, nothing is cached.")
+    private Path cacheDirectory;
+
     public static void main(String[] args) {
 
         var writer = new WriteChemistryForErnstReuterScenario();
@@ -58,6 +62,8 @@ public class WriteChemistryForErnstReuterScenario {
                 .timeBinSize(3600)
                 .date(LocalDateTime.of(2019,7,2,0,0))
                 .numberOfDays(2)
+                .segmentCacheDirectory(cacheDirectory)
+                .resultCacheDirectory(cacheDirectory)
                 .build();
 
         converter.write();
@@ -4,6 +4,7 @@ import com.beust.jcommander.JCommander;
 import com.beust.jcommander.Parameter;
 import org.matsim.mosaik2.raster.DoubleRaster;
 
+import java.nio.file.Path;
 import java.time.LocalDateTime;
 
 /**
@@ -30,6 +31,9 @@ public class WriteChemistryForPhotolysisBerlinScenario {
     @Parameter(names = "-s")
     private double scaleFactor = 10;
 
+    @Parameter(names = "-cache", description = "Directory to cache original link geometries, aggregated emissions and rasters in. Without it, nothing is cached.")
+    private Path cacheDirectory;
+
     public static void main(String[] args) {
 
         var writer = new WriteChemistryForPhotolysisBerlinScenario();
@@ -57,6 +61,8 @@ public class WriteChemistryForPhotolysisBerlinScenario {
                 .date(LocalDateTime.of(2017, 7, 17, 0, 0))
                 .numberOfDays(2)
                 .offset(2)
+                .segmentCacheDirectory(cacheDirectory)
+                .resultCacheDirectory(cacheDirectory)
                 .build();
 
         converter.write();
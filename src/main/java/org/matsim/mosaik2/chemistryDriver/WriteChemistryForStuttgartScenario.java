@@ -6,6 +6,7 @@ import org.matsim.contrib.emissions.Pollutant;
 import org.matsim.core.utils.geometry.transformations.IdentityTransformation;
 import org.matsim.mosaik2.raster.DoubleRaster;
 
+import java.nio.file.Path;
 import java.time.LocalDateTime;
 import java.util.Map;
 
@@ -29,6 +30,9 @@ public class WriteChemistryForStuttgartScenario {
     @Parameter(names = "-s")
     private double scaleFactor = 10;
 
+    @Parameter(names = "-cache", description = "Directory to cache original link geometries, aggregated emissions and rasters in. Without it, nothing is cached.")
+    private Path cacheDirectory;
+
     public static void main(String[] args) {
 
         var writer = new WriteChemistryForStuttgartScenario();
@@ -92,6 +96,8 @@ public class WriteChemistryForStuttgartScenario {
                 .date(LocalDateTime.of(2018, 7, 8, 0, 0))
                 .numberOfDays(2)
                 .offset(2)
+                .segmentCacheDirectory(cacheDirectory)
+                .resultCacheDirectory(cacheDirectory)
                 .build();
 
         converter.write();
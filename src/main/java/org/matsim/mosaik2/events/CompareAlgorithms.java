@@ -1,29 +1,62 @@
 package org.matsim.mosaik2.events;
 
+import com.beust.jcommander.JCommander;
+import com.beust.jcommander.Parameter;
+import it.unimi.dsi.fastutil.Arrays;
+import it.unimi.dsi.fastutil.floats.FloatArrayList;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import lombok.extern.log4j.Log4j2;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
 import org.matsim.contrib.emissions.Pollutant;
 import org.matsim.contrib.emissions.events.*;
 import org.matsim.core.events.EventsUtils;
 import org.matsim.core.utils.collections.Tuple;
 import org.matsim.mosaik2.analysis.run.CSVUtils;
+import org.matsim.vehicles.Vehicle;
 
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+@Log4j2
 public class CompareAlgorithms {
 
+    // layout of packed keys: 17 bits time in seconds (up to ~36h), 23 bits link index, 23 bits vehicle index. The sign bit stays 0
+    private static final int TIME_BITS = 17;
+    private static final int INDEX_BITS = 23;
+    private static final long INDEX_MASK = (1L << INDEX_BITS) - 1;
+
     public static void main(String[] args) {
 
+        var inputArgs = new InputArgs();
+        JCommander.newBuilder().addObject(inputArgs).build().parse(args);
+
+        var file1 = inputArgs.file1;
+        var file2 = inputArgs.file2;
+        var output = Paths.get(inputArgs.output);
+
+        if (inputArgs.packedKeys) {
+            comparePacked(file1, file2, output);
+        } else {
+            compare(file1, file2, output);
+        }
+    }
+
+    private static void compare(String file1, String file2, Path output) {
+
         var manager1 = EventsUtils.createEventsManager();
         var handler1 = new EmissionsCollector();
         manager1.addHandler(handler1);
-        var file_and_manager1 = Tuple.of("/Users/janek/Documents/palm/berlin_with_geometry_attributes/output/berlin-with-geometry-attributes.output_only_emission_events.xml.gz", manager1);
+        var file_and_manager1 = Tuple.of(file1, manager1);
 
         var manager2 = EventsUtils.createEventsManager();
         var handler2 = new EmissionsCollector();
         manager2.addHandler(handler2);
-        var file_and_manager2 = Tuple.of("/Users/janek/Documents/palm/berlin_with_geometry_attributes/output/berlin-with-geometry-attributes.output_stop_and_go_only_emission_events.xml.gz", manager2);
+        var file_and_manager2 = Tuple.of(file2, manager2);
 
         // read events files in parallel
         List.of(file_and_manager1, file_and_manager2).parallelStream()
@@ -42,7 +75,7 @@ public class CompareAlgorithms {
 
         var headers = List.of("key", "nox_avg", "nox_sng");
 
-        CSVUtils.writeTable(diffs, Paths.get("/Users/janek/Documents/palm/berlin_with_geometry_attributes/output/diff_algorithm_01.csv"),headers, (csvPrinter, diffEmissions) -> CSVUtils.printRecord(
+        CSVUtils.writeTable(diffs, output, headers, (csvPrinter, diffEmissions) -> CSVUtils.printRecord(
                 csvPrinter,
                 diffEmissions.key,
                 diffEmissions.emissions1.nox,
@@ -50,6 +83,98 @@ public class CompareAlgorithms {
         ));
     }
 
+    /**
+     * Same comparison as {@link #compare(String, String, Path)}, but keys are packed into a long and collected with
+     * float values in primitive arrays. Both sides are sorted by key and diffed with a linear merge. In contrast to the
+     * map based comparison, emissions of events with the same key are summed up instead of overwritten.
+     */
+    private static void comparePacked(String file1, String file2, Path output) {
+
+        // read and sort events files in parallel
+        var emissions = List.of(file1, file2).parallelStream()
+                .map(file -> {
+                    var manager = EventsUtils.createEventsManager();
+                    var handler = new PackedEmissionsCollector();
+                    manager.addHandler(handler);
+                    new EmissionEventsReader(manager).readFile(file);
+                    return handler.sort();
+                })
+                .toList();
+
+        var diffs = diff(emissions.get(0), emissions.get(1));
+        log.info("Found " + diffs.size() + " matching keys.");
+
+        var headers = List.of("time", "link", "vehicle", "nox_avg", "nox_sng");
+
+        CSVUtils.writeTable(diffs, output, headers, (csvPrinter, diff) -> CSVUtils.printRecord(
+                csvPrinter,
+                unpackTime(diff.key),
+                Id.get(unpackLinkIndex(diff.key), Link.class),
+                Id.get(unpackVehicleIndex(diff.key), Vehicle.class),
+                diff.nox1,
+                diff.nox2
+        ));
+    }
+
+    /**
+     * Linear merge of two sorted key sets. Keys which occur multiple times within one side are summed up.
+     */
+    static List<PackedDiff> diff(SortedEmissions emissions1, SortedEmissions emissions2) {
+
+        List<PackedDiff> result = new ArrayList<>();
+        var i = 0;
+        var j = 0;
+        while (i < emissions1.keys.length && j < emissions2.keys.length) {
+
+            var key1 = emissions1.keys[i];
+            var key2 = emissions2.keys[j];
+            if (key1 < key2) {
+                i++;
+            } else if (key2 < key1) {
+                j++;
+            } else {
+                float nox1 = 0;
+                for (; i < emissions1.keys.length && emissions1.keys[i] == key1; i++) {
+                    nox1 += emissions1.values[i];
+                }
+                float nox2 = 0;
+                for (; j < emissions2.keys.length && emissions2.keys[j] == key2; j++) {
+                    nox2 += emissions2.values[j];
+                }
+                result.add(new PackedDiff(key1, nox1, nox2));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Packs time in seconds, link index and vehicle index into a long. The order of packed keys is the order by time,
+     * link index and vehicle index. Link and vehicle indices are the indices of the ids, which are shared across both
+     * sides of the comparison.
+     */
+    static long pack(double time, int linkIndex, int vehicleIndex) {
+
+        var seconds = (long) time;
+        if (seconds < 0 || seconds >= 1L << TIME_BITS)
+            throw new IllegalArgumentException("Time " + time + " doesn't fit into " + TIME_BITS + " bits of a packed key.");
+        if (linkIndex < 0 || linkIndex > INDEX_MASK || vehicleIndex < 0 || vehicleIndex > INDEX_MASK)
+            throw new IllegalArgumentException("Link index " + linkIndex + " or vehicle index " + vehicleIndex + " doesn't fit into " + INDEX_BITS + " bits of a packed key.");
+
+        return seconds << (2 * INDEX_BITS) | (long) linkIndex << INDEX_BITS | vehicleIndex;
+    }
+
+    static long unpackTime(long key) {
+        return key >>> (2 * INDEX_BITS);
+    }
+
+    static int unpackLinkIndex(long key) {
+        return (int) (key >>> INDEX_BITS & INDEX_MASK);
+    }
+
+    static int unpackVehicleIndex(long key) {
+        return (int) (key & INDEX_MASK);
+    }
+
     private static class EmissionsCollector implements WarmEmissionEventHandler, ColdEmissionEventHandler {
 
         Map<Key, Emissions> events = new HashMap<>();
@@ -73,7 +198,60 @@ public class CompareAlgorithms {
         }
     }
 
+    static class PackedEmissionsCollector implements WarmEmissionEventHandler, ColdEmissionEventHandler {
+
+        private final LongArrayList keys = new LongArrayList();
+        private final FloatArrayList values = new FloatArrayList();
+
+        @Override
+        public void handleEvent(ColdEmissionEvent event) {
+            keys.add(pack(event.getTime(), event.getLinkId().index(), event.getVehicleId().index()));
+            values.add(event.getColdEmissions().get(Pollutant.NOx).floatValue());
+        }
+
+        @Override
+        public void handleEvent(WarmEmissionEvent event) {
+            keys.add(pack(event.getTime(), event.getLinkId().index(), event.getVehicleId().index()));
+            values.add(event.getWarmEmissions().get(Pollutant.NOx).floatValue());
+        }
+
+        /**
+         * Sorts the collected keys together with their values
+         */
+        SortedEmissions sort() {
+
+            var sortedKeys = keys.toLongArray();
+            var sortedValues = values.toFloatArray();
+            Arrays.parallelQuickSort(0, sortedKeys.length, (a, b) -> Long.compare(sortedKeys[a], sortedKeys[b]), (a, b) -> {
+                var key = sortedKeys[a];
+                sortedKeys[a] = sortedKeys[b];
+                sortedKeys[b] = key;
+                var value = sortedValues[a];
+                sortedValues[a] = sortedValues[b];
+                sortedValues[b] = value;
+            });
+            return new SortedEmissions(sortedKeys, sortedValues);
+        }
+    }
+
+    static class InputArgs {
+
+        @Parameter(names = "-file1")
+        private String file1 = "/Users/janek/Documents/palm/berlin_with_geometry_attributes/output/berlin-with-geometry-attributes.output_only_emission_events.xml.gz";
+
+        @Parameter(names = "-file2")
+        private String file2 = "/Users/janek/Documents/palm/berlin_with_geometry_attributes/output/berlin-with-geometry-attributes.output_stop_and_go_only_emission_events.xml.gz";
+
+        @Parameter(names = "-output")
+        private String output = "/Users/janek/Documents/palm/berlin_with_geometry_attributes/output/diff_algorithm_01.csv";
+
+        @Parameter(names = "-packed-keys", description = "Diff with packed keys in primitive arrays. Times must be below 2^17 s (~36.4h), link and vehicle indices below 2^23.")
+        private boolean packedKeys = false;
+    }
+
     record Key(double time, int link_id, int veh_id) {}
     record Emissions(double nox){}
     record DiffEmissions(Key key, Emissions emissions1, Emissions emissions2){}
+    record SortedEmissions(long[] keys, float[] values) {}
+    record PackedDiff(long key, float nox1, float nox2) {}
 }
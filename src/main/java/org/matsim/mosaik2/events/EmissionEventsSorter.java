@@ -0,0 +1,308 @@
+package org.matsim.mosaik2.events;
+
+import it.unimi.dsi.fastutil.ints.IntArrays;
+import lombok.Builder;
+import lombok.extern.log4j.Log4j2;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.events.Event;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.contrib.emissions.Pollutant;
+import org.matsim.contrib.emissions.events.ColdEmissionEvent;
+import org.matsim.contrib.emissions.events.WarmEmissionEvent;
+import org.matsim.core.api.experimental.events.EventsManager;
+import org.matsim.core.events.handler.BasicEventHandler;
+import org.matsim.vehicles.Vehicle;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * External sort for warm and cold emission events which arrive in arbitrary order, e.g. from several sources.
+ * <p>
+ * Events are collected in runs of a fixed number of events. Each full run is sorted by time and spilled into a
+ * temporary file as compact binary records. Link and vehicle ids are stored by their index, so the records are only
+ * valid within the same JVM. {@link #replay(EventsManager)} merges all runs with a k-way merge and passes the events
+ * to an events manager in time order. Events with the same time keep the order in which they were handled. Memory
+ * usage is bounded by the run size, regardless of the number of events.
+ */
+@Log4j2
+public class EmissionEventsSorter implements BasicEventHandler, AutoCloseable {
+
+    private static final byte WARM = 0;
+    private static final byte COLD = 1;
+    private static final Pollutant[] POLLUTANTS = Pollutant.values();
+
+    private final int runSize;
+    private final Path tempDirectory;
+
+    private final List<Path> runFiles = new ArrayList<>();
+    private final List<Event> buffer = new ArrayList<>();
+
+    /**
+     * @param runSize       number of events which are sorted in memory before they are spilled to disk. Defaults to 1 000 000
+     * @param tempDirectory directory for the spilled runs. Defaults to the system's temp directory
+     */
+    @Builder
+    public EmissionEventsSorter(int runSize, Path tempDirectory) {
+        this.runSize = runSize == 0 ? 1_000_000 : runSize;
+        this.tempDirectory = tempDirectory == null ? Paths.get(System.getProperty("java.io.tmpdir")) : tempDirectory;
+    }
+
+    /**
+     * Collects warm and cold emission events. All other events are ignored.
+     */
+    @Override
+    public void handleEvent(Event event) {
+
+        if (event instanceof WarmEmissionEvent || event instanceof ColdEmissionEvent) {
+            buffer.add(event);
+            if (buffer.size() >= runSize) spill();
+        }
+    }
+
+    /**
+     * Passes all collected events in time order to the events manager. This can be used as source wherever events are
+     * read into an events manager.
+     */
+    public void replay(EventsManager manager) {
+
+        spill();
+        log.info("Merging " + runFiles.size() + " sorted runs.");
+
+        var readers = new ArrayList<RunReader>();
+        try {
+            for (var file : runFiles) {
+                readers.add(new RunReader(file));
+            }
+
+            // primitive heap of run indices, ordered by the time of the next event of a run and the run index
+            var heap = new RunHeap(readers);
+            while (!heap.isEmpty()) {
+                var reader = readers.get(heap.peek());
+                manager.processEvent(reader.getEvent());
+                if (reader.next()) {
+                    heap.siftDown();
+                } else {
+                    heap.poll();
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            for (var reader : readers) {
+                reader.close();
+            }
+        }
+    }
+
+    /**
+     * Deletes the spilled runs.
+     */
+    @Override
+    public void close() {
+        try {
+            for (var file : runFiles) {
+                Files.deleteIfExists(file);
+            }
+            runFiles.clear();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void spill() {
+
+        if (buffer.isEmpty()) return;
+
+        // merge sort is stable. Events with the same time keep their order
+        var order = new int[buffer.size()];
+        for (var i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        IntArrays.mergeSort(order, (a, b) -> Double.compare(buffer.get(a).getTime(), buffer.get(b).getTime()));
+
+        try {
+            Files.createDirectories(tempDirectory);
+            var file = Files.createTempFile(tempDirectory, "emission-events-run", ".bin");
+            runFiles.add(file);
+            try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16))) {
+                out.writeInt(order.length);
+                for (var index : order) {
+                    writeRecord(buffer.get(index), out);
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        log.info("Spilled run #" + runFiles.size() + " with " + order.length + " events.");
+        buffer.clear();
+    }
+
+    private static void writeRecord(Event event, DataOutputStream out) throws IOException {
+
+        if (event instanceof WarmEmissionEvent warm) {
+            writeRecord(WARM, warm.getTime(), warm.getLinkId(), warm.getVehicleId(), warm.getWarmEmissions(), out);
+        } else {
+            var cold = (ColdEmissionEvent) event;
+            writeRecord(COLD, cold.getTime(), cold.getLinkId(), cold.getVehicleId(), cold.getColdEmissions(), out);
+        }
+    }
+
+    private static void writeRecord(byte type, double time, Id<Link> linkId, Id<Vehicle> vehicleId, Map<Pollutant, Double> emissions, DataOutputStream out) throws IOException {
+
+        out.writeByte(type);
+        out.writeDouble(time);
+        out.writeInt(linkId.index());
+        out.writeInt(vehicleId.index());
+        out.writeByte(emissions.size());
+        for (var entry : emissions.entrySet()) {
+            out.writeByte(entry.getKey().ordinal());
+            out.writeDouble(entry.getValue());
+        }
+    }
+
+    private static class RunReader {
+
+        private final DataInputStream in;
+        private int remaining;
+        private Event event;
+
+        private RunReader(Path file) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16));
+            this.remaining = in.readInt();
+            next();
+        }
+
+        /**
+         * Reads the next record of the run.
+         *
+         * @return false if the run has no more events
+         */
+        private boolean next() {
+
+            if (remaining == 0) {
+                event = null;
+                return false;
+            }
+
+            try {
+                var type = in.readByte();
+                var time = in.readDouble();
+                var linkId = Id.get(in.readInt(), Link.class);
+                var vehicleId = Id.get(in.readInt(), Vehicle.class);
+                var size = in.readByte();
+                // keep the order of pollutants, so that written events look exactly the same
+                Map<Pollutant, Double> emissions = new LinkedHashMap<>();
+                for (var i = 0; i < size; i++) {
+                    emissions.put(POLLUTANTS[in.readByte()], in.readDouble());
+                }
+                event = type == WARM ? new WarmEmissionEvent(time, linkId, vehicleId, emissions) : new ColdEmissionEvent(time, linkId, vehicleId, emissions);
+                remaining--;
+                return true;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private Event getEvent() {
+            return event;
+        }
+
+        private void close() {
+            try {
+                in.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Binary min heap of run indices. The time of the current event of each run is kept in a primitive array, so that
+     * comparisons don't have to touch the events.
+     */
+    private static class RunHeap {
+
+        private final List<RunReader> readers;
+        private final int[] heap;
+        private final double[] times;
+        private int size = 0;
+
+        private RunHeap(List<RunReader> readers) {
+            this.readers = readers;
+            this.heap = new int[readers.size()];
+            this.times = new double[readers.size()];
+            for (var run = 0; run < readers.size(); run++) {
+                var event = readers.get(run).getEvent();
+                if (event == null) continue;
+                times[run] = event.getTime();
+                heap[size] = run;
+                siftUp(size);
+                size++;
+            }
+        }
+
+        private boolean isEmpty() {
+            return size == 0;
+        }
+
+        private int peek() {
+            return heap[0];
+        }
+
+        /**
+         * Removes the top run, after it has no more events
+         */
+        private void poll() {
+            size--;
+            heap[0] = heap[size];
+            siftDown(0);
+        }
+
+        /**
+         * Restores the heap, after the top run has advanced to its next event
+         */
+        private void siftDown() {
+            times[heap[0]] = readers.get(heap[0]).getEvent().getTime();
+            siftDown(0);
+        }
+
+        private void siftUp(int position) {
+            while (position > 0) {
+                var parent = (position - 1) / 2;
+                if (!isLess(heap[position], heap[parent])) return;
+                swap(position, parent);
+                position = parent;
+            }
+        }
+
+        private void siftDown(int position) {
+            while (true) {
+                var left = 2 * position + 1;
+                if (left >= size) return;
+                var right = left + 1;
+                var smallest = right < size && isLess(heap[right], heap[left]) ? right : left;
+                if (!isLess(heap[smallest], heap[position])) return;
+                swap(position, smallest);
+                position = smallest;
+            }
+        }
+
+        private boolean isLess(int run, int otherRun) {
+            // runs are spilled in the order events were handled. Use the run index for equal times to keep that order
+            return times[run] < times[otherRun] || (times[run] == times[otherRun] && run < otherRun);
+        }
+
+        private void swap(int i, int j) {
+            var tmp = heap[i];
+            heap[i] = heap[j];
+            heap[j] = tmp;
+        }
+    }
+}
@@ -12,11 +12,13 @@ import org.matsim.contrib.emissions.events.ColdEmissionEvent;
 import org.matsim.contrib.emissions.events.WarmEmissionEvent;
 import org.matsim.contrib.emissions.utils.EmissionsConfigGroup;
 import org.matsim.core.api.experimental.events.EventsManager;
+import org.matsim.core.config.Config;
 import org.matsim.core.config.ConfigUtils;
 import org.matsim.core.controler.AbstractModule;
 import org.matsim.core.controler.Injector;
 import org.matsim.core.events.EventsUtils;
 import org.matsim.core.events.MatsimEventsReader;
+import org.matsim.core.events.handler.BasicEventHandler;
 import org.matsim.core.scenario.ScenarioUtils;
 import org.matsim.mosaik2.Utils;
 import org.matsim.vehicles.EngineInformation;
@@ -174,10 +176,52 @@ public class OfflineEmissions {
 			VehicleUtils.setHbefaEmissionsConcept(engineInformation, "average");
 		}
 
-		// the following is copy paste from the example...
+		var onlyEmissionEventsWriter = new FilterEventsWriter(new DownsamplingEmissionEventsFilter(1.0), getOutputFile(outputDir, runId, "stop_and_go_only_emission_events"));
+		var sample10pctEmissionEventsWriter = new FilterEventsWriter(new DownsamplingEmissionEventsFilter(0.1), getOutputFile(outputDir, runId, "stop_and_go_only_01_emission_events"));
+		var sample1pctEmissionEventsWriter = new FilterEventsWriter(new DownsamplingEmissionEventsFilter(0.01), getOutputFile(outputDir, runId, "stop_and_go_only_001_emission_events"));
+
+		if (outputArgs.partitions > 1) {
+
+			// each partition has its own emission module. Only emission events are merged, the writers filter them anyway
+			PartitionedEventsReplay.builder()
+					.numberOfPartitions(outputArgs.partitions)
+					.partitionFactory((partition, output) -> {
+						var eventsManager = EventsUtils.createEventsManager();
+						var emissionModule = createEmissionModule(config, scenario, eventsManager);
+						emissionModule.getEmissionEventsManager().addHandler((BasicEventHandler) event -> {
+							if (isEmissionEvent(event)) output.handleEvent(event);
+						});
+						return eventsManager;
+					})
+					.build()
+					.replay(getOutputFile(outputDir, runId, "events"), event -> {
+						onlyEmissionEventsWriter.handleEvent(event);
+						sample10pctEmissionEventsWriter.handleEvent(event);
+						sample1pctEmissionEventsWriter.handleEvent(event);
+					});
+		} else {
+
+			EventsManager eventsManager = EventsUtils.createEventsManager();
+			EmissionModule emissionModule = createEmissionModule(config, scenario, eventsManager);
+
+			emissionModule.getEmissionEventsManager().addHandler(onlyEmissionEventsWriter);
+			emissionModule.getEmissionEventsManager().addHandler(sample10pctEmissionEventsWriter);
+			emissionModule.getEmissionEventsManager().addHandler(sample1pctEmissionEventsWriter);
+
+			eventsManager.initProcessing();
+			MatsimEventsReader matsimEventsReader = new MatsimEventsReader(eventsManager);
+			matsimEventsReader.readFile(getOutputFile(outputDir, runId, "events"));
+			eventsManager.finishProcessing();
+		}
 
-		EventsManager eventsManager = EventsUtils.createEventsManager();
+		onlyEmissionEventsWriter.closeFile();
+		sample10pctEmissionEventsWriter.closeFile();
+		sample1pctEmissionEventsWriter.closeFile();
+	}
+
+	private static EmissionModule createEmissionModule(Config config, Scenario scenario, EventsManager eventsManager) {
 
+		// the following is copy paste from the example...
 		AbstractModule module = new AbstractModule() {
 			@Override
 			public void install() {
@@ -188,25 +232,11 @@ public class OfflineEmissions {
 		};
 
 		com.google.inject.Injector injector = Injector.createInjector(config, module);
+		return injector.getInstance(EmissionModule.class);
+	}
 
-		EmissionModule emissionModule = injector.getInstance(EmissionModule.class);
-
-		var onlyEmissionEventsWriter = new FilterEventsWriter(new DownsamplingEmissionEventsFilter(1.0), getOutputFile(outputDir, runId, "stop_and_go_only_emission_events"));
-		var sample10pctEmissionEventsWriter = new FilterEventsWriter(new DownsamplingEmissionEventsFilter(0.1), getOutputFile(outputDir, runId, "stop_and_go_only_01_emission_events"));
-		var sample1pctEmissionEventsWriter = new FilterEventsWriter(new DownsamplingEmissionEventsFilter(0.01), getOutputFile(outputDir, runId, "stop_and_go_only_001_emission_events"));
-
-		emissionModule.getEmissionEventsManager().addHandler(onlyEmissionEventsWriter);
-		emissionModule.getEmissionEventsManager().addHandler(sample10pctEmissionEventsWriter);
-		emissionModule.getEmissionEventsManager().addHandler(sample1pctEmissionEventsWriter);
-
-		eventsManager.initProcessing();
-		MatsimEventsReader matsimEventsReader = new MatsimEventsReader(eventsManager);
-		matsimEventsReader.readFile(getOutputFile(outputDir, runId, "events"));
-		eventsManager.finishProcessing();
-
-		onlyEmissionEventsWriter.closeFile();
-		sample10pctEmissionEventsWriter.closeFile();
-		sample1pctEmissionEventsWriter.closeFile();
+	private static boolean isEmissionEvent(Event event) {
+		return event.getEventType().equals(WarmEmissionEvent.EVENT_TYPE) || event.getEventType().equals(ColdEmissionEvent.EVENT_TYPE);
 	}
 
 	private static class OutputArgs {
@@ -216,13 +246,20 @@ public class OfflineEmissions {
 
 		@Parameter(names = "-outputDir", required = true)
 		private String outputDir;
+
+		/**
+		 * Number of partitions to compute emissions in parallel. Each partition loads its own emission module, including
+		 * the hbefa tables.
+		 */
+		@Parameter(names = "-partitions")
+		private int partitions = 1;
 	}
 
 	private static class DownsamplingEmissionEventsFilter implements Predicate<Event> {
 
 		private final Random random = new Random();
 		private final double scaleFactor;
-		private final Predicate<Event> filter = e -> e.getEventType().equals(WarmEmissionEvent.EVENT_TYPE) || e.getEventType().equals(ColdEmissionEvent.EVENT_TYPE);
+		private final Predicate<Event> filter = OfflineEmissions::isEmissionEvent;
 
 		public DownsamplingEmissionEventsFilter(double scaleFactor) {
 			this.scaleFactor = scaleFactor;
@@ -0,0 +1,303 @@
+package org.matsim.mosaik2.events;
+
+import lombok.Builder;
+import lombok.extern.log4j.Log4j2;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.events.*;
+import org.matsim.core.api.experimental.events.EventsManager;
+import org.matsim.core.events.EventsUtils;
+import org.matsim.core.events.MatsimEventsReader;
+import org.matsim.core.events.handler.BasicEventHandler;
+import org.matsim.vehicles.Vehicle;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Replays an events stream through several independent partitions in parallel, e.g. one emission module per partition.
+ * Events are split by their vehicle id, so that all events of a vehicle end up in the same partition. Events without a
+ * vehicle id go to the first partition.
+ * <p>
+ * Each input event gets a sequence number. Events emitted by a partition while it processes an input event are tagged
+ * with the sequence number of that input event. The outputs of all partitions are merged with a k-way merge by sequence
+ * number, which is the time order of the input. As long as the processing of a partition only depends on the events
+ * of its vehicles, the merged output is in the same order as the output of a single sequential partition.
+ * <p>
+ * The input is dispatched in batches. Every batch carries the sequence number up to which it covers the input, so that
+ * the merge knows which outputs are complete, even for partitions which didn't receive events for a while.
+ */
+@Log4j2
+public class PartitionedEventsReplay {
+
+    private static final int QUEUE_CAPACITY = 16;
+    private static final Batch END = new Batch(List.of(), Long.MAX_VALUE);
+
+    private final int numberOfPartitions;
+    private final int batchSize;
+    private final PartitionFactory partitionFactory;
+
+    private final AtomicReference<Throwable> error = new AtomicReference<>();
+
+    /**
+     * @param numberOfPartitions number of partitions processed in parallel. Defaults to the number of available processors
+     * @param batchSize          number of input events per batch. Defaults to 10000
+     * @param partitionFactory   creates the processing of a partition. Called once per partition on the partition's thread
+     */
+    @Builder
+    public PartitionedEventsReplay(int numberOfPartitions, int batchSize, PartitionFactory partitionFactory) {
+        this.numberOfPartitions = numberOfPartitions == 0 ? Runtime.getRuntime().availableProcessors() : numberOfPartitions;
+        this.batchSize = batchSize == 0 ? 10000 : batchSize;
+        this.partitionFactory = partitionFactory;
+    }
+
+    public void replay(String eventsFile, BasicEventHandler output) {
+        replay(manager -> new MatsimEventsReader(manager).readFile(eventsFile), output);
+    }
+
+    /**
+     * @param source passes the input events into the supplied events manager
+     * @param output receives the merged output of all partitions. It is called from a single thread in the order of the input.
+     */
+    public void replay(Consumer<EventsManager> source, BasicEventHandler output) {
+
+        List<BlockingQueue<Batch>> inputs = new ArrayList<>();
+        List<BlockingQueue<Batch>> outputs = new ArrayList<>();
+        for (var i = 0; i < numberOfPartitions; i++) {
+            inputs.add(new ArrayBlockingQueue<>(QUEUE_CAPACITY));
+            outputs.add(new ArrayBlockingQueue<>(QUEUE_CAPACITY));
+        }
+
+        var executor = Executors.newFixedThreadPool(numberOfPartitions + 1);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (var i = 0; i < numberOfPartitions; i++) {
+                var partition = i;
+                futures.add(executor.submit(() -> runTask(() -> processPartition(partition, inputs.get(partition), outputs.get(partition)))));
+            }
+            futures.add(executor.submit(() -> runTask(() -> merge(outputs, output))));
+
+            var dispatcher = new Dispatcher(inputs);
+            var manager = EventsUtils.createEventsManager();
+            manager.addHandler(dispatcher);
+            manager.initProcessing();
+            source.accept(manager);
+            manager.finishProcessing();
+            dispatcher.finish();
+
+            for (var future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        log.info("Replayed " + numberOfPartitions + " partitions.");
+    }
+
+    private void processPartition(int partition, BlockingQueue<Batch> input, BlockingQueue<Batch> output) {
+
+        var collector = new OutputCollector();
+        var manager = partitionFactory.createPartition(partition, collector);
+        manager.initProcessing();
+
+        while (true) {
+            var batch = take(input);
+            for (var sequencedEvent : batch.events()) {
+                collector.sequence = sequencedEvent.sequence();
+                manager.processEvent(sequencedEvent.event());
+            }
+
+            if (batch == END) {
+                // events emitted when processing finishes are merged after all other events
+                collector.sequence = Long.MAX_VALUE;
+                manager.finishProcessing();
+                put(output, new Batch(collector.flush(), Long.MAX_VALUE));
+                return;
+            }
+            put(output, new Batch(collector.flush(), batch.processedUpTo()));
+        }
+    }
+
+    private void merge(List<BlockingQueue<Batch>> outputs, BasicEventHandler handler) {
+
+        List<Deque<SequencedEvent>> buffers = new ArrayList<>();
+        var processedUpTo = new long[outputs.size()];
+        for (var i = 0; i < outputs.size(); i++) {
+            buffers.add(new ArrayDeque<>());
+        }
+
+        while (true) {
+            // wait for the partition which is furthest behind. All outputs up to its position are complete
+            var slowest = 0;
+            for (var i = 1; i < processedUpTo.length; i++) {
+                if (processedUpTo[i] < processedUpTo[slowest]) slowest = i;
+            }
+            if (processedUpTo[slowest] == Long.MAX_VALUE) return;
+
+            var batch = take(outputs.get(slowest));
+            buffers.get(slowest).addAll(batch.events());
+            processedUpTo[slowest] = batch.processedUpTo();
+
+            var complete = Arrays.stream(processedUpTo).min().orElseThrow();
+            emit(buffers, complete, handler);
+        }
+    }
+
+    /**
+     * k-way merge of all buffered events with a sequence number up to the given one
+     */
+    private static void emit(List<Deque<SequencedEvent>> buffers, long upTo, BasicEventHandler handler) {
+
+        Queue<Integer> heads = new PriorityQueue<>(Comparator
+                .comparingLong((Integer partition) -> buffers.get(partition).peekFirst().sequence())
+                .thenComparingInt(partition -> partition));
+        for (var i = 0; i < buffers.size(); i++) {
+            if (!buffers.get(i).isEmpty()) heads.add(i);
+        }
+
+        while (!heads.isEmpty()) {
+            var partition = heads.poll();
+            var buffer = buffers.get(partition);
+            if (buffer.peekFirst().sequence() > upTo) break;
+
+            // events of one partition with the same sequence number keep their order
+            var sequence = buffer.peekFirst().sequence();
+            while (!buffer.isEmpty() && buffer.peekFirst().sequence() == sequence) {
+                handler.handleEvent(buffer.pollFirst().event());
+            }
+            if (!buffer.isEmpty()) heads.add(partition);
+        }
+    }
+
+    static Id<Vehicle> getVehicleId(Event event) {
+
+        if (event instanceof LinkEnterEvent e) return e.getVehicleId();
+        if (event instanceof LinkLeaveEvent e) return e.getVehicleId();
+        if (event instanceof VehicleEntersTrafficEvent e) return e.getVehicleId();
+        if (event instanceof VehicleLeavesTrafficEvent e) return e.getVehicleId();
+        if (event instanceof PersonEntersVehicleEvent e) return e.getVehicleId();
+        if (event instanceof PersonLeavesVehicleEvent e) return e.getVehicleId();
+        if (event instanceof VehicleAbortsEvent e) return e.getVehicleId();
+        return null;
+    }
+
+    private void runTask(Runnable task) {
+        try {
+            task.run();
+        } catch (Throwable e) {
+            error.compareAndSet(null, e);
+            throw e;
+        }
+    }
+
+    /*
+     * The queues are bounded. Poll and offer with a timeout, so that no thread waits forever if another thread has failed.
+     */
+    private <T> T take(BlockingQueue<T> queue) {
+        try {
+            while (true) {
+                var item = queue.poll(1, TimeUnit.SECONDS);
+                if (item != null) return item;
+                checkError();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
+    private <T> void put(BlockingQueue<T> queue, T item) {
+        try {
+            while (!queue.offer(item, 1, TimeUnit.SECONDS)) {
+                checkError();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void checkError() {
+        if (error.get() != null) throw new RuntimeException("Replay was stopped, because another partition failed.", error.get());
+    }
+
+    @FunctionalInterface
+    public interface PartitionFactory {
+
+        /**
+         * @param partition index of the partition
+         * @param output    must receive all events emitted by the partition which should be part of the merged output
+         * @return the events manager into which the input events of the partition are passed
+         */
+        EventsManager createPartition(int partition, BasicEventHandler output);
+    }
+
+    private record SequencedEvent(long sequence, Event event) {
+    }
+
+    private record Batch(List<SequencedEvent> events, long processedUpTo) {
+    }
+
+    private static class OutputCollector implements BasicEventHandler {
+
+        private long sequence;
+        private List<SequencedEvent> events = new ArrayList<>();
+
+        @Override
+        public void handleEvent(Event event) {
+            events.add(new SequencedEvent(sequence, event));
+        }
+
+        private List<SequencedEvent> flush() {
+            var result = events;
+            events = new ArrayList<>();
+            return result;
+        }
+    }
+
+    private class Dispatcher implements BasicEventHandler {
+
+        private final List<BlockingQueue<Batch>> inputs;
+        private final List<List<SequencedEvent>> pending = new ArrayList<>();
+        private long sequence = 0;
+
+        private Dispatcher(List<BlockingQueue<Batch>> inputs) {
+            this.inputs = inputs;
+            for (var i = 0; i < inputs.size(); i++) {
+                pending.add(new ArrayList<>());
+            }
+        }
+
+        @Override
+        public void handleEvent(Event event) {
+
+            sequence++;
+            var vehicleId = getVehicleId(event);
+            var partition = vehicleId == null ? 0 : vehicleId.index() % inputs.size();
+            pending.get(partition).add(new SequencedEvent(sequence, event));
+
+            if (sequence % batchSize == 0) flush();
+        }
+
+        private void flush() {
+            // every partition receives a batch, even if it is empty, so that the merge knows how far the input was dispatched
+            for (var i = 0; i < inputs.size(); i++) {
+                put(inputs.get(i), new Batch(pending.get(i), sequence));
+                pending.set(i, new ArrayList<>());
+            }
+        }
+
+        private void finish() {
+            flush();
+            for (var input : inputs) {
+                put(input, END);
+            }
+        }
+    }
+}
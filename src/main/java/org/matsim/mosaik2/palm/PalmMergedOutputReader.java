@@ -18,15 +18,23 @@ import java.util.Objects;
 public class PalmMergedOutputReader {
 
     public static TimeBinMap<Map<String, DoubleRaster>> readFiles(Collection<Path> files, Collection<String> species) {
+        return readFiles(files, species, DoubleRaster::new);
+    }
+
+    /**
+     * @param rasterFactory creates the rasters the data is copied into. Pass MappedDoubleRaster::new to keep the data
+     *                      off heap, if the output doesn't fit into memory.
+     */
+    public static TimeBinMap<Map<String, DoubleRaster>> readFiles(Collection<Path> files, Collection<String> species, DoubleRaster.Factory rasterFactory) {
 
         // get a time bin map from the first file
         var iterator = files.iterator();
         var firstFile = iterator.next();
-        var resultMap = readFile(firstFile, species);
+        var resultMap = readFile(firstFile, species, rasterFactory);
 
         while (iterator.hasNext()) {
             var fileName = iterator.next();
-            var emissions = readFile(fileName, species);
+            var emissions = readFile(fileName, species, rasterFactory);
 
             log.info("Merging " + emissions.getTimeBins().size() + " time bins into result map.");
             for (var bin : emissions.getTimeBins()) {
@@ -42,6 +50,10 @@ public class PalmMergedOutputReader {
     }
 
     public static TimeBinMap<Map<String, DoubleRaster>> readFile(Path fileName, Collection<String> species) {
+        return readFile(fileName, species, DoubleRaster::new);
+    }
+
+    public static TimeBinMap<Map<String, DoubleRaster>> readFile(Path fileName, Collection<String> species, DoubleRaster.Factory rasterFactory) {
 
         log.info("Try opening Netcdf file at: " + fileName);
 
@@ -76,7 +88,7 @@ public class PalmMergedOutputReader {
 
                     log.info("Parsing timestep [" + startTime + ", " + timeStep + "] for species: " + speciesName);
                     ArrayFloat.D4 speciesData = (ArrayFloat.D4) speciesVar.read(new int[]{ti, 0, 0, 0}, shapeForReadOperation);
-                    var raster = new DoubleRaster(bounds, cellSize);
+                    var raster = rasterFactory.create(bounds, cellSize);
                     // this copies the data into the result raster
                     raster.setValueForEachIndex((xi, yi) -> speciesData.get(0, 0, yi, xi));
 
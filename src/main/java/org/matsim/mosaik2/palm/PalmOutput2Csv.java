@@ -8,6 +8,7 @@ import org.matsim.contrib.analysis.time.TimeBinMap;
 import org.matsim.mosaik2.DoubleToDoubleFunction;
 import org.matsim.mosaik2.analysis.run.CSVUtils;
 import org.matsim.mosaik2.raster.DoubleRaster;
+import org.matsim.mosaik2.raster.MappedDoubleRaster;
 
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -53,18 +54,34 @@ public class PalmOutput2Csv {
         );
 
         // this might be worth writing to either csv or netcdf
-        var allEmissions = PalmMergedOutputReader.readFiles(files, inputArgs.species);
-
-        // we only want the second day
-        //var secondDayEmissions = getSecondDayInLocalTime(allEmissions, inputArgs.startTime, inputArgs.utcOffset);
-        var secondDayEmissions = allEmissions;
-        convertToSiUnits(secondDayEmissions);
-        inputArgs.species = calculateNOx(secondDayEmissions, inputArgs.species);
-        writePalmOutputToCsv(getDay2CSVPath(inputArgs.root, inputArgs.palmRunId), secondDayEmissions, inputArgs.species);
-
-        if (inputArgs.filePerSpecies) {
-            for (var s : inputArgs.species) {
-                writePalmOutputToCsv(getDay2SpeciesCSVPath(inputArgs.root, inputArgs.palmRunId, s), secondDayEmissions, List.of(s));
+        DoubleRaster.Factory rasterFactory = inputArgs.offHeap ? MappedDoubleRaster::new : DoubleRaster::new;
+        var allEmissions = PalmMergedOutputReader.readFiles(files, inputArgs.species, rasterFactory);
+
+        try {
+            // we only want the second day
+            //var secondDayEmissions = getSecondDayInLocalTime(allEmissions, inputArgs.startTime, inputArgs.utcOffset);
+            var secondDayEmissions = allEmissions;
+            convertToSiUnits(secondDayEmissions);
+            inputArgs.species = calculateNOx(secondDayEmissions, inputArgs.species, rasterFactory);
+            writePalmOutputToCsv(getDay2CSVPath(inputArgs.root, inputArgs.palmRunId), secondDayEmissions, inputArgs.species);
+
+            if (inputArgs.filePerSpecies) {
+                for (var s : inputArgs.species) {
+                    writePalmOutputToCsv(getDay2SpeciesCSVPath(inputArgs.root, inputArgs.palmRunId, s), secondDayEmissions, List.of(s));
+                }
+            }
+        } finally {
+            close(allEmissions);
+        }
+    }
+
+    /**
+     * Deletes the temporary files of off-heap rasters. The NOx rasters are added to the same map, so they are closed as well.
+     */
+    private static void close(TimeBinMap<Map<String, DoubleRaster>> data) {
+        for (var bin : data.getTimeBins()) {
+            for (var raster : bin.getValue().values()) {
+                if (raster instanceof MappedDoubleRaster mapped) mapped.close();
             }
         }
     }
@@ -167,7 +184,7 @@ public class PalmOutput2Csv {
         }
     }
 
-    private static List<String> calculateNOx(TimeBinMap<Map<String, DoubleRaster>> data, List<String> species) {
+    private static List<String> calculateNOx(TimeBinMap<Map<String, DoubleRaster>> data, List<String> species, DoubleRaster.Factory rasterFactory) {
 
         var first = data.getTimeBins().iterator().next().getValue();
         if (first.containsKey("NO") && first.containsKey("NO2")) {
@@ -176,7 +193,7 @@ public class PalmOutput2Csv {
                 var emissions = bin.getValue();
                 var no = emissions.get("NO");
                 var no2 = emissions.get("NO2");
-                var nox = new DoubleRaster(no.getBounds(), no.getCellSize());
+                var nox = rasterFactory.create(no.getBounds(), no.getCellSize());
                 nox.setValueForEachIndex((xi, yi) -> {
                     var noVal = no.getValueByIndex(xi, yi);
                     var no2Val = no2.getValueByIndex(xi, yi);
@@ -228,5 +245,8 @@ public class PalmOutput2Csv {
 
         @Parameter(names = "-file-per-species")
         private boolean filePerSpecies = false;
+
+        @Parameter(names = "-off-heap")
+        private boolean offHeap = false;
     }
 }
\ No newline at end of file
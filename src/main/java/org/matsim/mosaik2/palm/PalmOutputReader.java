@@ -2,13 +2,16 @@ package org.matsim.mosaik2.palm;
 
 import lombok.extern.log4j.Log4j2;
 import org.matsim.contrib.analysis.time.TimeBinMap;
+import org.matsim.mosaik2.raster.AbstractRaster;
 import org.matsim.mosaik2.raster.DoubleRaster;
+import org.matsim.mosaik2.raster.FloatRaster;
 import ucar.ma2.ArrayFloat;
 import ucar.ma2.InvalidRangeException;
 import ucar.nc2.NetcdfFiles;
 
 import java.io.IOException;
 import java.util.Objects;
+import java.util.function.BiFunction;
 
 /**
  * This class reads a masked averaged output file of PALM.
@@ -25,6 +28,21 @@ public class PalmOutputReader {
     }
 
     public static TimeBinMap<DoubleRaster> read(String filename, int fromTimeIndex, int toTimeIndex, String species) {
+        return read(filename, fromTimeIndex, toTimeIndex, species, DoubleRaster::new, DoubleRaster::adjustValueForIndex);
+    }
+
+    public static TimeBinMap<FloatRaster> readFloat(String filename, String species) {
+        return readFloat(filename, 0, Integer.MAX_VALUE, species);
+    }
+
+    /**
+     * Same as {@link #read(String, int, int, String)} but keeps the values as floats as they are stored in the file.
+     */
+    public static TimeBinMap<FloatRaster> readFloat(String filename, int fromTimeIndex, int toTimeIndex, String species) {
+        return read(filename, fromTimeIndex, toTimeIndex, species, FloatRaster::new, FloatRaster::setValueForIndex);
+    }
+
+    private static <R extends AbstractRaster> TimeBinMap<R> read(String filename, int fromTimeIndex, int toTimeIndex, String species, BiFunction<AbstractRaster.Bounds, Double, R> rasterFactory, FloatValueSetter<R> valueSetter) {
 
         log.info("Try opening Netcdf file at: " + filename);
 
@@ -45,7 +63,7 @@ public class PalmOutputReader {
             //  Dimension kuAbove = new Dimension(" ku_above_surf", 1);
             //  kcPm10Var.reduce(List.of(kuAbove)); // remove ku_above_surf, since we are looking at the first layer above surface. This reduces the dimension of the values array
 
-            TimeBinMap<DoubleRaster> emissions = NetcdfConverters.createTimeBinMap(times, fromTimeIndex);
+            TimeBinMap<R> emissions = NetcdfConverters.createTimeBinMap(times, fromTimeIndex);
             var bounds = NetcdfConverters.createBounds(x, y);
             var cellSize = NetcdfConverters.getCellSize(x, y);
             var shapeForReadOperation = new int[]{1, 1, y.length, x.length};
@@ -56,14 +74,14 @@ public class PalmOutputReader {
                 double startTime = timestep - emissions.getBinSize(); // Palm's timestamps contain fractions which causes errors.
                 log.info("Parsing timestep [" + startTime + ", " + timestep + "]");
 
-                var raster = new DoubleRaster(bounds, cellSize);
+                var raster = rasterFactory.apply(bounds, cellSize);
                 ArrayFloat.D4 emissionData = (ArrayFloat.D4) kcPm10Var.read(new int[]{ti, 0, 0, 0}, shapeForReadOperation);
 
                 for (int xi = 0; xi < x.length; xi++) {
                     for (int yi = 0; yi < y.length; yi++) {
 
                         float value = emissionData.get(0, 0, yi, xi);
-                        raster.adjustValueForIndex(xi, yi, value);
+                        valueSetter.set(raster, xi, yi, value);
                     }
                 }
 
@@ -77,4 +95,9 @@ public class PalmOutputReader {
             throw new RuntimeException(e);
         }
     }
-}
\ No newline at end of file
+
+    @FunctionalInterface
+    private interface FloatValueSetter<R> {
+        void set(R raster, int xi, int yi, float value);
+    }
+}
@@ -1,6 +1,7 @@
 package org.matsim.mosaik2.palm;
 
 import lombok.extern.log4j.Log4j2;
+import org.matsim.mosaik2.raster.AbstractRaster;
 import org.matsim.mosaik2.raster.DoubleRaster;
 import ucar.ma2.ArrayByte;
 import ucar.ma2.ArrayFloat;
@@ -11,6 +12,7 @@ import ucar.nc2.Variable;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.util.Objects;
+import java.util.function.BiFunction;
 
 @Log4j2
 public class PalmStaticDriverReader {
@@ -34,7 +36,23 @@ public class PalmStaticDriverReader {
 		}
 	}
 
+	/**
+	 * Creates an empty raster with the bounds and cell size of the static driver. Only the coordinate variables are read.
+	 */
+	public static <T extends AbstractRaster> T createTarget(Path filePath, BiFunction<AbstractRaster.Bounds, Double, T> factory) {
+
+		try (var file = NetcdfFiles.open(filePath.toString())) {
+			return createTarget(file, factory);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
 	public static DoubleRaster createTarget(NetcdfFile file) throws IOException {
+		return createTarget(file, DoubleRaster::new);
+	}
+
+	private static <T extends AbstractRaster> T createTarget(NetcdfFile file, BiFunction<AbstractRaster.Bounds, Double, T> factory) throws IOException {
 		var xVar = Objects.requireNonNull(file.findVariable("E_UTM"));
 		var yVar = Objects.requireNonNull(file.findVariable("N_UTM"));
 
@@ -58,7 +76,7 @@ public class PalmStaticDriverReader {
 		}
 
 		var bounds = NetcdfConverters.createBounds(x, y);
-		return new DoubleRaster(bounds, cellSize);
+		return factory.apply(bounds, cellSize);
 	}
 
 	private static GetValue readIntoMemory(Variable var) throws IOException {
@@ -7,15 +7,24 @@ import lombok.RequiredArgsConstructor;
 import lombok.ToString;
 import lombok.extern.log4j.Log4j2;
 import org.apache.commons.csv.CSVFormat;
-import org.apache.commons.csv.CSVParser;
 import org.apache.commons.csv.CSVPrinter;
 import org.apache.commons.math3.util.Precision;
 import org.matsim.contrib.analysis.time.TimeBinMap;
+import org.matsim.mosaik2.NumericCsvReader;
 import org.matsim.mosaik2.raster.DoubleRaster;
+import org.matsim.mosaik2.raster.FloatRaster;
+import org.matsim.mosaik2.raster.RasterTiling;
 
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @Log4j2
@@ -26,6 +35,23 @@ public class XYTValueCsvData {
     }
 
     public static void write(Path output, TimeBinMap<DoubleRaster> palmData, double minValue) {
+        write(output, palmData, (raster, time, printer) -> raster.forEachCoordinate((x, y, value) -> {
+            if (value <= minValue) return;
+            printRecord(time, x, y, value, printer);
+        }));
+    }
+
+    /**
+     * Same as {@link #write(Path, TimeBinMap, double)} for float rasters. Values are written with float precision.
+     */
+    public static void writeFloat(Path output, TimeBinMap<FloatRaster> palmData, float minValue) {
+        write(output, palmData, (raster, time, printer) -> raster.forEachCoordinate((x, y, value) -> {
+            if (value <= minValue) return;
+            printRecord(time, x, y, value, printer);
+        }));
+    }
+
+    private static <R> void write(Path output, TimeBinMap<R> palmData, RasterWriter<R> rasterWriter) {
 
         log.info("Writing t,x,y,value data to: " + output);
 
@@ -35,12 +61,7 @@ public class XYTValueCsvData {
                 var time = bin.getStartTime();
 
                 log.info("Writing time slices: [" + time + ", " + (time + palmData.getBinSize()) + "]");
-                var raster = bin.getValue();
-
-                raster.forEachCoordinate((x, y, value) -> {
-                    if (value <= minValue) return;
-                    printRecord(time, x, y, value, printer);
-                });
+                rasterWriter.write(bin.getValue(), time, printer);
             }
         } catch (IOException e) {
             throw new RuntimeException(e);
@@ -55,75 +76,188 @@ public class XYTValueCsvData {
         return read(input, info);
     }
 
+    /**
+     * Columns are mapped by their position: time, x, y and value. The value column may be named differently, e.g. after
+     * a species like in time,x,y,PM10.
+     */
     public static TimeBinMap<DoubleRaster> read(Path input, DataInfo dataInfo) {
-        TimeBinMap<DoubleRaster> result = new TimeBinMap<>(dataInfo.getTimeInterval());
-        double lastTime = -1;
+        return read(input, dataInfo, false,
+                info -> new DoubleRaster(info.getBounds(), info.getCellSize(), -1.),
+                DoubleRaster::setValueForCoord);
+    }
+
+    /**
+     * Same as {@link #read(Path, DataInfo)} but only keeps the values within the bounds. The rasters only cover the
+     * bounds, which must lie on the grid of the file, e.g. the bounds of a {@link RasterTiling.Tile}. This way large
+     * files can be processed part by part, at the cost of one pass over the file per part.
+     */
+    public static TimeBinMap<DoubleRaster> read(Path input, DataInfo dataInfo, DoubleRaster.Bounds bounds) {
+
+        // the coordinates in the file may be off by rounding errors. Accept everything which falls into a cell of the bounds
+        var halfCell = dataInfo.getRasterInfo().getCellSize() / 2;
+        return read(input, dataInfo, false,
+                info -> new DoubleRaster(bounds, info.getCellSize(), -1.),
+                (raster, x, y, value) -> {
+                    if (x < bounds.getMinX() - halfCell || x >= bounds.getMaxX() + halfCell || y < bounds.getMinY() - halfCell || y >= bounds.getMaxY() + halfCell)
+                        return;
+                    raster.setValueForCoord(x, y, value);
+                });
+    }
+
+    public static TimeBinMap<FloatRaster> readFloat(Path input) {
+        var info = readDataInfo(input);
+        return readFloat(input, info);
+    }
+
+    /**
+     * Same as {@link #read(Path, DataInfo)} but stores values as floats. Values are parsed to the nearest float directly.
+     */
+    public static TimeBinMap<FloatRaster> readFloat(Path input, DataInfo dataInfo) {
+        return read(input, dataInfo, true,
+                info -> new FloatRaster(info.getBounds(), info.getCellSize(), -1.f),
+                (raster, x, y, value) -> raster.setValueForCoord(x, y, (float) value));
+    }
+
+    private static <R> TimeBinMap<R> read(Path input, DataInfo dataInfo, boolean floatValues, Function<RasterInfo, R> rasterFactory, ValueParser<R> valueParser) {
+        TimeBinMap<R> result = new TimeBinMap<>(dataInfo.getTimeInterval());
 
         log.info("Reading palm output csv with data info: " + dataInfo);
 
-        try (var reader = Files.newBufferedReader(input); var parser = CSVParser.parse(reader, createReadFormat())) {
+        var lastTime = new double[]{-1};
+        var columns = getColumns(input);
+        var floatColumns = floatValues ? Set.of(columns.get(3)) : Set.<String>of();
+        createReader(input, columns, floatColumns).read(block -> {
+            for (var i = 0; i < block.size(); i++) {
 
-            for (var record : parser) {
+                var time = block.get(i, 0);
 
-                var time = Double.parseDouble(record.get("time"));
+                if (time != lastTime[0]) {
+                    lastTime[0] = time;
+                    log.info("Parsing Time Slice: [" + time + ", " + (time + dataInfo.timeInterval) + "]");
+                }
+
+                var bin = result.getTimeBin(time);
+                if (!bin.hasValue()) {
+                    bin.setValue(rasterFactory.apply(dataInfo.getRasterInfo()));
+                }
+                valueParser.parse(bin.getValue(), block.get(i, 1), block.get(i, 2), block.get(i, 3));
+            }
+        });
+
+        return result;
+    }
+
+    /**
+     * Reads a file time slice by time slice and passes each complete slice to the consumer, so that only one slice is
+     * held in memory. The file must be sorted by time, as written by {@link #write(Path, TimeBinMap)}. The values of all
+     * value columns are summed up, e.g. NO and NO2 into NOx. Cells without a value are -1.
+     */
+    public static void readTimeSlices(Path input, DataInfo dataInfo, List<String> valueColumns, TimeSliceConsumer consumer) {
+
+        var columns = new ArrayList<>(getColumns(input).subList(0, 3));
+        columns.addAll(valueColumns);
+        var sliceTime = new double[]{Double.NEGATIVE_INFINITY};
+        var slice = new DoubleRaster[1];
+
+        log.info("Reading time slices of " + input + " with data info: " + dataInfo);
+        createReader(input, columns, Set.of()).read(block -> {
+            for (var i = 0; i < block.size(); i++) {
+
+                var time = block.get(i, 0);
+                if (time != sliceTime[0]) {
+                    if (time < sliceTime[0])
+                        throw new IllegalStateException("Time slices must be sorted by time. Found " + time + " after " + sliceTime[0] + " in " + input);
+                    if (slice[0] != null) consumer.accept(sliceTime[0], slice[0]);
 
-                if (time != lastTime) {
-                    lastTime = time;
                     log.info("Parsing Time Slice: [" + time + ", " + (time + dataInfo.timeInterval) + "]");
+                    sliceTime[0] = time;
+                    slice[0] = new DoubleRaster(dataInfo.getRasterInfo().getBounds(), dataInfo.getRasterInfo().getCellSize(), -1.);
+                }
+
+                var value = 0.;
+                for (var column = 3; column < columns.size(); column++) {
+                    value += block.get(i, column);
                 }
+                slice[0].setValueForCoord(block.get(i, 1), block.get(i, 2), value);
+            }
+        });
+        if (slice[0] != null) consumer.accept(sliceTime[0], slice[0]);
+    }
 
-                var x = Double.parseDouble(record.get("x"));
-                var y = Double.parseDouble(record.get("y"));
-                var value = Double.parseDouble(record.get("value"));
+    /**
+     * Reads two files time slice by time slice and passes slices with the same time to the consumer. Each file is read
+     * by its own thread, which parses the next slice while the consumer processes the current one. Time slices which
+     * are only present in one of the files are skipped. See {@link #readTimeSlices(Path, DataInfo, List, TimeSliceConsumer)}
+     */
+    public static void readPairedTimeSlices(Path base, Path compare, List<String> valueColumns, PairedTimeSliceConsumer consumer) {
+
+        // the data info needs a pass over each file. Read both files at the same time.
+        var baseInfo = CompletableFuture.supplyAsync(() -> readDataInfo(base));
+        var compareInfo = readDataInfo(compare);
+        readPairedTimeSlices(base, baseInfo.join(), compare, compareInfo, valueColumns, consumer);
+    }
 
-                var bin = getRasterForTime(time, result, dataInfo.getRasterInfo());
-                bin.setValueForCoord(x, y, value);
+    /**
+     * Same as {@link #readPairedTimeSlices(Path, Path, List, PairedTimeSliceConsumer)} with known data infos, so that
+     * each file is only parsed once.
+     */
+    public static void readPairedTimeSlices(Path base, DataInfo baseInfo, Path compare, DataInfo compareInfo, List<String> valueColumns, PairedTimeSliceConsumer consumer) {
+
+        try (var baseSlices = new TimeSliceReader(base, baseInfo, valueColumns);
+             var compareSlices = new TimeSliceReader(compare, compareInfo, valueColumns)) {
+
+            var baseSlice = baseSlices.next();
+            var compareSlice = compareSlices.next();
+            while (baseSlice != null && compareSlice != null) {
+                if (Precision.equals(baseSlice.time(), compareSlice.time())) {
+                    consumer.accept(baseSlice.time(), baseSlice.raster(), compareSlice.raster());
+                    baseSlice = baseSlices.next();
+                    compareSlice = compareSlices.next();
+                } else if (baseSlice.time() < compareSlice.time()) {
+                    log.warn("Time slice " + baseSlice.time() + " is missing in " + compare);
+                    baseSlice = baseSlices.next();
+                } else {
+                    log.warn("Time slice " + compareSlice.time() + " is missing in " + base);
+                    compareSlice = compareSlices.next();
+                }
             }
-        } catch (IOException e) {
-            throw new RuntimeException(e);
         }
-
-        return result;
     }
 
     public static DataInfo readDataInfo(Path input) {
 
-        double lastTimeStep = -1;
-        double timeStepSize = -1;
+        var lastTimeStep = new double[]{-1};
+        var timeStepSize = new double[]{-1};
+        var cellSize = new double[]{-1};
         MaxBounds bounds = new MaxBounds();
         Coordinates coordinates = new Coordinates();
-        double cellSize = -1;
 
         log.info("Reading data info of file " + input.toString());
-        try (var reader = Files.newBufferedReader(input); var parser = CSVParser.parse(reader, createReadFormat())) {
-
-            for (var record : parser) {
+        createReader(input, getColumns(input).subList(0, 3), Set.of()).read(block -> {
+            for (var i = 0; i < block.size(); i++) {
 
-                var x = Double.parseDouble(record.get("x"));
-                var y = Double.parseDouble(record.get("y"));
+                var x = block.get(i, 1);
+                var y = block.get(i, 2);
                 bounds.adjustTo(x, y);
-                if (cellSize < 0.)
+                if (cellSize[0] < 0.)
                     coordinates.add(x, y);
 
-                var time = Double.parseDouble(record.get("time"));
+                var time = block.get(i, 0);
 
-
-                if (!Precision.equals(lastTimeStep, time)) {
-                    log.info("lasttimestep: " + lastTimeStep + " time: " + time);
-                    timeStepSize = time - lastTimeStep;
-                    if (lastTimeStep > 0)
-                        cellSize = coordinates.getCellSize();
-                    lastTimeStep = time;
+                if (!Precision.equals(lastTimeStep[0], time)) {
+                    log.info("lasttimestep: " + lastTimeStep[0] + " time: " + time);
+                    timeStepSize[0] = time - lastTimeStep[0];
+                    if (lastTimeStep[0] > 0)
+                        cellSize[0] = coordinates.getCellSize();
+                    lastTimeStep[0] = time;
                 }
             }
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
+        });
 
-        return new DataInfo(new RasterInfo(bounds.createBounds(), cellSize), timeStepSize);
+        return new DataInfo(new RasterInfo(bounds.createBounds(), cellSize[0]), timeStepSize[0]);
     }
 
-    private static void printRecord(double time, double x, double y, double value, CSVPrinter printer) {
+    private static void printRecord(double time, double x, double y, Object value, CSVPrinter printer) {
         try {
             printer.printRecord(time, x, y, value);
         } catch (IOException e) {
@@ -131,13 +265,24 @@ public class XYTValueCsvData {
         }
     }
 
-    private static CSVFormat createReadFormat() {
-        return CSVFormat.DEFAULT.builder()
-                .setHeader("time", "x", "y", "value")
-                .setSkipHeaderRecord(true)
+    private static NumericCsvReader createReader(Path input, List<String> columns, Set<String> floatColumns) {
+        return NumericCsvReader.builder()
+                .file(input)
+                .columns(columns)
+                .floatColumns(floatColumns)
                 .build();
     }
 
+    /**
+     * Returns the names of the time, x, y and value columns, which are the first four columns of a file.
+     */
+    private static List<String> getColumns(Path input) {
+        var header = NumericCsvReader.readHeader(input);
+        if (header.size() < 4)
+            throw new RuntimeException("Expected the columns time, x, y and value in " + input + " but found: " + header);
+        return header.subList(0, 4);
+    }
+
     private static CSVFormat createWriteFormat() {
         return CSVFormat.DEFAULT.builder()
                 .setHeader("time", "x", "y", "value")
@@ -145,17 +290,6 @@ public class XYTValueCsvData {
                 .build();
     }
 
-    private static DoubleRaster getRasterForTime(double time, TimeBinMap<DoubleRaster> map, RasterInfo rasterInfo) {
-
-        var bin = map.getTimeBin(time);
-
-        if (!bin.hasValue()) {
-            bin.setValue(new DoubleRaster(rasterInfo.getBounds(), rasterInfo.getCellSize(), -1.));
-        }
-
-        return bin.getValue();
-    }
-
     /**
      * This collects x values in an array. Converts it into a cell size
      */
@@ -198,6 +332,93 @@ public class XYTValueCsvData {
         }
     }
 
+    @FunctionalInterface
+    private interface RasterWriter<R> {
+        void write(R raster, double time, CSVPrinter printer);
+    }
+
+    @FunctionalInterface
+    public interface TimeSliceConsumer {
+        void accept(double time, DoubleRaster raster);
+    }
+
+    @FunctionalInterface
+    public interface PairedTimeSliceConsumer {
+        void accept(double time, DoubleRaster base, DoubleRaster compare);
+    }
+
+    private record TimeSlice(double time, DoubleRaster raster) {
+    }
+
+    /**
+     * Reads time slices on a separate thread and hands them over one at a time.
+     */
+    private static class TimeSliceReader implements AutoCloseable {
+
+        private static final TimeSlice END = new TimeSlice(Double.NaN, null);
+
+        private final SynchronousQueue<TimeSlice> slices = new SynchronousQueue<>();
+        private final AtomicReference<Throwable> error = new AtomicReference<>();
+        private final Thread thread;
+        private boolean finished = false;
+
+        private TimeSliceReader(Path input, DataInfo dataInfo, List<String> valueColumns) {
+            this.thread = new Thread(() -> {
+                try {
+                    readTimeSlices(input, dataInfo, valueColumns, (time, raster) -> put(new TimeSlice(time, raster)));
+                    put(END);
+                } catch (Throwable e) {
+                    error.set(e);
+                    try {
+                        slices.put(END);
+                    } catch (InterruptedException interrupted) {
+                        // the reader was closed. Nobody is waiting for the next slice anymore.
+                    }
+                }
+            }, "time-slice-reader");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        /**
+         * @return the next time slice or null if all slices were read
+         */
+        private TimeSlice next() {
+            if (finished) return null;
+            try {
+                var slice = slices.take();
+                if (error.get() != null) throw new RuntimeException(error.get());
+                if (slice == END) {
+                    finished = true;
+                    return null;
+                }
+                return slice;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            }
+        }
+
+        private void put(TimeSlice slice) {
+            try {
+                slices.put(slice);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            }
+        }
+
+        @Override
+        public void close() {
+            thread.interrupt();
+        }
+    }
+
+    @FunctionalInterface
+    private interface ValueParser<R> {
+        void parse(R raster, double x, double y, double value);
+    }
+
     @RequiredArgsConstructor
     @Getter
     @ToString
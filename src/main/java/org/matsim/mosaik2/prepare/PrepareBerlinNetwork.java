@@ -24,6 +24,7 @@ import org.matsim.core.network.NetworkUtils;
 import org.matsim.core.network.algorithms.NetworkCleaner;
 import org.matsim.core.network.io.NetworkWriter;
 import org.matsim.core.scenario.ScenarioUtils;
+import org.matsim.core.utils.collections.Tuple;
 import org.matsim.core.utils.geometry.CoordinateTransformation;
 import org.matsim.core.utils.geometry.geotools.MGC;
 import org.matsim.core.utils.geometry.transformations.TransformationFactory;
@@ -113,23 +114,27 @@ public class PrepareBerlinNetwork {
 
 
         // if links are within the bounding box and if their original geometry is more complex than
-        // the current link, mark them for being replaced
-        var linksToReplace = network.getLinks().values().stream()
+        // the current link, mark them for being replaced. Parsing the original geometries is expensive, so this is done
+        // only once per link and in parallel
+        var linksToReplace = network.getLinks().values().parallelStream()
                 .filter(link -> isCoveredBy(link, bbox))
-                .filter(link -> NetworkUtils.getOriginalGeometry(link).size() > 2)
+                .map(link -> Tuple.of(link, NetworkUtils.getOriginalGeometry(link)))
+                .filter(linkAndGeometry -> linkAndGeometry.getSecond().size() > 2)
                 .collect(Collectors.toList());
 
         // add all the nodes which we need for the enhanced geometries
         linksToReplace.stream()
-                .flatMap(link -> NetworkUtils.getOriginalGeometry(link).stream())
+                .flatMap(linkAndGeometry -> linkAndGeometry.getSecond().stream())
                 .filter(node -> !network.getNodes().containsKey(node.getId()))
                 .forEach(network::addNode);
 
-        // now, add the links in between the original geometries
-        var linksToAdd = linksToReplace.stream()
-                .flatMap(link -> {
+        // now, add the links in between the original geometries. The network isn't changed in this step, so the links
+        // can be created in parallel
+        var linksToAdd = linksToReplace.parallelStream()
+                .flatMap(linkAndGeometry -> {
 
-                    var originalGeometry = NetworkUtils.getOriginalGeometry(link);
+                    var link = linkAndGeometry.getFirst();
+                    var originalGeometry = linkAndGeometry.getSecond();
                     var attributes = link.getAttributes().getAsMap();
 
                     // for each node in the original geometry add one link end at second to last node
@@ -158,8 +163,8 @@ public class PrepareBerlinNetwork {
                 .collect(Collectors.toList());
 
         // now delete the links simplified links
-        for (var link : linksToReplace) {
-            network.removeLink(link.getId());
+        for (var linkAndGeometry : linksToReplace) {
+            network.removeLink(linkAndGeometry.getFirst().getId());
         }
 
         // add the new links to the network
@@ -53,6 +53,13 @@ public class AbstractRaster {
         return yi * xLength + xi;
     }
 
+    /**
+     * Same as {@link #getIndex(int, int)} but doesn't overflow for rasters with more than 2^31 cells
+     */
+    long getLongIndex(int xi, int yi) {
+        return (long) yi * xLength + xi;
+    }
+
     int getIndexForCoord(double x, double y) {
         var xi = getXIndex(x);
         var yi = getYIndex(y);
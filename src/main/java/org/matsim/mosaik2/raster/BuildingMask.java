@@ -0,0 +1,257 @@
+package org.matsim.mosaik2.raster;
+
+import lombok.extern.log4j.Log4j2;
+import org.locationtech.jts.algorithm.locate.IndexedPointInAreaLocator;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.CoordinateFilter;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.Location;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.core.utils.geometry.CoordinateTransformation;
+import org.matsim.core.utils.geometry.transformations.TransformationFactory;
+import org.matsim.core.utils.gis.ShapeFileReader;
+import org.matsim.mosaik2.Utils;
+import org.matsim.mosaik2.palm.PalmStaticDriverReader;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+
+/**
+ * Raster which stores for each cell whether it is covered by a building. The flags are packed into a long[], one bit
+ * per cell. Each row starts with a new word, so that rows can be written concurrently.
+ * <p>
+ * The mask can be created from a shape file with building polygons, which is expensive for large areas. Therefore,
+ * masks are cached in a cache directory, keyed by a content hash of the input file and the raster parameters.
+ */
+@Log4j2
+public class BuildingMask extends AbstractRaster {
+
+    private static final int MAGIC_NUMBER = 0xb0117d15;
+    private static final int VERSION = 1;
+
+    private final int wordsPerRow;
+    private final long[] words;
+
+    public BuildingMask(Bounds bounds, double cellSize) {
+        super(bounds, cellSize);
+        this.wordsPerRow = (getXLength() + 63) >>> 6;
+        this.words = new long[wordsPerRow * getYLength()];
+    }
+
+    public boolean isBuildingByIndex(int xi, int yi) {
+        var word = getWordIndex(xi, yi);
+        return (words[word] & (1L << xi)) != 0;
+    }
+
+    public boolean isBuildingByCoord(double x, double y) {
+        return isBuildingByIndex(getXIndex(x), getYIndex(y));
+    }
+
+    public void setBuildingForIndex(int xi, int yi) {
+        var word = getWordIndex(xi, yi);
+        words[word] |= 1L << xi;
+    }
+
+    public void setBuildingForCoord(double x, double y) {
+        setBuildingForIndex(getXIndex(x), getYIndex(y));
+    }
+
+    /**
+     * @return number of cells covered by buildings
+     */
+    public int countBuildings() {
+        var result = 0;
+        for (var word : words) {
+            result += Long.bitCount(word);
+        }
+        return result;
+    }
+
+    /**
+     * Iterates over the x and y coordinates of the raster row by row and supplies whether the cell is covered by a building.
+     */
+    public void forEachCoordinate(CoordBooleanConsumer consumer) {
+        for (var yi = 0; yi < getYLength(); yi++) {
+            var y = getCentroidYForIndex(yi);
+            for (var xi = 0; xi < getXLength(); xi++) {
+                consumer.consume(getCentroidXForIndex(xi), y, isBuildingByIndex(xi, yi));
+            }
+        }
+    }
+
+    private int getWordIndex(int xi, int yi) {
+        if (xi < 0 || xi >= getXLength())
+            throw new ArrayIndexOutOfBoundsException("x-index " + xi + " is outside the raster with x-length " + getXLength());
+        return yi * wordsPerRow + (xi >>> 6);
+    }
+
+    /**
+     * Marks all cells with a value greater than 0 as buildings. This is how the buildings_2d field of PALM static
+     * drivers marks buildings. Cells without buildings carry a negative fill value there.
+     */
+    public static BuildingMask fromRaster(DoubleRaster buildings) {
+
+        var result = new BuildingMask(buildings.getBounds(), buildings.getCellSize());
+        IntStream.range(0, result.getYLength()).parallel().forEach(yi -> {
+            for (var xi = 0; xi < result.getXLength(); xi++) {
+                if (buildings.getValueByIndex(xi, yi) > 0) result.setBuildingForIndex(xi, yi);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Creates a mask from the buildings_2d field of a PALM static driver. The mask has the bounds and cell size of the
+     * static driver.
+     *
+     * @param cacheDirectory the directory to read and write cache files from. If null, no cache is used.
+     */
+    public static BuildingMask fromStaticDriver(Path staticDriver, Path cacheDirectory) {
+
+        var target = PalmStaticDriverReader.createTarget(staticDriver, BuildingMask::new);
+        return loadOrCreate(staticDriver, "static-driver", target.getBounds(), target.getCellSize(), cacheDirectory,
+                () -> fromRaster(PalmStaticDriverReader.read(staticDriver, "buildings_2d")));
+    }
+
+    /**
+     * Creates a mask from building polygons of a shape file. A cell is marked as building if its centroid is covered by
+     * a building polygon. Each polygon is only tested against the cells within its envelope.
+     *
+     * @param shapeCrs       the coordinate system of the shape file
+     * @param targetCrs      the coordinate system of the raster
+     * @param cacheDirectory the directory to read and write cache files from. If null, no cache is used.
+     */
+    public static BuildingMask fromShapeFile(Path shapeFile, String shapeCrs, String targetCrs, Bounds bounds, double cellSize, Path cacheDirectory) {
+
+        var key = "shape-" + shapeCrs + "-" + targetCrs + "-" + bounds + "-" + cellSize;
+        return loadOrCreate(shapeFile, key, bounds, cellSize, cacheDirectory, () -> {
+
+            log.info("Rasterizing buildings from shape file: " + shapeFile);
+            var transformation = TransformationFactory.getCoordinateTransformation(shapeCrs, targetCrs);
+            var result = new BuildingMask(bounds, cellSize);
+            var features = ShapeFileReader.getAllFeatures(shapeFile.toString());
+            for (var feature : features) {
+                var geometry = transform((Geometry) feature.getDefaultGeometry(), transformation);
+                result.rasterize(geometry);
+            }
+            log.info("Finished rasterizing " + features.size() + " buildings. " + result.countBuildings() + " cells are covered by buildings.");
+            return result;
+        });
+    }
+
+    private void rasterize(Geometry geometry) {
+
+        var envelope = geometry.getEnvelopeInternal();
+        var bounds = getBounds();
+        if (envelope.getMaxX() < bounds.getMinX() || envelope.getMinX() > bounds.getMaxX() || envelope.getMaxY() < bounds.getMinY() || envelope.getMinY() > bounds.getMaxY())
+            return;
+
+        var locator = new IndexedPointInAreaLocator(geometry);
+        var coordinate = new Coordinate();
+        var minXi = Math.max(0, getXIndex(envelope.getMinX()));
+        var maxXi = Math.min(getXLength() - 1, getXIndex(envelope.getMaxX()));
+        var minYi = Math.max(0, getYIndex(envelope.getMinY()));
+        var maxYi = Math.min(getYLength() - 1, getYIndex(envelope.getMaxY()));
+
+        for (var yi = minYi; yi <= maxYi; yi++) {
+            coordinate.setY(getCentroidYForIndex(yi));
+            for (var xi = minXi; xi <= maxXi; xi++) {
+                coordinate.setX(getCentroidXForIndex(xi));
+                if (locator.locate(coordinate) != Location.EXTERIOR) setBuildingForIndex(xi, yi);
+            }
+        }
+    }
+
+    private static Geometry transform(Geometry geometry, CoordinateTransformation transformation) {
+        geometry.apply((CoordinateFilter) coordinate -> {
+            var transformed = transformation.transform(new Coord(coordinate.getX(), coordinate.getY()));
+            coordinate.setX(transformed.getX());
+            coordinate.setY(transformed.getY());
+        });
+        geometry.geometryChanged();
+        return geometry;
+    }
+
+    private static BuildingMask loadOrCreate(Path sourceFile, String key, Bounds bounds, double cellSize, Path cacheDirectory, Supplier<BuildingMask> factory) {
+
+        if (cacheDirectory == null) return factory.get();
+
+        var cacheFile = cacheDirectory.resolve(Utils.hash(Utils.hash(sourceFile) + "-" + key) + ".mask");
+        if (Files.exists(cacheFile)) {
+            log.info("Reading building mask from cache file: " + cacheFile);
+            try {
+                return read(cacheFile, bounds, cellSize);
+            } catch (IOException e) {
+                log.warn("Could not read cache file " + cacheFile + ". Creating building mask from " + sourceFile + " instead.", e);
+            }
+        }
+
+        var mask = factory.get();
+        log.info("Writing building mask to cache file: " + cacheFile);
+        mask.write(cacheFile);
+        return mask;
+    }
+
+    /**
+     * Reads a mask written by {@link #write(Path)}.
+     *
+     * @throws IOException if the file is not a building mask file or its bounds and cell size differ from the expected ones
+     */
+    static BuildingMask read(Path file, Bounds expectedBounds, double expectedCellSize) throws IOException {
+
+        try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+
+            if (in.readInt() != MAGIC_NUMBER || in.readInt() != VERSION)
+                throw new IOException("File " + file + " is not a building mask file of version " + VERSION);
+
+            var bounds = new Bounds(in.readDouble(), in.readDouble(), in.readDouble(), in.readDouble());
+            var cellSize = in.readDouble();
+            if (!bounds.equals(expectedBounds) || cellSize != expectedCellSize)
+                throw new IOException("Building mask in " + file + " has bounds " + bounds + " and cell size " + cellSize + ". Expected " + expectedBounds + " and " + expectedCellSize);
+
+            var result = new BuildingMask(bounds, cellSize);
+            if (in.readInt() != result.words.length)
+                throw new IOException("Number of words in " + file + " does not match the bounds and cell size stored in the file.");
+
+            for (var i = 0; i < result.words.length; i++) {
+                result.words[i] = in.readLong();
+            }
+            return result;
+        }
+    }
+
+    void write(Path file) {
+
+        try {
+            Files.createDirectories(file.toAbsolutePath().getParent());
+            // write into a temporary file first, so that no broken cache files are left if the process is stopped
+            var tmpFile = Files.createTempFile(file.toAbsolutePath().getParent(), "mask", ".tmp");
+
+            try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmpFile)))) {
+                out.writeInt(MAGIC_NUMBER);
+                out.writeInt(VERSION);
+                out.writeDouble(getBounds().getMinX());
+                out.writeDouble(getBounds().getMinY());
+                out.writeDouble(getBounds().getMaxX());
+                out.writeDouble(getBounds().getMaxY());
+                out.writeDouble(getCellSize());
+                out.writeInt(words.length);
+                for (var word : words) {
+                    out.writeLong(word);
+                }
+            }
+            Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @FunctionalInterface
+    public interface CoordBooleanConsumer {
+        void consume(double x, double y, boolean isBuilding);
+    }
+}
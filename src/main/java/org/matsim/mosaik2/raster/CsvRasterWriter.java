@@ -0,0 +1,213 @@
+package org.matsim.mosaik2.raster;
+
+import lombok.Builder;
+import lombok.extern.log4j.Log4j2;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes a {@link DoubleRaster} as x,y,value csv. The output has the same format as printing each cell with a
+ * {@link org.apache.commons.csv.CSVPrinter} using {@link org.apache.commons.csv.CSVFormat#DEFAULT}, but is much faster.
+ * <p>
+ * The raster is split into chunks of columns. Chunks are formatted concurrently. Values are formatted into a reusable
+ * byte buffer per thread with {@link DoubleFormat}, without boxing or creating strings. If the file name
+ * ends with '.gz', each chunk is compressed on its own and written as a separate gzip member. Gzip readers, including
+ * {@link java.util.zip.GZIPInputStream}, read concatenated members as one stream. The chunks are written in raster order.
+ */
+@Log4j2
+@Builder
+public class CsvRasterWriter {
+
+    private static final int CELLS_PER_CHUNK = 1 << 16;
+    private static final byte[] HEADER = "x,y,value\r\n".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+
+    private static final ThreadLocal<ByteBuilder> BUFFER = ThreadLocal.withInitial(ByteBuilder::new);
+
+    /**
+     * Only cells with values greater than minValue are written
+     */
+    @Builder.Default
+    private final double minValue = Double.NEGATIVE_INFINITY;
+
+    /**
+     * Don't write cells with a value of 0
+     */
+    @Builder.Default
+    private final boolean skipZeros = false;
+
+    /**
+     * Number of threads which format and compress chunks.
+     */
+    @Builder.Default
+    private final int parallelism = Runtime.getRuntime().availableProcessors();
+
+    @Builder.Default
+    private final int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+
+    public void write(Path file, DoubleRaster raster) {
+
+        var isGzip = file.getFileName().toString().endsWith(".gz");
+        var columnsPerChunk = Math.max(1, CELLS_PER_CHUNK / Math.max(1, raster.getYLength()));
+        var numberOfChunks = (raster.getXLength() + columnsPerChunk - 1) / columnsPerChunk;
+        var maxPendingChunks = 2 * Math.max(1, parallelism);
+
+        log.info("Writing raster with " + numberOfChunks + " chunks to: " + file);
+
+        var pool = new ForkJoinPool(Math.max(1, parallelism));
+        try (var out = new BufferedOutputStream(Files.newOutputStream(file), 1 << 16)) {
+
+            out.write(isGzip ? compress(HEADER, HEADER.length) : HEADER);
+
+            // submit chunks in order and write the oldest once enough are in flight. This keeps the workers busy while
+            // the memory held by pending chunks stays bounded.
+            var pending = new ArrayDeque<ForkJoinTask<byte[]>>();
+            for (var chunk = 0; chunk < numberOfChunks; chunk++) {
+                var fromX = chunk * columnsPerChunk;
+                var toX = Math.min(raster.getXLength(), fromX + columnsPerChunk);
+                pending.add(pool.submit(() -> formatChunk(raster, fromX, toX, isGzip)));
+
+                if (pending.size() >= maxPendingChunks) {
+                    out.write(pending.poll().join());
+                }
+                if (chunk % 100 == 0) {
+                    log.info("Submitted chunk " + chunk + "/" + numberOfChunks);
+                }
+            }
+            while (!pending.isEmpty()) {
+                out.write(pending.poll().join());
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            pool.shutdown();
+        }
+        log.info("Finished writing raster to: " + file);
+    }
+
+    private byte[] formatChunk(DoubleRaster raster, int fromX, int toX, boolean isGzip) {
+
+        var buffer = BUFFER.get();
+        buffer.clear();
+        for (var xi = fromX; xi < toX; xi++) {
+            var x = raster.getCentroidXForIndex(xi);
+            for (var yi = 0; yi < raster.getYLength(); yi++) {
+                var value = raster.getValueByIndex(xi, yi);
+                if (value <= minValue || (skipZeros && value == 0)) continue;
+
+                buffer.appendDouble(x);
+                buffer.append(',');
+                buffer.appendDouble(raster.getCentroidYForIndex(yi));
+                buffer.append(',');
+                buffer.appendDouble(value);
+                buffer.append('\r');
+                buffer.append('\n');
+            }
+        }
+        return isGzip ? compress(buffer.bytes, buffer.size) : Arrays.copyOf(buffer.bytes, buffer.size);
+    }
+
+    /**
+     * Compresses the data into a complete gzip member
+     */
+    private byte[] compress(byte[] data, int length) {
+
+        var deflater = new Deflater(compressionLevel, true);
+        try {
+            deflater.setInput(data, 0, length);
+            deflater.finish();
+
+            var result = new ByteBuilder(length / 4 + 64);
+            result.append(GZIP_HEADER, GZIP_HEADER.length);
+            while (!deflater.finished()) {
+                result.ensureCapacity(result.size + 8192);
+                result.size += deflater.deflate(result.bytes, result.size, result.bytes.length - result.size);
+            }
+
+            var crc = new CRC32();
+            crc.update(data, 0, length);
+            result.appendIntLE((int) crc.getValue());
+            result.appendIntLE(length);
+            return Arrays.copyOf(result.bytes, result.size);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Writes a raster as uncompressed or compressed csv, depending on the file name. Only values greater than minValue
+     * are written.
+     */
+    public static void write(Path file, DoubleRaster raster, double minValue) {
+        CsvRasterWriter.builder().minValue(minValue).build().write(file, raster);
+    }
+
+    /**
+     * Growable byte buffer with methods to append ascii characters and numbers.
+     */
+    static class ByteBuilder {
+
+        private byte[] bytes;
+        private int size;
+
+        ByteBuilder() {
+            this(1 << 20);
+        }
+
+        ByteBuilder(int capacity) {
+            this.bytes = new byte[Math.max(16, capacity)];
+        }
+
+        void clear() {
+            size = 0;
+        }
+
+        @Override
+        public String toString() {
+            return new String(bytes, 0, size, StandardCharsets.US_ASCII);
+        }
+
+        void append(char c) {
+            ensureCapacity(size + 1);
+            bytes[size++] = (byte) c;
+        }
+
+        void append(byte[] data, int length) {
+            ensureCapacity(size + length);
+            System.arraycopy(data, 0, bytes, size, length);
+            size += length;
+        }
+
+        void appendIntLE(int value) {
+            ensureCapacity(size + 4);
+            bytes[size++] = (byte) value;
+            bytes[size++] = (byte) (value >>> 8);
+            bytes[size++] = (byte) (value >>> 16);
+            bytes[size++] = (byte) (value >>> 24);
+        }
+
+        /**
+         * Appends the value in the format of {@link Double#toString(double)}. See {@link DoubleFormat}
+         */
+        void appendDouble(double value) {
+            ensureCapacity(size + DoubleFormat.MAX_LENGTH);
+            size = DoubleFormat.format(value, bytes, size);
+        }
+
+        private void ensureCapacity(int capacity) {
+            if (capacity > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(capacity, bytes.length * 2));
+            }
+        }
+    }
+}
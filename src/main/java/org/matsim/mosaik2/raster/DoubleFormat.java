@@ -0,0 +1,332 @@
+package org.matsim.mosaik2.raster;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+import java.math.RoundingMode;
+
+/**
+ * Formats doubles into ascii bytes using the Ryu algorithm (Ulf Adams, 2018, https://doi.org/10.1145/3192366.3192369).
+ * Ryu finds the shortest decimal which parses back into the same double with a few 64-bit multiplications and without
+ * allocating. The output has the same layout as {@link Double#toString(double)}: plain notation for magnitudes between
+ * 10^-3 and 10^7 and computerized scientific notation otherwise. The characters are the same as those of
+ * Double.toString since Java 19, which also prints the shortest decimal. Java 17 prints more digits than necessary for a
+ * few values in scientific notation, e.g. 2.10284536948085914E18 instead of 2.1028453694808591E18. Both parse back into
+ * the same double.
+ * <p>
+ * The tables of powers of five are computed once when the class is loaded.
+ */
+final class DoubleFormat {
+
+    /**
+     * Maximum number of bytes written by {@link #format(double, byte[], int)}
+     */
+    static final int MAX_LENGTH = 25;
+
+    private static final int MANTISSA_BITS = 52;
+    private static final int EXPONENT_BITS = 11;
+    private static final int EXPONENT_BIAS = 1023;
+
+    private static final int POW5_BITCOUNT = 125;
+    private static final int POW5_INV_BITCOUNT = 125;
+    private static final int POW5_TABLE_SIZE = 326;
+    private static final int POW5_INV_TABLE_SIZE = 342;
+
+    // 5^i normalized to 125 bits, stored as low and high 64 bits
+    private static final long[] POW5_SPLIT = new long[2 * POW5_TABLE_SIZE];
+    // 2^(bits(5^i) - 1 + 125) / 5^i + 1, stored as low and high 64 bits
+    private static final long[] POW5_INV_SPLIT = new long[2 * POW5_INV_TABLE_SIZE];
+
+    static {
+        var mask = BigInteger.ONE.shiftLeft(64).subtract(BigInteger.ONE);
+        for (var i = 0; i < POW5_INV_TABLE_SIZE; i++) {
+            var pow = BigInteger.valueOf(5).pow(i);
+            var pow5len = pow.bitLength();
+
+            if (i < POW5_TABLE_SIZE) {
+                var split = pow5len > POW5_BITCOUNT ? pow.shiftRight(pow5len - POW5_BITCOUNT) : pow.shiftLeft(POW5_BITCOUNT - pow5len);
+                POW5_SPLIT[2 * i] = split.and(mask).longValue();
+                POW5_SPLIT[2 * i + 1] = split.shiftRight(64).longValue();
+            }
+
+            var inv = BigInteger.ONE.shiftLeft(pow5len - 1 + POW5_INV_BITCOUNT).divide(pow).add(BigInteger.ONE);
+            POW5_INV_SPLIT[2 * i] = inv.and(mask).longValue();
+            POW5_INV_SPLIT[2 * i + 1] = inv.shiftRight(64).longValue();
+        }
+    }
+
+    private DoubleFormat() {
+    }
+
+    /**
+     * Writes the shortest representation of the value in the format of {@link Double#toString(double)} into the buffer,
+     * starting at offset. The buffer must have at least {@link #MAX_LENGTH} bytes left.
+     *
+     * @return the offset after the last written byte
+     */
+    static int format(double value, byte[] buffer, int offset) {
+
+        if (Double.isNaN(value)) return appendAscii("NaN", buffer, offset);
+        if (value == Double.POSITIVE_INFINITY) return appendAscii("Infinity", buffer, offset);
+        if (value == Double.NEGATIVE_INFINITY) return appendAscii("-Infinity", buffer, offset);
+
+        var bits = Double.doubleToRawLongBits(value);
+        var ieeeMantissa = bits & ((1L << MANTISSA_BITS) - 1);
+        var ieeeExponent = (int) ((bits >>> MANTISSA_BITS) & ((1 << EXPONENT_BITS) - 1));
+        var sign = bits < 0;
+
+        if (sign) buffer[offset++] = '-';
+        if (ieeeExponent == 0 && ieeeMantissa == 0) return appendAscii("0.0", buffer, offset);
+
+        // find the shortest decimal digits and the decimal exponent, so that digits * 10^exponent == |value|
+        long m2;
+        int e2;
+        if (ieeeExponent == 0) {
+            e2 = 1 - EXPONENT_BIAS - MANTISSA_BITS - 2;
+            m2 = ieeeMantissa;
+        } else {
+            e2 = ieeeExponent - EXPONENT_BIAS - MANTISSA_BITS - 2;
+            m2 = ieeeMantissa | (1L << MANTISSA_BITS);
+        }
+        var acceptBounds = (m2 & 1) == 0;
+
+        // the interval of decimals which round to the value is (mm, mp), scaled by 4
+        var mv = 4 * m2;
+        var mmShift = ieeeMantissa != 0 || ieeeExponent <= 1 ? 1 : 0;
+
+        long vr, vp, vm;
+        int e10;
+        var vmIsTrailingZeros = false;
+        var vrIsTrailingZeros = false;
+        if (e2 >= 0) {
+            var q = log10Pow2(e2) - (e2 > 3 ? 1 : 0);
+            e10 = q;
+            var k = POW5_INV_BITCOUNT + pow5bits(q) - 1;
+            var i = -e2 + q + k;
+            var mulLow = POW5_INV_SPLIT[2 * q];
+            var mulHigh = POW5_INV_SPLIT[2 * q + 1];
+            vr = mulShift(4 * m2, mulLow, mulHigh, i);
+            vp = mulShift(4 * m2 + 2, mulLow, mulHigh, i);
+            vm = mulShift(4 * m2 - 1 - mmShift, mulLow, mulHigh, i);
+            if (q <= 21) {
+                // only one of mp, mv, and mm can be a multiple of 5, if any
+                if (mv % 5 == 0) {
+                    vrIsTrailingZeros = multipleOfPowerOf5(mv, q);
+                } else if (acceptBounds) {
+                    vmIsTrailingZeros = multipleOfPowerOf5(mv - 1 - mmShift, q);
+                } else {
+                    vp -= multipleOfPowerOf5(mv + 2, q) ? 1 : 0;
+                }
+            }
+        } else {
+            var q = log10Pow5(-e2) - (-e2 > 1 ? 1 : 0);
+            e10 = q + e2;
+            var i = -e2 - q;
+            var k = pow5bits(i) - POW5_BITCOUNT;
+            var j = q - k;
+            var mulLow = POW5_SPLIT[2 * i];
+            var mulHigh = POW5_SPLIT[2 * i + 1];
+            vr = mulShift(4 * m2, mulLow, mulHigh, j);
+            vp = mulShift(4 * m2 + 2, mulLow, mulHigh, j);
+            vm = mulShift(4 * m2 - 1 - mmShift, mulLow, mulHigh, j);
+            if (q <= 1) {
+                // mv has at least q trailing 0 bits, so vr has at least q trailing decimal zeros
+                vrIsTrailingZeros = true;
+                if (acceptBounds) {
+                    vmIsTrailingZeros = mmShift == 1;
+                } else {
+                    vp--;
+                }
+            } else if (q < 63) {
+                vrIsTrailingZeros = (mv & ((1L << q) - 1)) == 0;
+            }
+        }
+
+        // remove digits as long as the interval still contains a shorter decimal
+        var removed = 0;
+        var lastRemovedDigit = 0;
+        long output;
+        if (vmIsTrailingZeros || vrIsTrailingZeros) {
+            while (vp / 10 > vm / 10) {
+                vmIsTrailingZeros &= vm % 10 == 0;
+                vrIsTrailingZeros &= lastRemovedDigit == 0;
+                lastRemovedDigit = (int) (vr % 10);
+                vr /= 10;
+                vp /= 10;
+                vm /= 10;
+                removed++;
+            }
+            if (vmIsTrailingZeros) {
+                while (vm % 10 == 0) {
+                    vrIsTrailingZeros &= lastRemovedDigit == 0;
+                    lastRemovedDigit = (int) (vr % 10);
+                    vr /= 10;
+                    vp /= 10;
+                    vm /= 10;
+                    removed++;
+                }
+            }
+            // round half to even
+            if (vrIsTrailingZeros && lastRemovedDigit == 5 && vr % 2 == 0) {
+                lastRemovedDigit = 4;
+            }
+            output = vr + ((vr == vm && (!acceptBounds || !vmIsTrailingZeros)) || lastRemovedDigit >= 5 ? 1 : 0);
+        } else {
+            var roundUp = false;
+            while (vp / 10 > vm / 10) {
+                roundUp = vr % 10 >= 5;
+                vr /= 10;
+                vp /= 10;
+                vm /= 10;
+                removed++;
+            }
+            output = vr + (vr == vm || roundUp ? 1 : 0);
+        }
+        var exponent = e10 + removed;
+
+        if (ieeeExponent == 0 && isSingleDigit(output)) {
+            // Double.toString prints the closest decimal with two digits if one digit would suffice. This only differs
+            // from the shortest decimal for subnormals with a few bits of precision, e.g. 4.9E-324 instead of 5.0E-324
+            var closest = new BigDecimal(Math.abs(value)).round(new MathContext(2, RoundingMode.HALF_EVEN));
+            output = closest.unscaledValue().longValue();
+            exponent = -closest.scale();
+        }
+
+        var abs = Math.abs(value);
+        if (abs >= 1e-3 && abs < 1e7) {
+            return appendPlain(output, exponent, buffer, offset);
+        } else {
+            return appendScientific(output, exponent, buffer, offset);
+        }
+    }
+
+    /**
+     * Writes digits * 10^exponent without exponent and with at least one digit after the decimal point
+     */
+    private static int appendPlain(long digits, int exponent, byte[] buffer, int offset) {
+
+        var length = decimalLength(digits);
+        var integerDigits = length + exponent;
+
+        if (integerDigits <= 0) {
+            buffer[offset++] = '0';
+            buffer[offset++] = '.';
+            for (var i = integerDigits; i < 0; i++) {
+                buffer[offset++] = '0';
+            }
+            return appendDigits(digits, length, buffer, offset);
+        }
+        if (exponent >= 0) {
+            offset = appendDigits(digits, length, buffer, offset);
+            for (var i = 0; i < exponent; i++) {
+                buffer[offset++] = '0';
+            }
+            buffer[offset++] = '.';
+            buffer[offset++] = '0';
+            return offset;
+        }
+        // write all digits and move the fractional digits one to the right to insert the decimal point
+        var end = appendDigits(digits, length, buffer, offset);
+        var pointIndex = offset + integerDigits;
+        System.arraycopy(buffer, pointIndex, buffer, pointIndex + 1, end - pointIndex);
+        buffer[pointIndex] = '.';
+        return end + 1;
+    }
+
+    /**
+     * Writes digits * 10^exponent as d.dddE[-]n with at least one digit after the decimal point
+     */
+    private static int appendScientific(long digits, int exponent, byte[] buffer, int offset) {
+
+        var length = decimalLength(digits);
+        var end = appendDigits(digits, length, buffer, offset + 1);
+        // move the first digit in front of the decimal point
+        buffer[offset] = buffer[offset + 1];
+        buffer[offset + 1] = '.';
+        if (length == 1) {
+            buffer[end++] = '0';
+        }
+        buffer[end++] = 'E';
+
+        var scientificExponent = exponent + length - 1;
+        if (scientificExponent < 0) {
+            buffer[end++] = '-';
+            scientificExponent = -scientificExponent;
+        }
+        return appendDigits(scientificExponent, decimalLength(scientificExponent), buffer, end);
+    }
+
+    private static int appendDigits(long digits, int length, byte[] buffer, int offset) {
+        for (var i = offset + length - 1; i >= offset; i--) {
+            buffer[i] = (byte) ('0' + digits % 10);
+            digits /= 10;
+        }
+        return offset + length;
+    }
+
+    private static int appendAscii(String value, byte[] buffer, int offset) {
+        for (var i = 0; i < value.length(); i++) {
+            buffer[offset++] = (byte) value.charAt(i);
+        }
+        return offset;
+    }
+
+    private static boolean isSingleDigit(long digits) {
+        while (digits % 10 == 0) {
+            digits /= 10;
+        }
+        return digits < 10;
+    }
+
+    private static int decimalLength(long value) {
+        var length = 1;
+        for (var bound = 10L; length < 19 && value >= bound; bound *= 10) {
+            length++;
+        }
+        return length;
+    }
+
+    /**
+     * (m * mul) >> j, where mul is a 128-bit number and 64 < j < 128
+     */
+    private static long mulShift(long m, long mulLow, long mulHigh, int j) {
+
+        var highOfLow = unsignedMultiplyHigh(m, mulLow);
+        var low = m * mulHigh;
+        var high = unsignedMultiplyHigh(m, mulHigh);
+
+        var sumLow = low + highOfLow;
+        var sumHigh = high + (Long.compareUnsigned(sumLow, low) < 0 ? 1 : 0);
+
+        var shift = j - 64;
+        return (sumHigh << (64 - shift)) | (sumLow >>> shift);
+    }
+
+    private static long unsignedMultiplyHigh(long a, long b) {
+        return Math.multiplyHigh(a, b) + ((a >> 63) & b) + ((b >> 63) & a);
+    }
+
+    private static boolean multipleOfPowerOf5(long value, int exponent) {
+        var count = 0;
+        while (value > 0 && value % 5 == 0) {
+            value /= 5;
+            count++;
+        }
+        return count >= exponent;
+    }
+
+    // ceil(log2(5^e)) for e > 0 and 1 for e = 0
+    private static int pow5bits(int e) {
+        return ((e * 1217359) >>> 19) + 1;
+    }
+
+    // floor(log10(2^e))
+    private static int log10Pow2(int e) {
+        return (e * 78913) >>> 18;
+    }
+
+    // floor(log10(5^e))
+    private static int log10Pow5(int e) {
+        return (e * 732923) >>> 20;
+    }
+}
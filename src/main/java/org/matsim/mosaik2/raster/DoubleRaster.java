@@ -8,6 +8,8 @@ import java.util.stream.IntStream;
 /**
  * Raster holding (x,y, value) values
  * The data is stored within a double[]. The class only offers convenient methods to access this data by (x,y)-coordinates
+ * <p>
+ * For rasters which don't fit onto the heap use {@link MappedDoubleRaster}, which offers the same methods.
  */
 public class DoubleRaster extends AbstractRaster {
 
@@ -19,10 +21,22 @@ public class DoubleRaster extends AbstractRaster {
 
     public DoubleRaster(Bounds bounds, double cellSize, double defaultValue) {
         super(bounds, cellSize);
-        this.data = new double[getXLength() * getYLength()];
+        var size = (long) getXLength() * getYLength();
+        if (size > Integer.MAX_VALUE - 8)
+            throw new IllegalArgumentException("Raster with " + size + " cells is too large for an array. Use a MappedDoubleRaster instead.");
+        this.data = new double[(int) size];
         Arrays.fill(this.data, defaultValue);
     }
 
+    /**
+     * Constructor for subclasses which store their values elsewhere and override {@link #getValue(long)},
+     * {@link #setValue(long, double)} and {@link #adjustValue(long, double)}
+     */
+    DoubleRaster(Bounds bounds, double cellSize, double[] data) {
+        super(bounds, cellSize);
+        this.data = data;
+    }
+
     /**
      * This iterates over the x and y index of the raster and supplies the corresponding value into the acceptor function
      * At the moment this iteration is done sequentially. But this may change in the future.
@@ -91,35 +105,47 @@ public class DoubleRaster extends AbstractRaster {
     }
 
     public double getValueByIndex(int xi, int yi) {
-
-        var index = getIndex(xi, yi);
-        return data[index];
+        return getValue(getLongIndex(xi, yi));
     }
 
     public double getValueByCoord(double x, double y) {
-        var index = getIndexForCoord(x, y);
-        return data[index];
+        return getValue(getLongIndex(getXIndex(x), getYIndex(y)));
     }
 
     public void setValueForIndex(int xi, int yi, double value) {
-        var index = getIndex(xi, yi);
-        data[index] = value;
+        setValue(getLongIndex(xi, yi), value);
     }
 
     public void setValueForCoord(double x, double y, double value) {
-        var index = getIndexForCoord(x, y);
-        data[index] = value;
+        setValue(getLongIndex(getXIndex(x), getYIndex(y)), value);
     }
 
     public double adjustValueForCoord(double x, double y, double value) {
-
-        var index = getIndexForCoord(x, y);
-        return data[index] += value;
+        return adjustValue(getLongIndex(getXIndex(x), getYIndex(y)), value);
     }
 
     public void adjustValueForIndex(int xi, int yi, double value) {
-        var index = getIndex(xi, yi);
-        data[index] += value;
+        adjustValue(getLongIndex(xi, yi), value);
+    }
+
+    double getValue(long index) {
+        return data[(int) index];
+    }
+
+    void setValue(long index, double value) {
+        data[(int) index] = value;
+    }
+
+    double adjustValue(long index, double value) {
+        return data[(int) index] += value;
+    }
+
+    /**
+     * Creates rasters. Use DoubleRaster::new or MappedDoubleRaster::new to choose where the values of rasters are stored.
+     */
+    @FunctionalInterface
+    public interface Factory {
+        DoubleRaster create(Bounds bounds, double cellSize);
     }
 
     @FunctionalInterface
@@ -0,0 +1,146 @@
+package org.matsim.mosaik2.raster;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Raster holding (x,y, value) values with float precision
+ * The data is stored within a float[]. This takes half the memory of a {@link DoubleRaster} and matches the precision of
+ * PALM's input and output files, which store values as floats. The class offers the same methods as {@link DoubleRaster}.
+ */
+public class FloatRaster extends AbstractRaster {
+
+    private final float[] data;
+
+    public FloatRaster(Bounds bounds, double cellSize) {
+        this(bounds, cellSize, 0.0f);
+    }
+
+    public FloatRaster(Bounds bounds, double cellSize, float defaultValue) {
+        super(bounds, cellSize);
+        var size = (long) getXLength() * getYLength();
+        if (size > Integer.MAX_VALUE - 8)
+            throw new IllegalArgumentException("Raster with " + size + " cells is too large for an array.");
+        this.data = new float[(int) size];
+        Arrays.fill(this.data, defaultValue);
+    }
+
+    /**
+     * This iterates over the x and y index of the raster and supplies the corresponding value into the acceptor function
+     * The iteration is done sequentially.
+     *
+     * @param consumer Accepts x and y index and the current value within the raster.
+     */
+    public void forEachIndex(IndexFloatConsumer consumer) {
+        for (var xi = 0; xi < getXLength(); xi++) {
+            for (var yi = 0; yi < getYLength(); yi++) {
+                consumer.consume(xi, yi, getValueByIndex(xi, yi));
+            }
+        }
+    }
+
+    /**
+     * This iterates over the x and y coordinates of the raster and supplies the corresponding value into the acceptor function
+     * The iteration is done sequentially.
+     *
+     * @param consumer Accepts x and y coordinates and the current value within the raster.
+     */
+    public void forEachCoordinate(CoordFloatConsumer consumer) {
+        IntStream.range(0, getXLength()).forEach(xi -> innerStream(xi, consumer));
+    }
+
+    public void forEachCoordinateParallel(CoordFloatConsumer consumer) {
+        IntStream.range(0, getXLength()).parallel().forEach(xi -> innerStream(xi, consumer));
+    }
+
+    private void innerStream(int xi, CoordFloatConsumer consumer) {
+        var x = getCentroidXForIndex(xi);
+        for (var yi = 0; yi < getYLength(); yi++) {
+            consumer.consume(x, getCentroidYForIndex(yi), getValueByIndex(xi, yi));
+        }
+    }
+
+    /**
+     * This iterates over the x and y index of the raster. The iteration is done in parallel. The result of the valueSupplier
+     * will be set on the corresponding pixel of the raster. This manipulates the state of the raster. Make sure to not alter
+     * the state during the execution of this method from outside.
+     *
+     * @param valueSupplier Function which takes an x and a y index and supplies a float value which is written into
+     *                      The corresponding pixel of the raster
+     */
+    public void setValueForEachIndex(IndexToFloatFunction valueSupplier) {
+
+        IntStream.range(0, getXLength()).parallel().forEach(xi -> {
+            for (var yi = 0; yi < getYLength(); yi++) {
+                setValueForIndex(xi, yi, valueSupplier.applyAsFloat(xi, yi));
+            }
+        });
+    }
+
+    public void setValueForEachCoordinate(CoordToFloatFunction valueSupplier) {
+        setValueForEachIndex((xi, yi) -> {
+            var x = getCentroidXForIndex(xi);
+            var y = getCentroidYForIndex(yi);
+            return valueSupplier.applyAsFloat(x, y);
+        });
+    }
+
+    public void transformEachValue(FloatToFloatFunction transformation) {
+        setValueForEachIndex((xi, yi) -> transformation.applyAsFloat(getValueByIndex(xi, yi)));
+    }
+
+    public float getValueByIndex(int xi, int yi) {
+        var index = getIndex(xi, yi);
+        return data[index];
+    }
+
+    public float getValueByCoord(double x, double y) {
+        var index = getIndexForCoord(x, y);
+        return data[index];
+    }
+
+    public void setValueForIndex(int xi, int yi, float value) {
+        var index = getIndex(xi, yi);
+        data[index] = value;
+    }
+
+    public void setValueForCoord(double x, double y, float value) {
+        var index = getIndexForCoord(x, y);
+        data[index] = value;
+    }
+
+    public float adjustValueForCoord(double x, double y, float value) {
+        var index = getIndexForCoord(x, y);
+        return data[index] += value;
+    }
+
+    public void adjustValueForIndex(int xi, int yi, float value) {
+        var index = getIndex(xi, yi);
+        data[index] += value;
+    }
+
+    @FunctionalInterface
+    public interface IndexFloatConsumer {
+        void consume(int xi, int yi, float value);
+    }
+
+    @FunctionalInterface
+    public interface CoordFloatConsumer {
+        void consume(double x, double y, float value);
+    }
+
+    @FunctionalInterface
+    public interface IndexToFloatFunction {
+        float applyAsFloat(int xi, int yi);
+    }
+
+    @FunctionalInterface
+    public interface CoordToFloatFunction {
+        float applyAsFloat(double x, double y);
+    }
+
+    @FunctionalInterface
+    public interface FloatToFloatFunction {
+        float applyAsFloat(float value);
+    }
+}
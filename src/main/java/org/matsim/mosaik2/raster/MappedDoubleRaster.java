@@ -0,0 +1,121 @@
+package org.matsim.mosaik2.raster;
+
+import lombok.extern.log4j.Log4j2;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * {@link DoubleRaster} which stores its values off heap in a memory mapped file. The operating system pages values in
+ * and out of memory, so that rasters can be larger than the available memory and the garbage collector doesn't have to
+ * deal with the values. Also, the number of cells is not limited to 2^31.
+ * <p>
+ * The file is mapped in chunks of 2^27 values (1GB), because a single mapping is limited to 2GB. The raster can either
+ * be backed by a temporary file which is deleted on {@link #close()} or by a given file. In the latter case the values
+ * of an existing file are kept, which allows to re-open a raster which was written earlier.
+ * <p>
+ * Reading and writing distinct cells from multiple threads is safe. Adjusting the same cell concurrently is not.
+ */
+@Log4j2
+public class MappedDoubleRaster extends DoubleRaster implements AutoCloseable {
+
+    private static final int CHUNK_SHIFT = 27;
+    private static final long CHUNK_SIZE = 1L << CHUNK_SHIFT;
+    private static final long CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private final Path file;
+    private final boolean isTemporary;
+    private final DoubleBuffer[] chunks;
+
+    /**
+     * Creates a raster backed by a temporary file. All values are 0.
+     */
+    public MappedDoubleRaster(Bounds bounds, double cellSize) {
+        this(bounds, cellSize, createTempFile(), true);
+    }
+
+    /**
+     * Creates a raster backed by the given file. If the file exists, the values stored in it are kept. Otherwise, all
+     * values are 0.
+     */
+    public MappedDoubleRaster(Bounds bounds, double cellSize, Path file) {
+        this(bounds, cellSize, file, false);
+    }
+
+    private MappedDoubleRaster(Bounds bounds, double cellSize, Path file, boolean isTemporary) {
+        super(bounds, cellSize, null);
+        this.file = file;
+        this.isTemporary = isTemporary;
+
+        var size = (long) getXLength() * getYLength();
+        var numberOfChunks = (int) ((size + CHUNK_SIZE - 1) >> CHUNK_SHIFT);
+        this.chunks = new DoubleBuffer[numberOfChunks];
+
+        // the mappings stay valid after the channel is closed
+        try (var channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            for (var i = 0; i < numberOfChunks; i++) {
+                var chunkStart = i * CHUNK_SIZE;
+                var chunkLength = Math.min(CHUNK_SIZE, size - chunkStart);
+                chunks[i] = channel.map(FileChannel.MapMode.READ_WRITE, chunkStart * Double.BYTES, chunkLength * Double.BYTES)
+                        .order(ByteOrder.nativeOrder())
+                        .asDoubleBuffer();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        log.info("Mapped raster with " + size + " cells in " + numberOfChunks + " chunks to " + file);
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    @Override
+    double getValue(long index) {
+        return chunks[(int) (index >>> CHUNK_SHIFT)].get((int) (index & CHUNK_MASK));
+    }
+
+    @Override
+    void setValue(long index, double value) {
+        chunks[(int) (index >>> CHUNK_SHIFT)].put((int) (index & CHUNK_MASK), value);
+    }
+
+    @Override
+    double adjustValue(long index, double value) {
+        var chunk = chunks[(int) (index >>> CHUNK_SHIFT)];
+        var chunkIndex = (int) (index & CHUNK_MASK);
+        var result = chunk.get(chunkIndex) + value;
+        chunk.put(chunkIndex, result);
+        return result;
+    }
+
+    /**
+     * Deletes the backing file if it is a temporary file. The raster must not be used afterwards. The memory of the
+     * mappings is released once the raster is garbage collected.
+     */
+    @Override
+    public void close() {
+        if (!isTemporary) return;
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            // on some systems mapped files can't be deleted. deleteOnExit is set for temporary files as well.
+            log.warn("Could not delete temporary raster file " + file);
+        }
+    }
+
+    private static Path createTempFile() {
+        try {
+            var file = Files.createTempFile("mosaik-2-raster", ".bin");
+            file.toFile().deleteOnExit();
+            return file;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package org.matsim.mosaik2.raster;
+
+import lombok.Getter;
+
+import java.util.stream.IntStream;
+
+/**
+ * Compares two rasters with the same cell size cell by cell. The offset between the grids of both rasters is computed
+ * once, when the comparison is created. Afterwards, cells are paired by index arithmetic only, without looking up
+ * coordinates or building maps. Only cells which are covered by both rasters are compared.
+ * <p>
+ * A comparison can be reused for all pairs of rasters which have the same bounds as the rasters it was created for, e.g.
+ * for all time slices of two runs.
+ */
+@Getter
+public class RasterComparison {
+
+    private final AbstractRaster.Bounds baseBounds;
+    private final AbstractRaster.Bounds compareBounds;
+
+    // x-index in compare raster = x-index in base raster - xOffset
+    private final int xOffset;
+    private final int yOffset;
+
+    // range of x- and y-indices of the base raster which are covered by both rasters. From is inclusive, to exclusive
+    private final int fromXi;
+    private final int toXi;
+    private final int fromYi;
+    private final int toYi;
+
+    public RasterComparison(AbstractRaster base, AbstractRaster compare) {
+
+        if (Math.abs(base.getCellSize() - compare.getCellSize()) > 1e-6 * base.getCellSize())
+            throw new IllegalArgumentException("Rasters must have the same cell size. Base: " + base.getCellSize() + " compare: " + compare.getCellSize());
+
+        this.baseBounds = base.getBounds();
+        this.compareBounds = compare.getBounds();
+        this.xOffset = gridOffset(base.getBounds().getMinX(), compare.getBounds().getMinX(), base.getCellSize());
+        this.yOffset = gridOffset(base.getBounds().getMinY(), compare.getBounds().getMinY(), base.getCellSize());
+
+        this.fromXi = Math.max(0, xOffset);
+        this.toXi = Math.max(fromXi, Math.min(base.getXLength(), compare.getXLength() + xOffset));
+        this.fromYi = Math.max(0, yOffset);
+        this.toYi = Math.max(fromYi, Math.min(base.getYLength(), compare.getYLength() + yOffset));
+    }
+
+    /**
+     * @return number of cells which are covered by both rasters
+     */
+    public long size() {
+        return (long) (toXi - fromXi) * (toYi - fromYi);
+    }
+
+    /**
+     * Passes each pair of cells to the consumer. The iteration is sequential, with x as outer and y as inner loop, so
+     * that the pairs can be written to a file directly. Coordinates are the centroids of the base raster.
+     */
+    public void forEachPair(DoubleRaster base, DoubleRaster compare, PairConsumer consumer) {
+
+        checkBounds(base, compare);
+        for (var xi = fromXi; xi < toXi; xi++) {
+            var x = base.getCentroidXForIndex(xi);
+            var compareXi = xi - xOffset;
+            for (var yi = fromYi; yi < toYi; yi++) {
+                consumer.accept(x, base.getCentroidYForIndex(yi), base.getValueByIndex(xi, yi), compare.getValueByIndex(compareXi, yi - yOffset));
+            }
+        }
+    }
+
+    /**
+     * Collects statistics of all pairs of cells for which the filter returns true. Columns are processed in parallel.
+     */
+    public Statistics statistics(DoubleRaster base, DoubleRaster compare, PairPredicate filter) {
+
+        checkBounds(base, compare);
+        return IntStream.range(fromXi, toXi).parallel()
+                .collect(Statistics::new, (statistics, xi) -> {
+                    var compareXi = xi - xOffset;
+                    for (var yi = fromYi; yi < toYi; yi++) {
+                        var baseValue = base.getValueByIndex(xi, yi);
+                        var compareValue = compare.getValueByIndex(compareXi, yi - yOffset);
+                        if (filter.test(baseValue, compareValue)) statistics.add(baseValue, compareValue);
+                    }
+                }, Statistics::merge);
+    }
+
+    public Statistics statistics(DoubleRaster base, DoubleRaster compare) {
+        return statistics(base, compare, (baseValue, compareValue) -> true);
+    }
+
+    private void checkBounds(AbstractRaster base, AbstractRaster compare) {
+        if (!baseBounds.equals(base.getBounds()) || !compareBounds.equals(compare.getBounds()))
+            throw new IllegalArgumentException("Rasters don't have the bounds this comparison was created for.");
+    }
+
+    private static int gridOffset(double baseMin, double compareMin, double cellSize) {
+        var offset = (compareMin - baseMin) / cellSize;
+        var rounded = Math.round(offset);
+        if (Math.abs(offset - rounded) > 1e-6)
+            throw new IllegalArgumentException("Rasters are not aligned. Their origins are " + offset + " cells apart.");
+        return Math.toIntExact(rounded);
+    }
+
+    /**
+     * Sums of base values (x) and compare values (y) from which differences, correlation and a least squares fit
+     * y = intercept + slope * x are derived.
+     */
+    @Getter
+    public static class Statistics {
+
+        private long count;
+        private double sumX;
+        private double sumY;
+        private double sumXX;
+        private double sumYY;
+        private double sumXY;
+
+        public void add(double x, double y) {
+            count++;
+            sumX += x;
+            sumY += y;
+            sumXX += x * x;
+            sumYY += y * y;
+            sumXY += x * y;
+        }
+
+        public void merge(Statistics other) {
+            count += other.count;
+            sumX += other.sumX;
+            sumY += other.sumY;
+            sumXX += other.sumXX;
+            sumYY += other.sumYY;
+            sumXY += other.sumXY;
+        }
+
+        /**
+         * @return mean of compare - base
+         */
+        public double getMeanDifference() {
+            return (sumY - sumX) / count;
+        }
+
+        /**
+         * @return root of the mean squared difference between compare and base
+         */
+        public double getRootMeanSquaredDifference() {
+            return Math.sqrt((sumYY - 2 * sumXY + sumXX) / count);
+        }
+
+        /**
+         * @return Pearson correlation coefficient
+         */
+        public double getCorrelation() {
+            var covariance = count * sumXY - sumX * sumY;
+            return covariance / Math.sqrt((count * sumXX - sumX * sumX) * (count * sumYY - sumY * sumY));
+        }
+
+        public double getSlope() {
+            return (count * sumXY - sumX * sumY) / (count * sumXX - sumX * sumX);
+        }
+
+        public double getIntercept() {
+            return (sumY - getSlope() * sumX) / count;
+        }
+    }
+
+    @FunctionalInterface
+    public interface PairConsumer {
+        void accept(double x, double y, double baseValue, double compareValue);
+    }
+
+    @FunctionalInterface
+    public interface PairPredicate {
+        boolean test(double baseValue, double compareValue);
+    }
+}
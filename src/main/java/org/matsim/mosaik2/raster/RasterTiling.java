@@ -0,0 +1,152 @@
+package org.matsim.mosaik2.raster;
+
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * Splits the bounds of a raster into square tiles, so that analyses on large domains can be computed tile by tile
+ * instead of allocating rasters for the whole domain. Each tile carries its bounds and its bounds extended by a halo.
+ * The halo should be chosen so that all inputs which influence the cells of a tile lie within the extended bounds, e.g.
+ * the smoothing radius. Then tiles can be computed independently.
+ * <p>
+ * The cells of a tile are exactly the cells of the full raster. {@link Tile#getCentroidX(int)} and
+ * {@link Tile#getCentroidY(int)} yield the same coordinates as the full raster would. Therefore, computations which
+ * only depend on the coordinate of a cell and the inputs within the halo yield the same values as the untiled computation.
+ * <p>
+ * The peak memory of a tiled computation is determined by the number of cells per tile times the number of tiles which
+ * are processed concurrently.
+ */
+@Log4j2
+public class RasterTiling {
+
+    @Getter
+    private final AbstractRaster.Bounds bounds;
+    @Getter
+    private final double cellSize;
+    @Getter
+    private final List<Tile> tiles;
+
+    /**
+     * @param maxCellsPerTile tiles are squares with at most this number of cells. Tiles at the upper and right border
+     *                        of the bounds may be smaller.
+     * @param halo            distance by which the bounds of each tile are extended.
+     */
+    public RasterTiling(AbstractRaster.Bounds bounds, double cellSize, int maxCellsPerTile, double halo) {
+
+        if (maxCellsPerTile < 1) throw new IllegalArgumentException("maxCellsPerTile must be at least 1");
+
+        this.bounds = bounds;
+        this.cellSize = cellSize;
+
+        // use the same raster dimensions as a raster covering the whole bounds would
+        var fullRaster = new AbstractRaster(bounds, cellSize);
+        var tileSize = Math.max(1, (int) Math.sqrt(maxCellsPerTile));
+        List<Tile> tiles = new ArrayList<>();
+
+        for (var yiStart = 0; yiStart < fullRaster.getYLength(); yiStart += tileSize) {
+            for (var xiStart = 0; xiStart < fullRaster.getXLength(); xiStart += tileSize) {
+                var xLength = Math.min(tileSize, fullRaster.getXLength() - xiStart);
+                var yLength = Math.min(tileSize, fullRaster.getYLength() - yiStart);
+                tiles.add(new Tile(tiles.size(), xiStart, yiStart, xLength, yLength, halo));
+            }
+        }
+        this.tiles = Collections.unmodifiableList(tiles);
+        log.info("Split " + fullRaster.getXLength() + "x" + fullRaster.getYLength() + " cells into " + tiles.size() + " tiles of " + tileSize + "x" + tileSize + " cells.");
+    }
+
+    /**
+     * Computes each tile and passes the result into the stitch function. At most maxConcurrentTiles tiles are computed
+     * at the same time. The stitch function is called for one tile at a time, but the order of tiles is not defined
+     * if tiles are computed concurrently.
+     *
+     * @param maxConcurrentTiles number of tiles which are computed at the same time. With 1 tiles are computed one after
+     *                           another in the order of {@link #getTiles()}.
+     * @param computeTile        computes the result for a tile.
+     * @param stitch             merges the result of a tile into the overall result, e.g. copies it into a raster
+     *                           covering the whole bounds or writes it to a file.
+     */
+    public <R> void process(int maxConcurrentTiles, Function<Tile, R> computeTile, BiConsumer<Tile, R> stitch) {
+
+        if (maxConcurrentTiles <= 1) {
+            for (var tile : tiles) {
+                log.info("Processing tile " + (tile.getIndex() + 1) + "/" + tiles.size());
+                stitch.accept(tile, computeTile.apply(tile));
+            }
+            return;
+        }
+
+        var pool = new ForkJoinPool(maxConcurrentTiles);
+        try {
+            pool.submit(() -> tiles.parallelStream().forEach(tile -> {
+                log.info("Processing tile " + (tile.getIndex() + 1) + "/" + tiles.size());
+                var result = computeTile.apply(tile);
+                synchronized (this) {
+                    stitch.accept(tile, result);
+                }
+            })).join();
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Copies the values of a raster which was created with {@link Tile#getBounds()} into the corresponding cells of a
+     * raster which covers the bounds of this tiling.
+     */
+    public static void stitch(Tile tile, DoubleRaster tileRaster, DoubleRaster target) {
+        for (var yi = 0; yi < tile.getYLength(); yi++) {
+            for (var xi = 0; xi < tile.getXLength(); xi++) {
+                target.setValueForIndex(tile.getXiStart() + xi, tile.getYiStart() + yi, tileRaster.getValueByIndex(xi, yi));
+            }
+        }
+    }
+
+    @Getter
+    public class Tile {
+
+        private final int index;
+        private final int xiStart;
+        private final int yiStart;
+        private final int xLength;
+        private final int yLength;
+        private final AbstractRaster.Bounds bounds;
+        private final AbstractRaster.Bounds boundsWithHalo;
+
+        private Tile(int index, int xiStart, int yiStart, int xLength, int yLength, double halo) {
+            this.index = index;
+            this.xiStart = xiStart;
+            this.yiStart = yiStart;
+            this.xLength = xLength;
+            this.yLength = yLength;
+            var minX = getCentroidX(0);
+            var minY = getCentroidY(0);
+            var maxX = getCentroidX(xLength - 1);
+            var maxY = getCentroidY(yLength - 1);
+            this.bounds = new AbstractRaster.Bounds(minX, minY, maxX, maxY);
+            this.boundsWithHalo = new AbstractRaster.Bounds(minX - halo, minY - halo, maxX + halo, maxY + halo);
+        }
+
+        /**
+         * @param xi x-index within this tile
+         * @return x-coordinate of the cell as the raster covering the whole bounds would calculate it
+         */
+        public double getCentroidX(int xi) {
+            return (xiStart + xi) * cellSize + RasterTiling.this.bounds.getMinX();
+        }
+
+        /**
+         * @param yi y-index within this tile
+         * @return y-coordinate of the cell as the raster covering the whole bounds would calculate it
+         */
+        public double getCentroidY(int yi) {
+            return (yiStart + yi) * cellSize + RasterTiling.this.bounds.getMinY();
+        }
+    }
+}
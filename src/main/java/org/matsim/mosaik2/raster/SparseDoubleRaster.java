@@ -0,0 +1,206 @@
+package org.matsim.mosaik2.raster;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Raster holding (x,y, value) values for rasters where only few cells are non-zero, e.g. emissions which are only
+ * located on cells touched by roads.
+ * The data is stored as an int[] of sorted cell indices and a double[] of the corresponding values. Cells which are not
+ * stored have a value of 0.0. The class offers the same methods to access the data by index or (x,y)-coordinates as
+ * {@link DoubleRaster}.
+ * <p>
+ * Adjusting a value of a cell which is not stored yet appends the cell to an unsorted tail of the arrays. The tail is
+ * sorted and merged into the sorted part lazily, either when it grows too large or when values are read. This keeps
+ * random writes cheap. The class is not thread safe. Make sure to not alter the state from multiple threads.
+ */
+public class SparseDoubleRaster extends AbstractRaster {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private int[] indices = new int[INITIAL_CAPACITY];
+    private double[] values = new double[INITIAL_CAPACITY];
+
+    // number of entries in the sorted part of the arrays
+    private int sortedSize = 0;
+    // number of all entries, sorted part plus unsorted tail
+    private int size = 0;
+
+    public SparseDoubleRaster(Bounds bounds, double cellSize) {
+        super(bounds, cellSize);
+    }
+
+    /**
+     * @return the number of cells which are stored explicitly. This may include cells which have a value of 0.0 because
+     * positive and negative adjustments cancelled each other out.
+     */
+    public int size() {
+        compact();
+        return size;
+    }
+
+    public double getValueByIndex(int xi, int yi) {
+        var index = getIndex(xi, yi);
+        return getValue(index);
+    }
+
+    public double getValueByCoord(double x, double y) {
+        var index = getIndexForCoord(x, y);
+        return getValue(index);
+    }
+
+    public void adjustValueForIndex(int xi, int yi, double value) {
+        var index = getIndex(xi, yi);
+        adjustValue(index, value);
+    }
+
+    public void adjustValueForCoord(double x, double y, double value) {
+        var index = getIndexForCoord(x, y);
+        adjustValue(index, value);
+    }
+
+    /**
+     * This iterates over the x and y index of the raster and supplies the corresponding value into the acceptor function.
+     * Like {@link DoubleRaster#forEachIndex(DoubleRaster.IndexDoubleConsumer)} this visits every cell of the raster,
+     * including cells which have a value of 0.0. Use {@link #forEachNonZeroIndex(DoubleRaster.IndexDoubleConsumer)} to
+     * only visit stored cells.
+     *
+     * @param consumer Accepts x and y index and the current value within the raster.
+     */
+    public void forEachIndex(DoubleRaster.IndexDoubleConsumer consumer) {
+        IntStream.range(0, getXLength()).forEach(xi -> IntStream.range(0, getYLength())
+                .forEach(yi -> {
+                    var value = getValueByIndex(xi, yi);
+                    consumer.consume(xi, yi, value);
+                }));
+    }
+
+    /**
+     * This iterates over the stored cells of the raster in ascending index order, i.e. row by row, and supplies the
+     * x and y index and the corresponding value into the acceptor function. Cells which were never adjusted are skipped.
+     *
+     * @param consumer Accepts x and y index and the current value within the raster.
+     */
+    public void forEachNonZeroIndex(DoubleRaster.IndexDoubleConsumer consumer) {
+        compact();
+        for (var i = 0; i < size; i++) {
+            var index = indices[i];
+            consumer.consume(index % getXLength(), index / getXLength(), values[i]);
+        }
+    }
+
+    /**
+     * Same as {@link #forEachNonZeroIndex(DoubleRaster.IndexDoubleConsumer)} but supplies the centroid coordinates of
+     * the stored cells.
+     *
+     * @param consumer Accepts x and y coordinates and the current value within the raster.
+     */
+    public void forEachNonZeroCoordinate(DoubleRaster.CoordDoubleConsumer consumer) {
+        forEachNonZeroIndex((xi, yi, value) -> consumer.consume(getCentroidXForIndex(xi), getCentroidYForIndex(yi), value));
+    }
+
+    /**
+     * Creates a dense copy of this raster with the same bounds and cell size.
+     */
+    public DoubleRaster toDoubleRaster() {
+        var result = new DoubleRaster(getBounds(), getCellSize());
+        forEachNonZeroIndex(result::adjustValueForIndex);
+        return result;
+    }
+
+    private double getValue(int index) {
+        checkIndex(index);
+        compact();
+        var position = Arrays.binarySearch(indices, 0, size, index);
+        return position >= 0 ? values[position] : 0.0;
+    }
+
+    private void adjustValue(int index, double value) {
+        checkIndex(index);
+
+        var position = Arrays.binarySearch(indices, 0, sortedSize, index);
+        if (position >= 0) {
+            values[position] += value;
+            return;
+        }
+
+        // append to the unsorted tail. Duplicates within the tail are merged on compaction.
+        ensureCapacity(size + 1);
+        indices[size] = index;
+        values[size] = value;
+        size++;
+
+        // merge the tail once it has the same size as the sorted part, which keeps compaction cost amortized
+        if (size - sortedSize > Math.max(sortedSize, INITIAL_CAPACITY)) {
+            compact();
+        }
+    }
+
+    /**
+     * Sorts the unsorted tail, sums up duplicate indices and merges the tail into the sorted part of the arrays.
+     */
+    private void compact() {
+
+        if (sortedSize == size) return;
+
+        // sort the tail by index, keeping index and value arrays in sync
+        it.unimi.dsi.fastutil.Arrays.quickSort(sortedSize, size,
+                (a, b) -> Integer.compare(indices[a], indices[b]),
+                (a, b) -> {
+                    var tmpIndex = indices[a];
+                    indices[a] = indices[b];
+                    indices[b] = tmpIndex;
+                    var tmpValue = values[a];
+                    values[a] = values[b];
+                    values[b] = tmpValue;
+                });
+
+        // merge sorted part and sorted tail into new arrays. Equal indices are summed up.
+        var mergedIndices = new int[Math.max(INITIAL_CAPACITY, size)];
+        var mergedValues = new double[mergedIndices.length];
+        var i = 0;
+        var j = sortedSize;
+        var k = -1;
+
+        while (i < sortedSize || j < size) {
+
+            int index;
+            double value;
+            if (j >= size || (i < sortedSize && indices[i] <= indices[j])) {
+                index = indices[i];
+                value = values[i];
+                i++;
+            } else {
+                index = indices[j];
+                value = values[j];
+                j++;
+            }
+
+            if (k >= 0 && mergedIndices[k] == index) {
+                mergedValues[k] += value;
+            } else {
+                k++;
+                mergedIndices[k] = index;
+                mergedValues[k] = value;
+            }
+        }
+
+        this.indices = mergedIndices;
+        this.values = mergedValues;
+        this.size = k + 1;
+        this.sortedSize = this.size;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= indices.length) return;
+
+        var newCapacity = Math.max(capacity, indices.length * 2);
+        this.indices = Arrays.copyOf(indices, newCapacity);
+        this.values = Arrays.copyOf(values, newCapacity);
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= getXLength() * getYLength())
+            throw new ArrayIndexOutOfBoundsException("Index " + index + " is out of bounds for raster with " + getXLength() * getYLength() + " cells.");
+    }
+}
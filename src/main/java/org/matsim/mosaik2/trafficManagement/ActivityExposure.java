@@ -1,6 +1,5 @@
 package org.matsim.mosaik2.trafficManagement;
 
-import com.google.common.util.concurrent.AtomicDouble;
 import lombok.Getter;
 import lombok.extern.log4j.Log4j2;
 import org.geotools.feature.simple.SimpleFeatureBuilder;
@@ -53,29 +52,39 @@ public class ActivityExposure {
             Map<String, DoubleRaster> timeSliceData = new HashMap<>();
 
             log.info("Calculating Exposure for time slice: [" + startTime + ", " + endTime + "]");
+
+            // the time spent in each cell is the same for all species. Calculate it once per time slice.
+            var spentTimes = new DoubleRaster(actHandler.activityRaster.getBounds(), actHandler.activityRaster.getCellSize());
+            spentTimes.setValueForEachIndex((xi, yi) -> {
+                var tile = actHandler.activityRaster.getValueByIndex(xi, yi);
+                return tile == null ? 0 : tile.calculateSpentTime(startTime, endTime);
+            });
+
+            // accroding to https://paperpile.com/app/p/997831e1-3265-0603-ad6c-d483bd4e6b9d we need to normalize the
+            // exposure by average person seconds. We divide each expsoure value by the average person seconds over all
+            // cells for each time slice.
+            var sum = 0.;
+            for (var yi = 0; yi < spentTimes.getYLength(); yi++) {
+                for (var xi = 0; xi < spentTimes.getXLength(); xi++) {
+                    sum += spentTimes.getValueByIndex(xi, yi);
+                }
+            }
+            var average = sum / ((long) spentTimes.getXLength() * spentTimes.getYLength());
+
             for (var entry : emissionsBySpecies.entrySet()) {
 
                 var concentrations = entry.getValue();
                 var species = entry.getKey();
                 var exposures = new DoubleRaster(concentrations.getBounds(), concentrations.getCellSize());
-                var sumOfPersonSeconds = new AtomicDouble(0);
                 exposures.setValueForEachIndex((xi, yi) -> {
                     var tile = actHandler.activityRaster.getValueByIndex(xi, yi);
                     if (tile == null) return -1;
+                    if (average <= 0) return 0;
 
-                    var spentTime = tile.calculateSpentTime(startTime, endTime);
                     var concentration = concentrations.getValueByIndex(xi, yi);
-                    var exposureValue = spentTime * concentration;
-                    sumOfPersonSeconds.accumulateAndGet(spentTime, Double::sum);
-                    return exposureValue;
+                    return spentTimes.getValueByIndex(xi, yi) * concentration / average;
                 });
 
-                // accroding to https://paperpile.com/app/p/997831e1-3265-0603-ad6c-d483bd4e6b9d we need to normalize the
-                // exposure by average person seconds. We divide each expsoure value by the average exposure value over all
-                // cells for each time slice.
-                var average = sumOfPersonSeconds.doubleValue() / exposures.getXLength() * exposures.getYLength();
-                exposures.setValueForEachIndex((xi, yi) -> exposures.getValueByIndex(xi, yi) / average);
-
                 timeSliceData.put(species, exposures);
             }
             resultMap.getTimeBin(bin.getStartTime()).setValue(timeSliceData);
@@ -0,0 +1,134 @@
+package org.matsim.mosaik2;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertEquals;
+
+public class NumericCsvReaderTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void readSplitFile() throws IOException {
+
+        var file = temporaryFolder.getRoot().toPath().resolve("data.csv");
+        var expected = writeTestFile(file);
+
+        // use tiny blocks, so that lines are split at all possible positions
+        for (var blockSize : new int[]{1, 7, 64, 1000, 1 << 20}) {
+            var blocks = new ArrayList<NumericCsvReader.Block>();
+            NumericCsvReader.builder()
+                    .file(file)
+                    .columns(List.of("value", "time", "x"))
+                    .blockSize(blockSize)
+                    .parallelism(3)
+                    .build()
+                    .read(blocks::add);
+
+            assertRows(expected, blocks);
+        }
+    }
+
+    @Test
+    public void readGzip() throws IOException {
+
+        var file = temporaryFolder.getRoot().toPath().resolve("data.csv");
+        var expected = writeTestFile(file);
+        var gzipFile = temporaryFolder.getRoot().toPath().resolve("data.csv.gz");
+        try (var out = new GZIPOutputStream(Files.newOutputStream(gzipFile))) {
+            Files.copy(file, out);
+        }
+
+        var blocks = new ArrayList<NumericCsvReader.Block>();
+        NumericCsvReader.builder()
+                .file(gzipFile)
+                .columns(List.of("value", "time", "x"))
+                .blockSize(100)
+                .build()
+                .read(blocks::add);
+
+        assertRows(expected, blocks);
+    }
+
+    @Test
+    public void readAll() throws IOException {
+
+        var file = temporaryFolder.getRoot().toPath().resolve("data.csv");
+        Files.writeString(file, "\"x\",\"y\"\r\n1.5,2\r\n\"3\",\r\n-4e-3,1E3");
+
+        var block = NumericCsvReader.readAll(file, "y", "x");
+
+        assertEquals(3, block.size());
+        assertEquals(2, block.get(0, 0), 0.0);
+        assertEquals(1.5, block.get(0, 1), 0.0);
+        assertEquals(Double.NaN, block.get(1, 0), 0.0);
+        assertEquals(3, block.get(1, 1), 0.0);
+        assertEquals(1000, block.get(2, 0), 0.0);
+        assertEquals(-0.004, block.get(2, 1), 0.0);
+    }
+
+    @Test
+    public void readFloatColumn() throws IOException {
+
+        // exactly between 1 and the next float, which rounds to the midpoint as a double and then to 1 as a float
+        var aboveMidpoint = "1.0000000596046447753906250000000001";
+        var file = temporaryFolder.getRoot().toPath().resolve("data.csv");
+        Files.writeString(file, "x,value\n" + aboveMidpoint + "," + aboveMidpoint + "\n0.1,0.1\n");
+
+        var block = NumericCsvReader.builder()
+                .file(file)
+                .columns(List.of("x", "value"))
+                .floatColumns(Set.of("value"))
+                .build()
+                .readAll();
+
+        assertEquals(Double.parseDouble(aboveMidpoint), block.get(0, 0), 0.0);
+        assertEquals(Float.parseFloat(aboveMidpoint), block.get(0, 1), 0.0);
+        assertEquals(0.1, block.get(1, 0), 0.0);
+        assertEquals(0.1f, block.get(1, 1), 0.0);
+    }
+
+    /**
+     * Writes rows of time,name,x,value with crlf line endings and returns the expected values of value,time,x
+     */
+    private static List<double[]> writeTestFile(Path file) throws IOException {
+
+        var expected = new ArrayList<double[]>();
+        var content = new StringBuilder("time,name,x,value\r\n");
+        for (var i = 0; i < 1000; i++) {
+            var time = i / 100 * 3600.;
+            var x = 385000.5 + i;
+            var value = Math.sin(i) / 3;
+            content.append(time).append(",name-").append(i).append(',').append(x).append(',').append(value).append("\r\n");
+            expected.add(new double[]{value, time, x});
+        }
+        Files.writeString(file, content.toString(), StandardCharsets.US_ASCII);
+        return expected;
+    }
+
+    private static void assertRows(List<double[]> expected, List<NumericCsvReader.Block> blocks) {
+
+        var row = 0;
+        for (var block : blocks) {
+            for (var i = 0; i < block.size(); i++) {
+                for (var c = 0; c < 3; c++) {
+                    assertEquals(expected.get(row)[c], block.get(i, c), 0.0);
+                }
+                row++;
+            }
+        }
+        assertEquals(expected.size(), row);
+    }
+}
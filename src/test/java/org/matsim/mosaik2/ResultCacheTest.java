@@ -0,0 +1,144 @@
+package org.matsim.mosaik2;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.matsim.mosaik2.raster.DoubleRaster;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+
+public class ResultCacheTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void skipsStageIfInputsAreUnchanged() throws IOException {
+
+        var input = temporaryFolder.newFile("input.txt").toPath();
+        Files.writeString(input, "some input");
+        var cache = new ResultCache(temporaryFolder.newFolder("cache").toPath());
+        var counter = new AtomicInteger();
+
+        for (var i = 0; i < 3; i++) {
+            var key = ResultCache.key("raster", 1).file(input).param("cellSize", 10);
+            var raster = cache.getOrCompute(key, ResultCodecs.doubleRaster(), () -> createRaster(counter.incrementAndGet()));
+            assertRaster(raster, 1);
+        }
+        assertEquals(1, counter.get());
+    }
+
+    @Test
+    public void invalidateIfInputChanges() throws IOException {
+
+        var input = temporaryFolder.newFile("input.txt").toPath();
+        var cache = new ResultCache(temporaryFolder.newFolder("cache").toPath());
+        var counter = new AtomicInteger();
+
+        Files.writeString(input, "some input");
+        var raster = cache.getOrCompute(ResultCache.key("raster", 1).file(input), ResultCodecs.doubleRaster(), () -> createRaster(counter.incrementAndGet()));
+        assertRaster(raster, 1);
+
+        // the same file with another content must be a different key
+        Files.writeString(input, "some other input");
+        raster = cache.getOrCompute(ResultCache.key("raster", 1).file(input), ResultCodecs.doubleRaster(), () -> createRaster(counter.incrementAndGet()));
+        assertRaster(raster, 2);
+
+        // another file with the same content as the first version is the same key
+        var copy = temporaryFolder.newFile("copy.txt").toPath();
+        Files.writeString(copy, "some input");
+        raster = cache.getOrCompute(ResultCache.key("raster", 1).file(copy), ResultCodecs.doubleRaster(), () -> createRaster(counter.incrementAndGet()));
+        assertRaster(raster, 1);
+        assertEquals(2, counter.get());
+    }
+
+    @Test
+    public void invalidateIfParameterChanges() throws IOException {
+
+        var cache = new ResultCache(temporaryFolder.newFolder("cache").toPath());
+        var counter = new AtomicInteger();
+
+        cache.getOrCompute(ResultCache.key("raster", 1).param("species", "NO2"), ResultCodecs.doubleRaster(), () -> createRaster(counter.incrementAndGet()));
+        cache.getOrCompute(ResultCache.key("raster", 1).param("species", "PM10"), ResultCodecs.doubleRaster(), () -> createRaster(counter.incrementAndGet()));
+        var previousStage = ResultCache.key("raster", 1).param("species", "PM10");
+        var raster = cache.getOrCompute(ResultCache.key("raster", 1).param("species", "PM10"), ResultCodecs.doubleRaster(), () -> createRaster(counter.incrementAndGet()));
+        assertRaster(raster, 2);
+
+        // keys of previous stages invalidate as well
+        cache.getOrCompute(ResultCache.key("r-values", 1).key(previousStage), ResultCodecs.doubleRaster(), () -> createRaster(counter.incrementAndGet()));
+        previousStage.param("scaleFactor", 10);
+        raster = cache.getOrCompute(ResultCache.key("r-values", 1).key(previousStage), ResultCodecs.doubleRaster(), () -> createRaster(counter.incrementAndGet()));
+        assertRaster(raster, 4);
+        assertEquals(4, counter.get());
+    }
+
+    @Test
+    public void invalidateIfVersionChanges() throws IOException {
+
+        var cache = new ResultCache(temporaryFolder.newFolder("cache").toPath());
+        var counter = new AtomicInteger();
+
+        cache.getOrCompute(ResultCache.key("raster", 1), ResultCodecs.doubleRaster(), () -> createRaster(counter.incrementAndGet()));
+        var raster = cache.getOrCompute(ResultCache.key("raster", 2), ResultCodecs.doubleRaster(), () -> createRaster(counter.incrementAndGet()));
+        assertRaster(raster, 2);
+        assertEquals(2, counter.get());
+    }
+
+    @Test
+    public void copyCachedFile() throws IOException {
+
+        var input = temporaryFolder.newFile("input.txt").toPath();
+        Files.writeString(input, "some input");
+        var output = temporaryFolder.getRoot().toPath().resolve("output.csv");
+        var cache = new ResultCache(temporaryFolder.newFolder("cache").toPath());
+        var counter = new AtomicInteger();
+
+        for (var i = 0; i < 2; i++) {
+            Files.deleteIfExists(output);
+            cache.getOrCreateFile(ResultCache.key("csv", 1).file(input), output, () -> writeOutput(output, counter.incrementAndGet()));
+            assertEquals("1", Files.readString(output));
+        }
+
+        Files.writeString(input, "changed input");
+        cache.getOrCreateFile(ResultCache.key("csv", 1).file(input), output, () -> writeOutput(output, counter.incrementAndGet()));
+        assertEquals("2", Files.readString(output));
+    }
+
+    @Test
+    public void disabledCache() {
+
+        var cache = ResultCache.create(null);
+        var counter = new AtomicInteger();
+
+        for (var i = 0; i < 2; i++) {
+            cache.getOrCompute(ResultCache.key("raster", 1), ResultCodecs.doubleRaster(), () -> createRaster(counter.incrementAndGet()));
+        }
+        assertEquals(2, counter.get());
+    }
+
+    private static DoubleRaster createRaster(double value) {
+        var raster = new DoubleRaster(new DoubleRaster.Bounds(0, 0, 90, 40), 10);
+        raster.setValueForEachIndex((xi, yi) -> value * (xi + 10 * yi));
+        return raster;
+    }
+
+    private static void assertRaster(DoubleRaster raster, double value) {
+        assertEquals(10, raster.getXLength());
+        assertEquals(5, raster.getYLength());
+        assertEquals(10, raster.getCellSize(), 0);
+        raster.forEachIndex((xi, yi, actual) -> assertEquals(value * (xi + 10 * yi), actual, 0));
+    }
+
+    private static void writeOutput(Path output, int value) {
+        try {
+            Files.writeString(output, Integer.toString(value));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package org.matsim.mosaik2;
+
+import org.junit.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.GeometryFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+
+public class SpatialIndexTest {
+
+    private static final GeometryFactory factory = new GeometryFactory();
+
+    @Test
+    public void forEachIntersectingSameAsGeometryQuery() {
+
+        var square = factory.createPolygon(new Coordinate[]{
+                new Coordinate(0, 0), new Coordinate(10, 0), new Coordinate(10, 10), new Coordinate(0, 10), new Coordinate(0, 0)
+        });
+        var triangle = factory.createPolygon(new Coordinate[]{
+                new Coordinate(5, 5), new Coordinate(20, 5), new Coordinate(5, 20), new Coordinate(5, 5)
+        });
+        var line = factory.createLineString(new Coordinate[]{new Coordinate(0, 15), new Coordinate(20, 15)});
+        var index = new SpatialIndex<>(List.of(
+                new SpatialIndex.GeometryItem<>("square", square),
+                new SpatialIndex.GeometryItem<>("triangle", triangle),
+                new SpatialIndex.GeometryItem<>("line", line)
+        ));
+
+        for (var x = -1.; x <= 21; x += 0.5) {
+            for (var y = -1.; y <= 21; y += 0.5) {
+
+                var expected = index.intersects(factory.createPoint(new Coordinate(x, y)));
+                Set<String> actual = new HashSet<>();
+                index.forEachIntersecting(x, y, actual::add);
+
+                assertEquals(expected, actual);
+                assertEquals(expected, index.intersects(x, y));
+            }
+        }
+
+        // check a few points explicitly, including points on the boundary
+        assertEquals(Set.of("square"), index.intersects(0, 0));
+        assertEquals(Set.of("square", "triangle"), index.intersects(10, 10));
+        assertEquals(Set.of("triangle", "line"), index.intersects(5, 15));
+        // queries without a result share the empty set
+        assertSame(Collections.emptySet(), index.intersects(19, 19));
+        assertSame(Collections.emptySet(), index.intersects(factory.createPoint(new Coordinate(19, 19))));
+    }
+
+    @Test
+    public void geometryQuery() {
+
+        var cells = new ArrayList<SpatialIndex.GeometryItem<String>>();
+        for (var x = 0; x < 10; x++) {
+            for (var y = 0; y < 10; y++) {
+                var cell = factory.toGeometry(new Envelope(x, x + 1, y, y + 1));
+                cells.add(new SpatialIndex.GeometryItem<>(x + "," + y, cell));
+            }
+        }
+        var index = new SpatialIndex<>(cells);
+
+        // a diagonal band which doesn't cover the cells in the corners
+        var band = factory.createLineString(new Coordinate[]{new Coordinate(0.5, 0.5), new Coordinate(9.5, 9.5)}).buffer(0.2);
+        Set<String> actual = new HashSet<>();
+        index.forEachIntersecting(band, actual::add);
+
+        var expected = index.intersects(band);
+        assertEquals(expected, actual);
+        assertEquals(cells.stream().filter(cell -> cell.geom().intersects(band)).map(SpatialIndex.GeometryItem::item).collect(Collectors.toSet()), expected);
+        assertFalse(expected.contains("9,0"));
+
+        // results are unmodifiable, regardless of whether something was found
+        assertThrows(UnsupportedOperationException.class, () -> expected.add("other"));
+        assertThrows(UnsupportedOperationException.class, () -> index.intersects(0.5, 0.5).add("other"));
+        assertThrows(UnsupportedOperationException.class, () -> index.intersects(-5, -5).add("other"));
+    }
+}
@@ -0,0 +1,60 @@
+package org.matsim.mosaik2.analysis;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class ActivityTimeIndexTest {
+
+    @Test
+    public void overlappingActivities() {
+
+        var index = new ActivityTimeIndex(0, 100, 4);
+        index.add(0, 50, 150);
+        index.add(0, 120, 130);
+        index.add(0, Double.NEGATIVE_INFINITY, 20);
+        index.add(2, 350, Double.POSITIVE_INFINITY);
+
+        assertEquals(3, index.getNumberOfLocations());
+        assertEquals(50 + 20, index.getSpentTime(0, 0), 1e-10);
+        assertEquals(50 + 10, index.getSpentTime(0, 1), 1e-10);
+        assertEquals(0, index.getSpentTime(0, 2), 1e-10);
+        assertEquals(0, index.getSpentTime(1, 3), 1e-10);
+        assertEquals(50, index.getSpentTime(2, 3), 1e-10);
+
+        var nonZero = new ArrayList<int[]>();
+        index.forEachNonZero((location, timeStep, spentTime) -> nonZero.add(new int[]{location, timeStep}));
+        assertEquals(3, nonZero.size());
+        assertEquals(2, nonZero.get(2)[0]);
+        assertEquals(3, nonZero.get(2)[1]);
+    }
+
+    @Test
+    public void sameAsIntervalOverlap() {
+
+        var random = new Random(42);
+        var starts = new double[1000];
+        var ends = new double[1000];
+        var index = new ActivityTimeIndex(0, 900, 96);
+        for (var i = 0; i < starts.length; i++) {
+            starts[i] = random.nextDouble() * 86400;
+            ends[i] = starts[i] + random.nextDouble() * 20000;
+            index.add(i % 7, starts[i], ends[i]);
+        }
+
+        for (var location = 0; location < 7; location++) {
+            for (var timeStep = 0; timeStep < 96; timeStep++) {
+                var from = timeStep * 900.;
+                var to = from + 900;
+                var expected = 0.;
+                for (var i = location; i < starts.length; i += 7) {
+                    expected += Math.max(0, Math.min(to, ends[i]) - Math.max(from, starts[i]));
+                }
+                assertEquals(expected, index.getSpentTime(location, timeStep), 1e-6);
+            }
+        }
+    }
+}
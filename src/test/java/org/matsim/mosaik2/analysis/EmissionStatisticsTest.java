@@ -0,0 +1,73 @@
+package org.matsim.mosaik2.analysis;
+
+import org.junit.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.prep.PreparedGeometryFactory;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.contrib.emissions.Pollutant;
+import org.matsim.contrib.emissions.events.ColdEmissionEvent;
+import org.matsim.contrib.emissions.events.WarmEmissionEvent;
+import org.matsim.core.network.NetworkUtils;
+import org.matsim.mosaik2.chemistryDriver.PollutantToPalmNameConverter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class EmissionStatisticsTest {
+
+    @Test
+    public void singlePass() {
+
+        // two links of 100m. The first one is within the filter, the second one isn't
+        var network = NetworkUtils.createNetwork();
+        var node1 = NetworkUtils.createAndAddNode(network, Id.createNodeId("1"), new Coord(0, 0));
+        var node2 = NetworkUtils.createAndAddNode(network, Id.createNodeId("2"), new Coord(100, 0));
+        var node3 = NetworkUtils.createAndAddNode(network, Id.createNodeId("3"), new Coord(200, 0));
+        var inside = NetworkUtils.createAndAddLink(network, Id.createLinkId("inside"), node1, node2, 100, 10, 1000, 1);
+        var outside = NetworkUtils.createAndAddLink(network, Id.createLinkId("outside"), node2, node3, 100, 10, 1000, 1);
+        var filter = new PreparedGeometryFactory().create(new GeometryFactory().createPolygon(new Coordinate[]{
+                new Coordinate(-10, -10), new Coordinate(110, -10), new Coordinate(110, 10), new Coordinate(-10, 10), new Coordinate(-10, -10)
+        }));
+
+        var converter = PollutantToPalmNameConverter.createForSpecies(List.of("PM10"));
+        var statistics = new EmissionStatistics(network, converter, filter, 10, 2.0);
+
+        var emissions = Map.of(Pollutant.PM, 1.0, Pollutant.PM_non_exhaust, 2.0, Pollutant.NOx, 100.);
+        statistics.handleEvent(new WarmEmissionEvent(1, inside.getId(), Id.createVehicleId("vehicle"), emissions));
+        statistics.handleEvent(new ColdEmissionEvent(2, inside.getId(), Id.createVehicleId("vehicle"), emissions));
+        statistics.handleEvent(new WarmEmissionEvent(3, outside.getId(), Id.createVehicleId("vehicle"), emissions));
+        statistics.handleEvent(new WarmEmissionEvent(15, outside.getId(), Id.createVehicleId("vehicle"), emissions));
+        // links which are not part of the network are ignored
+        statistics.handleEvent(new WarmEmissionEvent(15, Id.createLinkId("unknown"), Id.createVehicleId("vehicle"), emissions));
+
+        var result = statistics.getResult();
+
+        assertEquals(List.of("PM10"), result.getSpecies());
+        assertArrayEquals(new double[]{0, 10}, result.getTimeBins(), 0);
+
+        // PM and PM_non_exhaust are combined into PM10, NOx is ignored. Values are multiplied by the scale factor
+        assertEquals(3 * 3 * 2, result.getSum(0, "PM10"), 1e-10);
+        assertEquals(2 * 3 * 2, result.getSumInFilter(0, "PM10"), 1e-10);
+        assertEquals(3 * 2, result.getSum(10, "PM10"), 1e-10);
+        assertEquals(0, result.getSumInFilter(10, "PM10"), 1e-10);
+        assertEquals(0, result.getSum(20, "PM10"), 1e-10);
+        assertFalse(result.hasEmissions(20, "PM10"));
+
+        // mean over the links of emissions / length
+        assertEquals((12. / 100 + 6. / 100) / 2, result.getAveragePerMeter(0, "PM10"), 1e-10);
+
+        var visitedLinks = new ArrayList<Id<Link>>();
+        result.forEachLink(0, "PM10", (linkId, length, value, numberOfEvents) -> {
+            visitedLinks.add(linkId);
+            assertEquals(100, length, 0);
+            assertEquals(linkId.equals(inside.getId()) ? 4 : 2, numberOfEvents);
+        });
+        assertEquals(2, visitedLinks.size());
+    }
+}
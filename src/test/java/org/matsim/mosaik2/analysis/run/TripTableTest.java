@@ -0,0 +1,116 @@
+package org.matsim.mosaik2.analysis.run;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.prep.PreparedGeometryFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TripTableTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void withFilter() throws IOException {
+
+        var table = TripTable.read(writeTrips());
+        assertEquals(5, table.size());
+
+        // square of 0,0 to 100,100
+        var filter = PreparedGeometryFactory.prepare(new GeometryFactory().toGeometry(new Envelope(0, 100, 0, 100)));
+        var result = table.modalSplits(filter);
+
+        assertEquals(2, result.split().size());
+        assertEquals(20, result.split().getDouble("car"), 1e-10);
+        assertEquals(10, result.split().getDouble("pt"), 1e-10);
+
+        assertEquals(2, result.share().size());
+        assertEquals(2. / 3, result.share().getDouble("car"), 1e-10);
+        assertEquals(1. / 3, result.share().getDouble("pt"), 1e-10);
+
+        // the second car trip only passes through the filter
+        assertEquals(2, result.splitStartEnd().size());
+        assertEquals(10, result.splitStartEnd().getDouble("car"), 1e-10);
+        assertEquals(10, result.splitStartEnd().getDouble("pt"), 1e-10);
+
+        var firstHour = result.splitByHour().getTimeBin(0).getValue();
+        assertEquals(1, firstHour.size());
+        assertEquals(10, firstHour.getDouble("car"), 1e-10);
+        var secondHour = result.splitByHour().getTimeBin(3600).getValue();
+        assertEquals(2, secondHour.size());
+        assertEquals(10, secondHour.getDouble("car"), 1e-10);
+        assertEquals(10, secondHour.getDouble("pt"), 1e-10);
+        // only the bike trip departs in the third hour, and it doesn't intersect the filter
+        assertFalse(result.splitByHour().getTimeBin(7200).hasValue());
+
+        var firstHourStartEnd = result.splitByHourStartEnd().getTimeBin(0).getValue();
+        assertEquals(1, firstHourStartEnd.size());
+        assertEquals(10, firstHourStartEnd.getDouble("car"), 1e-10);
+        var secondHourStartEnd = result.splitByHourStartEnd().getTimeBin(3600).getValue();
+        assertEquals(1, secondHourStartEnd.size());
+        assertEquals(10, secondHourStartEnd.getDouble("pt"), 1e-10);
+
+        assertEquals(1, result.shareByHour().getTimeBin(0).getValue().getDouble("car"), 1e-10);
+        assertEquals(0.5, result.shareByHour().getTimeBin(3600).getValue().getDouble("car"), 1e-10);
+        assertEquals(0.5, result.shareByHour().getTimeBin(3600).getValue().getDouble("pt"), 1e-10);
+    }
+
+    @Test
+    public void withoutFilter() throws IOException {
+
+        var table = TripTable.read(writeTrips());
+        var result = table.modalSplits(null);
+
+        assertEquals(4, result.split().size());
+        assertEquals(20, result.split().getDouble("car"), 1e-10);
+        assertEquals(10, result.split().getDouble("pt"), 1e-10);
+        assertEquals(10, result.split().getDouble("bike"), 1e-10);
+        assertEquals(10, result.split().getDouble("walk"), 1e-10);
+
+        assertEquals(0.4, result.share().getDouble("car"), 1e-10);
+        assertEquals(0.2, result.share().getDouble("pt"), 1e-10);
+        assertEquals(0.2, result.share().getDouble("bike"), 1e-10);
+        assertEquals(0.2, result.share().getDouble("walk"), 1e-10);
+
+        // without filter all trips count as starting or ending within the area
+        assertEquals(result.split(), result.splitStartEnd());
+
+        var firstHour = result.splitByHour().getTimeBin(0).getValue();
+        assertEquals(2, firstHour.size());
+        assertEquals(10, firstHour.getDouble("car"), 1e-10);
+        assertEquals(10, firstHour.getDouble("walk"), 1e-10);
+        var thirdHour = result.splitByHour().getTimeBin(7200).getValue();
+        assertEquals(1, thirdHour.size());
+        assertEquals(10, thirdHour.getDouble("bike"), 1e-10);
+
+        assertEquals(0.5, result.shareByHour().getTimeBin(0).getValue().getDouble("walk"), 1e-10);
+        assertEquals(1, result.shareByHour().getTimeBin(7200).getValue().getDouble("bike"), 1e-10);
+    }
+
+    private Path writeTrips() throws IOException {
+
+        var file = folder.getRoot().toPath().resolve("trips.csv");
+        Files.write(file, List.of(
+                "main_mode,dep_time,start_x,start_y,end_x,end_y",
+                // starts and ends within the filter
+                "car,00:30:00,10,10,20,20",
+                // passes through the filter
+                "car,01:15:00,-50,50,150,50",
+                // starts within the filter
+                "pt,01:30:00,50,50,500,500",
+                // outside of the filter
+                "bike,02:00:00,200,200,300,300",
+                "walk,00:10:00,-10,-10,-20,-20"
+        ));
+        return file;
+    }
+}
@@ -3,6 +3,7 @@ package org.matsim.mosaik2.chemistryDriver;
 import org.junit.Test;
 import org.matsim.api.core.v01.Coord;
 import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.events.Event;
 import org.matsim.api.core.v01.network.Link;
 import org.matsim.contrib.emissions.Pollutant;
 import org.matsim.contrib.emissions.events.ColdEmissionEvent;
@@ -10,9 +11,14 @@ import org.matsim.contrib.emissions.events.WarmEmissionEvent;
 import org.matsim.core.utils.geometry.transformations.IdentityTransformation;
 import org.matsim.mosaik2.utils.TestUtils;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.*;
 
@@ -168,4 +174,98 @@ public class AggregateEmissionsByTimeAndOrigGeometryHandlerTest {
             }
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    public void sameResultForSequentialAndParallelEvents() throws Exception {
+
+        var network = TestUtils.createRandomNetwork(10, 100, 100);
+        var linkMap = NetworkUnsimplifier.unsimplifyNetwork(network, new IdentityTransformation());
+        var linkIds = new ArrayList<>(network.getLinks().keySet());
+        var pollutants = Set.of(Pollutant.NOx, Pollutant.NO2);
+        var random = new Random(42);
+
+        List<Event> events = new ArrayList<>();
+        for (var i = 0; i < 10000; i++) {
+            var linkId = linkIds.get(random.nextInt(linkIds.size()));
+            var emissions = Map.of(Pollutant.NOx, random.nextDouble(), Pollutant.NO2, random.nextDouble(), Pollutant.CO, random.nextDouble());
+            var time = random.nextInt(100);
+            events.add(i % 2 == 0
+                    ? new WarmEmissionEvent(time, linkId, Id.createVehicleId("vehicle"), emissions)
+                    : new ColdEmissionEvent(time, linkId, Id.createVehicleId("vehicle"), emissions));
+        }
+
+        var sequentialHandler = new AggregateEmissionsByTimeAndOrigGeometryHandler(linkMap, pollutants, 10, 10.0);
+        for (var event : events) {
+            sequentialHandler.handleEvent(event);
+        }
+
+        // each thread sums into its own accumulator, which are merged when the result is requested
+        var parallelHandler = new AggregateEmissionsByTimeAndOrigGeometryHandler(linkMap, pollutants, 10, 10.0);
+        var numberOfThreads = 4;
+        var executor = Executors.newFixedThreadPool(numberOfThreads);
+        List<Future<?>> futures = new ArrayList<>();
+        for (var t = 0; t < numberOfThreads; t++) {
+            var thread = t;
+            futures.add(executor.submit(() -> {
+                for (var i = thread; i < events.size(); i += numberOfThreads) {
+                    parallelHandler.handleEvent(events.get(i));
+                }
+            }));
+        }
+        for (var future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+
+        var expected = sequentialHandler.getTimeBinMap();
+        var actual = parallelHandler.getTimeBinMap();
+        assertEquals(10, expected.getTimeBins().size());
+        assertEquals(expected.getTimeBins().size(), actual.getTimeBins().size());
+        assertEquals(sequentialHandler.getLinksWithEmissions(), parallelHandler.getLinksWithEmissions());
+
+        for (var expectedBin : expected.getTimeBins()) {
+            var actualBin = actual.getTimeBin(expectedBin.getStartTime());
+            assertTrue(actualBin.hasValue());
+            assertEquals(pollutants, actualBin.getValue().keySet());
+
+            for (var pollutant : pollutants) {
+                var expectedEmissions = expectedBin.getValue().get(pollutant);
+                var actualEmissions = actualBin.getValue().get(pollutant);
+                assertEquals(expectedEmissions.keySet(), actualEmissions.keySet());
+                for (var entry : expectedEmissions.entrySet()) {
+                    // summation order differs between the threads
+                    assertEquals(entry.getValue(), actualEmissions.get(entry.getKey()), 1e-9);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void requestResultSeveralTimes() {
+
+        var network = TestUtils.createSingleLinkNetwork(new Coord(0,0), new Coord(80, 0), List.of(new Coord(0, 10), new Coord(80, 10)));
+        var linkMap = NetworkUnsimplifier.unsimplifyNetwork(network, new IdentityTransformation());
+        var linkId = network.getLinks().values().iterator().next().getId();
+        var emissions = Map.of(Pollutant.NOx, 1.0);
+        var handler = new AggregateEmissionsByTimeAndOrigGeometryHandler(linkMap, Set.of(Pollutant.NOx), 10, 1.0);
+
+        handler.handleEvent(new WarmEmissionEvent(1, linkId, Id.createVehicleId("vehicle"), emissions));
+        var first = handler.getTimeBinMap();
+        var second = handler.getTimeBinMap();
+        assertEquals(first.getTimeBin(1).getValue(), second.getTimeBin(1).getValue());
+
+        // events handled after a result was requested are added to the previously merged emissions
+        handler.handleEvent(new WarmEmissionEvent(2, linkId, Id.createVehicleId("vehicle"), emissions));
+        handler.handleEvent(new WarmEmissionEvent(15, linkId, Id.createVehicleId("vehicle"), emissions));
+        var third = handler.getTimeBinMap();
+        assertEquals(2, third.getTimeBins().size());
+
+        for (var segment : linkMap.get(linkId)) {
+            var expectedEmission = segment.getLength() / network.getLinks().get(linkId).getLength();
+            assertEquals(expectedEmission, first.getTimeBin(1).getValue().get(Pollutant.NOx).get(segment.getId()), 0.0001);
+            assertEquals(2 * expectedEmission, third.getTimeBin(1).getValue().get(Pollutant.NOx).get(segment.getId()), 0.0001);
+            assertEquals(expectedEmission, third.getTimeBin(15).getValue().get(Pollutant.NOx).get(segment.getId()), 0.0001);
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package org.matsim.mosaik2.chemistryDriver;
+
+import gnu.trove.map.hash.TObjectDoubleHashMap;
+import org.junit.Test;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.mosaik2.raster.DoubleRaster;
+import org.matsim.mosaik2.utils.TestUtils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class BresenhamTest {
+
+    @Test
+    public void overloadsYieldSameRaster() {
+
+        var network = TestUtils.createRandomNetwork(100, 1000, 1000);
+        var bounds = new DoubleRaster.Bounds(100, 100, 900, 900);
+        Map<Id<Link>, Double> emissions = new HashMap<>();
+        var troveEmissions = new TObjectDoubleHashMap<Id<Link>>();
+        for (var link : network.getLinks().values()) {
+            emissions.put(link.getId(), link.getLength());
+            troveEmissions.put(link.getId(), link.getLength());
+        }
+
+        var raster = Bresenham.rasterizeNetwork(network, bounds, emissions, 10);
+        var troveRaster = Bresenham.rasterizeNetwork(network, bounds, troveEmissions, 10);
+        var sparseRaster = Bresenham.rasterizeNetworkSparse(network, bounds, emissions, 10);
+
+        raster.forEachIndex((xi, yi, value) -> {
+            assertEquals(value, troveRaster.getValueByIndex(xi, yi), 0.0);
+            assertEquals(value, sparseRaster.getValueByIndex(xi, yi), 0.0);
+        });
+    }
+
+    @Test
+    public void linkShorterThanCell() {
+
+        var network = TestUtils.createSingleLinkNetwork(new Coord(51, 52), new Coord(53, 54), List.of());
+        var bounds = new DoubleRaster.Bounds(0, 0, 100, 100);
+        var emissions = Map.of(Id.createLinkId("link"), 100.0);
+
+        var raster = Bresenham.rasterizeNetwork(network, bounds, emissions, 10);
+
+        raster.forEachCoordinate((x, y, value) -> {
+            if (x == 50 && y == 50) {
+                assertEquals(1.0, value, 0.0);
+            } else {
+                assertEquals(0.0, value, 0.0);
+            }
+        });
+    }
+
+    @Test
+    public void cellsMatchPreviousImplementation() {
+
+        List<Link> links = new ArrayList<>(TestUtils.createRandomNetwork(1000, 1000, 1000).getLinks().values());
+        // add lines in each direction, including purely horizontal and vertical ones
+        var center = new Coord(505, 505);
+        for (var to : List.of(new Coord(905, 505), new Coord(905, 705), new Coord(705, 905), new Coord(505, 905),
+                new Coord(305, 905), new Coord(105, 705), new Coord(105, 505), new Coord(105, 305),
+                new Coord(305, 105), new Coord(505, 105), new Coord(705, 105), new Coord(905, 305))) {
+            links.add(TestUtils.createSingleLinkNetwork(center, to, List.of()).getLinks().get(Id.createLinkId("link")));
+        }
+        var buffer = new Bresenham.CellBuffer();
+
+        for (var link : links) {
+            for (var includeEndCell : List.of(true, false)) {
+
+                var expected = rasterizeLinkPreviously(link, 10, includeEndCell);
+                Bresenham.rasterizeLink(link, 10, 0, 0, includeEndCell, buffer);
+
+                var actual = new int[buffer.size() * 2];
+                for (var i = 0; i < buffer.size(); i++) {
+                    actual[2 * i] = buffer.getXIndex(i);
+                    actual[2 * i + 1] = buffer.getYIndex(i);
+                }
+                assertArrayEquals(expected, actual);
+            }
+        }
+    }
+
+    /**
+     * Copy of the previous implementation, which passed coordinates to a consumer. Links shorter than a cell are
+     * reported as a single cell, as the emission rasterization divided the emissions by the number of cells anyway.
+     */
+    private static int[] rasterizeLinkPreviously(Link link, double cellSize, boolean includeEndCell) {
+
+        int x0 = (int) (link.getFromNode().getCoord().getX() / cellSize);
+        int x1 = (int) (link.getToNode().getCoord().getX() / cellSize);
+        int y0 = (int) (link.getFromNode().getCoord().getY() / cellSize);
+        int y1 = (int) (link.getToNode().getCoord().getY() / cellSize);
+        int dx = Math.abs(x1 - x0);
+        int dy = -Math.abs(y1 - y0);
+        int err = dx + dy, e2;
+
+        int sx = x0 < x1 ? 1 : -1;
+        int sy = y0 < y1 ? 1 : -1;
+
+        List<Integer> result = new ArrayList<>();
+        if (dx == 0 && dy == 0) {
+            return new int[]{x0, y0};
+        }
+
+        do {
+            result.add(x0);
+            result.add(y0);
+            e2 = err + err;
+            if (e2 >= dy) {
+                err += dy;
+                x0 += sx;
+            }
+            if (e2 <= dx) {
+                err += dx;
+                y0 += sy;
+            }
+        } while (includeEndCell
+                ? (sx > 0 ? x0 <= x1 : x0 >= x1) && (sy > 0 ? y0 <= y1 : y0 >= y1)
+                : x0 != x1 || y0 != y1);
+
+        return result.stream().mapToInt(Integer::intValue).toArray();
+    }
+}
@@ -7,9 +7,12 @@ import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.network.Link;
 import org.matsim.contrib.analysis.time.TimeBinMap;
 import org.matsim.contrib.emissions.Pollutant;
+import org.matsim.mosaik2.raster.BuildingMask;
 import org.matsim.mosaik2.raster.DoubleRaster;
 import org.matsim.mosaik2.utils.TestUtils;
 
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import static org.junit.Assert.assertEquals;
@@ -55,6 +58,41 @@ public class EmissionRastererTest {
         });
     }
 
+    @Test
+    public void rasterParallel() {
+
+        var network = TestUtils.createRandomNetwork(100, 1000, 1000);
+        var bounds = new DoubleRaster.Bounds(0, 0, 1000, 1000);
+        var timeBinMap = new TimeBinMap<Map<Pollutant, Map<Id<Link>, Double>>>(3600);
+        for (var hour = 0; hour < 5; hour++) {
+            Map<Pollutant, Map<Id<Link>, Double>> emissionsByPollutant = new HashMap<>();
+            for (var pollutant : List.of(Pollutant.NO2, Pollutant.NOx, Pollutant.PM)) {
+                Map<Id<Link>, Double> emissions = new HashMap<>();
+                for (var link : network.getLinks().values()) {
+                    emissions.put(link.getId(), link.getLength() * (hour + 1));
+                }
+                emissionsByPollutant.put(pollutant, emissions);
+            }
+            timeBinMap.getTimeBin(hour * 3600).setValue(emissionsByPollutant);
+        }
+
+        var result = EmissionRasterer.raster(timeBinMap, network, bounds, 10, 4);
+        var sparseResult = EmissionRasterer.rasterSparse(timeBinMap, network, bounds, 10, 4);
+
+        assertEquals(timeBinMap.getTimeBins().size(), result.getTimeBins().size());
+        for (var bin : timeBinMap.getTimeBins()) {
+            for (var entry : bin.getValue().entrySet()) {
+                var expected = Bresenham.rasterizeNetwork(network, bounds, entry.getValue(), 10);
+                var raster = result.getTimeBin(bin.getStartTime()).getValue().get(entry.getKey());
+                var sparseRaster = sparseResult.getTimeBin(bin.getStartTime()).getValue().get(entry.getKey());
+                expected.forEachIndex((xi, yi, value) -> {
+                    assertEquals(value, raster.getValueByIndex(xi, yi), 0.0);
+                    assertEquals(value, sparseRaster.getValueByIndex(xi, yi), 0.0);
+                });
+            }
+        }
+    }
+
     @Test
     public void rasterWithBuffer() {
 
@@ -68,7 +106,7 @@ public class EmissionRastererTest {
         var streetTypes = new DoubleRaster(bounds, cellSize);
         streetTypes.setValueForEachCoordinate((x, y) -> (x == 6) ? 1 : -1);
 
-        var result = EmissionRasterer.rasterWithBuffer(timeBinMap, network, streetTypes);
+        var result = EmissionRasterer.rasterWithBuffer(timeBinMap, network, BuildingMask.fromRaster(streetTypes));
 
         result.getTimeBins().iterator().next().getValue().get(Pollutant.NO2).forEachCoordinate((x, y, value) -> {
             // the link should intersect x=6 and all cells between -6 and 2
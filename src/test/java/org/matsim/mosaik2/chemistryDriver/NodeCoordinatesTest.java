@@ -0,0 +1,101 @@
+package org.matsim.mosaik2.chemistryDriver;
+
+import it.unimi.dsi.fastutil.HashCommon;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class NodeCoordinatesTest {
+
+    @Test
+    public void putAndGet() {
+
+        var coordinates = new NodeCoordinates(10);
+        coordinates.put(1, 13.4050, 52.5200);
+        coordinates.put(42, -0.1276, 51.5072);
+
+        assertEquals(2, coordinates.size());
+        assertTrue(coordinates.containsKey(1));
+        assertFalse(coordinates.containsKey(2));
+        assertNull(coordinates.get(2));
+
+        var coord = coordinates.get(42);
+        assertEquals(-0.1276, coord.getX(), 1e-7);
+        assertEquals(51.5072, coord.getY(), 1e-7);
+
+        // putting an existing id replaces the coordinate
+        coordinates.put(42, 2.3522, 48.8566);
+        assertEquals(2, coordinates.size());
+        assertEquals(2.3522, coordinates.get(42).getX(), 1e-7);
+        assertEquals(48.8566, coordinates.get(42).getY(), 1e-7);
+    }
+
+    @Test
+    public void putAll() {
+
+        var coordinates = new NodeCoordinates(10);
+        coordinates.putAll(new long[]{1, 2, 3}, new double[]{10, 20, 30}, new double[]{-10, -20, -30}, 2);
+
+        assertEquals(2, coordinates.size());
+        assertEquals(20, coordinates.get(2).getX(), 1e-7);
+        assertEquals(-20, coordinates.get(2).getY(), 1e-7);
+        assertFalse(coordinates.containsKey(3));
+    }
+
+    @Test
+    public void collisions() {
+
+        // 4 expected entries result in 8 slots. Find ids which all hash into the same slot, so that they are probed
+        var coordinates = new NodeCoordinates(4);
+        List<Long> ids = new ArrayList<>();
+        for (long id = 0; ids.size() < 4; id++) {
+            if (((int) HashCommon.mix(id) & 7) == 3) ids.add(id);
+        }
+
+        for (var id : ids) {
+            coordinates.put(id, id, -id);
+        }
+
+        assertEquals(ids.size(), coordinates.size());
+        for (var id : ids) {
+            assertEquals(id, coordinates.get(id).getX(), 1e-7);
+            assertEquals(-id, coordinates.get(id).getY(), 1e-7);
+        }
+        // an id which is not in the map must be found missing after probing past the colliding ids
+        long missing = ids.get(ids.size() - 1) + 1;
+        while (((int) HashCommon.mix(missing) & 7) != 3) missing++;
+        assertNull(coordinates.get(missing));
+    }
+
+    @Test
+    public void fullCapacity() {
+
+        // 8 slots with a maximum fill of 6 entries
+        var coordinates = new NodeCoordinates(4);
+        for (var id = 0; id < 6; id++) {
+            coordinates.put(id, 1, 1);
+        }
+
+        // existing ids can still be updated
+        coordinates.put(5, 2, 2);
+        assertEquals(2, coordinates.get(5).getX(), 1e-7);
+
+        assertThrows(IllegalStateException.class, () -> coordinates.put(6, 1, 1));
+        assertEquals(6, coordinates.size());
+    }
+
+    @Test
+    public void packAndUnpack() {
+
+        double[][] coords = {{180, 90}, {-180, -90}, {-180, 90}, {180, -90}, {0, 0}, {-0.0000001, 0.0000001}, {13.3777041, 52.5162746}};
+
+        for (var coord : coords) {
+            var packed = NodeCoordinates.pack(coord[0], coord[1]);
+            assertEquals(coord[0], NodeCoordinates.unpackLongitude(packed), 1e-9);
+            assertEquals(coord[1], NodeCoordinates.unpackLatitude(packed), 1e-9);
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package org.matsim.mosaik2.chemistryDriver;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.matsim.api.core.v01.events.Event;
+import org.matsim.api.core.v01.events.LinkLeaveEvent;
+import org.matsim.api.core.v01.events.handler.LinkLeaveEventHandler;
+import org.matsim.contrib.emissions.Pollutant;
+import org.matsim.contrib.emissions.events.WarmEmissionEvent;
+import org.matsim.core.api.experimental.events.EventsManager;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.controler.AbstractModule;
+import org.matsim.core.controler.Controler;
+import org.matsim.core.controler.OutputDirectoryHierarchy;
+import org.matsim.core.events.EventsManagerImpl;
+import org.matsim.core.events.handler.EventHandler;
+import org.matsim.core.scenario.ScenarioUtils;
+import org.matsim.examples.ExamplesUtils;
+import org.matsim.mosaik2.raster.DoubleRaster;
+import org.matsim.testcases.MatsimTestUtils;
+
+import javax.inject.Inject;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class OnlineChemistryDriverModuleTest {
+
+    @Rule
+    public MatsimTestUtils testUtils = new MatsimTestUtils();
+
+    @Test
+    public void testEquilSetup() {
+
+        var chemistryDriverConfig = new OnlineChemistryDriverModule.OnlineChemistryDriverConfigGroup();
+        chemistryDriverConfig.setBounds(new DoubleRaster.Bounds(-21000, -11000, 6000, 11000));
+        chemistryDriverConfig.setCellSize(1000);
+        chemistryDriverConfig.setSpecies(List.of("NO2"));
+
+        var configPath = ExamplesUtils.getTestScenarioURL("equil") + "config.xml";
+        var config = ConfigUtils.loadConfig(configPath, chemistryDriverConfig);
+        config.controler().setOutputDirectory(testUtils.getOutputDirectory());
+        config.controler().setOverwriteFileSetting(OutputDirectoryHierarchy.OverwriteFileSetting.deleteDirectoryIfExists);
+        config.controler().setLastIteration(1);
+
+        var scenario = ScenarioUtils.loadScenario(config);
+        var eventsManager = new RecordingEventsManager();
+        var controler = new Controler(scenario);
+        controler.addOverridingModule(new OnlineChemistryDriverModule());
+        controler.addOverridingModule(new AbstractModule() {
+            @Override
+            public void install() {
+                // single threaded events manager, so that emission events can be thrown from within a handler
+                bind(EventsManager.class).toInstance(eventsManager);
+                addEventHandlerBinding().to(EmissionOnLinkLeave.class);
+            }
+        });
+
+        controler.run();
+
+        // the handler is only added for the last iteration and removed once the mobsim has ended
+        var added = eventsManager.getAdded(AggregateEmissionsByTimeAndOrigGeometryHandler.class);
+        assertEquals(1, added.size());
+        assertEquals(added, eventsManager.getRemoved(AggregateEmissionsByTimeAndOrigGeometryHandler.class));
+
+        // the chemistry driver is written at shutdown and contains the emissions of the last iteration
+        var outputFile = Paths.get(testUtils.getOutputDirectory()).resolve(chemistryDriverConfig.getOutputFile());
+        assertTrue(Files.exists(outputFile));
+
+        var readResult = PalmChemistryInputReader.read(outputFile.toString());
+        assertFalse(readResult.getTimeBins().isEmpty());
+        var sum = readResult.getTimeBins().stream()
+                .map(bin -> bin.getValue().get("NO2"))
+                .mapToDouble(OnlineChemistryDriverModuleTest::sum)
+                .sum();
+        assertTrue(sum > 0);
+    }
+
+    private static double sum(DoubleRaster raster) {
+        var result = new double[1];
+        raster.forEachIndex((xi, yi, value) -> result[0] += value);
+        return result[0];
+    }
+
+    /**
+     * Throws a warm emission event for every vehicle leaving a link, so that the test doesn't depend on hbefa tables.
+     */
+    private static class EmissionOnLinkLeave implements LinkLeaveEventHandler {
+
+        @Inject
+        private EventsManager eventsManager;
+
+        @Override
+        public void handleEvent(LinkLeaveEvent event) {
+            eventsManager.processEvent(new WarmEmissionEvent(event.getTime(), event.getLinkId(), event.getVehicleId(), Map.of(Pollutant.NO2, 1.0)));
+        }
+    }
+
+    /**
+     * Delegates to a single threaded events manager and records which handlers were added and removed.
+     */
+    private static class RecordingEventsManager implements EventsManager {
+
+        private final EventsManager delegate = new EventsManagerImpl();
+        private final List<EventHandler> added = new ArrayList<>();
+        private final List<EventHandler> removed = new ArrayList<>();
+
+        private List<EventHandler> getAdded(Class<? extends EventHandler> type) {
+            return added.stream().filter(type::isInstance).toList();
+        }
+
+        private List<EventHandler> getRemoved(Class<? extends EventHandler> type) {
+            return removed.stream().filter(type::isInstance).toList();
+        }
+
+        @Override
+        public void processEvent(Event event) {
+            delegate.processEvent(event);
+        }
+
+        @Override
+        public void addHandler(EventHandler handler) {
+            added.add(handler);
+            delegate.addHandler(handler);
+        }
+
+        @Override
+        public void removeHandler(EventHandler handler) {
+            removed.add(handler);
+            delegate.removeHandler(handler);
+        }
+
+        @Override
+        public void resetHandlers(int iteration) {
+            delegate.resetHandlers(iteration);
+        }
+
+        @Override
+        public void initProcessing() {
+            delegate.initProcessing();
+        }
+
+        @Override
+        public void afterSimStep(double time) {
+            delegate.afterSimStep(time);
+        }
+
+        @Override
+        public void finishProcessing() {
+            delegate.finishProcessing();
+        }
+    }
+}
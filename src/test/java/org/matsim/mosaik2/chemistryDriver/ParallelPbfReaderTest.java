@@ -0,0 +1,148 @@
+package org.matsim.mosaik2.chemistryDriver;
+
+import com.slimjars.dist.gnu.trove.list.array.TLongArrayList;
+import de.topobyte.osm4j.core.access.OsmHandler;
+import de.topobyte.osm4j.core.access.OsmInputException;
+import de.topobyte.osm4j.core.model.iface.OsmBounds;
+import de.topobyte.osm4j.core.model.iface.OsmNode;
+import de.topobyte.osm4j.core.model.iface.OsmRelation;
+import de.topobyte.osm4j.core.model.iface.OsmWay;
+import de.topobyte.osm4j.core.model.impl.Node;
+import de.topobyte.osm4j.core.model.impl.Way;
+import de.topobyte.osm4j.pbf.Compression;
+import de.topobyte.osm4j.pbf.seq.PbfReader;
+import de.topobyte.osm4j.pbf.seq.PbfWriter;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.Assert.*;
+
+public class ParallelPbfReaderTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void denseNodes() throws IOException, OsmInputException {
+        compareWithSequentialReader(true);
+    }
+
+    @Test
+    public void plainNodes() throws IOException, OsmInputException {
+        compareWithSequentialReader(false);
+    }
+
+    private void compareWithSequentialReader(boolean useDense) throws IOException, OsmInputException {
+
+        var file = temporaryFolder.getRoot().toPath().resolve("network.osm.pbf");
+        writePbf(file, useDense);
+
+        // read the file with osm4j's sequential reader as reference
+        var expected = new Entities();
+        try (var in = Files.newInputStream(file)) {
+            var reader = new PbfReader(in, false);
+            reader.setHandler(expected);
+            reader.read();
+        }
+
+        // use several threads, so that blocks are decoded concurrently
+        var actualNodes = new ConcurrentHashMap<Long, double[]>();
+        var actualWays = new ConcurrentHashMap<Long, long[]>();
+        ParallelPbfReader.builder().numberOfThreads(4).build().read(file, block -> {
+            for (var i = 0; i < block.nodeIds().length; i++) {
+                assertNull(actualNodes.put(block.nodeIds()[i], new double[]{block.longitudes()[i], block.latitudes()[i]}));
+            }
+            for (var way : block.ways()) {
+                assertNull(actualWays.put(way.id(), way.nodeIds()));
+            }
+        });
+
+        assertEquals(expected.nodes.size(), actualNodes.size());
+        for (var entry : expected.nodes.entrySet()) {
+            var actual = actualNodes.get(entry.getKey());
+            assertNotNull(actual);
+            assertEquals(entry.getValue()[0], actual[0], 1e-9);
+            assertEquals(entry.getValue()[1], actual[1], 1e-9);
+        }
+
+        assertEquals(expected.ways.size(), actualWays.size());
+        for (var entry : expected.ways.entrySet()) {
+            assertArrayEquals(entry.getValue(), actualWays.get(entry.getKey()));
+        }
+    }
+
+    /**
+     * Writes nodes at the edges of the coordinate range and random nodes. Ways reference the nodes in random order, so
+     * that the deltas of the references are negative as well. A small batch limit splits the file into several blocks.
+     */
+    private static void writePbf(Path file, boolean useDense) throws IOException {
+
+        var random = new Random(42);
+        try (var out = Files.newOutputStream(file)) {
+            var writer = new PbfWriter(out, false);
+            writer.setUseDense(useDense);
+            writer.setCompression(Compression.DEFLATE);
+            writer.setBatchLimit(100);
+
+            writer.write(new Node(1, 180, 90));
+            writer.write(new Node(2, -180, -90));
+            writer.write(new Node(3, 13.3777041, 52.5162746));
+            var numberOfNodes = 1000;
+            for (var id = 4; id <= numberOfNodes; id++) {
+                writer.write(new Node(id * 10L, random.nextDouble() * 360 - 180, random.nextDouble() * 180 - 90));
+            }
+
+            for (var id = 1; id <= 100; id++) {
+                var refs = new TLongArrayList();
+                var numberOfRefs = 2 + random.nextInt(10);
+                for (var i = 0; i < numberOfRefs; i++) {
+                    var nodeIndex = 1 + random.nextInt(numberOfNodes);
+                    refs.add(nodeIndex <= 3 ? nodeIndex : nodeIndex * 10L);
+                }
+                writer.write(new Way(id, refs));
+            }
+            writer.complete();
+        }
+    }
+
+    private static class Entities implements OsmHandler {
+
+        private final Map<Long, double[]> nodes = new HashMap<>();
+        private final Map<Long, long[]> ways = new HashMap<>();
+
+        @Override
+        public void handle(OsmBounds bounds) {
+        }
+
+        @Override
+        public void handle(OsmNode node) {
+            nodes.put(node.getId(), new double[]{node.getLongitude(), node.getLatitude()});
+        }
+
+        @Override
+        public void handle(OsmWay way) {
+            var refs = new long[way.getNumberOfNodes()];
+            for (var i = 0; i < refs.length; i++) {
+                refs[i] = way.getNodeId(i);
+            }
+            ways.put(way.getId(), refs);
+        }
+
+        @Override
+        public void handle(OsmRelation relation) {
+        }
+
+        @Override
+        public void complete() {
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package org.matsim.mosaik2.chemistryDriver;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.core.network.NetworkUtils;
+import org.matsim.core.utils.geometry.transformations.IdentityTransformation;
+import org.matsim.mosaik2.Utils;
+import org.matsim.mosaik2.utils.TestUtils;
+import org.matsim.testcases.MatsimTestUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+import static org.matsim.mosaik2.chemistryDriver.NetworkUnsimplifier.LENGTH_FRACTION_KEY;
+
+public class SegmentGeometryStoreTest {
+
+    @Rule
+    public MatsimTestUtils testUtils = new MatsimTestUtils();
+
+    @Test
+    public void createSegmentsSameAsUnsimplifier() {
+
+        var network = TestUtils.createRandomNetwork(100, 1000, 1000);
+
+        var expected = NetworkUnsimplifier.unsimplifyNetwork(network, new IdentityTransformation());
+        var actual = SegmentGeometryStore.create(network).createSegments(network, new IdentityTransformation());
+
+        assertSameSegments(expected, actual);
+    }
+
+    @Test
+    public void writeAndReadCache() throws IOException {
+
+        var network = TestUtils.createSingleLinkNetwork(new Coord(0, 0), new Coord(100, 0), List.of(new Coord(0, 10), new Coord(100, 10)));
+        var networkFile = testUtils.getOutputDirectory() + "network.xml";
+        var cacheDirectory = Paths.get(testUtils.getOutputDirectory()).resolve("cache");
+        NetworkUtils.writeNetwork(network, networkFile);
+
+        var expected = NetworkUnsimplifier.unsimplifyNetwork(network, new IdentityTransformation());
+
+        // the first call parses the network and writes the cache file
+        var created = SegmentGeometryStore.loadOrCreate(networkFile, network, cacheDirectory);
+        var cacheFile = cacheDirectory.resolve(Utils.hash(Paths.get(networkFile)) + ".segments");
+        assertTrue(Files.exists(cacheFile));
+        assertSameSegments(expected, created.createSegments(network, new IdentityTransformation()));
+
+        // the second call reads the cache file
+        var read = SegmentGeometryStore.read(cacheFile);
+        assertSameSegments(expected, read.createSegments(network, new IdentityTransformation()));
+    }
+
+    @Test
+    public void transformIntermediateNodes() {
+
+        var network = TestUtils.createSingleLinkNetwork(new Coord(0, 0), new Coord(100, 0), List.of(new Coord(0, 10), new Coord(100, 10)));
+        var store = SegmentGeometryStore.create(network);
+
+        var result = store.createSegments(network, coord -> new Coord(coord.getX() + 1000, coord.getY()));
+
+        var segments = result.get(Id.createLinkId("link"));
+        assertEquals(3, segments.size());
+        assertEquals(1000, segments.get(0).getToNode().getCoord().getX(), 0.0001);
+        assertEquals(1100, segments.get(1).getToNode().getCoord().getX(), 0.0001);
+    }
+
+    private static void assertSameSegments(Map<Id<Link>, List<Link>> expected, Map<Id<Link>, List<Link>> actual) {
+
+        assertEquals(expected.size(), actual.size());
+
+        for (var entry : expected.entrySet()) {
+            var expectedSegments = entry.getValue();
+            var actualSegments = actual.get(entry.getKey());
+            assertEquals(expectedSegments.size(), actualSegments.size());
+
+            for (var i = 0; i < expectedSegments.size(); i++) {
+                var expectedSegment = expectedSegments.get(i);
+                var actualSegment = actualSegments.get(i);
+                assertEquals(expectedSegment.getId(), actualSegment.getId());
+                assertEquals(expectedSegment.getFromNode().getCoord(), actualSegment.getFromNode().getCoord());
+                assertEquals(expectedSegment.getToNode().getCoord(), actualSegment.getToNode().getCoord());
+                assertEquals(expectedSegment.getLength(), actualSegment.getLength(), 0.0000001);
+                assertEquals((double) expectedSegment.getAttributes().getAttribute(LENGTH_FRACTION_KEY), (double) actualSegment.getAttributes().getAttribute(LENGTH_FRACTION_KEY), 0.0000001);
+            }
+        }
+    }
+}
@@ -5,6 +5,7 @@ import org.matsim.api.core.v01.Coord;
 import org.matsim.api.core.v01.Id;
 import org.matsim.core.network.NetworkUtils;
 import org.matsim.mosaik2.raster.AbstractRaster;
+import org.matsim.mosaik2.raster.BuildingMask;
 import org.matsim.mosaik2.raster.DoubleRaster;
 
 import static org.junit.Assert.assertEquals;
@@ -96,7 +97,7 @@ public class SwingRasterizerTest {
 		link.setNumberOfLanes(1);
 
 		var rasterizer = new SwingRasterizer(target.getBounds(), target.getCellSize(), 3.5);
-		rasterizer.rasterLink(link, 100, target, buildings);
+		rasterizer.rasterLink(link, 100, target, BuildingMask.fromRaster(buildings));
 
 		target.forEachCoordinate((x, y, value) -> {
 			if (x == 50 && y == 50) assertEquals(0, value, 0.001); // the building
@@ -121,7 +122,7 @@ public class SwingRasterizerTest {
 		link.setNumberOfLanes(6);
 
 		var rasterizer = new SwingRasterizer(target.getBounds(), target.getCellSize(), 3.5);
-		rasterizer.rasterLink(link, 10000, target, buildings);
+		rasterizer.rasterLink(link, 10000, target, BuildingMask.fromRaster(buildings));
 
 		target.forEachCoordinate((x, y, value) -> {
 			if (x == 50 && y == 50) assertEquals(0, value, 0.001); // the building
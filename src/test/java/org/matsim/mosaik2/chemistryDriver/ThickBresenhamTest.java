@@ -1,96 +1,127 @@
 package org.matsim.mosaik2.chemistryDriver;
 
-import org.apache.commons.csv.CSVFormat;
-import org.apache.commons.csv.CSVPrinter;
 import org.junit.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.operation.buffer.BufferParameters;
 import org.matsim.api.core.v01.Coord;
 import org.matsim.api.core.v01.Id;
-import org.matsim.api.core.v01.network.Link;
-import org.matsim.core.network.NetworkUtils;
+import org.matsim.mosaik2.raster.BuildingMask;
+import org.matsim.mosaik2.raster.DoubleRaster;
+import org.matsim.mosaik2.utils.TestUtils;
 
-import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 public class ThickBresenhamTest {
 
+    private static final GeometryFactory factory = new GeometryFactory();
+
     @Test
-    public void shortLine() {
-        ThickBresenham.plotLineWidth(3, 5, 7, 5, 6, (xi, yi) -> System.out.println(xi + ", " + yi));
+    public void coverageSumsToBandArea() {
+
+        var raster = new DoubleRaster(new DoubleRaster.Bounds(0, 0, 100, 100), 2);
+        var sum = new double[1];
+
+        ThickBresenham.plotLineWidth(10.3, 12.7, 83.1, 61.9, 7, raster, (xi, yi, area) -> {
+            assertTrue(area <= 4.0000001);
+            sum[0] += area;
+        });
+
+        var length = Math.sqrt((83.1 - 10.3) * (83.1 - 10.3) + (61.9 - 12.7) * (61.9 - 12.7));
+        assertEquals(length * 7, sum[0], 0.000001);
     }
 
     @Test
-    public void singleLine() {
-
-        var network = NetworkUtils.createNetwork();
-        var node1 = network.getFactory().createNode(Id.createNodeId("from1"), new Coord(30, 100));
-        var node2 = network.getFactory().createNode(Id.createNodeId("to2"), new Coord(70, 100));
-        var link1 = network.getFactory().createLink(Id.createLinkId("link1"), node1, node2);
-        network.addNode(node1);
-        network.addNode(node2);
-        network.addLink(link1);
-
-        var node3 = network.getFactory().createNode(Id.createNodeId("from2"), new Coord(70, 200));
-        var node4 = network.getFactory().createNode(Id.createNodeId("to3"), new Coord(30, 200));
-        var link2 = network.getFactory().createLink(Id.createLinkId("link2"), node3, node4);
-        network.addNode(node3);
-        network.addNode(node4);
-        network.addLink(link2);
-
-        var node5 = network.getFactory().createNode(Id.createNodeId("from5"), new Coord(200, 30));
-        var node6 = network.getFactory().createNode(Id.createNodeId("to6"), new Coord(200, 70));
-        var link3 = network.getFactory().createLink(Id.createLinkId("link3"), node5, node6);
-        network.addNode(node5);
-        network.addNode(node6);
-        network.addLink(link3);
-
-        var node7 = network.getFactory().createNode(Id.createNodeId("from7"), new Coord(300, 70));
-        var node8 = network.getFactory().createNode(Id.createNodeId("to8"), new Coord(300, 30));
-        var link4 = network.getFactory().createLink(Id.createLinkId("link4"), node7, node8);
-        network.addNode(node7);
-        network.addNode(node8);
-        network.addLink(link4);
-
-        var node9 = network.getFactory().createNode(Id.createNodeId("from9"), new Coord(0, 0));
-        var node10 = network.getFactory().createNode(Id.createNodeId("to10"), new Coord(50, 40));
-        var link5 = network.getFactory().createLink(Id.createLinkId("link5"), node9, node10);
-        network.addNode(node9);
-        network.addNode(node10);
-        network.addLink(link5);
-
-        var node11 = network.getFactory().createNode(Id.createNodeId("from11"), new Coord(100, 300));
-        var node12 = network.getFactory().createNode(Id.createNodeId("to12"), new Coord(0, 500));
-        var link6 = network.getFactory().createLink(Id.createLinkId("link6"), node11, node12);
-        network.addNode(node11);
-        network.addNode(node12);
-        network.addLink(link6);
-
-        NetworkUtils.writeNetwork(network, "C:\\Users\\janek\\Desktop\\network-lines.xml");
-
-        try (var writer = Files.newBufferedWriter(Paths.get("C:\\Users\\janek\\Desktop\\lines.csv")); var printer = CSVFormat.DEFAULT.withHeader("x", "y").print(writer)) {
-
-            for (Link link : network.getLinks().values()) {
-                ThickBresenham.plotLineWidth(
-                        (int) link.getFromNode().getCoord().getX(),
-                        (int) link.getFromNode().getCoord().getY(),
-                        (int) link.getToNode().getCoord().getX(),
-                        (int) link.getToNode().getCoord().getY(),
-                        4,
-                        (xi, yi) -> print(printer, xi, yi)
-                );
+    public void sameCoverageAsBuffer() {
+
+        var cellSize = 1.;
+        var raster = new DoubleRaster(new DoubleRaster.Bounds(0, 0, 50, 50), cellSize);
+        var lines = new double[][]{
+                {10, 10, 40, 10}, {40, 20, 10, 20}, {25, 5, 25, 45}, {3.3, 7.1, 42.6, 31.5}, {44.2, 40.1, 8.7, 12.3}
+        };
+        var width = 2 * EmissionRasterer.LANE_WIDTH;
+
+        for (var line : lines) {
+
+            var buffer = createBuffer(line[0], line[1], line[2], line[3], width);
+            var numberOfCells = new AtomicInteger();
+
+            ThickBresenham.plotLineWidth(line[0], line[1], line[2], line[3], width, raster, (xi, yi, area) -> {
+                var x = xi * cellSize;
+                var y = yi * cellSize;
+                var cell = factory.createPolygon(new Coordinate[]{
+                        new Coordinate(x - cellSize / 2, y - cellSize / 2), new Coordinate(x + cellSize / 2, y - cellSize / 2),
+                        new Coordinate(x + cellSize / 2, y + cellSize / 2), new Coordinate(x - cellSize / 2, y + cellSize / 2),
+                        new Coordinate(x - cellSize / 2, y - cellSize / 2)
+                });
+                assertEquals(cell.intersection(buffer).getArea(), area, 0.000001);
+                numberOfCells.incrementAndGet();
+            });
+
+            // the buffer must not cover cells which were not passed to the consumer
+            var cellsCoveredByBuffer = 0;
+            for (var xi = 0; xi < raster.getXLength(); xi++) {
+                for (var yi = 0; yi < raster.getYLength(); yi++) {
+                    var cell = factory.createPolygon(new Coordinate[]{
+                            new Coordinate(xi - 0.5, yi - 0.5), new Coordinate(xi + 0.5, yi - 0.5),
+                            new Coordinate(xi + 0.5, yi + 0.5), new Coordinate(xi - 0.5, yi + 0.5),
+                            new Coordinate(xi - 0.5, yi - 0.5)
+                    });
+                    if (cell.intersection(buffer).getArea() > 0.000001) cellsCoveredByBuffer++;
+                }
             }
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+            assertTrue(cellsCoveredByBuffer <= numberOfCells.get());
         }
     }
 
-    private static void print(CSVPrinter printer, int xi, int yi) {
-        try {
-            printer.printRecord(xi, yi
-            );
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+    @Test
+    public void rasterLinkWithBuildings() {
+
+        var network = TestUtils.createSingleLinkNetwork(new Coord(5, 20), new Coord(95, 20), List.of());
+        var link = network.getLinks().get(Id.createLinkId("link"));
+        link.setNumberOfLanes(2);
+        var bounds = new DoubleRaster.Bounds(0, 0, 100, 40);
+        var buildings = new BuildingMask(bounds, 2);
+        for (var xi = 20; xi < 30; xi++) {
+            for (var yi = 0; yi < buildings.getYLength(); yi++) {
+                buildings.setBuildingForIndex(xi, yi);
+            }
         }
+        var raster = new DoubleRaster(bounds, 2);
+
+        ThickBresenham.rasterLink(link, 1000, EmissionRasterer.LANE_WIDTH, raster, buildings);
+
+        var sum = new double[1];
+        raster.forEachIndex((xi, yi, value) -> {
+            if (buildings.isBuildingByIndex(xi, yi)) {
+                assertEquals(0, value, 0.0);
+            }
+            // lanes are right of the link, which points east
+            if (yi * 2 > 21) {
+                assertEquals(0, value, 0.0);
+            }
+            sum[0] += value * 4;
+        });
+        assertEquals(1000, sum[0], 0.000001);
     }
 
-}
\ No newline at end of file
+    /**
+     * Creates the band of a link with the buffer method. The line is moved by half the width to the right and then
+     * buffered with flat ends.
+     */
+    private static Geometry createBuffer(double x0, double y0, double x1, double y1, double width) {
+
+        var length = Math.sqrt((x1 - x0) * (x1 - x0) + (y1 - y0) * (y1 - y0));
+        var offsetX = (y1 - y0) / length * width / 2;
+        var offsetY = -(x1 - x0) / length * width / 2;
+        var line = factory.createLineString(new Coordinate[]{
+                new Coordinate(x0 + offsetX, y0 + offsetY), new Coordinate(x1 + offsetX, y1 + offsetY)
+        });
+        return line.buffer(width / 2, 0, BufferParameters.CAP_FLAT);
+    }
+}
@@ -0,0 +1,91 @@
+package org.matsim.mosaik2.events;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+
+public class CompareAlgorithmsTest {
+
+    private static final int MAX_TIME = (1 << 17) - 1;
+    private static final int MAX_INDEX = (1 << 23) - 1;
+
+    @Test
+    public void packAndUnpack() {
+
+        for (var time : new int[]{0, 1, 3600, MAX_TIME}) {
+            for (var linkIndex : new int[]{0, 1, 4711, MAX_INDEX}) {
+                for (var vehicleIndex : new int[]{0, 1, 42, MAX_INDEX}) {
+
+                    var key = CompareAlgorithms.pack(time, linkIndex, vehicleIndex);
+
+                    assertEquals(time, CompareAlgorithms.unpackTime(key));
+                    assertEquals(linkIndex, CompareAlgorithms.unpackLinkIndex(key));
+                    assertEquals(vehicleIndex, CompareAlgorithms.unpackVehicleIndex(key));
+                }
+            }
+        }
+
+        // fractions of seconds are cut off
+        assertEquals(10, CompareAlgorithms.unpackTime(CompareAlgorithms.pack(10.7, 0, 0)));
+    }
+
+    @Test
+    public void packedKeysAreOrderedByTimeLinkAndVehicle() {
+
+        var keys = List.of(
+                CompareAlgorithms.pack(0, MAX_INDEX, MAX_INDEX),
+                CompareAlgorithms.pack(1, 0, 0),
+                CompareAlgorithms.pack(1, 0, 1),
+                CompareAlgorithms.pack(1, 1, 0),
+                CompareAlgorithms.pack(MAX_TIME, 0, 0)
+        );
+        for (var i = 1; i < keys.size(); i++) {
+            assertEquals(-1, Long.compare(keys.get(i - 1), keys.get(i)));
+        }
+    }
+
+    @Test
+    public void rejectValuesOutOfRange() {
+
+        assertThrows(IllegalArgumentException.class, () -> CompareAlgorithms.pack(-1, 0, 0));
+        assertThrows(IllegalArgumentException.class, () -> CompareAlgorithms.pack(MAX_TIME + 1, 0, 0));
+        assertThrows(IllegalArgumentException.class, () -> CompareAlgorithms.pack(0, MAX_INDEX + 1, 0));
+        assertThrows(IllegalArgumentException.class, () -> CompareAlgorithms.pack(0, 0, MAX_INDEX + 1));
+        assertThrows(IllegalArgumentException.class, () -> CompareAlgorithms.pack(0, -1, 0));
+        assertThrows(IllegalArgumentException.class, () -> CompareAlgorithms.pack(0, 0, -1));
+    }
+
+    @Test
+    public void diffSumsDuplicatesAndSkipsDisjointKeys() {
+
+        var a = CompareAlgorithms.pack(10, 1, 1);
+        var b = CompareAlgorithms.pack(10, 1, 2);
+        var c = CompareAlgorithms.pack(20, 3, 1);
+        var d = CompareAlgorithms.pack(30, 1, 1);
+        var e = CompareAlgorithms.pack(40, 2, 2);
+
+        // a and c are on both sides, a twice on the first and c twice on the second side. b, d and e are only on one side
+        var emissions1 = new CompareAlgorithms.SortedEmissions(new long[]{a, a, b, c, e}, new float[]{1, 2, 4, 8, 16});
+        var emissions2 = new CompareAlgorithms.SortedEmissions(new long[]{a, c, c, d}, new float[]{32, 64, 128, 256});
+
+        var diffs = CompareAlgorithms.diff(emissions1, emissions2);
+
+        assertEquals(List.of(
+                new CompareAlgorithms.PackedDiff(a, 3, 32),
+                new CompareAlgorithms.PackedDiff(c, 8, 192)
+        ), diffs);
+    }
+
+    @Test
+    public void diffWithoutMatches() {
+
+        var emissions1 = new CompareAlgorithms.SortedEmissions(new long[]{CompareAlgorithms.pack(1, 1, 1)}, new float[]{1});
+        var emissions2 = new CompareAlgorithms.SortedEmissions(new long[0], new float[0]);
+
+        assertEquals(List.of(), CompareAlgorithms.diff(emissions1, emissions2));
+        assertEquals(List.of(), CompareAlgorithms.diff(emissions2, emissions1));
+    }
+}
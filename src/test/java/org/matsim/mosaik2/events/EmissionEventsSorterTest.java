@@ -0,0 +1,71 @@
+package org.matsim.mosaik2.events;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.events.Event;
+import org.matsim.api.core.v01.events.LinkEnterEvent;
+import org.matsim.contrib.emissions.Pollutant;
+import org.matsim.contrib.emissions.events.ColdEmissionEvent;
+import org.matsim.contrib.emissions.events.WarmEmissionEvent;
+import org.matsim.core.events.EventsUtils;
+import org.matsim.core.events.handler.BasicEventHandler;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+
+public class EmissionEventsSorterTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void replayInTimeOrder() throws IOException {
+
+        var random = new Random(42);
+        List<Event> events = new ArrayList<>();
+        for (var i = 0; i < 1000; i++) {
+            var time = random.nextInt(100);
+            var linkId = Id.createLinkId(random.nextInt(10));
+            var vehicleId = Id.createVehicleId(random.nextInt(20));
+            Map<Pollutant, Double> emissions = new LinkedHashMap<>();
+            emissions.put(Pollutant.NOx, random.nextDouble());
+            emissions.put(Pollutant.CO2_TOTAL, random.nextDouble());
+            events.add(random.nextBoolean() ? new WarmEmissionEvent(time, linkId, vehicleId, emissions) : new ColdEmissionEvent(time, linkId, vehicleId, emissions));
+            // other events are ignored
+            events.add(new LinkEnterEvent(time, vehicleId, linkId));
+        }
+
+        // stable sort by time is the expected order
+        var expected = events.stream()
+                .filter(event -> event instanceof WarmEmissionEvent || event instanceof ColdEmissionEvent)
+                .sorted(Comparator.comparingDouble(Event::getTime))
+                .map(EmissionEventsSorterTest::toString)
+                .toList();
+
+        var tempDirectory = temporaryFolder.newFolder("runs").toPath();
+        var actual = new ArrayList<String>();
+        try (var sorter = EmissionEventsSorter.builder().runSize(37).tempDirectory(tempDirectory).build()) {
+            events.forEach(sorter::handleEvent);
+
+            var manager = EventsUtils.createEventsManager();
+            manager.addHandler((BasicEventHandler) event -> actual.add(toString(event)));
+            manager.initProcessing();
+            sorter.replay(manager);
+            manager.finishProcessing();
+        }
+
+        assertEquals(expected, actual);
+        try (var files = Files.list(tempDirectory)) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    private static String toString(Event event) {
+        return event.getEventType() + " " + event.getAttributes();
+    }
+}
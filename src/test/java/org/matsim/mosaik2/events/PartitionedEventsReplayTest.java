@@ -0,0 +1,127 @@
+package org.matsim.mosaik2.events;
+
+import org.junit.Test;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.events.Event;
+import org.matsim.api.core.v01.events.GenericEvent;
+import org.matsim.api.core.v01.events.LinkEnterEvent;
+import org.matsim.api.core.v01.events.LinkLeaveEvent;
+import org.matsim.core.api.experimental.events.EventsManager;
+import org.matsim.core.events.EventsUtils;
+import org.matsim.core.events.handler.BasicEventHandler;
+import org.matsim.vehicles.Vehicle;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Consumer;
+
+import static org.junit.Assert.assertEquals;
+
+public class PartitionedEventsReplayTest {
+
+    @Test
+    public void sameOutputAsSequentialReplay() {
+
+        var input = createEvents();
+
+        var expected = new ArrayList<String>();
+        var sequentialManager = EventsUtils.createEventsManager();
+        new LinkCounter(sequentialManager, event -> expected.add(toString(event)));
+        sequentialManager.initProcessing();
+        input.forEach(sequentialManager::processEvent);
+        sequentialManager.finishProcessing();
+
+        for (var partitions : new int[]{1, 3, 8}) {
+            var actual = new ArrayList<String>();
+            PartitionedEventsReplay.builder()
+                    .numberOfPartitions(partitions)
+                    .batchSize(7)
+                    .partitionFactory((partition, output) -> {
+                        var manager = EventsUtils.createEventsManager();
+                        new LinkCounter(manager, output::handleEvent);
+                        return manager;
+                    })
+                    .build()
+                    .replay(manager -> input.forEach(manager::processEvent), event -> actual.add(toString(event)));
+
+            assertEquals(expected.size(), actual.size());
+            assertEquals(expected, actual);
+        }
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void failingPartition() {
+
+        PartitionedEventsReplay.builder()
+                .numberOfPartitions(3)
+                .batchSize(7)
+                .partitionFactory((partition, output) -> {
+                    var manager = EventsUtils.createEventsManager();
+                    manager.addHandler((BasicEventHandler) event -> {
+                        if (event.getTime() > 100) throw new IllegalStateException("Test exception");
+                    });
+                    return manager;
+                })
+                .build()
+                .replay(manager -> createEvents().forEach(manager::processEvent), event -> {
+                });
+    }
+
+    private static String toString(Event event) {
+        return event.getTime() + " " + event.getEventType() + " " + event.getAttributes();
+    }
+
+    private static List<Event> createEvents() {
+
+        var random = new Random(42);
+        List<Event> events = new ArrayList<>();
+        for (var time = 0; time < 1000; time++) {
+            var vehicleId = Id.createVehicleId(random.nextInt(20));
+            var linkId = Id.createLinkId(random.nextInt(5));
+            events.add(random.nextBoolean() ? new LinkEnterEvent(time, vehicleId, linkId) : new LinkLeaveEvent(time, vehicleId, linkId));
+            if (time % 100 == 0) events.add(new GenericEvent("no-vehicle", time));
+        }
+        return events;
+    }
+
+    /**
+     * Emits the number of links a vehicle has left so far on every link leave event. The output depends on the state
+     * of each vehicle.
+     */
+    private static class LinkCounter implements BasicEventHandler {
+
+        private final EventsManager manager;
+        private final Map<Id<Vehicle>, Integer> counts = new HashMap<>();
+
+        LinkCounter(EventsManager manager, Consumer<Event> output) {
+            this.manager = manager;
+            manager.addHandler(this);
+            manager.addHandler((BasicEventHandler) event -> {
+                if (event.getEventType().startsWith("count")) output.accept(event);
+            });
+        }
+
+        @Override
+        public void handleEvent(Event event) {
+
+            if (event instanceof LinkLeaveEvent leaveEvent) {
+                var count = counts.merge(leaveEvent.getVehicleId(), 1, Integer::sum);
+                var countEvent = new GenericEvent("count", event.getTime());
+                countEvent.getAttributes().put("vehicle", leaveEvent.getVehicleId().toString());
+                countEvent.getAttributes().put("count", Integer.toString(count));
+                manager.processEvent(countEvent);
+            } else if (event instanceof LinkEnterEvent enterEvent && counts.getOrDefault(enterEvent.getVehicleId(), 0) % 3 == 2) {
+                // emit two events for one input event
+                for (var i = 0; i < 2; i++) {
+                    var countEvent = new GenericEvent("count-enter", event.getTime());
+                    countEvent.getAttributes().put("vehicle", enterEvent.getVehicleId().toString());
+                    countEvent.getAttributes().put("index", Integer.toString(i));
+                    manager.processEvent(countEvent);
+                }
+            }
+        }
+    }
+}
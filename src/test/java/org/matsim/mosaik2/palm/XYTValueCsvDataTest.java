@@ -0,0 +1,62 @@
+package org.matsim.mosaik2.palm;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.matsim.mosaik2.raster.DoubleRaster;
+
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertEquals;
+
+public class XYTValueCsvDataTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void readValueColumnByPosition() throws IOException {
+
+        var file = temporaryFolder.getRoot().toPath().resolve("pm10.csv");
+        Files.writeString(file, "time,x,y,PM10\n0,0,0,1.5\n0,10,10,2.5\n3600,0,10,0.1\n");
+        var info = new XYTValueCsvData.DataInfo(new XYTValueCsvData.RasterInfo(new DoubleRaster.Bounds(0, 0, 10, 10), 10), 3600);
+
+        var result = XYTValueCsvData.read(file, info);
+
+        assertEquals(2, result.getTimeBins().size());
+        var first = result.getTimeBin(0).getValue();
+        assertEquals(1.5, first.getValueByCoord(0, 0), 0.0);
+        assertEquals(2.5, first.getValueByCoord(10, 10), 0.0);
+        assertEquals(-1, first.getValueByCoord(0, 10), 0.0);
+        assertEquals(0.1, result.getTimeBin(3600).getValue().getValueByCoord(0, 10), 0.0);
+
+        var floatResult = XYTValueCsvData.readFloat(file, info);
+        assertEquals(0.1f, floatResult.getTimeBin(3600).getValue().getValueByCoord(0, 10), 0.0f);
+    }
+
+    @Test
+    public void readBounds() throws IOException {
+
+        var file = temporaryFolder.getRoot().toPath().resolve("pm10.csv");
+        // coordinates may carry rounding errors
+        Files.writeString(file, "time,x,y,PM10\n0,0,0,1.5\n0,10.000001,10,2.5\n0,20,0,3.5\n3600,0,10,0.1\n");
+        var info = new XYTValueCsvData.DataInfo(new XYTValueCsvData.RasterInfo(new DoubleRaster.Bounds(0, 0, 20, 10), 10), 3600);
+        var bounds = new DoubleRaster.Bounds(10, 0, 20, 0);
+
+        var result = XYTValueCsvData.read(file, info, bounds);
+
+        // all time bins are present, even if they have no values within the bounds
+        assertEquals(2, result.getTimeBins().size());
+        var first = result.getTimeBin(0).getValue();
+        assertEquals(bounds, first.getBounds());
+        assertEquals(2, first.getXLength());
+        assertEquals(1, first.getYLength());
+        assertEquals(-1, first.getValueByCoord(10, 0), 0.0);
+        assertEquals(3.5, first.getValueByCoord(20, 0), 0.0);
+        assertEquals(-1, result.getTimeBin(3600).getValue().getValueByCoord(20, 0), 0.0);
+
+        var singleCell = XYTValueCsvData.read(file, info, new DoubleRaster.Bounds(10, 10, 10, 10));
+        assertEquals(2.5, singleCell.getTimeBin(0).getValue().getValueByCoord(10, 10), 0.0);
+    }
+}
@@ -0,0 +1,86 @@
+package org.matsim.mosaik2.raster;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.matsim.testcases.MatsimTestUtils;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class BuildingMaskTest {
+
+    @Rule
+    public MatsimTestUtils testUtils = new MatsimTestUtils();
+
+    @Test
+    public void sameAsRaster() {
+
+        // use a x-length which is not a multiple of 64, so that rows don't fill their last word
+        var buildings = new DoubleRaster(new AbstractRaster.Bounds(0, 0, 1300, 500), 10);
+        var random = new Random(42);
+        buildings.setValueForEachIndex((xi, yi) -> random.nextDouble() < 0.3 ? 10 : -9999);
+
+        var mask = BuildingMask.fromRaster(buildings);
+
+        var expectedCount = new int[]{0};
+        buildings.forEachIndex((xi, yi, value) -> {
+            assertEquals(value > 0, mask.isBuildingByIndex(xi, yi));
+            if (value > 0) expectedCount[0]++;
+        });
+        buildings.forEachCoordinate((x, y, value) -> assertEquals(value > 0, mask.isBuildingByCoord(x, y)));
+        assertEquals(expectedCount[0], mask.countBuildings());
+    }
+
+    @Test
+    public void setBuilding() {
+
+        var mask = new BuildingMask(new AbstractRaster.Bounds(0, 0, 100, 100), 10);
+        mask.setBuildingForCoord(50, 50);
+        mask.setBuildingForIndex(10, 0);
+
+        assertTrue(mask.isBuildingByCoord(50, 50));
+        assertTrue(mask.isBuildingByIndex(10, 0));
+        assertFalse(mask.isBuildingByIndex(0, 1));
+        assertEquals(2, mask.countBuildings());
+
+        try {
+            mask.isBuildingByIndex(11, 0);
+            fail("Should have thrown array out of bounds exception");
+        } catch (ArrayIndexOutOfBoundsException ex) {
+            // don't do anything we've expected this.
+        }
+    }
+
+    @Test
+    public void writeAndRead() throws IOException {
+
+        var mask = new BuildingMask(new AbstractRaster.Bounds(10, 10, 1000, 700), 2);
+        var random = new Random(42);
+        for (var i = 0; i < 1000; i++) {
+            mask.setBuildingForIndex(random.nextInt(mask.getXLength()), random.nextInt(mask.getYLength()));
+        }
+        var file = Paths.get(testUtils.getOutputDirectory()).resolve("buildings.mask");
+
+        mask.write(file);
+        var read = BuildingMask.read(file, mask.getBounds(), mask.getCellSize());
+
+        assertEquals(mask.getBounds(), read.getBounds());
+        assertEquals(mask.getCellSize(), read.getCellSize(), Double.MIN_VALUE);
+        assertEquals(mask.countBuildings(), read.countBuildings());
+        mask.forEachCoordinate((x, y, isBuilding) -> assertEquals(isBuilding, read.isBuildingByCoord(x, y)));
+    }
+
+    @Test
+    public void rejectOtherBoundsOrCellSize() {
+
+        var mask = new BuildingMask(new AbstractRaster.Bounds(10, 10, 1000, 700), 2);
+        var file = Paths.get(testUtils.getOutputDirectory()).resolve("buildings.mask");
+        mask.write(file);
+
+        assertThrows(IOException.class, () -> BuildingMask.read(file, new AbstractRaster.Bounds(10, 10, 1000, 702), 2));
+        assertThrows(IOException.class, () -> BuildingMask.read(file, mask.getBounds(), 1));
+    }
+}
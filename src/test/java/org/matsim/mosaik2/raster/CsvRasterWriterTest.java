@@ -0,0 +1,98 @@
+package org.matsim.mosaik2.raster;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertEquals;
+
+public class CsvRasterWriterTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void formatDouble() {
+
+        var random = new Random(42);
+        var buffer = new CsvRasterWriter.ByteBuilder();
+        double[] values = {0, -0., 1, 100, 0.001, 0.1 + 0.2, 1. / 3, 9999999.999, 1e7, 1e-4, 1e21, 385000.5, -7.25, Double.NaN,
+                Double.POSITIVE_INFINITY, Double.MAX_VALUE, Double.MIN_NORMAL, 0.1f};
+
+        for (var value : values) {
+            buffer.clear();
+            buffer.appendDouble(value);
+            assertEquals(Double.toString(value), buffer.toString());
+        }
+
+        // subnormals with a few bits of precision are printed with the closest two digits, as Double.toString does since
+        // Java 19. The shortest decimal of Double.MIN_VALUE would be 5E-324
+        String[] expectedSubnormals = {"4.9E-324", "9.9E-324", "1.5E-323", "-4.9E-324"};
+        double[] subnormals = {Double.MIN_VALUE, 2 * Double.MIN_VALUE, 3 * Double.MIN_VALUE, -Double.MIN_VALUE};
+        for (var i = 0; i < subnormals.length; i++) {
+            buffer.clear();
+            buffer.appendDouble(subnormals[i]);
+            assertEquals(expectedSubnormals[i], buffer.toString());
+        }
+
+        // Double.toString prints values between 10^-3 and 10^7 without exponent. Java 17 prints the shortest decimal
+        // for them as well.
+        for (var i = 0; i < 100000; i++) {
+            var value = (random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(10) - 2);
+            if (Math.abs(value) < 1e-3) continue;
+            buffer.clear();
+            buffer.appendDouble(value);
+            assertEquals(Double.toString(value), buffer.toString());
+        }
+
+        // all other values must at least parse into the same double
+        for (var i = 0; i < 100000; i++) {
+            var value = Double.longBitsToDouble(random.nextLong());
+            if (Double.isNaN(value)) continue;
+            buffer.clear();
+            buffer.appendDouble(value);
+            assertEquals(value, Double.parseDouble(buffer.toString()), 0.0);
+        }
+    }
+
+    @Test
+    public void writeGzip() throws IOException {
+
+        var raster = new DoubleRaster(new AbstractRaster.Bounds(385000, 5810000, 386000, 5812000), 2);
+        raster.setValueForEachIndex((xi, yi) -> (xi + yi) % 3 == 0 ? 0 : Math.sin(xi) * yi);
+        var file = temporaryFolder.getRoot().toPath().resolve("raster.csv.gz");
+
+        CsvRasterWriter.builder().skipZeros(true).parallelism(3).build().write(file, raster);
+
+        var expected = new StringBuilder("x,y,value\r\n");
+        raster.forEachCoordinate((x, y, value) -> {
+            if (value == 0) return;
+            expected.append(x).append(',').append(y).append(',').append(value).append("\r\n");
+        });
+        try (var in = new GZIPInputStream(Files.newInputStream(file))) {
+            assertEquals(expected.toString(), new String(in.readAllBytes(), StandardCharsets.US_ASCII));
+        }
+    }
+
+    @Test
+    public void writeMinValue() throws IOException {
+
+        var raster = new DoubleRaster(new AbstractRaster.Bounds(0, 0, 9, 9), 1);
+        raster.setValueForEachIndex((xi, yi) -> xi - yi);
+        var file = temporaryFolder.getRoot().toPath().resolve("raster.csv");
+
+        CsvRasterWriter.write(file, raster, 5);
+
+        var lines = Files.readAllLines(file);
+        assertEquals("x,y,value", lines.get(0));
+        assertEquals("6.0,0.0,6.0", lines.get(1));
+        // values 6 to 9 occur 4 + 3 + 2 + 1 times
+        assertEquals(11, lines.size());
+    }
+}
@@ -0,0 +1,41 @@
+package org.matsim.mosaik2.raster;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class FloatRasterTest {
+
+    @Test
+    public void sameIndexingAsDoubleRaster() {
+
+        var bounds = new AbstractRaster.Bounds(4, 5, 123, 244);
+        var doubleRaster = new DoubleRaster(bounds, 10);
+        var floatRaster = new FloatRaster(bounds, 10);
+
+        doubleRaster.setValueForEachCoordinate((x, y) -> x + y / 1000);
+        floatRaster.setValueForEachCoordinate((x, y) -> (float) (x + y / 1000));
+
+        assertEquals(doubleRaster.getXLength(), floatRaster.getXLength());
+        assertEquals(doubleRaster.getYLength(), floatRaster.getYLength());
+        doubleRaster.forEachCoordinate((x, y, value) -> assertEquals((float) value, floatRaster.getValueByCoord(x, y), 0.0f));
+        floatRaster.forEachIndex((xi, yi, value) -> assertEquals((float) doubleRaster.getValueByIndex(xi, yi), value, 0.0f));
+    }
+
+    @Test
+    public void adjustAndTransform() {
+
+        var raster = new FloatRaster(new AbstractRaster.Bounds(0, 0, 100, 100), 10, 1.f);
+
+        var adjusted = raster.adjustValueForCoord(21, 21, 20.f);
+        assertEquals(21.f, adjusted, 0.0f);
+        assertEquals(21.f, raster.getValueByIndex(2, 2), 0.0f);
+
+        raster.transformEachValue(value -> value * 2);
+
+        raster.forEachIndex((xi, yi, value) -> {
+            if (xi == 2 && yi == 2) assertEquals(42.f, value, 0.0f);
+            else assertEquals(2.f, value, 0.0f);
+        });
+    }
+}
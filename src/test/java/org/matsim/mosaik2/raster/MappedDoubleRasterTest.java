@@ -0,0 +1,62 @@
+package org.matsim.mosaik2.raster;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+public class MappedDoubleRasterTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void sameValuesAsDoubleRaster() {
+
+        var bounds = new AbstractRaster.Bounds(-50, 10, 350, 210);
+        var expected = new DoubleRaster(bounds, 2);
+
+        try (var raster = new MappedDoubleRaster(bounds, 2)) {
+
+            expected.setValueForEachCoordinate((x, y) -> x * 1000 + y);
+            raster.setValueForEachCoordinate((x, y) -> x * 1000 + y);
+            expected.adjustValueForCoord(100, 100, 42);
+            raster.adjustValueForCoord(100, 100, 42);
+            expected.adjustValueForIndex(7, 3, -1);
+            raster.adjustValueForIndex(7, 3, -1);
+
+            expected.forEachIndex((xi, yi, value) -> assertEquals(value, raster.getValueByIndex(xi, yi), 0.0));
+            expected.forEachCoordinate((x, y, value) -> assertEquals(value, raster.getValueByCoord(x, y), 0.0));
+        }
+    }
+
+    @Test
+    public void temporaryFileIsDeletedOnClose() {
+
+        var raster = new MappedDoubleRaster(new AbstractRaster.Bounds(0, 0, 10, 10), 1);
+        assertTrue(Files.exists(raster.getFile()));
+
+        raster.close();
+
+        assertFalse(Files.exists(raster.getFile()));
+    }
+
+    @Test
+    public void reopenFile() throws IOException {
+
+        var bounds = new AbstractRaster.Bounds(0, 0, 100, 100);
+        var file = temporaryFolder.newFile("raster.bin").toPath();
+
+        try (var raster = new MappedDoubleRaster(bounds, 1, file)) {
+            raster.setValueForEachIndex((xi, yi) -> xi + yi * 0.001);
+        }
+
+        try (var raster = new MappedDoubleRaster(bounds, 1, file)) {
+            raster.forEachIndex((xi, yi, value) -> assertEquals(xi + yi * 0.001, value, 0.0));
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package org.matsim.mosaik2.raster;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+
+import static org.junit.Assert.*;
+
+public class RasterComparisonTest {
+
+    @Test
+    public void pairsOverlappingCells() {
+
+        var base = new DoubleRaster(new AbstractRaster.Bounds(0, 0, 90, 90), 10);
+        var compare = new DoubleRaster(new AbstractRaster.Bounds(50, 30, 140, 120), 10);
+        base.setValueForEachCoordinate((x, y) -> x + y);
+        compare.setValueForEachCoordinate((x, y) -> 2 * (x + y) + 1);
+
+        var comparison = new RasterComparison(base, compare);
+        assertEquals(5 * 7, comparison.size());
+
+        var pairs = new ArrayList<double[]>();
+        comparison.forEachPair(base, compare, (x, y, baseValue, compareValue) -> {
+            assertEquals(x + y, baseValue, 0);
+            assertEquals(2 * (x + y) + 1, compareValue, 0);
+            pairs.add(new double[]{x, y});
+        });
+        assertEquals(35, pairs.size());
+        assertArrayEquals(new double[]{50, 30}, pairs.get(0), 0);
+        assertArrayEquals(new double[]{90, 90}, pairs.get(34), 0);
+
+        var statistics = comparison.statistics(base, compare);
+        assertEquals(35, statistics.getCount());
+        assertEquals(2, statistics.getSlope(), 1e-10);
+        assertEquals(1, statistics.getIntercept(), 1e-10);
+        assertEquals(1, statistics.getCorrelation(), 1e-10);
+        assertEquals(statistics.getSumX() / 35 + 1, statistics.getMeanDifference(), 1e-10);
+
+        var filtered = comparison.statistics(base, compare, (baseValue, compareValue) -> baseValue > 100);
+        assertEquals(pairs.stream().filter(pair -> pair[0] + pair[1] > 100).count(), filtered.getCount());
+    }
+
+    @Test
+    public void disjointRasters() {
+
+        var base = new DoubleRaster(new AbstractRaster.Bounds(0, 0, 90, 90), 10);
+        var compare = new DoubleRaster(new AbstractRaster.Bounds(200, 0, 290, 90), 10);
+
+        var comparison = new RasterComparison(base, compare);
+
+        assertEquals(0, comparison.size());
+        assertEquals(0, comparison.statistics(base, compare).getCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unalignedRasters() {
+
+        var base = new DoubleRaster(new AbstractRaster.Bounds(0, 0, 90, 90), 10);
+        var compare = new DoubleRaster(new AbstractRaster.Bounds(5, 0, 95, 90), 10);
+
+        new RasterComparison(base, compare);
+    }
+}
@@ -0,0 +1,80 @@
+package org.matsim.mosaik2.raster;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class RasterTilingTest {
+
+    @Test
+    public void tilesCoverAllCellsOnce() {
+
+        var bounds = new AbstractRaster.Bounds(3, 7, 1003, 507);
+        var fullRaster = new DoubleRaster(bounds, 10);
+        var tiling = new RasterTiling(bounds, 10, 400, 50);
+
+        // 101 x 51 cells split into tiles of 20 x 20 cells
+        assertEquals(6 * 3, tiling.getTiles().size());
+
+        Set<Long> visitedCells = new HashSet<>();
+        for (var tile : tiling.getTiles()) {
+            assertTrue(tile.getXLength() * tile.getYLength() <= 400);
+            for (var xi = 0; xi < tile.getXLength(); xi++) {
+                for (var yi = 0; yi < tile.getYLength(); yi++) {
+                    var fullXi = tile.getXiStart() + xi;
+                    var fullYi = tile.getYiStart() + yi;
+                    assertTrue(visitedCells.add((long) fullYi * fullRaster.getXLength() + fullXi));
+                    assertEquals(fullRaster.getCentroidXForIndex(fullXi), tile.getCentroidX(xi), 0.0);
+                    assertEquals(fullRaster.getCentroidYForIndex(fullYi), tile.getCentroidY(yi), 0.0);
+                }
+            }
+        }
+        assertEquals(fullRaster.getXLength() * fullRaster.getYLength(), visitedCells.size());
+    }
+
+    @Test
+    public void tileBounds() {
+
+        var bounds = new AbstractRaster.Bounds(0, 0, 100, 100);
+        var tiling = new RasterTiling(bounds, 10, 25, 15);
+        var tile = tiling.getTiles().get(1);
+
+        assertEquals(new AbstractRaster.Bounds(50, 0, 90, 40), tile.getBounds());
+        assertEquals(new AbstractRaster.Bounds(35, -15, 105, 55), tile.getBoundsWithHalo());
+
+        // a raster created with the bounds of the tile has the dimensions of the tile
+        var tileRaster = new DoubleRaster(tile.getBounds(), 10);
+        assertEquals(tile.getXLength(), tileRaster.getXLength());
+        assertEquals(tile.getYLength(), tileRaster.getYLength());
+    }
+
+    @Test
+    public void processAndStitchSameAsUntiled() {
+
+        var bounds = new AbstractRaster.Bounds(-123.4, 56.7, 2345.6, 1234.5);
+        var cellSize = 2.5;
+        var untiled = new DoubleRaster(bounds, cellSize);
+        untiled.setValueForEachCoordinate(RasterTilingTest::value);
+
+        for (var concurrentTiles : new int[]{1, 4}) {
+
+            var tiling = new RasterTiling(bounds, cellSize, 10000, 20);
+            var stitched = new DoubleRaster(bounds, cellSize);
+
+            tiling.process(concurrentTiles, tile -> {
+                var tileRaster = new DoubleRaster(tile.getBounds(), cellSize);
+                tileRaster.setValueForEachIndex((xi, yi) -> value(tile.getCentroidX(xi), tile.getCentroidY(yi)));
+                return tileRaster;
+            }, (tile, tileRaster) -> RasterTiling.stitch(tile, tileRaster, stitched));
+
+            untiled.forEachIndex((xi, yi, value) -> assertEquals(value, stitched.getValueByIndex(xi, yi), 0.0));
+        }
+    }
+
+    private static double value(double x, double y) {
+        return Math.sin(x * 0.01) * Math.cos(y * 0.003) + x / (y + 1000);
+    }
+}
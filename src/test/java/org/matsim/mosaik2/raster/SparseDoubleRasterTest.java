@@ -0,0 +1,98 @@
+package org.matsim.mosaik2.raster;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class SparseDoubleRasterTest {
+
+    @Test
+    public void testAdjustAndGet() {
+
+        var bounds = new AbstractRaster.Bounds(10, 10, 100, 100);
+        var raster = new SparseDoubleRaster(bounds, 10);
+
+        raster.adjustValueForCoord(10, 10, 1);
+        raster.adjustValueForCoord(100, 100, 100);
+        raster.adjustValueForCoord(21, 21, 21);
+        raster.adjustValueForCoord(21, 21, 21);
+
+        assertEquals(1, raster.getValueByCoord(10, 10), Double.MIN_VALUE);
+        assertEquals(100, raster.getValueByCoord(100, 100), Double.MIN_VALUE);
+        assertEquals(42, raster.getValueByCoord(21, 21), Double.MIN_VALUE);
+        assertEquals(0, raster.getValueByCoord(50, 50), Double.MIN_VALUE);
+        assertEquals(3, raster.size());
+
+        try {
+            raster.adjustValueForCoord(110, 100, 101);
+            fail("Should have thrown array out of bounds exception");
+        } catch (ArrayIndexOutOfBoundsException ex) {
+            // don't do anything we've expected this.
+        }
+    }
+
+    @Test
+    public void testSameValuesAsDoubleRaster() {
+
+        var bounds = new AbstractRaster.Bounds(4, 5, 1230, 2440);
+        var sparse = new SparseDoubleRaster(bounds, 10);
+        var dense = new DoubleRaster(bounds, 10);
+        var random = new Random(42);
+
+        // adjust cells in random order, with a lot of cells being hit multiple times
+        for (var i = 0; i < 10000; i++) {
+            var xi = random.nextInt(sparse.getXLength() / 10);
+            var yi = random.nextInt(sparse.getYLength());
+            var value = random.nextDouble();
+            sparse.adjustValueForIndex(xi, yi, value);
+            dense.adjustValueForIndex(xi, yi, value);
+        }
+
+        dense.forEachIndex((xi, yi, value) -> assertEquals(value, sparse.getValueByIndex(xi, yi), 0.0000001));
+        sparse.forEachIndex((xi, yi, value) -> assertEquals(dense.getValueByIndex(xi, yi), value, 0.0000001));
+    }
+
+    @Test
+    public void testForEachNonZeroIndex() {
+
+        var bounds = new AbstractRaster.Bounds(0, 0, 100, 100);
+        var raster = new SparseDoubleRaster(bounds, 10);
+
+        raster.adjustValueForIndex(5, 5, 1);
+        raster.adjustValueForIndex(1, 7, 2);
+        raster.adjustValueForIndex(3, 0, 3);
+
+        var expectedIndices = new int[][]{{3, 0}, {5, 5}, {1, 7}};
+        var expectedValues = new double[]{3, 1, 2};
+        var counter = new int[]{0};
+
+        // cells are visited row by row
+        raster.forEachNonZeroIndex((xi, yi, value) -> {
+            var i = counter[0]++;
+            assertEquals(expectedIndices[i][0], xi);
+            assertEquals(expectedIndices[i][1], yi);
+            assertEquals(expectedValues[i], value, Double.MIN_VALUE);
+        });
+        assertEquals(3, counter[0]);
+    }
+
+    @Test
+    public void testToDoubleRaster() {
+
+        var bounds = new AbstractRaster.Bounds(0, 0, 100, 100);
+        var raster = new SparseDoubleRaster(bounds, 10);
+        raster.adjustValueForCoord(50, 20, 7);
+
+        var dense = raster.toDoubleRaster();
+
+        assertEquals(bounds, dense.getBounds());
+        assertEquals(raster.getCellSize(), dense.getCellSize(), Double.MIN_VALUE);
+        dense.forEachCoordinate((x, y, value) -> {
+            if (x == 50 && y == 20) assertEquals(7, value, Double.MIN_VALUE);
+            else assertEquals(0, value, Double.MIN_VALUE);
+        });
+    }
+}